@@ -0,0 +1,517 @@
+package org.example;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+// An ordered feed of every change to a MessageProcessor (adds, status changes, removals and reloads)
+// for consumers such as search indexes, aggregations, audit and export jobs.
+// Each change gets the next sequence number and goes into a fixed-size ring buffer: publishing claims
+// a number with one atomic increment and stores the change in its slot, with no lock, no wake-up and
+// no I/O, so the processor's writes barely notice it. Subscribers read the ring at their own pace,
+// each from its own position; the ring never waits for them, and one that falls more than the ring's
+// capacity behind reads the missed changes back from the log instead. Publishers never wait for the
+// log writer either, since they publish while holding the processor's lock: a change the writer has
+// not taken by the time its slot comes round again is set aside in an overflow for it, and past
+// MAX_OVERFLOW changes (a disk stalled for a long time) dropped from the log, which the writer
+// counts as feed.logGaps. The log is a file of sealed JSON lines (see RecordChecksum) that a
+// background thread appends in batches; sequence numbers carry on across restarts, so a consumer
+// that stored the last sequence it handled resumes from there.
+// Without a log file a subscriber that falls that far behind fails instead.
+public class ChangeFeed implements MessageChangeListener, AutoCloseable {
+
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+    private static final int INDEX_EVERY = 1024;   // A log offset is remembered every this many changes
+    private static final int MAX_BATCH = 4096;     // Changes per log append
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    static final int MAX_OVERFLOW = 1 << 18;
+
+    public enum Type { ADDED, MOVED, REMOVED, RELOADED }
+
+    private final MessageProcessor processor;
+    private final AtomicReferenceArray<Change> ring;
+    private final int mask;
+    private final int maxOverflow;
+    private final ConcurrentSkipListMap<Long, Change> overflow = new ConcurrentSkipListMap<>(); // Overwritten before logged
+    private final AtomicInteger overflowSize = new AtomicInteger();
+    private final AtomicLong nextSequence;
+    private final long firstSequence;             // First sequence of this run; earlier ones are only in the log
+    private final Path logFile;
+    private final ConcurrentSkipListMap<Long, Long> logOffsets = new ConcurrentSkipListMap<>(); // Sequence -> byte offset
+    private volatile long loggedThrough;          // Highest sequence in the log file
+    private volatile long logPosition;            // Next sequence the log writer will take from the ring
+    private volatile boolean logHealthy = true;
+    volatile boolean holdAppends;                 // For tests: a log write that takes as long as it is set
+    private final Thread logWriter;
+    private volatile boolean closed;
+
+    // A feed kept in memory only.
+    public ChangeFeed(MessageProcessor processor) {
+        this(processor, DEFAULT_CAPACITY, null);
+    }
+
+    // capacity is rounded up to a power of two. logFile may be null for a feed kept in memory only.
+    public ChangeFeed(MessageProcessor processor, int capacity, Path logFile) {
+        this(processor, capacity, logFile, MAX_OVERFLOW);
+    }
+
+    ChangeFeed(MessageProcessor processor, int capacity, Path logFile, int maxOverflow) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("capacity must be at least 2");
+        }
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.processor = processor;
+        this.ring = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.maxOverflow = maxOverflow;
+        this.logFile = logFile;
+
+        long last = 0;
+        if (logFile != null) {
+            try {
+                last = openLog();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot open change log " + logFile, e);
+            }
+        }
+        this.loggedThrough = last;
+        this.firstSequence = last + 1;
+        this.nextSequence = new AtomicLong(firstSequence);
+        this.logPosition = firstSequence;
+
+        processor.getMetrics().registerGauge("feed.sequence", this::getLastSequence);
+        processor.addChangeListener(this);
+        if (logFile != null) {
+            logWriter = new Thread(this::writeLog, "change-feed-log");
+            logWriter.setDaemon(true);
+            logWriter.start();
+        } else {
+            logWriter = null;
+        }
+    }
+
+    // ---------- Publishing ----------
+
+    @Override
+    public void messageAdded(MessageData.messageData msg, String list) {
+        publish(Type.ADDED, msg, null, list);
+    }
+
+    @Override
+    public void messageMoved(MessageData.messageData msg, String fromList, String toList) {
+        publish(Type.MOVED, msg, fromList, toList);
+    }
+
+    @Override
+    public void messageRemoved(MessageData.messageData msg, String list) {
+        publish(Type.REMOVED, msg, null, list);
+    }
+
+    // Consumers should re-read the processor's stored messages.
+    @Override
+    public void storedMessagesReplaced() {
+        publish(Type.RELOADED, null, null, "stored");
+    }
+
+    private void publish(Type type, MessageData.messageData msg, String fromList, String list) {
+        long sequence = nextSequence.getAndIncrement();
+        int slot = (int) sequence & mask;
+        if (logWriter != null) {
+            setAsideUnlogged(ring.get(slot));
+        }
+        ring.set(slot, new Change(sequence, type, System.currentTimeMillis(), msg, fromList, list));
+    }
+
+    // Keeps a change about to be overwritten for the log writer if it may not have taken it yet. It
+    // goes in before the slot is overwritten, so the writer finds it in one place or the other. While
+    // the log is failing nothing is kept, as the writer is not taking changes anyway.
+    private void setAsideUnlogged(Change old) {
+        if (old == null || old.sequence < logPosition || !logHealthy) {
+            return;
+        }
+        if (overflowSize.get() < maxOverflow) {
+            overflow.put(old.sequence, old);
+            overflowSize.incrementAndGet();
+        }
+    }
+
+    // ---------- Subscribing ----------
+
+    // Reads changes from the given sequence on (1 is the first change ever published).
+    public Subscription subscribe(long fromSequence) {
+        return new Subscription(Math.max(1, fromSequence));
+    }
+
+    // Reads only changes published from now on.
+    public Subscription subscribeFromNow() {
+        return new Subscription(nextSequence.get());
+    }
+
+    // Sequence of the last change published, or 0 if there has been none.
+    public long getLastSequence() {
+        return nextSequence.get() - 1;
+    }
+
+    // Sequence of the last change written to the log file.
+    public long getLoggedThrough() {
+        return loggedThrough;
+    }
+
+    // One consumer's position in the feed. Not thread-safe: each consumer uses its own.
+    public class Subscription {
+        private long position;
+
+        private Subscription(long position) {
+            this.position = position;
+        }
+
+        // Up to max changes from the current position, in sequence order, without waiting; empty when
+        // the consumer has caught up. Changes that already left the ring are read from the overflow or
+        // the log; also empty while the log writer has yet to write the next of them.
+        public List<Change> poll(int max) {
+            List<Change> changes = new ArrayList<>(Math.min(max, 256));
+            while (changes.size() < max) {
+                Change change = ring.get((int) position & mask);
+                if (change != null && change.sequence == position) {
+                    changes.add(change);
+                    position++;
+                } else if ((change != null && change.sequence > position) || position < firstSequence) {
+                    Change aside = overflow.get(position);
+                    if (aside != null) {
+                        changes.add(aside);
+                        position++;
+                        continue;
+                    }
+                    // Overwritten, or from before this run: the log has it, or will
+                    if (!changes.isEmpty()) {
+                        break;
+                    }
+                    changes.addAll(readLog(position, max));
+                    position += changes.size();
+                    break;
+                } else {
+                    break; // Not published yet (or claimed but still being stored)
+                }
+            }
+            return changes;
+        }
+
+        // Like poll, but waits up to the timeout for at least one change.
+        public List<Change> poll(int max, long timeout, TimeUnit unit) throws InterruptedException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            List<Change> changes = poll(max);
+            while (changes.isEmpty() && System.nanoTime() < deadline) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                changes = poll(max);
+            }
+            return changes;
+        }
+
+        // Sequence of the next change this subscription will return; store it to resume later.
+        public long getPosition() {
+            return position;
+        }
+
+        // How many published changes this subscription has not read yet.
+        public long getLag() {
+            return Math.max(0, getLastSequence() + 1 - position);
+        }
+    }
+
+    // ---------- Log ----------
+
+    // Cuts off a torn tail, then scans the log once for its last sequence and remembers offsets.
+    private long openLog() throws IOException {
+        StorageRecovery.repair(logFile, new StorageRecovery.Report(logFile.toString()));
+        if (!Files.exists(logFile)) {
+            return 0;
+        }
+        long last = 0;
+        long offset = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(logFile.toFile()), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                long sequence = sequenceOf(line);
+                if (sequence > 0) {
+                    if (sequence % INDEX_EVERY == 0 || last == 0) {
+                        logOffsets.put(sequence, offset);
+                    }
+                    last = sequence;
+                }
+                offset += line.getBytes(StandardCharsets.UTF_8).length + System.lineSeparator().length();
+            }
+        }
+        return last;
+    }
+
+    // The sequence a log line starts with, read without parsing the rest of it, or 0.
+    private static long sequenceOf(String line) {
+        String prefix = "{\"seq\":";
+        if (!line.startsWith(prefix)) {
+            return 0;
+        }
+        long sequence = 0;
+        for (int i = prefix.length(); i < line.length() && Character.isDigit(line.charAt(i)); i++) {
+            sequence = sequence * 10 + (line.charAt(i) - '0');
+        }
+        return sequence;
+    }
+
+    // Appends published changes to the log in batches until the feed is closed and drained. A batch is
+    // serialized before it is written, so publishers may reuse its slots while the write is under way.
+    private void writeLog() {
+        long next = firstSequence;
+        long offset = logFile.toFile().length();
+        ByteArrayOutputStream batch = new ByteArrayOutputStream(64 * 1024);
+        StringBuilder line = new StringBuilder(512);
+        while (true) {
+            // Set aside after the writer had already taken them
+            for (Map.Entry<Long, Change> stale = overflow.firstEntry(); stale != null && stale.getKey() < next;
+                 stale = overflow.firstEntry()) {
+                overflow.remove(stale.getKey());
+                overflowSize.decrementAndGet();
+            }
+            long batchStart = next;
+            while (next - batchStart < MAX_BATCH) {
+                Change change = changeAt(next);
+                if (change == null || change.sequence < next) {
+                    break;
+                }
+                if (change.sequence > next) {
+                    // Lapped while the log was failing, or past the overflow, so the log has a gap
+                    processor.getMetrics().add("feed.logGaps", change.sequence - next);
+                    next = change.sequence;
+                }
+                if (next % INDEX_EVERY == 0 || logOffsets.isEmpty()) {
+                    logOffsets.put(next, offset + batch.size());
+                }
+                line.setLength(0);
+                change.appendJson(line);
+                RecordChecksum.seal(line, 0);
+                byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+                batch.write(bytes, 0, bytes.length);
+                next++;
+            }
+            logPosition = next;
+            if (batch.size() == 0) {
+                if (closed && next >= nextSequence.get()) {
+                    return;
+                }
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+                continue;
+            }
+            while (holdAppends && !closed) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+            while (!append(batch)) {
+                // Stop holding publishers back until the log works again
+                logHealthy = false;
+                if (closed) {
+                    return; // Give up rather than hold close() forever
+                }
+                LockSupport.parkNanos(IDLE_PARK_NANOS * 100);
+            }
+            logHealthy = true;
+            offset += batch.size();
+            loggedThrough = next - 1;
+            batch.reset();
+        }
+    }
+
+    // The change with the sequence, from the overflow or the ring. When it is in neither, the ring's
+    // change: an older one while the sequence is not published yet, a newer one when it was dropped
+    // (or the earliest later one in the overflow, if that comes first).
+    private Change changeAt(long sequence) {
+        Change change = takeOverflow(sequence);
+        if (change != null) {
+            return change;
+        }
+        change = ring.get((int) sequence & mask);
+        if (change == null || change.sequence <= sequence) {
+            return change;
+        }
+        // Overwritten: it was set aside before that, unless it was dropped
+        Change saved = takeOverflow(sequence);
+        if (saved != null) {
+            return saved;
+        }
+        Long later = overflow.ceilingKey(sequence);
+        return later != null && later < change.sequence ? takeOverflow(later) : change;
+    }
+
+    private Change takeOverflow(long sequence) {
+        Change change = overflow.remove(sequence);
+        if (change != null) {
+            overflowSize.decrementAndGet();
+        }
+        return change;
+    }
+
+    private boolean append(ByteArrayOutputStream batch) {
+        try (FileOutputStream out = new FileOutputStream(logFile.toFile(), true)) {
+            batch.writeTo(out);
+            out.getFD().sync();
+            return true;
+        } catch (IOException e) {
+            processor.getMetrics().increment("feed.logErrors");
+            return false;
+        }
+    }
+
+    // Up to max changes from the log, starting at sequence from; none while the writer has not got
+    // that far (e.g. during a slow fsync), so the caller polls again.
+    private List<Change> readLog(long from, int max) {
+        long logged = loggedThrough;
+        if (logFile == null) {
+            throw new IllegalStateException("Change " + from + " is no longer in the feed's buffer of "
+                    + ring.length() + " and there is no change log");
+        }
+        if (from > logged) {
+            return new ArrayList<>();
+        }
+        Map.Entry<Long, Long> start = logOffsets.floorEntry(from);
+        List<Change> changes = new ArrayList<>();
+        try (FileInputStream in = new FileInputStream(logFile.toFile())) {
+            in.skipNBytes(start == null ? 0 : start.getValue());
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            String line;
+            while (changes.size() < max && (line = reader.readLine()) != null) {
+                long sequence = sequenceOf(line);
+                if (sequence < from) {
+                    continue;
+                }
+                if (sequence > logged) {
+                    break; // Being written right now
+                }
+                String json = RecordChecksum.unseal(line);
+                if (sequence != from + changes.size() || json == null) {
+                    throw new IllegalStateException("Change log " + logFile + " is missing change "
+                            + (from + changes.size()));
+                }
+                changes.add(Change.fromJson(new JSONObject(json)));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read change log " + logFile, e);
+        } catch (JSONException e) {
+            throw new IllegalStateException("Malformed change in " + logFile + ": " + e.getMessage(), e);
+        }
+        return changes;
+    }
+
+    // Stops publishing, and waits for the log to catch up with what was published.
+    @Override
+    public void close() throws InterruptedException {
+        processor.removeChangeListener(this);
+        closed = true;
+        if (logWriter != null) {
+            logWriter.join();
+        }
+    }
+
+    // ---------- Changes ----------
+
+    // One change. The message is the processor's own object (or, read back from the log, a copy), so
+    // its status may have changed since; getStatus() is the status the change left it with.
+    public static final class Change {
+        private final long sequence;
+        private final Type type;
+        private final long timestamp;
+        private final MessageData.messageData message; // Null for RELOADED
+        private final String status;
+        private final String fromList;                  // For MOVED
+        private final String list;
+
+        Change(long sequence, Type type, long timestamp, MessageData.messageData message, String fromList, String list) {
+            this.sequence = sequence;
+            this.type = type;
+            this.timestamp = timestamp;
+            this.message = message;
+            this.status = message == null ? null : message.getStatus();
+            this.fromList = fromList;
+            this.list = list;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        // Epoch millis when the change was published.
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public MessageData.messageData getMessage() {
+            return message;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        // The list a MOVED message left, otherwise null.
+        public String getFromList() {
+            return fromList;
+        }
+
+        // The list the message was added to, moved to or removed from ("stored" for RELOADED).
+        public String getList() {
+            return list;
+        }
+
+        // The sequence comes first so the log can be scanned without parsing whole lines.
+        void appendJson(StringBuilder out) {
+            out.append("{\"seq\":").append(sequence).append(",\"type\":");
+            MessageProcessor.appendQuoted(out, type.name());
+            out.append(",\"at\":").append(timestamp).append(",\"list\":");
+            MessageProcessor.appendQuoted(out, list);
+            if (fromList != null) {
+                out.append(",\"from\":");
+                MessageProcessor.appendQuoted(out, fromList);
+            }
+            if (message != null) {
+                out.append(",\"message\":");
+                MessageProcessor.appendJson(out, message, status);
+            }
+            out.append('}');
+        }
+
+        static Change fromJson(JSONObject json) {
+            MessageData.messageData message = json.has("message")
+                    ? MessageProcessor.fromJson(json.getJSONObject("message")) : null;
+            return new Change(json.getLong("seq"), Type.valueOf(json.getString("type")), json.getLong("at"),
+                    message, json.optString("from", null), json.getString("list"));
+        }
+
+        @Override
+        public String toString() {
+            return "#" + sequence + " " + type + " " + (message == null ? "" : message.getId() + " ")
+                    + (fromList == null ? "" : fromList + " -> ") + list;
+        }
+    }
+}
@@ -0,0 +1,409 @@
+package org.example;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.IntPredicate;
+
+// Messages MessageProcessor has moved out of memory (see enableColdTier), in an append-only file of
+// sealed JSON lines in the stored-messages format. Memory holds only an index: per record its
+// offset, length, list, creation time and 64-bit fingerprints of its id, hash, sender and
+// recipient, in parallel arrays, plus two primitive-keyed maps from id and hash fingerprint to
+// record number, roughly 130 bytes a message instead of the message. Lookups pick candidate records
+// from the index, read them back and compare, so a fingerprint collision costs a read, never a
+// wrong answer. Removing a record only forgets it; once forgotten records make up most of
+// a file of a megabyte or more, compact() rewrites it without them.
+// The file is spill space, not storage: it is emptied when the tier opens and never fsynced, and
+// its messages go with the process just as the in-memory lists they came from would.
+// Records are numbered in the order they were spilled; compact() renumbers them.
+// Not thread-safe; MessageProcessor only touches it while holding its own lock.
+class ColdTier implements AutoCloseable {
+
+    static final String[] LISTS = {"disregarded", "sent"};
+    private static final int MIN_COMPACT_BYTES = 1 << 20;
+
+    private final Path file;
+    private RandomAccessFile data;
+    private long fileLength;
+    private long liveBytes;
+
+    private long[] offsets = new long[256];
+    private int[] lengths = new int[256]; // -1 once removed
+    private byte[] lists = new byte[256];  // Index into LISTS
+    private long[] idKeys = new long[256];
+    private long[] hashKeys = new long[256];
+    private long[] senderKeys = new long[256];
+    private long[] recipientKeys = new long[256];
+    private long[] createdAts = new long[256];
+    private int records;
+    private int live;
+    private final LongObjectMap<Object> byId = new LongObjectMap<>();   // Integer or int[] of records
+    private final LongObjectMap<Object> byHash = new LongObjectMap<>();
+    private final StoredLineParser parser = new StoredLineParser();
+    private final Map<String, Integer> goneCounts = new HashMap<>(); // The parser's; spill files have no op records
+
+    ColdTier(Path file) throws IOException {
+        this.file = file;
+        this.data = new RandomAccessFile(file.toFile(), "rw");
+        data.setLength(0);
+    }
+
+    // Appends the messages, all from the named list, with one write.
+    void append(List<MessageData.messageData> messages, String list) throws IOException {
+        byte listIndex = (byte) Arrays.asList(LISTS).indexOf(list);
+        if (listIndex < 0) {
+            throw new IllegalArgumentException("Cannot spill " + list + " messages");
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(messages.size() * 256);
+        int[] lineLengths = new int[messages.size()];
+        StringBuilder line = new StringBuilder(256);
+        for (int i = 0; i < messages.size(); i++) {
+            line.setLength(0);
+            MessageProcessor.appendJsonLine(line, messages.get(i));
+            byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+            out.write(bytes, 0, bytes.length);
+            lineLengths[i] = bytes.length;
+        }
+        data.seek(fileLength);
+        data.write(out.toByteArray());
+
+        byId.ensureCapacity(live + messages.size());
+        byHash.ensureCapacity(live + messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            MessageData.messageData msg = messages.get(i);
+            ensureRoom(records + 1);
+            offsets[records] = fileLength;
+            lengths[records] = lineLengths[i];
+            lists[records] = listIndex;
+            idKeys[records] = fingerprint(msg.getId(), false);
+            hashKeys[records] = fingerprint(msg.getHash(), true);
+            senderKeys[records] = fingerprint(msg.getSender(), false);
+            recipientKeys[records] = fingerprint(msg.getRecipient(), false);
+            createdAts[records] = msg.getCreatedAt();
+            register(records);
+            fileLength += lineLengths[i];
+            liveBytes += lineLengths[i];
+            records++;
+            live++;
+        }
+    }
+
+    // The number of the first live record with the id, or -1.
+    int firstWithId(String id) throws IOException {
+        Object bucket = byId.get(fingerprint(id, false));
+        for (int record : records(bucket)) {
+            if (Objects.equals(read(record).getId(), id)) {
+                return record;
+            }
+        }
+        return -1;
+    }
+
+    // The number of the first live record whose hash matches, ignoring case, or -1.
+    int firstWithHash(String hash) throws IOException {
+        Object bucket = byHash.get(fingerprint(hash, true));
+        for (int record : records(bucket)) {
+            String recordHash = read(record).getHash();
+            if (recordHash != null && recordHash.equalsIgnoreCase(hash)) {
+                return record;
+            }
+        }
+        return -1;
+    }
+
+    // A fresh copy of the message in the record, read from the file.
+    MessageData.messageData read(int record) throws IOException {
+        byte[] line = new byte[lengths[record]];
+        data.seek(offsets[record]);
+        data.readFully(line);
+        return parse(line, record);
+    }
+
+    // "disregarded" or "sent"
+    String listOf(int record) {
+        return LISTS[lists[record]];
+    }
+
+    // Forgets the record; its bytes stay in the file until compact().
+    void remove(int record) {
+        if (lengths[record] < 0) {
+            return;
+        }
+        unregister(record);
+        liveBytes -= lengths[record];
+        lengths[record] = -1;
+        live--;
+    }
+
+    // Visits every live record in order, reading the file front to back.
+    void forEach(Visitor visitor) throws IOException {
+        forEach(record -> true, visitor);
+    }
+
+    // Visits the live records the candidates test accepts, in order, reading only those (skipping
+    // over the rest). The test sees record numbers, for the predicates below.
+    void forEach(IntPredicate candidates, Visitor visitor) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file.toFile()), 64 * 1024))) {
+            long position = 0;
+            for (int record = 0; record < records; record++) {
+                if (lengths[record] < 0 || !candidates.test(record)) {
+                    continue;
+                }
+                in.skipNBytes(offsets[record] - position);
+                byte[] line = new byte[lengths[record]];
+                in.readFully(line);
+                position = offsets[record] + line.length;
+                visitor.visit(record, parse(line, record));
+            }
+        }
+    }
+
+    interface Visitor {
+        void visit(int record, MessageData.messageData msg) throws IOException;
+    }
+
+    // Candidate tests for forEach, answered from the index. They can let through a record whose
+    // fingerprint merely collides, so visitors still check the message.
+
+    IntPredicate withId(String id) {
+        long key = fingerprint(id, false);
+        return record -> idKeys[record] == key;
+    }
+
+    // Any of the ids, for matching many messages in one pass.
+    IntPredicate withAnyId(Collection<String> ids) {
+        LongObjectMap<Boolean> keys = new LongObjectMap<>();
+        for (String id : ids) {
+            keys.put(fingerprint(id, false), Boolean.TRUE);
+        }
+        return record -> keys.get(idKeys[record]) != null;
+    }
+
+    IntPredicate withSender(String sender) {
+        long key = fingerprint(sender, false);
+        return record -> senderKeys[record] == key;
+    }
+
+    IntPredicate withRecipient(String recipient) {
+        long key = fingerprint(recipient, false);
+        return record -> recipientKeys[record] == key;
+    }
+
+    // Sent from either one to the other.
+    IntPredicate between(String a, String b) {
+        long keyA = fingerprint(a, false);
+        long keyB = fingerprint(b, false);
+        return record -> (senderKeys[record] == keyA && recipientKeys[record] == keyB)
+                || (senderKeys[record] == keyB && recipientKeys[record] == keyA);
+    }
+
+    IntPredicate createdBetween(long from, long to) {
+        return record -> createdAts[record] >= from && createdAts[record] < to;
+    }
+
+    IntPredicate inList(String list) {
+        int index = Arrays.asList(LISTS).indexOf(list);
+        return record -> lists[record] == index;
+    }
+
+    // Records are numbered 0 to recordCount() - 1; removed ones are not live.
+    int recordCount() {
+        return records;
+    }
+
+    boolean isLive(int record) {
+        return lengths[record] >= 0;
+    }
+
+    // The same for both directions of a conversation.
+    long participantsKey(int record) {
+        long a = senderKeys[record];
+        long b = recipientKeys[record];
+        return Math.min(a, b) * 31 + Math.max(a, b);
+    }
+
+    static long participantsKey(String a, String b) {
+        long keyA = fingerprint(a, false);
+        long keyB = fingerprint(b, false);
+        return Math.min(keyA, keyB) * 31 + Math.max(keyA, keyB);
+    }
+
+    int size() {
+        return live;
+    }
+
+    long fileBytes() {
+        return fileLength;
+    }
+
+    // Estimated heap held by the index: the eight arrays, the two maps and a boxed record number per
+    // map entry.
+    long indexBytes() {
+        return (long) offsets.length * (8 + 4 + 1 + 8 * 5) + byId.estimatedBytes() + byHash.estimatedBytes()
+                + 2L * live * 16;
+    }
+
+    // Rewrites the file without the removed records, once they are most of a file of at least a
+    // megabyte. Renumbers the records, so callers must not hold on to record numbers across it.
+    // Returns whether it did.
+    boolean compact() throws IOException {
+        if (fileLength < MIN_COMPACT_BYTES || liveBytes * 2 > fileLength) {
+            return false;
+        }
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        long position = 0;
+        int kept = 0;
+        try (RandomAccessFile out = new RandomAccessFile(tmp.toFile(), "rw")) {
+            out.setLength(0);
+            for (int record = 0; record < records; record++) {
+                if (lengths[record] < 0) {
+                    continue;
+                }
+                byte[] line = new byte[lengths[record]];
+                data.seek(offsets[record]);
+                data.readFully(line);
+                out.write(line);
+                offsets[kept] = position;
+                lengths[kept] = lengths[record];
+                lists[kept] = lists[record];
+                idKeys[kept] = idKeys[record];
+                hashKeys[kept] = hashKeys[record];
+                senderKeys[kept] = senderKeys[record];
+                recipientKeys[kept] = recipientKeys[record];
+                createdAts[kept] = createdAts[record];
+                position += line.length;
+                kept++;
+            }
+        }
+        data.close();
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        data = new RandomAccessFile(file.toFile(), "rw");
+        fileLength = position;
+        records = kept;
+        byId.clear();
+        byHash.clear();
+        for (int record = 0; record < records; record++) {
+            register(record);
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        data.close();
+    }
+
+    private MessageData.messageData parse(byte[] line, int record) throws IOException {
+        int to = line.length > 0 && line[line.length - 1] == '\n' ? line.length - 1 : line.length;
+        int jsonEnd = RecordChecksum.jsonEnd(line, 0, to);
+        if (jsonEnd < 0) {
+            throw new IOException("Cold record " + record + " at offset " + offsets[record] + " is damaged");
+        }
+        return parser.parse(line, 0, jsonEnd, goneCounts);
+    }
+
+    private void register(int record) {
+        byId.put(idKeys[record], plus(byId.get(idKeys[record]), record));
+        byHash.put(hashKeys[record], plus(byHash.get(hashKeys[record]), record));
+    }
+
+    private void unregister(int record) {
+        unregister(byId, idKeys[record], record);
+        unregister(byHash, hashKeys[record], record);
+    }
+
+    private static void unregister(LongObjectMap<Object> map, long key, int record) {
+        Object bucket = minus(map.get(key), record);
+        if (bucket == null) {
+            map.remove(key);
+        } else {
+            map.put(key, bucket);
+        }
+    }
+
+    private void ensureRoom(int needed) {
+        if (needed > offsets.length) {
+            int capacity = Math.max(needed, offsets.length * 2);
+            offsets = Arrays.copyOf(offsets, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            lists = Arrays.copyOf(lists, capacity);
+            idKeys = Arrays.copyOf(idKeys, capacity);
+            hashKeys = Arrays.copyOf(hashKeys, capacity);
+            senderKeys = Arrays.copyOf(senderKeys, capacity);
+            recipientKeys = Arrays.copyOf(recipientKeys, capacity);
+            createdAts = Arrays.copyOf(createdAts, capacity);
+        }
+    }
+
+    private static int[] records(Object bucket) {
+        if (bucket == null) {
+            return new int[0];
+        }
+        return bucket instanceof int[] many ? many : new int[]{(Integer) bucket};
+    }
+
+    private static Object plus(Object bucket, int record) {
+        if (bucket == null) {
+            return record;
+        }
+        int[] many = records(bucket);
+        int[] more = Arrays.copyOf(many, many.length + 1);
+        more[many.length] = record;
+        return more;
+    }
+
+    // The bucket without the record, or null once empty.
+    private static Object minus(Object bucket, int record) {
+        int[] many = records(bucket);
+        int at = -1;
+        for (int i = 0; i < many.length; i++) {
+            if (many[i] == record) {
+                at = i;
+                break;
+            }
+        }
+        if (at < 0) {
+            return bucket;
+        }
+        if (many.length <= 2) {
+            return many.length == 1 ? null : (Object) many[1 - at];
+        }
+        int[] fewer = new int[many.length - 1];
+        System.arraycopy(many, 0, fewer, 0, at);
+        System.arraycopy(many, at + 1, fewer, at, many.length - at - 1);
+        return fewer;
+    }
+
+    // FNV-1a over the characters, then the MurmurHash3 finalizer to spread the bits.
+    static long fingerprint(String s, boolean ignoreCase) {
+        if (s == null) {
+            return 0;
+        }
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            h ^= ignoreCase ? Character.toLowerCase(c) : c;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,202 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Messages grouped into conversations: every message between two people, whichever of them sent it.
+// A conversation keeps its messages in the order they were indexed, in fixed-size chunks, so adding
+// never copies earlier messages and "the last N" reads N slots from the end. Conversations are also
+// kept in a linked list ordered by their latest message, so "the N most recently active" walks N
+// nodes. Removal leaves an empty slot, and a conversation whose empty slots outnumber its messages
+// is compacted.
+// Not thread-safe; MessageProcessor only touches it while holding its own lock.
+class ConversationIndex {
+
+    static final int CHUNK_SIZE = 32;
+
+    private final Map<Participants, Conversation> conversations = new HashMap<>();
+    private Conversation mostRecent; // Head of the activity list
+    private long messages;
+
+    void add(MessageData.messageData msg) {
+        Participants participants = new Participants(msg.getSender(), msg.getRecipient());
+        Conversation conversation = conversations.computeIfAbsent(participants, Conversation::new);
+        conversation.append(msg);
+        messages++;
+        moveToFront(conversation);
+    }
+
+    void addAll(List<MessageData.messageData> batch) {
+        for (MessageData.messageData msg : batch) {
+            add(msg);
+        }
+    }
+
+    // Removes this exact message object.
+    void remove(MessageData.messageData msg) {
+        Participants participants = new Participants(msg.getSender(), msg.getRecipient());
+        Conversation conversation = conversations.get(participants);
+        if (conversation == null || !conversation.remove(msg)) {
+            return;
+        }
+        messages--;
+        if (conversation.size == 0) {
+            conversations.remove(participants);
+            unlink(conversation);
+        }
+    }
+
+    // The last (at most) n messages between a and b, oldest first.
+    List<MessageData.messageData> last(String a, String b, int n) {
+        Conversation conversation = conversations.get(new Participants(a, b));
+        return conversation == null ? new ArrayList<>() : conversation.last(n);
+    }
+
+    // The (at most) n conversations with the latest messages, most recent first.
+    List<Conversation> mostRecent(int n) {
+        List<Conversation> recent = new ArrayList<>(Math.min(n, conversations.size()));
+        for (Conversation c = mostRecent; c != null && recent.size() < n; c = c.next) {
+            recent.add(c);
+        }
+        return recent;
+    }
+
+    int size() {
+        return conversations.size();
+    }
+
+    // Approximate heap held by the index, not counting the messages: per conversation its map entry,
+    // key, node and a partly filled chunk, and per message a slot, doubled for emptied ones.
+    long estimatedBytes() {
+        return conversations.size() * (MessageSizes.HASH_ENTRY_BYTES + 24 + 48 + 40 + 16 + 4L * CHUNK_SIZE)
+                + 8 * messages;
+    }
+
+    private void moveToFront(Conversation conversation) {
+        if (conversation == mostRecent) {
+            return;
+        }
+        unlink(conversation);
+        conversation.next = mostRecent;
+        if (mostRecent != null) {
+            mostRecent.previous = conversation;
+        }
+        mostRecent = conversation;
+    }
+
+    private void unlink(Conversation conversation) {
+        if (conversation.previous != null) {
+            conversation.previous.next = conversation.next;
+        } else if (mostRecent == conversation) {
+            mostRecent = conversation.next;
+        }
+        if (conversation.next != null) {
+            conversation.next.previous = conversation.previous;
+        }
+        conversation.previous = null;
+        conversation.next = null;
+    }
+
+    // The two people in a conversation, in a fixed order so that A to B and B to A are the same key.
+    static final class Participants {
+        final String first;
+        final String second;
+
+        Participants(String a, String b) {
+            a = a == null ? "" : a;
+            b = b == null ? "" : b;
+            boolean inOrder = a.compareTo(b) <= 0;
+            this.first = inOrder ? a : b;
+            this.second = inOrder ? b : a;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Participants other && first.equals(other.first) && second.equals(other.second);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * first.hashCode() + second.hashCode();
+        }
+    }
+
+    static final class Conversation {
+        final Participants participants;
+        private final List<MessageData.messageData[]> chunks = new ArrayList<>();
+        private int end;       // Slots used, including emptied ones
+        private int firstLive; // Slots before this are all empty
+        int size;              // Messages
+        private Conversation previous;
+        private Conversation next;
+
+        Conversation(Participants participants) {
+            this.participants = participants;
+        }
+
+        void append(MessageData.messageData msg) {
+            if (end % CHUNK_SIZE == 0) {
+                chunks.add(new MessageData.messageData[CHUNK_SIZE]);
+            }
+            set(end++, msg);
+            size++;
+        }
+
+        // Searches from the oldest message, since removals are mostly of old messages.
+        boolean remove(MessageData.messageData msg) {
+            for (int i = firstLive; i < end; i++) {
+                if (get(i) == msg) {
+                    set(i, null);
+                    size--;
+                    while (firstLive < end && get(firstLive) == null) {
+                        firstLive++;
+                    }
+                    if (end - size > Math.max(size, CHUNK_SIZE)) {
+                        compact();
+                    }
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        List<MessageData.messageData> last(int n) {
+            List<MessageData.messageData> found = new ArrayList<>(Math.min(n, size));
+            for (int i = end - 1; i >= firstLive && found.size() < n; i--) {
+                MessageData.messageData msg = get(i);
+                if (msg != null) {
+                    found.add(msg);
+                }
+            }
+            Collections.reverse(found);
+            return found;
+        }
+
+        MessageData.messageData latest() {
+            List<MessageData.messageData> last = last(1);
+            return last.isEmpty() ? null : last.get(0);
+        }
+
+        private void compact() {
+            List<MessageData.messageData> live = last(size);
+            chunks.clear();
+            end = 0;
+            firstLive = 0;
+            size = 0;
+            for (MessageData.messageData msg : live) {
+                append(msg);
+            }
+        }
+
+        private MessageData.messageData get(int i) {
+            return chunks.get(i / CHUNK_SIZE)[i % CHUNK_SIZE];
+        }
+
+        private void set(int i, MessageData.messageData msg) {
+            chunks.get(i / CHUNK_SIZE)[i % CHUNK_SIZE] = msg;
+        }
+    }
+}
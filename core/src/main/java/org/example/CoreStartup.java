@@ -0,0 +1,54 @@
+package org.example;
+
+import java.io.IOException;
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+// Measures a cold start of the core alone, the way a service embedding it would start: JVM start
+// to main, then creating a MessageProcessor, loading a stored-messages file and answering a query.
+// Prints the times and the number of classes loaded, so an AppCDS archive (see core/pom.xml) or a
+// change that drags in more classes shows up. Every run should be a fresh JVM.
+// Run it with
+//   java -cp core/target/classes:<json jar> org.example.CoreStartup [file] [messages]
+// The file (a temporary "quickchat-core-startup.json" by default) is written with that many
+// messages (10,000 by default) when it does not exist yet, and kept so later runs only read it.
+public class CoreStartup {
+
+    public static void main(String[] args) throws IOException {
+        long toMain = ManagementFactory.getRuntimeMXBean().getUptime();
+        Path file = args.length > 0 ? Path.of(args[0])
+                : Path.of(System.getProperty("java.io.tmpdir"), "quickchat-core-startup.json");
+        int messages = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        if (!Files.exists(file)) {
+            write(file, messages);
+            System.out.println("Wrote " + messages + " messages to " + file + "; run again for a clean measurement");
+        }
+
+        long start = System.nanoTime();
+        MessageProcessor processor = new MessageProcessor(file.toString());
+        processor.loadStoredMessagesFromJson();
+        int found = processor.findMessagesCreatedBetween(0, Long.MAX_VALUE, 10).size();
+        long ready = System.nanoTime() - start;
+
+        ClassLoadingMXBean classes = ManagementFactory.getClassLoadingMXBean();
+        System.out.printf("JVM start to main:   %5d ms%n", toMain);
+        System.out.printf("core ready:          %5d ms (%d stored messages, query found %d)%n",
+                ready / 1_000_000, processor.getStoredMessages().size(), found);
+        System.out.printf("JVM start to ready:  %5d ms%n", ManagementFactory.getRuntimeMXBean().getUptime());
+        System.out.printf("classes loaded:      %5d%n", classes.getTotalLoadedClassCount());
+    }
+
+    private static void write(Path file, int messages) throws IOException {
+        WorkloadGenerator workload = WorkloadGenerator.withDefaults(47);
+        Random random = new Random(47);
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < messages; i++) {
+            MessageProcessor.appendJsonLine(lines, workload.nextMessage(random, i));
+        }
+        Files.write(file, lines.toString().getBytes(StandardCharsets.UTF_8));
+    }
+}
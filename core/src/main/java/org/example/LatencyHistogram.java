@@ -0,0 +1,138 @@
+package org.example;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Log-linear latency histogram in the style of HdrHistogram.
+// Every power-of-two range is split into SUB_BUCKETS equal buckets, which keeps the relative error
+// of any reported value below 1 / SUB_BUCKETS (about 3%) from nanoseconds up to centuries.
+// Recording is lock-free: each thread adds into one of several stripes, and readers sum the stripes.
+// A stripe is about 15 KB, so each is only allocated once a thread first records into it; a
+// histogram that one thread records into stays at one stripe.
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicReferenceArray<AtomicLongArray> stripes; // null until first used
+    private final int stripeMask;
+    private final AtomicLong max = new AtomicLong();
+
+    public LatencyHistogram() {
+        int stripeCount = Integer.highestOneBit(Math.min(8, Runtime.getRuntime().availableProcessors()));
+        this.stripes = new AtomicReferenceArray<>(stripeCount);
+        this.stripeMask = stripeCount - 1;
+    }
+
+    public void record(long value) {
+        if (value < 0) value = 0;
+        stripe((int) Thread.currentThread().getId() & stripeMask).incrementAndGet(bucketIndex(value));
+        if (value > max.get()) {
+            max.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        for (int s = 0; s < stripes.length(); s++) {
+            AtomicLongArray stripe = stripes.get(s);
+            if (stripe == null) continue;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                counts[i] += stripe.get(i);
+            }
+        }
+        return new Snapshot(counts, max.get());
+    }
+
+    int allocatedStripes() {
+        int allocated = 0;
+        for (int s = 0; s < stripes.length(); s++) {
+            if (stripes.get(s) != null) allocated++;
+        }
+        return allocated;
+    }
+
+    private AtomicLongArray stripe(int index) {
+        AtomicLongArray stripe = stripes.get(index);
+        if (stripe == null) {
+            AtomicLongArray created = new AtomicLongArray(BUCKET_COUNT);
+            stripe = stripes.compareAndExchange(index, null, created);
+            if (stripe == null) {
+                stripe = created;
+            }
+        }
+        return stripe;
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        return SUB_BUCKETS + shift * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+    }
+
+    // Highest value that still lands in the given bucket.
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+        long sub = (index - SUB_BUCKETS) % SUB_BUCKETS;
+        long lower = (SUB_BUCKETS + sub) << shift;
+        return lower + (1L << shift) - 1;
+    }
+
+    // Point-in-time copy of the bucket counts that percentiles are computed from.
+    public static class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long max;
+        private final double mean;
+
+        Snapshot(long[] counts, long max) {
+            this.counts = counts;
+            long total = 0;
+            double weighted = 0;
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] == 0) continue;
+                total += counts[i];
+                weighted += (double) counts[i] * bucketUpperBound(i);
+            }
+            this.count = total;
+            this.max = max;
+            this.mean = total == 0 ? 0 : weighted / total;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+
+        // Returns the value at the given percentile (0-100), never more than the recorded maximum.
+        public long getValueAtPercentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(bucketUpperBound(i), max);
+                }
+            }
+            return max;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Drives concurrent synthetic clients against a MessageProcessor and reports throughput and
+// latency percentiles per operation.
+// Each client runs its own seeded stream of WorkloadGenerator operations: SEND, STORE and DISCARD
+// add a new message to the sent, stored or disregarded list; SEARCH looks a message up by id, by
+// hash or by recipient (in turn); DELETE removes one of the client's own messages by hash. Clients
+// start together behind a latch, and the first warmupOperations of each one are not measured so
+// the JIT has settled before timing starts.
+// Run it with
+//   java -cp core/target/classes:<json jar> org.example.LoadTest
+// and -Dloadtest.clients, -Dloadtest.operations (per client), -Dloadtest.warmup and -Dloadtest.seed
+// to change the defaults. Stored messages go to a temporary file that is deleted afterwards.
+public class LoadTest {
+
+    private final MessageProcessor processor;
+    private final WorkloadGenerator workload;
+    private final int clients;
+    private final int operationsPerClient;
+    private final int warmupOperations;
+    private final long seed;
+
+    public LoadTest(MessageProcessor processor, WorkloadGenerator workload, int clients, int operationsPerClient,
+                    int warmupOperations, long seed) {
+        if (clients < 1 || operationsPerClient < 1 || warmupOperations < 0) {
+            throw new IllegalArgumentException("clients and operations must be positive");
+        }
+        this.processor = processor;
+        this.workload = workload;
+        this.clients = clients;
+        this.operationsPerClient = operationsPerClient;
+        this.warmupOperations = warmupOperations;
+        this.seed = seed;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int clients = Integer.getInteger("loadtest.clients", Runtime.getRuntime().availableProcessors());
+        int operations = Integer.getInteger("loadtest.operations", 20_000);
+        int warmup = Integer.getInteger("loadtest.warmup", 2_000);
+        long seed = Long.getLong("loadtest.seed", 42);
+
+        Path storage = Files.createTempFile("loadtest", ".json");
+        try {
+            MessageProcessor processor = new MessageProcessor(storage.toString());
+            Report report = new LoadTest(processor, WorkloadGenerator.withDefaults(seed), clients, operations,
+                    warmup, seed).run();
+            System.out.println(report);
+        } finally {
+            Files.deleteIfExists(storage);
+        }
+    }
+
+    public Report run() throws InterruptedException, IOException {
+        Map<WorkloadGenerator.Operation, LatencyHistogram> latencies = new EnumMap<>(WorkloadGenerator.Operation.class);
+        for (WorkloadGenerator.Operation operation : WorkloadGenerator.Operation.values()) {
+            latencies.put(operation, new LatencyHistogram());
+        }
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch warmedUp = new CountDownLatch(clients);
+        ExecutorService pool = Executors.newFixedThreadPool(clients, runnable -> {
+            Thread thread = new Thread(runnable, "loadtest-client");
+            thread.setDaemon(true);
+            return thread;
+        });
+        List<Future<?>> running = new ArrayList<>();
+        for (int c = 0; c < clients; c++) {
+            Client client = new Client(new Random(seed * 31 + c), latencies);
+            running.add(pool.submit(() -> {
+                start.await();
+                client.run(warmupOperations, false);
+                warmedUp.countDown();
+                warmedUp.await();
+                client.run(operationsPerClient, true);
+                return null;
+            }));
+        }
+
+        start.countDown();
+        warmedUp.await();
+        long began = System.nanoTime();
+        try {
+            for (Future<?> future : running) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IOException("Load test client failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        long elapsed = System.nanoTime() - began;
+
+        Map<WorkloadGenerator.Operation, LatencyHistogram.Snapshot> snapshots = new EnumMap<>(WorkloadGenerator.Operation.class);
+        latencies.forEach((operation, histogram) -> snapshots.put(operation, histogram.snapshot()));
+        return new Report(clients, elapsed, snapshots);
+    }
+
+    // One simulated user. Remembers the messages it added so searches and deletes hit real data.
+    private final class Client {
+        private final Random random;
+        private final Map<WorkloadGenerator.Operation, LatencyHistogram> latencies;
+        private final List<MessageData.messageData> mine = new ArrayList<>();
+        private int messageNumber;
+        private int searches;
+
+        Client(Random random, Map<WorkloadGenerator.Operation, LatencyHistogram> latencies) {
+            this.random = random;
+            this.latencies = latencies;
+        }
+
+        void run(int operations, boolean measured) {
+            for (int i = 0; i < operations; i++) {
+                WorkloadGenerator.Operation operation = workload.nextOperation(random);
+                long start = System.nanoTime();
+                perform(operation);
+                if (measured) {
+                    latencies.get(operation).record(System.nanoTime() - start);
+                }
+            }
+        }
+
+        private void perform(WorkloadGenerator.Operation operation) {
+            switch (operation) {
+                case SEND -> {
+                    MessageData.messageData msg = newMessage("SENT");
+                    try {
+                        processor.addSentMessage(msg);
+                        mine.add(msg);
+                    } catch (MessageProcessor.RateLimitedException e) {
+                        // Counted in the processor's rateLimit.rejected metric
+                    }
+                }
+                case STORE -> {
+                    MessageData.messageData msg = newMessage("PENDING");
+                    processor.addStoredMessage(msg);
+                    mine.add(msg);
+                }
+                case DISCARD -> {
+                    MessageData.messageData msg = newMessage("DISREGARDED");
+                    processor.addDisregardedMessage(msg);
+                    mine.add(msg);
+                }
+                case SEARCH -> {
+                    MessageData.messageData target = mine.isEmpty() ? null : mine.get(random.nextInt(mine.size()));
+                    switch (searches++ % 3) {
+                        case 0 -> processor.findMessageById(target == null ? "MSG000000000" : target.getId());
+                        case 1 -> processor.findMessageByHash(target == null ? "MS:0:NONE" : target.getHash());
+                        default -> processor.findMessagesByRecipient(workload.nextRecipient(random));
+                    }
+                }
+                case DELETE -> {
+                    if (!mine.isEmpty()) {
+                        // Swap-remove: the order of this client's own list does not matter
+                        int index = random.nextInt(mine.size());
+                        MessageData.messageData msg = mine.get(index);
+                        mine.set(index, mine.get(mine.size() - 1));
+                        mine.remove(mine.size() - 1);
+                        processor.removeMessageByHash(msg.getHash());
+                    }
+                }
+            }
+        }
+
+        private MessageData.messageData newMessage(String status) {
+            MessageData.messageData msg = workload.nextMessage(random, ++messageNumber);
+            msg.setStatus(status);
+            return msg;
+        }
+    }
+
+    // Results of one run: latencies in the measured phase and the overall rate across all clients.
+    public static class Report {
+        private final int clients;
+        private final long elapsedNanos;
+        private final Map<WorkloadGenerator.Operation, LatencyHistogram.Snapshot> latencies;
+
+        Report(int clients, long elapsedNanos, Map<WorkloadGenerator.Operation, LatencyHistogram.Snapshot> latencies) {
+            this.clients = clients;
+            this.elapsedNanos = elapsedNanos;
+            this.latencies = latencies;
+        }
+
+        public long getOperationCount() {
+            long total = 0;
+            for (LatencyHistogram.Snapshot snapshot : latencies.values()) {
+                total += snapshot.getCount();
+            }
+            return total;
+        }
+
+        public double getThroughput() {
+            return elapsedNanos == 0 ? 0 : getOperationCount() * 1e9 / elapsedNanos;
+        }
+
+        public double getThroughput(WorkloadGenerator.Operation operation) {
+            return elapsedNanos == 0 ? 0 : latencies.get(operation).getCount() * 1e9 / elapsedNanos;
+        }
+
+        public LatencyHistogram.Snapshot getLatency(WorkloadGenerator.Operation operation) {
+            return latencies.get(operation);
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(String.format(
+                    "--- Load test: %d clients, %d operations in %.2f s, %.0f ops/s ---%n",
+                    clients, getOperationCount(), elapsedNanos / 1e9, getThroughput()));
+            sb.append(String.format("%-8s %10s %10s %10s %10s %10s %10s%n",
+                    "op", "count", "ops/s", "p50 us", "p99 us", "p999 us", "max us"));
+            latencies.forEach((operation, s) -> sb.append(String.format("%-8s %10d %10.0f %10.1f %10.1f %10.1f %10.1f%n",
+                    operation, s.getCount(), getThroughput(operation),
+                    s.getValueAtPercentile(50) / 1e3, s.getValueAtPercentile(99) / 1e3,
+                    s.getValueAtPercentile(99.9) / 1e3, s.getMax() / 1e3)));
+            return sb.toString();
+        }
+    }
+}
@@ -1,7 +1,5 @@
 package org.example;
 
-import javax.swing.JOptionPane; // Required for displaying dialog boxes to the user
-
 public class Login {
     // --- Attributes ---
     // Private instance variables to store user details.
@@ -90,17 +88,14 @@ public class Login {
 
     // --- Core Functionality Methods ---
 
-    public String registerUser() {
-        // Prompt for and set user's first name
-        setFirstName(JOptionPane.showInputDialog("Enter first name:"));
-        // Prompt for and set user's last name
-        setLastName(JOptionPane.showInputDialog("Enter last name:"));
-        // Prompt for and set user's cell number with format example
-        setCellNumber(JOptionPane.showInputDialog("Enter cell number (e.g., +27XXXXXXXXX or 0XXXXXXXXX):"));
-        // Prompt for and set username with specific rules
-        setUsername(JOptionPane.showInputDialog("Enter username (must contain '_' and be <= 5 characters):"));
-        // Prompt for and set password with complexity rules
-        setPassword(JOptionPane.showInputDialog("Enter password (must be >= 8 chars, include uppercase, lowercase, number, special character):"));
+    // Takes the details entered at registration and returns the validation outcome;
+    // "Registration successful!" when every check passes. The prompts live in the ui module (LoginDialogs).
+    public String registerUser(String firstName, String lastName, String cellNumber, String username, String password) {
+        setFirstName(firstName);
+        setLastName(lastName);
+        setCellNumber(cellNumber);
+        setUsername(username);
+        setPassword(password);
 
         // Validate each input and return an appropriate message
         if (!checkUserName()) {
@@ -114,17 +109,29 @@ public class Login {
             return "Registration successful!";
         }
     }
-    public boolean loginUser() {
-
-        JOptionPane.showMessageDialog(null,"===Login===");
-        // Get username input from the user
-        String inputUsername = JOptionPane.showInputDialog("Enter username:");
-        // Get password input from the user
-        String inputPassword = JOptionPane.showInputDialog("Enter password:");
 
+    public boolean loginUser(String inputUsername, String inputPassword) {
         // Compare the entered credentials with the attributes of this Login object.
         return inputUsername.equals(username) && inputPassword.equals(password);
     }
+
+    // Throws CompletionException when the directory could not check the credentials (e.g. its pool is busy).
+    public boolean loginUser(UserDirectory directory, String inputUsername, String inputPassword) {
+        // Verify the credentials against the salted hash held by the directory.
+        // The hashing runs on the directory's own worker pool.
+        boolean success = directory.authenticate(inputUsername, inputPassword).join();
+        if (success) {
+            // Pick up the stored profile so the welcome message names the right user.
+            directory.find(inputUsername).ifPresent(record -> {
+                setUsername(record.getUsername());
+                setFirstName(record.getFirstName());
+                setLastName(record.getLastName());
+                setCellNumber(record.getCellNumber());
+            });
+        }
+        return success;
+    }
+
     public String returnLoginStatus(boolean loginSuccess) {
         if (loginSuccess) {
             // Return a personalized welcome message upon successful login.
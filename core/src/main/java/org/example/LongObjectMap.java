@@ -0,0 +1,191 @@
+package org.example;
+
+import java.util.Arrays;
+import java.util.function.LongFunction;
+
+// A hash map from primitive long keys to non-null values, with open addressing and linear probing.
+// Keys sit in a long[] and values in a parallel Object[], so an entry costs two array slots (about
+// 12 bytes at full load, under 24 on average) instead of a HashMap node, a boxed or String key and
+// their headers, and lookups neither box nor call hashCode/equals. Removal shifts the following
+// run back rather than leaving tombstones, so probe runs never grow from churn.
+// Not thread-safe.
+class LongObjectMap<V> {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] keys;
+    private Object[] values; // null marks a free slot
+    private int size;
+    private int mask;
+    private int resizeAt;
+
+    LongObjectMap() {
+        this(MIN_CAPACITY);
+    }
+
+    LongObjectMap(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    // The two arrays: a long and a compressed reference per slot, plus their headers.
+    long estimatedBytes() {
+        return 12L * keys.length + 32;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(long key) {
+        for (int i = slot(key); values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return (V) values[i];
+            }
+        }
+        return null;
+    }
+
+    boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    // Returns the previous value, or null.
+    @SuppressWarnings("unchecked")
+    V put(long key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("value must not be null");
+        }
+        int i = slot(key);
+        for (; values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                V previous = (V) values[i];
+                values[i] = value;
+                return previous;
+            }
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size > resizeAt) {
+            allocate(keys.length * 2);
+        }
+        return null;
+    }
+
+    V computeIfAbsent(long key, LongFunction<V> create) {
+        V value = get(key);
+        if (value == null) {
+            value = create.apply(key);
+            put(key, value);
+        }
+        return value;
+    }
+
+    // Returns the removed value, or null.
+    @SuppressWarnings("unchecked")
+    V remove(long key) {
+        int i = slot(key);
+        for (; values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                V removed = (V) values[i];
+                shiftBack(i);
+                size--;
+                return removed;
+            }
+        }
+        return null;
+    }
+
+    // Grows the table once, so that expectedSize entries in all fit without further resizing.
+    void ensureCapacity(int expectedSize) {
+        int capacity = capacityFor(expectedSize);
+        if (capacity > keys.length) {
+            allocate(capacity);
+        }
+    }
+
+    void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    // Visits every entry, in no particular order. The map must not change meanwhile.
+    @SuppressWarnings("unchecked")
+    void forEach(Visitor<V> visitor) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                visitor.visit(keys[i], (V) values[i]);
+            }
+        }
+    }
+
+    interface Visitor<V> {
+        void visit(long key, V value);
+    }
+
+    // Empties slot i by moving later entries of its run into it when that keeps them reachable,
+    // i.e. when their home slot is not cyclically inside (i, j].
+    private void shiftBack(int i) {
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (values[j] == null) {
+                break;
+            }
+            int home = slot(keys[j]);
+            boolean reachableWithoutMove = i <= j ? (i < home && home <= j) : (i < home || home <= j);
+            if (!reachableWithoutMove) {
+                keys[i] = keys[j];
+                values[i] = values[j];
+                i = j;
+            }
+        }
+        values[i] = null;
+    }
+
+    private int slot(long key) {
+        // The MurmurHash3 finalizer: ids and phone numbers are dense, so spread every bit
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h & mask;
+    }
+
+    private static int capacityFor(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * 3L / 4 < expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    // Sizes the table to the given power of two and re-inserts any current entries.
+    private void allocate(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        resizeAt = capacity * 3 / 4;
+        if (oldValues == null) {
+            return;
+        }
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                int j = slot(oldKeys[i]);
+                while (values[j] != null) {
+                    j = (j + 1) & mask;
+                }
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package org.example;
+
+// Told about every message added to or removed from a MessageProcessor's lists.
+// 'list' is "sent", "stored" or "disregarded". Listeners run on the thread that made the change,
+// so they must be quick and must not change the processor.
+public interface MessageChangeListener {
+
+    void messageAdded(MessageData.messageData msg, String list);
+
+    void messageRemoved(MessageData.messageData msg, String list);
+
+    // The message changed status and moved from one list to another; reported by default as a
+    // removal followed by an add.
+    default void messageMoved(MessageData.messageData msg, String fromList, String toList) {
+        messageRemoved(msg, fromList);
+        messageAdded(msg, toList);
+    }
+
+    // The stored list was replaced wholesale by a load from the file.
+    default void storedMessagesReplaced() {
+    }
+}
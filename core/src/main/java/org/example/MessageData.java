@@ -1,8 +1,6 @@
 
 package org.example;
 
-import javax.swing.*;
-
 public class MessageData {
 
     public static class messageData {
@@ -12,6 +10,9 @@ public class MessageData {
         private String messageText;
         private String hash;
         private String status;
+        private long sendAt;        // When a PENDING message should go out (epoch millis), 0 = not scheduled
+        private long createdAt;     // Epoch millis; indexed by MessageProcessor, so set it before adding the message
+        private long statusChangedAt;
 
         // Updated constructor to include sender
         public messageData(String id, String sender, String recipient, String messageText, String hash, String status) {
@@ -21,6 +22,8 @@ public class MessageData {
             this.messageText = messageText;
             this.hash = hash;
             this.status = status;
+            this.createdAt = System.currentTimeMillis();
+            this.statusChangedAt = createdAt;
         }
 
         @Override
@@ -53,6 +56,18 @@ public class MessageData {
             return status;
         }
 
+        public long getSendAt() {
+            return sendAt;
+        }
+
+        public long getCreatedAt() {
+            return createdAt;
+        }
+
+        public long getStatusChangedAt() {
+            return statusChangedAt;
+        }
+
         // --- Setters ---
         public void setId(String id) {
             this.id = id;
@@ -75,6 +90,19 @@ public class MessageData {
 
         public void setStatus(String status) {
             this.status = status;
+            this.statusChangedAt = System.currentTimeMillis();
+        }
+
+        public void setSendAt(long sendAt) {
+            this.sendAt = sendAt;
+        }
+
+        public void setCreatedAt(long createdAt) {
+            this.createdAt = createdAt;
+        }
+
+        public void setStatusChangedAt(long statusChangedAt) {
+            this.statusChangedAt = statusChangedAt;
         }
     }
 
@@ -92,6 +120,19 @@ public class MessageData {
     }
 
     public String createMessageHash(String messageID, int msgNumber, String msgText) {
+        MessageEvents.MessageHashed event = new MessageEvents.MessageHashed();
+        event.begin();
+        String hash = buildMessageHash(messageID, msgNumber, msgText);
+        event.end();
+        if (event.shouldCommit()) {
+            event.messageId = messageID;
+            event.textLength = msgText == null ? 0 : msgText.length();
+            event.commit();
+        }
+        return hash;
+    }
+
+    private String buildMessageHash(String messageID, int msgNumber, String msgText) {
         // Check for invalid inputs
         if (messageID == null || messageID.length() < 2 || msgText == null || msgText.isBlank()) {
             return "INVALID_HASH";
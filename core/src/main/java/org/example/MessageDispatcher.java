@@ -0,0 +1,173 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+// Sends PENDING stored messages once their send-at time (MessageData.messageData.getSendAt) has come.
+// Scheduled messages are kept in a priority queue ordered by send-at time, so scheduling costs
+// O(log n) and finding what is due only looks at the head of the queue. Due messages are handed to
+// MessageProcessor.promoteStoredMessages in batches, which moves them to the sent list with one file
+// write per batch. Each queued message also has its entry in an identity map, so deleting a message
+// cancels its entry at once; cancelled entries are dropped when they reach the head of the queue, or
+// all together once they make up half of it.
+// Messages without a send-at time are left alone; they wait for the user as before.
+public class MessageDispatcher implements MessageChangeListener, AutoCloseable {
+
+    static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private final MessageProcessor processor;
+    private final LongSupplier clock;
+    private final int batchSize;
+    private final PriorityQueue<Entry> queue = new PriorityQueue<>(); // Guarded by this
+    private final Map<MessageData.messageData, Entry> scheduled = new IdentityHashMap<>(); // Guarded by this
+    private int cancelled; // Entries in queue but not in scheduled; guarded by this
+    private ScheduledExecutorService timer;
+
+    public MessageDispatcher(MessageProcessor processor) {
+        this(processor, System::currentTimeMillis, DEFAULT_BATCH_SIZE);
+    }
+
+    MessageDispatcher(MessageProcessor processor, LongSupplier clock, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be at least 1");
+        }
+        this.processor = processor;
+        this.clock = clock;
+        this.batchSize = batchSize;
+        processor.addChangeListener(this);
+        storedMessagesReplaced();
+        processor.getMetrics().registerGauge("dispatch.scheduled", this::scheduledCount);
+    }
+
+    // Checks for due messages every periodMillis on a background thread.
+    public synchronized void start(long periodMillis) {
+        if (timer != null) {
+            return;
+        }
+        timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "message-dispatcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleWithFixedDelay(this::dispatchDue, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // Promotes every message due by now and returns how many were sent.
+    public int dispatchDue() {
+        int sent = 0;
+        List<MessageData.messageData> batch;
+        while (!(batch = pollDue(clock.getAsLong())).isEmpty()) {
+            long start = System.nanoTime();
+            sent += processor.promoteStoredMessages(batch).size();
+            processor.getMetrics().recordLatency("dispatchBatch", System.nanoTime() - start);
+        }
+        processor.getMetrics().add("dispatch.sent", sent);
+        return sent;
+    }
+
+    private synchronized List<MessageData.messageData> pollDue(long now) {
+        List<MessageData.messageData> batch = new ArrayList<>(Math.min(batchSize, scheduled.size()));
+        Entry head;
+        while (batch.size() < batchSize && (head = liveHead()) != null && head.sendAt <= now) {
+            queue.poll();
+            scheduled.remove(head.msg);
+            batch.add(head.msg);
+        }
+        return batch;
+    }
+
+    // The earliest entry that is still scheduled, dropping cancelled ones in front of it.
+    private Entry liveHead() {
+        Entry head;
+        while ((head = queue.peek()) != null && head.cancelled) {
+            queue.poll();
+            cancelled--;
+        }
+        return head;
+    }
+
+    public synchronized int scheduledCount() {
+        return scheduled.size();
+    }
+
+    // Send-at time of the earliest scheduled message, if any.
+    public synchronized OptionalLong nextSendAt() {
+        Entry head = liveHead();
+        return head == null ? OptionalLong.empty() : OptionalLong.of(head.sendAt);
+    }
+
+    @Override
+    public synchronized void close() {
+        processor.removeChangeListener(this);
+        if (timer != null) {
+            timer.shutdownNow();
+        }
+    }
+
+    // ---------- MessageChangeListener ----------
+
+    @Override
+    public synchronized void messageAdded(MessageData.messageData msg, String list) {
+        if (list.equals("stored") && msg.getSendAt() > 0 && "PENDING".equals(msg.getStatus())
+                && !scheduled.containsKey(msg)) {
+            Entry entry = new Entry(msg);
+            scheduled.put(msg, entry);
+            queue.add(entry);
+        }
+    }
+
+    @Override
+    public synchronized void messageRemoved(MessageData.messageData msg, String list) {
+        Entry entry = list.equals("stored") ? scheduled.remove(msg) : null;
+        if (entry == null) {
+            return;
+        }
+        entry.cancelled = true;
+        if (++cancelled > queue.size() / 2) {
+            queue.removeIf(e -> e.cancelled);
+            cancelled = 0;
+        }
+    }
+
+    // After a load the stored list holds new objects, so the queue is rebuilt from it.
+    @Override
+    public void storedMessagesReplaced() {
+        Map<MessageData.messageData, Entry> entries = new IdentityHashMap<>();
+        for (MessageData.messageData msg : processor.getStoredMessages()) {
+            if (msg.getSendAt() > 0 && "PENDING".equals(msg.getStatus())) {
+                entries.put(msg, new Entry(msg));
+            }
+        }
+        synchronized (this) {
+            scheduled.clear();
+            scheduled.putAll(entries);
+            queue.clear();
+            queue.addAll(entries.values());
+            cancelled = 0;
+        }
+    }
+
+    private static final class Entry implements Comparable<Entry> {
+        private final long sendAt;
+        private final MessageData.messageData msg;
+        private boolean cancelled; // Guarded by the dispatcher
+
+        Entry(MessageData.messageData msg) {
+            this.sendAt = msg.getSendAt();
+            this.msg = msg;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            return Long.compare(sendAt, other.sendAt);
+        }
+    }
+}
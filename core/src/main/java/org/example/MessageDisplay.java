@@ -0,0 +1,31 @@
+package org.example;
+
+// Where MessageProcessor shows search results, reports and errors. The core only writes to the
+// console; the Swing application plugs in dialogs (see SwingMessageDisplay in the ui module).
+public interface MessageDisplay {
+
+    // Information to standard output and errors to standard error, as headless runs always had.
+    MessageDisplay CONSOLE = new MessageDisplay() {
+        @Override
+        public void showInfo(String message, String title) {
+            System.out.println("[INFO] " + title + ": " + message);
+        }
+
+        @Override
+        public void showError(String message, String title) {
+            System.err.println("[ERROR] " + title + ": " + message);
+        }
+
+        @Override
+        public void showScrollable(String content, String title, int width, int height) {
+            System.out.println("[INFO - " + title + "]\n" + content);
+        }
+    };
+
+    void showInfo(String message, String title);
+
+    void showError(String message, String title);
+
+    // Longer text such as a report; width and height are a preferred size in pixels, if it has one.
+    void showScrollable(String content, String title, int width, int height);
+}
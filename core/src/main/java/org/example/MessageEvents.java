@@ -0,0 +1,116 @@
+package org.example;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+// Java Flight Recorder events for the message lifecycle.
+// Each event measures one operation and is only written when it takes longer than its threshold,
+// so a continuous recording stays small while still catching slow writes and rewrites next to
+// the GC and CPU data in the same file. Thresholds can be changed in a .jfc settings file, e.g.
+// org.example.MessageRewrite#threshold=0 ms.
+public class MessageEvents {
+
+    private MessageEvents() {
+    }
+
+    @Name("org.example.MessageCreated")
+    @Label("Message Created")
+    @Description("A message was added to the sent, stored or disregarded list")
+    @Category({"QuickChat", "Messages"})
+    @Threshold("1 ms")
+    @StackTrace(false)
+    public static class MessageCreated extends Event {
+        @Label("Message ID")
+        public String messageId;
+
+        @Label("List")
+        public String list;
+
+        @Label("Text Length")
+        public int textLength;
+    }
+
+    @Name("org.example.MessageHashed")
+    @Label("Message Hashed")
+    @Description("A message hash was computed")
+    @Category({"QuickChat", "Messages"})
+    @Threshold("1 ms")
+    @StackTrace(false)
+    public static class MessageHashed extends Event {
+        @Label("Message ID")
+        public String messageId;
+
+        @Label("Text Length")
+        public int textLength;
+    }
+
+    @Name("org.example.PersistenceWrite")
+    @Label("Persistence Write")
+    @Description("A message was appended to the stored messages file")
+    @Category({"QuickChat", "Persistence"})
+    @Threshold("5 ms")
+    public static class PersistenceWrite extends Event {
+        @Label("Message ID")
+        public String messageId;
+
+        @Label("Bytes Written")
+        @DataAmount
+        public long bytes;
+    }
+
+    @Name("org.example.MessageFileLoad")
+    @Label("Message File Load")
+    @Description("The stored messages file was read into memory")
+    @Category({"QuickChat", "Persistence"})
+    @Threshold("10 ms")
+    public static class FileLoad extends Event {
+        @Label("Path")
+        public String path;
+
+        @Label("Bytes Read")
+        @DataAmount
+        public long bytes;
+
+        @Label("Records")
+        public int records;
+
+        @Label("Parallel")
+        public boolean parallel;
+    }
+
+    @Name("org.example.MessageRewrite")
+    @Label("Message File Rewrite")
+    @Description("The stored messages file was rewritten in full")
+    @Category({"QuickChat", "Persistence"})
+    @Threshold("10 ms")
+    public static class Rewrite extends Event {
+        @Label("Bytes Written")
+        @DataAmount
+        public long bytes;
+
+        @Label("Records")
+        public int records;
+    }
+
+    @Name("org.example.MessageDelete")
+    @Label("Message Delete")
+    @Description("A message was deleted by hash")
+    @Category({"QuickChat", "Messages"})
+    @Threshold("5 ms")
+    public static class Delete extends Event {
+        @Label("Message Hash")
+        public String messageHash;
+
+        @Label("Message ID")
+        public String messageId;
+
+        @Label("List")
+        public String list;
+    }
+}
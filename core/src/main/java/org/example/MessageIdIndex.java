@@ -0,0 +1,138 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Messages by id, over all lists. Canonical ids ("MSG" + 9 digits) are keyed by their long
+// encoding (MessageKeys) in a primitive map; any other id goes to a plain HashMap. An id with one
+// message maps straight to it, and only the rare id shared by several messages gets an array, so
+// an entry is a long key and a reference with no list or node around it.
+// Not thread-safe; MessageProcessor only touches it while holding its own lock.
+class MessageIdIndex {
+
+    private final LongObjectMap<Object> byKey = new LongObjectMap<>();
+    private final Map<String, Object> byOtherId = new HashMap<>();
+    private int size;
+
+    void add(MessageData.messageData msg) {
+        long key = MessageKeys.idKey(msg.getId());
+        if (key != MessageKeys.NONE) {
+            byKey.put(key, plus(byKey.get(key), msg));
+        } else {
+            byOtherId.put(msg.getId(), plus(byOtherId.get(msg.getId()), msg));
+        }
+        size++;
+    }
+
+    // Adds a batch, sizing the table for it first so it grows at most once.
+    void addAll(List<MessageData.messageData> batch) {
+        byKey.ensureCapacity(byKey.size() + batch.size());
+        for (MessageData.messageData msg : batch) {
+            add(msg);
+        }
+    }
+
+    // Removes this exact message object; other messages with the same id stay.
+    void remove(MessageData.messageData msg) {
+        long key = MessageKeys.idKey(msg.getId());
+        Object before = key != MessageKeys.NONE ? byKey.get(key) : byOtherId.get(msg.getId());
+        Object bucket = before == null ? null : minus(before, msg);
+        if (bucket == before) {
+            return; // Not indexed
+        }
+        size--;
+        if (key != MessageKeys.NONE) {
+            if (bucket == null) {
+                byKey.remove(key);
+            } else {
+                byKey.put(key, bucket);
+            }
+        } else if (bucket == null) {
+            byOtherId.remove(msg.getId());
+        } else {
+            byOtherId.put(msg.getId(), bucket);
+        }
+    }
+
+    int count(String id) {
+        Object bucket = bucketFor(id);
+        return bucket == null ? 0 : bucket instanceof MessageData.messageData[] many ? many.length : 1;
+    }
+
+    // The first-indexed message with the id, or null.
+    MessageData.messageData first(String id) {
+        Object bucket = bucketFor(id);
+        return bucket instanceof MessageData.messageData[] many ? many[0] : (MessageData.messageData) bucket;
+    }
+
+    // Every message with the id, in the order they were indexed, as a new list.
+    List<MessageData.messageData> find(String id) {
+        Object bucket = bucketFor(id);
+        if (bucket == null) {
+            return new ArrayList<>();
+        }
+        if (bucket instanceof MessageData.messageData[] many) {
+            return new ArrayList<>(Arrays.asList(many));
+        }
+        List<MessageData.messageData> one = new ArrayList<>(1);
+        one.add((MessageData.messageData) bucket);
+        return one;
+    }
+
+    int size() {
+        return size;
+    }
+
+    // Approximate heap held by the index, not counting the messages (or the arrays of shared ids).
+    long estimatedBytes() {
+        return byKey.estimatedBytes() + byOtherId.size() * MessageSizes.HASH_ENTRY_BYTES;
+    }
+
+    void clear() {
+        byKey.clear();
+        byOtherId.clear();
+        size = 0;
+    }
+
+    private Object bucketFor(String id) {
+        long key = MessageKeys.idKey(id);
+        return key != MessageKeys.NONE ? byKey.get(key) : byOtherId.get(id);
+    }
+
+    private static Object plus(Object bucket, MessageData.messageData msg) {
+        if (bucket == null) {
+            return msg;
+        }
+        if (bucket instanceof MessageData.messageData[] many) {
+            MessageData.messageData[] more = Arrays.copyOf(many, many.length + 1);
+            more[many.length] = msg;
+            return more;
+        }
+        return new MessageData.messageData[]{(MessageData.messageData) bucket, msg};
+    }
+
+    // The bucket without msg (null once empty), or the same bucket if msg was not in it.
+    private static Object minus(Object bucket, MessageData.messageData msg) {
+        if (bucket == msg) {
+            return null;
+        }
+        if (!(bucket instanceof MessageData.messageData[] many)) {
+            return bucket;
+        }
+        for (int i = 0; i < many.length; i++) {
+            if (many[i] == msg) {
+                if (many.length == 2) {
+                    return many[1 - i];
+                }
+                MessageData.messageData[] fewer = new MessageData.messageData[many.length - 1];
+                System.arraycopy(many, 0, fewer, 0, i);
+                System.arraycopy(many, i + 1, fewer, i, many.length - i - 1);
+                return fewer;
+            }
+        }
+        return bucket;
+    }
+}
@@ -0,0 +1,71 @@
+package org.example;
+
+// Canonical long encodings of message ids and recipient numbers, so the indexes can key on a
+// primitive instead of hashing and comparing strings.
+//   id:        "MSG" + 9 digits (see Message.createMessageID)  ->  the 9 digits as a number
+//   recipient: "+" + 10 to 15 digits (checkRecipientCell)      ->  digit count << 50 | the digits
+// The digit count keeps leading zeros apart ("+0123..." vs "+123..."); 15 digits fit in 50 bits.
+// Anything else has no encoding (NONE), and the indexes fall back to a string map for it.
+final class MessageKeys {
+
+    static final long NONE = -1;
+
+    private static final String ID_PREFIX = "MSG";
+    private static final int ID_DIGITS = 9;
+    private static final int MIN_RECIPIENT_DIGITS = 10;
+    private static final int MAX_RECIPIENT_DIGITS = 15;
+    private static final int RECIPIENT_LENGTH_SHIFT = 50;
+    private static final long RECIPIENT_DIGITS_MASK = (1L << RECIPIENT_LENGTH_SHIFT) - 1;
+
+    private MessageKeys() {
+    }
+
+    static long idKey(String id) {
+        if (id == null || id.length() != ID_PREFIX.length() + ID_DIGITS || !id.startsWith(ID_PREFIX)) {
+            return NONE;
+        }
+        return digits(id, ID_PREFIX.length());
+    }
+
+    static String idFromKey(long key) {
+        StringBuilder sb = new StringBuilder(ID_PREFIX.length() + ID_DIGITS).append(ID_PREFIX);
+        return appendDigits(sb, key, ID_DIGITS).toString();
+    }
+
+    static long recipientKey(String recipient) {
+        if (recipient == null || recipient.length() < 1 + MIN_RECIPIENT_DIGITS
+                || recipient.length() > 1 + MAX_RECIPIENT_DIGITS || recipient.charAt(0) != '+') {
+            return NONE;
+        }
+        long digits = digits(recipient, 1);
+        return digits == NONE ? NONE : (long) (recipient.length() - 1) << RECIPIENT_LENGTH_SHIFT | digits;
+    }
+
+    static String recipientFromKey(long key) {
+        int length = (int) (key >>> RECIPIENT_LENGTH_SHIFT);
+        StringBuilder sb = new StringBuilder(1 + length).append('+');
+        return appendDigits(sb, key & RECIPIENT_DIGITS_MASK, length).toString();
+    }
+
+    // The decimal value of s from index from on, or NONE if any character is not a digit.
+    private static long digits(String s, int from) {
+        long value = 0;
+        for (int i = from; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return NONE;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static StringBuilder appendDigits(StringBuilder sb, long value, int count) {
+        char[] digits = new char[count];
+        for (int i = count - 1; i >= 0; i--) {
+            digits[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return sb.append(digits);
+    }
+}
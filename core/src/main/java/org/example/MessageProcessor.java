@@ -0,0 +1,2098 @@
+package org.example;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+public class MessageProcessor {
+
+    private static final int READ_BUFFER_BYTES = 64 * 1024;
+    private static final int WRITE_CHUNK_CHARS = 1 << 20;
+    static final int IMPORT_BATCH_SIZE = 1 << 16;
+
+    // One insertion-ordered list per status, holding exact objects (messageData has no
+    // equals/hashCode). Membership is O(1), updates O(log n), and the getters hand out O(1)
+    // immutable snapshots of them (see PersistentList).
+    // Each keeps the estimated size of its messages (MessageSizes), for the memory and cold tier budgets.
+    private final PersistentList<MessageData.messageData> sentMessages = new PersistentList<>(MessageSizes::estimate);
+    private final PersistentList<MessageData.messageData> disregardedMessages = new PersistentList<>(MessageSizes::estimate);
+    private final PersistentList<MessageData.messageData> storedMessages = new PersistentList<>(MessageSizes::estimate);
+    // Sent and stored messages in the order they were indexed, behind getMessageHashes/getMessageIDs.
+    private final PersistentList<MessageData.messageData> indexedMessages = new PersistentList<>();
+    private final String storageFile;
+    private boolean parallelLoading;
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private volatile RateLimiter rateLimiter;
+    private volatile MessageDisplay display = MessageDisplay.CONSOLE;
+    private final List<MessageChangeListener> listeners = new CopyOnWriteArrayList<>();
+    private final MessageTimeIndex timeIndex = new MessageTimeIndex(); // All lists, by creation time
+    private final MessageIdIndex idIndex = new MessageIdIndex(); // All lists, by id
+    private final ConversationIndex conversations = new ConversationIndex(); // All lists, by participants
+    private final QueryPlanner planner = new QueryPlanner(this);
+    private volatile StorageRecovery.Report lastRecovery;
+    private volatile ColdTier coldTier; // null unless enableColdTier was called
+    private long coldTierBudget;
+    private boolean coldTierSpillsSent;
+    private long memoryBudget = Long.MAX_VALUE;
+    private MemoryPolicy memoryPolicy = MemoryPolicy.REJECT;
+
+    public MessageProcessor() {
+        this("storedMessages.json");
+    }
+
+    // Uses the given file instead of storedMessages.json to persist stored messages.
+    public MessageProcessor(String storageFile) {
+        this.storageFile = storageFile;
+
+        metrics.registerGauge("store.sentMessages", () -> sentMessages.size());
+        metrics.registerGauge("store.storedMessages", () -> storedMessages.size());
+        metrics.registerGauge("store.disregardedMessages", () -> disregardedMessages.size());
+        metrics.registerGauge("store.messageHashes", () -> indexedMessages.size());
+        metrics.registerGauge("store.messageIDs", () -> indexedMessages.size());
+        metrics.registerGauge("coldTier.messages", () -> {
+            ColdTier tier = coldTier;
+            return tier == null ? 0 : tier.size();
+        });
+        memoryComponents().forEach((name, bytes) -> metrics.registerGauge("memory." + name, bytes));
+        metrics.registerGauge("memory.total", this::memoryUsed);
+        metrics.registerGauge("memory.budget", () -> memoryBudget);
+    }
+
+    // Throws MemoryBudgetExceededException when the message does not fit in the memory budget, and
+    // otherwise RateLimitedException when the sender has exceeded the rate limit; either way the
+    // message is left unsent. Whether the message could fit is checked first, so one that cannot does
+    // not use up its sender's allowance; room is only made (see MemoryPolicy) once the sender has
+    // been allowed to send, so a rejected message never spills or evicts others.
+    public synchronized void addSentMessage(MessageData.messageData msg) {
+        long start = System.nanoTime();
+        RateLimiter limiter = rateLimiter;
+        if (limiter != null) {
+            if (couldAdmit(List.of(msg), true) == 0) {
+                metrics.increment("memory.rejected");
+                throw budgetExceeded(msg);
+            }
+            if (!limiter.tryAcquire(msg.getSender())) {
+                metrics.increment("rateLimit.rejected");
+                throw new RateLimitedException(msg.getSender() + " has exceeded the rate limit; message " + msg.getId()
+                        + " was not sent");
+            }
+        }
+        requireRoom(msg, true);
+        MessageEvents.MessageCreated event = new MessageEvents.MessageCreated();
+        event.begin();
+        sentMessages.add(msg);
+        indexedMessages.add(msg);
+        index(msg);
+        commitCreated(event, msg, "sent");
+        notifyAdded(msg, "sent");
+        spillIfOverBudget();
+        enforceMemoryBudget();
+        metrics.recordLatency("addSentMessage", System.nanoTime() - start);
+    }
+
+    // Throws MemoryBudgetExceededException when the message does not fit in the memory budget.
+    public synchronized void addDisregardedMessage(MessageData.messageData msg) {
+        long start = System.nanoTime();
+        requireRoom(msg, false);
+        MessageEvents.MessageCreated event = new MessageEvents.MessageCreated();
+        event.begin();
+        disregardedMessages.add(msg);
+        index(msg);
+        commitCreated(event, msg, "disregarded");
+        notifyAdded(msg, "disregarded");
+        spillIfOverBudget();
+        enforceMemoryBudget();
+        metrics.recordLatency("addDisregardedMessage", System.nanoTime() - start);
+    }
+
+    // Throws MemoryBudgetExceededException when the message does not fit in the memory budget.
+    public synchronized void addStoredMessage(MessageData.messageData msg) {
+        long start = System.nanoTime();
+        requireRoom(msg, true);
+        MessageEvents.MessageCreated event = new MessageEvents.MessageCreated();
+        event.begin();
+        storedMessages.add(msg);
+        indexedMessages.add(msg);
+        index(msg);
+        saveMessageToJsonFile(msg);
+        commitCreated(event, msg, "stored");
+        notifyAdded(msg, "stored");
+        enforceMemoryBudget();
+        metrics.recordLatency("addStoredMessage", System.nanoTime() - start);
+    }
+
+    // ---------- Batch ingestion ----------
+
+    // Adds many messages at once. The list and the indexes take the batch in bulk rather than one
+    // message at a time, and stored messages go to the file in one buffered write with a single
+    // fsync. Messages already in the list are skipped; listeners still hear about every message
+    // added. Only as many as fit in the memory budget are added, in order. Each returns how many
+    // were added.
+
+    // Messages whose sender is over the rate limit are skipped, as addSentMessage would reject them.
+    // Only the messages that fit in the budget take from their senders' allowance.
+    public synchronized int addSentMessages(Collection<MessageData.messageData> messages) {
+        return addBatch(messages, sentMessages, "sent", rateLimiter);
+    }
+
+    public synchronized int addDisregardedMessages(Collection<MessageData.messageData> messages) {
+        return addBatch(messages, disregardedMessages, "disregarded", null);
+    }
+
+    public synchronized int addStoredMessages(Collection<MessageData.messageData> messages) {
+        return addBatch(messages, storedMessages, "stored", null);
+    }
+
+    // Adds each message to the list for its status: SENT to sent, DISREGARDED to disregarded and
+    // anything else (e.g. PENDING) to stored. The stream is taken IMPORT_BATCH_SIZE messages at a
+    // time, each batch under the lock, so other callers get in between batches. Imports are not
+    // rate limited. Returns how many were added.
+    public long importMessages(Stream<MessageData.messageData> messages) {
+        long start = System.nanoTime();
+        long added = 0;
+        List<MessageData.messageData> sent = new ArrayList<>();
+        List<MessageData.messageData> disregarded = new ArrayList<>();
+        List<MessageData.messageData> stored = new ArrayList<>();
+        Iterator<MessageData.messageData> it = messages.iterator();
+        while (it.hasNext()) {
+            MessageData.messageData msg = it.next();
+            switch (String.valueOf(msg.getStatus())) {
+                case "SENT" -> sent.add(msg);
+                case "DISREGARDED" -> disregarded.add(msg);
+                default -> stored.add(msg);
+            }
+            if (sent.size() + disregarded.size() + stored.size() == IMPORT_BATCH_SIZE || !it.hasNext()) {
+                synchronized (this) {
+                    added += addBatch(sent, sentMessages, "sent", null);
+                    added += addBatch(disregarded, disregardedMessages, "disregarded", null);
+                    added += addBatch(stored, storedMessages, "stored", null);
+                }
+                sent.clear();
+                disregarded.clear();
+                stored.clear();
+            }
+        }
+        metrics.recordLatency("importMessages", System.nanoTime() - start);
+        return added;
+    }
+
+    private int addBatch(Collection<MessageData.messageData> messages, PersistentList<MessageData.messageData> target,
+                         String list, RateLimiter limiter) {
+        long start = System.nanoTime();
+        List<MessageData.messageData> fresh = new ArrayList<>(messages.size());
+        Set<MessageData.messageData> seen = Collections.newSetFromMap(new IdentityHashMap<>(messages.size()));
+        for (MessageData.messageData msg : messages) {
+            if (!target.contains(msg) && seen.add(msg)) {
+                fresh.add(msg);
+            }
+        }
+        boolean indexed = target != disregardedMessages;
+        if (limiter != null) {
+            // As in addSentMessage: tokens only for messages that could fit, room only for those granted one
+            int could = couldAdmit(fresh, indexed);
+            if (could < fresh.size()) {
+                metrics.add("memory.rejected", fresh.size() - could);
+                fresh = new ArrayList<>(fresh.subList(0, could));
+            }
+            fresh.removeIf(msg -> {
+                if (limiter.tryAcquire(msg.getSender())) {
+                    return false;
+                }
+                metrics.increment("rateLimit.rejected");
+                return true;
+            });
+        }
+        int fit = admit(fresh, indexed);
+        if (fit < fresh.size()) {
+            fresh = new ArrayList<>(fresh.subList(0, fit));
+        }
+        if (fresh.isEmpty()) {
+            return 0;
+        }
+        target.addAll(fresh);
+        if (target != disregardedMessages) {
+            indexedMessages.addAll(fresh);
+        }
+        indexAll(fresh);
+        if (target == storedMessages) {
+            saveMessagesToJsonFile(fresh);
+        }
+        for (MessageData.messageData msg : fresh) {
+            notifyAdded(msg, list);
+        }
+        spillIfOverBudget();
+        enforceMemoryBudget();
+        metrics.add("store.batchAdded", fresh.size());
+        metrics.recordLatency("addMessages", System.nanoTime() - start);
+        return fresh.size();
+    }
+
+    // Adds messages a ReplicationLeader reported to the named list ("sent", "stored" or
+    // "disregarded"), as the batch add methods do but without the rate limit: the leader already
+    // applied it. Throws MemoryBudgetExceededException when not all of them fit (the ones that do
+    // are added).
+    synchronized void addReplicated(Collection<MessageData.messageData> messages, String list) {
+        PersistentList<MessageData.messageData> target = switch (list) {
+            case "sent" -> sentMessages;
+            case "stored" -> storedMessages;
+            case "disregarded" -> disregardedMessages;
+            default -> throw new IllegalArgumentException("Unknown list: " + list);
+        };
+        int added = addBatch(messages, target, list, null);
+        if (added < messages.size()) {
+            throw new MemoryBudgetExceededException("Only " + added + " of " + messages.size() + " replicated messages fit in"
+                    + " the memory budget of " + memoryBudget + " bytes");
+        }
+    }
+
+    // Moves due PENDING messages from stored to sent in one step (see changeStatus). Messages that
+    // are no longer stored (e.g. deleted or disregarded meanwhile) are skipped. Scheduled sends are
+    // not rate limited. Returns the messages actually moved, in the given order.
+    public synchronized List<MessageData.messageData> promoteStoredMessages(Collection<MessageData.messageData> due) {
+        List<MessageData.messageData> promoted = moveMessages(due, storedMessages, "SENT");
+        metrics.add("store.promoted", promoted.size());
+        return promoted;
+    }
+
+    // Removes these exact message objects from whichever lists hold them, and the spilled messages
+    // that any copies among them were read from (see enableColdTier).
+    // Stored ones are recorded with a single {"op":"removed","ids":[...]} line instead of a rewrite;
+    // compactStoredMessages() drops them from the file for good. When more stored messages go than
+    // stay, the file is rewritten instead, since that writes less. Returns how many were removed.
+    public synchronized int removeMessages(Collection<MessageData.messageData> messages) {
+        return removeMessagesCounted(messages).total();
+    }
+
+    // removeMessages, saying how many came from each list.
+    synchronized Removal removeMessagesCounted(Collection<MessageData.messageData> messages) {
+        long start = System.nanoTime();
+        List<MessageData.messageData> fromSent = new ArrayList<>();
+        List<MessageData.messageData> fromDisregarded = new ArrayList<>();
+        List<MessageData.messageData> fromStored = new ArrayList<>();
+        List<MessageData.messageData> spilledCopies = new ArrayList<>();
+        for (MessageData.messageData msg : messages) {
+            if (sentMessages.remove(msg)) {
+                fromSent.add(msg);
+            } else if (disregardedMessages.remove(msg)) {
+                fromDisregarded.add(msg);
+            } else if (storedMessages.remove(msg)) {
+                fromStored.add(msg);
+            } else if (coldTier != null) {
+                spilledCopies.add(msg);
+            }
+        }
+        removeColdCopies(spilledCopies, fromSent, fromDisregarded);
+
+        // Hashes and ids are only indexed for sent and stored messages
+        for (List<MessageData.messageData> removed : List.of(fromSent, fromStored)) {
+            for (MessageData.messageData msg : removed) {
+                indexedMessages.remove(msg);
+            }
+        }
+        if (fromStored.size() > storedMessages.size()) {
+            rewriteStoredMessagesJson();
+        } else if (!fromStored.isEmpty()) {
+            StringBuilder record = new StringBuilder();
+            appendIdsRecord(record, "removed", fromStored);
+            appendToStorageFile(record.toString());
+        }
+
+        notifyRemovedAll(fromSent, "sent");
+        notifyRemovedAll(fromDisregarded, "disregarded");
+        notifyRemovedAll(fromStored, "stored");
+        Removal removal = new Removal(fromSent.size(), fromDisregarded.size(), fromStored.size());
+        metrics.add("store.removed", removal.total());
+        metrics.recordLatency("removeMessages", System.nanoTime() - start);
+        return removal;
+    }
+
+    static final class Removal {
+        final int sent;
+        final int disregarded;
+        final int stored;
+
+        Removal(int sent, int disregarded, int stored) {
+            this.sent = sent;
+            this.disregarded = disregarded;
+            this.stored = stored;
+        }
+
+        int total() {
+            return sent + disregarded + stored;
+        }
+    }
+
+    // Removes every message the predicate matches, from all lists and indexes, with one write to the
+    // stored-messages file (see removeMessages). A MessageQuery.Condition is matched through the query
+    // planner, so e.g. recipientIs(...) only looks at that recipient's messages; any other predicate
+    // is tested once against every message. Returns how many were removed.
+    public synchronized int removeMessagesWhere(Predicate<MessageData.messageData> predicate) {
+        long start = System.nanoTime();
+        int removed;
+        if (predicate instanceof MessageQuery.Condition condition) {
+            // The query returns spilled matches as copies, which removeMessages removes too
+            removed = removeMessages(query(MessageQuery.where(condition)).toList());
+        } else {
+            List<MessageData.messageData> matches = new ArrayList<>();
+            for (PersistentList<MessageData.messageData> list : List.of(sentMessages, disregardedMessages, storedMessages)) {
+                for (MessageData.messageData msg : list.snapshot()) {
+                    if (predicate.test(msg)) {
+                        matches.add(msg);
+                    }
+                }
+            }
+            removed = removeMessages(matches) + removeColdWhere(predicate);
+        }
+        metrics.recordLatency("removeMessagesWhere", System.nanoTime() - start);
+        return removed;
+    }
+
+    // Removes every message whose hash is in the collection (ignoring case), in one pass.
+    public int removeMessagesByHash(Collection<String> hashes) {
+        Set<String> wanted = new HashSet<>();
+        for (String hash : hashes) {
+            wanted.add(hash.toLowerCase(Locale.ROOT));
+        }
+        return removeMessagesWhere(msg -> wanted.contains(msg.getHash().toLowerCase(Locale.ROOT)));
+    }
+
+    // Rewrites the stored-messages file with just the current stored messages, dropping the
+    // "sent"/"removed" records and the messages they refer to.
+    public synchronized void compactStoredMessages() {
+        rewriteStoredMessagesJson();
+    }
+
+    // ---------- Status transitions ----------
+
+    // Changes the status of these messages in place and moves each one to the matching list
+    // ("SENT" -> sent, "PENDING" -> stored, "DISREGARDED" -> disregarded) in O(log n). However large the
+    // batch, the stored-messages file gets a single append: one id record for the messages leaving
+    // stored plus a line per message entering it. Messages already in the target list, or in no
+    // list, are skipped. Returns how many moved.
+    public synchronized int changeStatus(Collection<MessageData.messageData> messages, String newStatus) {
+        return moveMessages(messages, null, newStatus).size();
+    }
+
+    // changeStatus for every message in fromStatus's list (every list when null) that matches the filter.
+    public synchronized int changeStatusWhere(String fromStatus, Predicate<MessageData.messageData> filter,
+                                              String newStatus) {
+        List<MessageData.messageData> matching = new ArrayList<>();
+        List<PersistentList<MessageData.messageData>> lists = fromStatus == null
+                ? List.of(sentMessages, storedMessages, disregardedMessages)
+                : List.of(listFor(fromStatus));
+        for (PersistentList<MessageData.messageData> list : lists) {
+            for (MessageData.messageData msg : list.snapshot()) {
+                if (filter.test(msg)) {
+                    matching.add(msg);
+                }
+            }
+        }
+        String fromList = fromStatus == null ? null : nameOf(listFor(fromStatus));
+        matching.addAll(readColdWhere(tier -> fromList == null ? record -> true : tier.inList(fromList), filter));
+        return changeStatus(matching, newStatus);
+    }
+
+    // Sends every PENDING message to the recipient now, scheduled or not.
+    public int sendAllPendingTo(String recipient) {
+        return changeStatusWhere("PENDING", msg -> msg.getRecipient().equals(recipient), "SENT");
+    }
+
+    // Disregards every sent and stored message from the sender.
+    public int disregardAllFrom(String sender) {
+        return changeStatusWhere(null, msg -> msg.getSender().equals(sender), "DISREGARDED");
+    }
+
+    private List<MessageData.messageData> moveMessages(Collection<MessageData.messageData> messages,
+                                                       PersistentList<MessageData.messageData> onlyFrom,
+                                                       String newStatus) {
+        long start = System.nanoTime();
+        PersistentList<MessageData.messageData> target = listFor(newStatus);
+        if (coldTier != null) {
+            unspill(messages, onlyFrom, target);
+        }
+        List<MessageData.messageData> moved = new ArrayList<>();
+        List<String> movedFrom = new ArrayList<>();
+        List<MessageData.messageData> leftStored = new ArrayList<>();
+        StringBuilder enteredStored = new StringBuilder();
+        for (MessageData.messageData msg : messages) {
+            PersistentList<MessageData.messageData> from = listHolding(msg);
+            if (from == null || from == target || (onlyFrom != null && from != onlyFrom)) {
+                continue;
+            }
+            from.remove(msg);
+            target.add(msg);
+            msg.setStatus(newStatus);
+            if (from == storedMessages) {
+                leftStored.add(msg);
+            }
+            if (target == storedMessages) {
+                appendJsonLine(enteredStored, msg);
+            }
+            // Hashes and ids are only indexed for sent and stored messages
+            if (from == disregardedMessages) {
+                indexedMessages.add(msg);
+            } else if (target == disregardedMessages) {
+                indexedMessages.remove(msg);
+            }
+            moved.add(msg);
+            movedFrom.add(nameOf(from));
+        }
+        if (moved.isEmpty()) {
+            return moved;
+        }
+
+        StringBuilder log = new StringBuilder();
+        if (!leftStored.isEmpty()) {
+            appendIdsRecord(log, target == sentMessages ? "sent" : "removed", leftStored);
+        }
+        log.append(enteredStored);
+        if (log.length() > 0) {
+            appendToStorageFile(log.toString());
+        }
+
+        String targetName = nameOf(target);
+        for (int i = 0; i < moved.size(); i++) {
+            for (MessageChangeListener listener : listeners) {
+                listener.messageMoved(moved.get(i), movedFrom.get(i), targetName);
+            }
+        }
+        spillIfOverBudget();
+        metrics.add("store.statusChanges", moved.size());
+        metrics.recordLatency("changeStatus", System.nanoTime() - start);
+        return moved;
+    }
+
+    private PersistentList<MessageData.messageData> listFor(String status) {
+        return switch (status) {
+            case "SENT" -> sentMessages;
+            case "PENDING" -> storedMessages;
+            case "DISREGARDED" -> disregardedMessages;
+            default -> throw new IllegalArgumentException("Unknown status: " + status);
+        };
+    }
+
+    private PersistentList<MessageData.messageData> listHolding(MessageData.messageData msg) {
+        if (sentMessages.contains(msg)) {
+            return sentMessages;
+        }
+        if (storedMessages.contains(msg)) {
+            return storedMessages;
+        }
+        return disregardedMessages.contains(msg) ? disregardedMessages : null;
+    }
+
+    private String nameOf(PersistentList<MessageData.messageData> list) {
+        return list == sentMessages ? "sent" : list == storedMessages ? "stored" : "disregarded";
+    }
+
+    // Removes items whose key is counted, each key as many times as counted, in a single pass.
+    private static <T> void removeOccurrences(Collection<T> items, Function<T, String> key, Map<String, Integer> counts) {
+        if (counts.isEmpty()) {
+            return;
+        }
+        items.removeIf(item -> {
+            String value = key.apply(item);
+            Integer left = counts.get(value);
+            if (left == null) {
+                return false;
+            }
+            if (left == 1) {
+                counts.remove(value);
+            } else {
+                counts.put(value, left - 1);
+            }
+            return true;
+        });
+    }
+
+    private static void commitCreated(MessageEvents.MessageCreated event, MessageData.messageData msg, String list) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.messageId = msg.getId();
+            event.list = list;
+            event.textLength = msg.getMessageText() == null ? 0 : msg.getMessageText().length();
+            event.commit();
+        }
+    }
+
+    // Every message in any list is in the time, id and conversation indexes.
+    private void index(MessageData.messageData msg) {
+        timeIndex.add(msg);
+        idIndex.add(msg);
+        conversations.add(msg);
+    }
+
+    private void indexAll(List<MessageData.messageData> batch) {
+        timeIndex.addAll(batch);
+        idIndex.addAll(batch);
+        conversations.addAll(batch);
+    }
+
+    private void unindex(MessageData.messageData msg) {
+        timeIndex.remove(msg);
+        idIndex.remove(msg);
+        conversations.remove(msg);
+    }
+
+    private void notifyAdded(MessageData.messageData msg, String list) {
+        for (MessageChangeListener listener : listeners) {
+            listener.messageAdded(msg, list);
+        }
+    }
+
+    private void notifyRemoved(MessageData.messageData msg, String list) {
+        for (MessageChangeListener listener : listeners) {
+            listener.messageRemoved(msg, list);
+        }
+    }
+
+    private void notifyRemovedAll(List<MessageData.messageData> removed, String list) {
+        for (MessageData.messageData msg : removed) {
+            unindex(msg);
+            notifyRemoved(msg, list);
+        }
+    }
+
+    // One {"op":...,"ids":[...]} line saying these stored messages are no longer stored.
+    private static void appendIdsRecord(StringBuilder out, String op, List<MessageData.messageData> messages) {
+        int lineStart = out.length();
+        out.append("{\"op\":");
+        appendQuoted(out, op);
+        out.append(",\"ids\":[");
+        for (int i = 0; i < messages.size(); i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            appendQuoted(out, messages.get(i).getId());
+        }
+        out.append("]}");
+        RecordChecksum.seal(out, lineStart);
+    }
+
+    private void appendToStorageFile(String lines) {
+        try {
+            appendDurably(lines.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            showErrorMessage("Error saving to JSON: " + e.getMessage(), "File Error");
+        }
+    }
+
+    private void saveMessageToJsonFile(MessageData.messageData msg) {
+        StringBuilder line = new StringBuilder(256);
+        appendJsonLine(line, msg);
+        byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+        MessageEvents.PersistenceWrite event = new MessageEvents.PersistenceWrite();
+        event.begin();
+        try {
+            appendDurably(bytes);
+        } catch (IOException e) {
+            showErrorMessage("Error saving message to JSON: " + e.getMessage(), "File Error");
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.messageId = msg.getId();
+            event.bytes = bytes.length;
+            event.commit();
+        }
+    }
+
+    // The lines go out in chunks of about WRITE_CHUNK_CHARS, followed by one fsync for the lot. A crash
+    // part-way keeps the whole lines already written; StorageRecovery cuts off a torn last one.
+    private void saveMessagesToJsonFile(List<MessageData.messageData> messages) {
+        MessageEvents.PersistenceWrite event = new MessageEvents.PersistenceWrite();
+        event.begin();
+        long bytes = 0;
+        try (FileOutputStream out = new FileOutputStream(storageFile, true)) {
+            StringBuilder lines = new StringBuilder(WRITE_CHUNK_CHARS + 4096);
+            for (MessageData.messageData msg : messages) {
+                appendJsonLine(lines, msg);
+                if (lines.length() >= WRITE_CHUNK_CHARS) {
+                    bytes += write(out, lines);
+                }
+            }
+            bytes += write(out, lines);
+            out.getFD().sync();
+        } catch (IOException e) {
+            showErrorMessage("Error saving messages to JSON: " + e.getMessage(), "File Error");
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.messageId = messages.get(0).getId();
+            event.bytes = bytes;
+            event.commit();
+        }
+    }
+
+    // Writes and empties the buffer, returning the number of bytes written.
+    private static int write(FileOutputStream out, StringBuilder lines) throws IOException {
+        byte[] bytes = lines.toString().getBytes(StandardCharsets.UTF_8);
+        out.write(bytes);
+        lines.setLength(0);
+        return bytes.length;
+    }
+
+    // One write and an fsync, so once this returns the records survive a crash, and a crash during
+    // it can only leave a torn tail that StorageRecovery cuts off. Streams rather than channels, so
+    // an interrupted caller (e.g. a cancelled background task) still finishes the write.
+    private void appendDurably(byte[] bytes) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(storageFile, true)) {
+            out.write(bytes);
+            out.getFD().sync();
+        }
+    }
+
+    public boolean loadStoredMessagesFromJson() {
+        return loadStoredMessagesFromJson(ProgressListener.NONE);
+    }
+
+    // Reports progress in characters read out of the file's length. Interrupting the calling thread
+    // cancels the load with a CancellationException and leaves the current stored messages untouched.
+    public synchronized boolean loadStoredMessagesFromJson(ProgressListener progress) {
+        long start = System.nanoTime();
+        MessageEvents.FileLoad event = new MessageEvents.FileLoad();
+        event.begin();
+        try {
+            return loadStoredMessages(progress);
+        } finally {
+            metrics.recordLatency("loadStoredMessagesFromJson", System.nanoTime() - start);
+            event.end();
+            if (event.shouldCommit()) {
+                File jsonFile = new File(storageFile);
+                event.path = jsonFile.getAbsolutePath();
+                event.bytes = jsonFile.length();
+                event.records = storedMessages.size();
+                event.parallel = parallelLoading;
+                event.commit();
+            }
+        }
+    }
+
+    // Repairs the file after a crash first (see StorageRecovery), then verifies every line while
+    // parsing it. What was found is kept in getLastRecovery() and printed when anything was repaired.
+    private boolean loadStoredMessages(ProgressListener progress) {
+        long start = System.nanoTime();
+        File jsonFile = new File(storageFile);
+        StorageRecovery.Report report = new StorageRecovery.Report(storageFile);
+        try {
+            StorageRecovery.repair(jsonFile.toPath(), report);
+        } catch (IOException e) {
+            showErrorMessage("Error repairing stored messages: " + e.getMessage(), "File Error");
+        }
+        if (!jsonFile.exists() || jsonFile.length() == 0) {
+            replaceStoredMessages(List.of());
+            finishRecovery(report, 0, start);
+            return false;
+        }
+
+        // Each id in a "sent"/"removed" record cancels the oldest line for that id, so a message that
+        // left stored and came back keeps only its newest line.
+        Map<String, Integer> goneCounts = new ConcurrentHashMap<>();
+        List<MessageData.messageData> loaded;
+        try {
+            loaded = parallelLoading
+                    ? readInParallel(jsonFile, goneCounts, report)
+                    : readSequentially(jsonFile, goneCounts, report, progress);
+        } catch (IOException e) {
+            replaceStoredMessages(List.of());
+            showErrorMessage("Error reading stored messages: " + e.getMessage(), "File Error");
+            return false;
+        }
+        removeOccurrences(loaded, MessageData.messageData::getId, goneCounts);
+        replaceStoredMessages(loaded);
+        if (report.getUntimedMessages() > 0) {
+            // Write down the creation times just given to records from before timestamps existed, so
+            // they age from their first load rather than from every load
+            rewriteStoredMessagesJson();
+            metrics.add("load.timestampsAssigned", report.getUntimedMessages());
+        }
+        metrics.add("load.records", loaded.size());
+        finishRecovery(report, loaded.size(), start);
+        progress.onProgress(jsonFile.length(), jsonFile.length());
+        return !loaded.isEmpty();
+    }
+
+    private void finishRecovery(StorageRecovery.Report report, int loaded, long start) {
+        report.finish(loaded, System.nanoTime() - start);
+        metrics.add("recovery.truncatedBytes", report.getTruncatedBytes());
+        if (report.isTempFileDiscarded()) {
+            metrics.increment("recovery.tempFilesDiscarded");
+        }
+        if (report.hasRepairs()) {
+            System.err.println(report);
+        }
+        lastRecovery = report;
+    }
+
+    private List<MessageData.messageData> readSequentially(File jsonFile, Map<String, Integer> goneCounts,
+                                                           StorageRecovery.Report report,
+                                                           ProgressListener progress) throws IOException {
+        List<MessageData.messageData> loaded = new ArrayList<>();
+        StoredLineParser parser = new StoredLineParser();
+        long total = jsonFile.length();
+        long read = 0;
+        int lineCount = 0;
+        byte[] buffer = new byte[READ_BUFFER_BYTES];
+        int filled = 0;
+        try (FileInputStream in = new FileInputStream(jsonFile)) {
+            while (true) {
+                int count = in.read(buffer, filled, buffer.length - filled);
+                if (count < 0) {
+                    // The last line may lack its newline
+                    addStoredLine(loaded, buffer, 0, filled, parser, goneCounts, report);
+                    break;
+                }
+                int scanFrom = filled;
+                filled += count;
+                read += count;
+                int lineStart = 0;
+                for (int i = scanFrom; i < filled; i++) {
+                    if (buffer[i] == '\n') {
+                        addStoredLine(loaded, buffer, lineStart, i, parser, goneCounts, report);
+                        lineStart = i + 1;
+                        if (++lineCount % 1024 == 0) {
+                            if (Thread.currentThread().isInterrupted()) {
+                                throw new CancellationException("Loading stored messages was cancelled");
+                            }
+                            progress.onProgress(Math.min(read, total), total);
+                        }
+                    }
+                }
+                // Keep the unfinished line at the front, growing the buffer for a line longer than it
+                filled -= lineStart;
+                System.arraycopy(buffer, lineStart, buffer, 0, filled);
+                if (filled == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+            }
+        }
+        return loaded;
+    }
+
+    private void addStoredLine(List<MessageData.messageData> loaded, byte[] bytes, int from, int to,
+                               StoredLineParser parser, Map<String, Integer> goneCounts,
+                               StorageRecovery.Report report) {
+        if (to > from && bytes[to - 1] == '\r') {
+            to--;
+        }
+        MessageData.messageData msg = readStoredLine(bytes, from, to, parser, goneCounts, report, metrics);
+        if (msg != null) {
+            loaded.add(msg);
+        }
+    }
+
+    private List<MessageData.messageData> readInParallel(File jsonFile, Map<String, Integer> goneCounts,
+                                                         StorageRecovery.Report report) throws IOException {
+        List<List<MessageData.messageData>> ranges =
+                new ParallelMessageLoader(jsonFile.toPath(), metrics).load(goneCounts, report);
+
+        // Each worker parsed into its own list, so merging is a plain ordered concatenation
+        // done by this thread alone - no locks are needed on the indexes.
+        int total = 0;
+        for (List<MessageData.messageData> range : ranges) {
+            total += range.size();
+        }
+        List<MessageData.messageData> loaded = new ArrayList<>(total);
+        for (List<MessageData.messageData> range : ranges) {
+            loaded.addAll(range);
+        }
+        return loaded;
+    }
+
+    private void replaceStoredMessages(List<MessageData.messageData> loaded) {
+        for (MessageData.messageData msg : storedMessages.snapshot()) {
+            unindex(msg);
+            indexedMessages.remove(msg);
+        }
+        storedMessages.clear();
+        storedMessages.addAll(loaded);
+        indexedMessages.addAll(loaded);
+        for (MessageData.messageData msg : loaded) {
+            index(msg);
+        }
+        for (MessageChangeListener listener : listeners) {
+            listener.storedMessagesReplaced();
+        }
+    }
+
+    // Verifies and parses the line in bytes[from, to) of the stored-messages file, without decoding it
+    // to a String first (see StoredLineParser). Blank, corrupt (checksum mismatch) and malformed lines
+    // are counted and skipped by returning null, as are "sent"/"removed" records.
+    static MessageData.messageData readStoredLine(byte[] bytes, int from, int to, StoredLineParser parser,
+                                                  Map<String, Integer> goneCounts, StorageRecovery.Report report,
+                                                  MetricsRegistry metrics) {
+        if (isBlank(bytes, from, to)) {
+            return null;
+        }
+        int jsonEnd = report.verify(bytes, from, to);
+        if (jsonEnd < 0) {
+            metrics.increment("load.checksumFailures");
+            System.err.println("Skipping corrupt record (checksum mismatch): "
+                    + new String(bytes, from, to - from, StandardCharsets.UTF_8));
+            return null;
+        }
+        try {
+            MessageData.messageData msg = parser.parse(bytes, from, jsonEnd, goneCounts);
+            if (msg != null && !parser.wasTimed()) {
+                report.untimedMessage();
+            }
+            return msg;
+        } catch (JSONException e) {
+            report.malformedLine();
+            metrics.increment("load.malformedLines");
+            System.err.println("Skipping malformed JSON line (" + e.getMessage() + "): "
+                    + new String(bytes, from, to - from, StandardCharsets.UTF_8));
+            return null;
+        }
+    }
+
+    private static boolean isBlank(byte[] bytes, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] != ' ' && bytes[i] != '\t' && bytes[i] != '\r') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // A line of the stored-messages file is either a message or a "sent"/"removed" record listing the
+    // ids of earlier messages that have since left the stored list. Returns the message, or null after
+    // counting a record's ids in goneCounts. This is the org.json reading of a line; loading uses the
+    // faster StoredLineParser, which accepts the same lines.
+    static MessageData.messageData parseStoredLine(String line, Map<String, Integer> goneCounts) throws JSONException {
+        JSONObject json = new JSONObject(line);
+        if (!json.has("op")) {
+            return fromJson(json);
+        }
+        String op = json.getString("op");
+        if (!op.equals("sent") && !op.equals("removed")) {
+            throw new JSONException("Unknown op: " + op);
+        }
+        JSONArray ids = json.getJSONArray("ids");
+        for (int i = 0; i < ids.length(); i++) {
+            goneCounts.merge(ids.getString(i), 1, Integer::sum);
+        }
+        return null;
+    }
+
+    static JSONObject toJson(MessageData.messageData msg) {
+        JSONObject json = new JSONObject();
+        json.put("id", msg.getId());
+        json.put("sender", msg.getSender());
+        json.put("recipient", msg.getRecipient());
+        json.put("messageText", msg.getMessageText());
+        json.put("hash", msg.getHash());
+        json.put("status", msg.getStatus());
+        if (msg.getSendAt() > 0) {
+            json.put("sendAt", msg.getSendAt());
+        }
+        json.put("createdAt", msg.getCreatedAt());
+        json.put("statusChangedAt", msg.getStatusChangedAt());
+        return json;
+    }
+
+    // Same fields as toJson, written straight into the builder and sealed with a checksum (see
+    // RecordChecksum); much faster than building a JSONObject per message when a batch writes
+    // thousands of lines.
+    static void appendJsonLine(StringBuilder out, MessageData.messageData msg) {
+        int lineStart = out.length();
+        appendJson(out, msg, msg.getStatus());
+        RecordChecksum.seal(out, lineStart);
+    }
+
+    // The message as one JSON object, with the given status in place of its current one.
+    static void appendJson(StringBuilder out, MessageData.messageData msg, String status) {
+        out.append("{\"id\":");
+        appendQuoted(out, msg.getId());
+        out.append(",\"sender\":");
+        appendQuoted(out, msg.getSender());
+        out.append(",\"recipient\":");
+        appendQuoted(out, msg.getRecipient());
+        out.append(",\"messageText\":");
+        appendQuoted(out, msg.getMessageText());
+        out.append(",\"hash\":");
+        appendQuoted(out, msg.getHash());
+        out.append(",\"status\":");
+        appendQuoted(out, status);
+        if (msg.getSendAt() > 0) {
+            out.append(",\"sendAt\":").append(msg.getSendAt());
+        }
+        out.append(",\"createdAt\":").append(msg.getCreatedAt())
+                .append(",\"statusChangedAt\":").append(msg.getStatusChangedAt())
+                .append('}');
+    }
+
+    // A JSON string literal; control characters become backslash-u escapes, everything else is kept as is.
+    static void appendQuoted(StringBuilder out, String value) {
+        if (value == null) {
+            out.append("null");
+            return;
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> out.append("\\\"");
+                case '\\' -> out.append("\\\\");
+                case '\n' -> out.append("\\n");
+                case '\r' -> out.append("\\r");
+                case '\t' -> out.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+                }
+            }
+        }
+        out.append('"');
+    }
+
+    static MessageData.messageData fromJson(JSONObject json) throws JSONException {
+        MessageData.messageData msg = new MessageData.messageData(
+                json.getString("id"),
+                json.getString("sender"),
+                json.getString("recipient"),
+                json.getString("messageText"),
+                json.getString("hash"),
+                json.getString("status")
+        );
+        msg.setSendAt(json.optLong("sendAt", 0));
+        // Records written before timestamps existed count as created now, so they expire one
+        // retention period after the upgrade rather than all at once; loading writes that time back
+        // to the file (see loadStoredMessages).
+        msg.setCreatedAt(json.optLong("createdAt", msg.getCreatedAt()));
+        msg.setStatusChangedAt(json.optLong("statusChangedAt", msg.getCreatedAt()));
+        return msg;
+    }
+
+    // Writes the new contents to a temporary file, fsyncs it and renames it over the old file, so a
+    // crash at any point leaves either the complete old file or the complete new one.
+    private void rewriteStoredMessagesJson() {
+        MessageEvents.Rewrite event = new MessageEvents.Rewrite();
+        event.begin();
+        Path file = Path.of(storageFile);
+        Path temp = StorageRecovery.tempFileFor(file);
+        long bytes = 0;
+        try {
+            try (FileOutputStream out = new FileOutputStream(temp.toFile());
+                 BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+                StringBuilder line = new StringBuilder(256);
+                for (MessageData.messageData msg : storedMessages.snapshot()) {
+                    line.setLength(0);
+                    appendJsonLine(line, msg);
+                    writer.append(line);
+                }
+                writer.flush();
+                bytes = out.getChannel().position(); // As encoded, so non-ASCII text counts in full
+                out.getFD().sync();
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            syncDirectory(file);
+        } catch (IOException e) {
+            showErrorMessage("Error rewriting JSON file: " + e.getMessage(), "File Error");
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.bytes = bytes;
+            event.records = storedMessages.size();
+            event.commit();
+        }
+    }
+
+    // Makes the rename durable. Not every platform can open a directory; there the rename is left
+    // to the file system's own ordering.
+    static void syncDirectory(Path file) {
+        Path directory = file.toAbsolutePath().getParent();
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Best effort
+        }
+    }
+
+    public void displaySentMessageSendersAndRecipients() {
+        List<MessageData.messageData> sentMessages = sentWithCold();
+        if (sentMessages.isEmpty()) {
+            showInfoMessage("No sent messages to display.", "Sent Messages");
+            return;
+        }
+
+        StringBuilder sb = new StringBuilder("--- Sent Messages ---\n");
+        for (MessageData.messageData msg : sentMessages) {
+            sb.append("Sender: ").append(msg.getSender())
+                    .append(" | Recipient: ").append(msg.getRecipient())
+                    .append(" | ID: ").append(msg.getId())
+                    .append("\n");
+        }
+
+        showScrollableMessage(sb.toString(), "Sent Messages Detail", 400, 300);
+    }
+
+    public void displayLongestSentMessage() {
+        List<MessageData.messageData> sentMessages = sentWithCold();
+        if (sentMessages.isEmpty()) {
+            showInfoMessage("No sent messages to analyze.", "Longest Message");
+            return;
+        }
+
+        MessageData.messageData longest = null;
+        int maxLength = -1;
+
+        for (MessageData.messageData msg : sentMessages) {
+            if (msg.getMessageText().length() > maxLength) {
+                maxLength = msg.getMessageText().length();
+                longest = msg;
+            }
+        }
+
+        if (longest != null) {
+            showInfoMessage(
+                    "--- Longest Sent Message ---\n" +
+                            "Sender: " + longest.getSender() + "\n" +
+                            "Recipient: " + longest.getRecipient() + "\n" +
+                            "ID: " + longest.getId() + "\n" +
+                            "Message: " + longest.getMessageText() + "\n" +
+                            "Length: " + maxLength + " characters",
+                    "Longest Sent Message"
+            );
+        }
+    }
+
+    public void searchMessageById(String messageId) {
+        showMessageDetails(messageId, findMessageById(messageId));
+    }
+
+    public void showMessageDetails(String messageId, Optional<MessageData.messageData> found) {
+        if (found.isPresent()) {
+            MessageData.messageData msg = found.get();
+            showInfoMessage(
+                    "--- Message Details (ID: " + messageId + ") ---\n" +
+                            "Sender: " + msg.getSender() + "\n" +
+                            "Recipient: " + msg.getRecipient() + "\n" +
+                            "Message: " + msg.getMessageText() + "\n" +
+                            "Hash: " + msg.getHash() + "\n" +
+                            "Status: " + msg.getStatus(),
+                    "Search Result"
+            );
+        } else {
+            showInfoMessage("Message with ID '" + messageId + "' not found.", "Search Result");
+        }
+    }
+
+    public void searchMessagesByRecipient(String recipient) {
+        showMessagesByRecipient(recipient, findMessagesByRecipient(recipient));
+    }
+
+    // Messages to the recipient, oldest first.
+    public synchronized List<MessageData.messageData> findMessagesByRecipient(String recipient) {
+        long start = System.nanoTime();
+        List<MessageData.messageData> found = withCold(timeIndex.toRecipientBetween(recipient, Long.MIN_VALUE, Long.MAX_VALUE),
+                tier -> tier.withRecipient(recipient), msg -> recipient.equals(msg.getRecipient()));
+        metrics.recordLatency("searchMessagesByRecipient", System.nanoTime() - start);
+        return found;
+    }
+
+    // Messages to the recipient created in [from, to) (epoch millis), oldest first.
+    public synchronized List<MessageData.messageData> findMessagesByRecipient(String recipient, long from, long to) {
+        long start = System.nanoTime();
+        List<MessageData.messageData> found = withCold(timeIndex.toRecipientBetween(recipient, from, to),
+                tier -> tier.withRecipient(recipient).and(tier.createdBetween(from, to)),
+                msg -> recipient.equals(msg.getRecipient()) && msg.getCreatedAt() >= from && msg.getCreatedAt() < to);
+        metrics.recordLatency("searchMessagesByRecipientAndTime", System.nanoTime() - start);
+        return found;
+    }
+
+    // Messages in any list created in [from, to), oldest first.
+    public List<MessageData.messageData> findMessagesCreatedBetween(long from, long to) {
+        return findMessagesCreatedBetween(from, to, Integer.MAX_VALUE);
+    }
+
+    public synchronized List<MessageData.messageData> findMessagesCreatedBetween(long from, long to, int limit) {
+        long start = System.nanoTime();
+        List<MessageData.messageData> found = withCold(timeIndex.between(from, to, limit), tier -> tier.createdBetween(from, to),
+                msg -> msg.getCreatedAt() >= from && msg.getCreatedAt() < to);
+        if (found.size() > limit) {
+            found = new ArrayList<>(found.subList(0, limit));
+        }
+        metrics.recordLatency("searchMessagesByTime", System.nanoTime() - start);
+        return found;
+    }
+
+    // ---------- Conversations ----------
+
+    // The last (at most) n messages between a and b in either direction, in any list, oldest first.
+    // Messages are in the order they were added, so stored messages reloaded from the file come
+    // after ones sent since; spilled ones, in the order they were spilled, before all of them.
+    public synchronized List<MessageData.messageData> getConversation(String a, String b, int n) {
+        long start = System.nanoTime();
+        List<MessageData.messageData> found = conversations.last(a, b, Math.max(n, 0));
+        if (found.size() < n && coldTier != null) {
+            ConversationIndex.Participants participants = new ConversationIndex.Participants(a, b);
+            List<MessageData.messageData> spilled = readColdWhere(tier -> tier.between(a, b),
+                    msg -> participants.equals(new ConversationIndex.Participants(msg.getSender(), msg.getRecipient())));
+            List<MessageData.messageData> all = new ArrayList<>(spilled.subList(Math.max(0, spilled.size() - (n - found.size())),
+                    spilled.size()));
+            all.addAll(found);
+            found = all;
+        }
+        metrics.recordLatency("conversation.last", System.nanoTime() - start);
+        return found;
+    }
+
+    // The (at most) n conversations whose latest message was added most recently, newest first.
+    // Spilled messages count as older than any in memory, so conversations that were spilled entirely
+    // come after the rest, most recently spilled first.
+    public synchronized List<Conversation> getRecentConversations(int n) {
+        long start = System.nanoTime();
+        List<Conversation> recent = new ArrayList<>();
+        for (ConversationIndex.Conversation c : conversations.mostRecent(Math.max(n, 0))) {
+            recent.add(new Conversation(c.participants.first, c.participants.second, c.size, c.latest()));
+        }
+        if (coldTier != null && coldTier.size() > 0) {
+            addColdConversations(recent, n);
+        }
+        metrics.recordLatency("conversation.recent", System.nanoTime() - start);
+        return recent;
+    }
+
+    // ---------- Queries ----------
+
+    // Messages matching the query, read through the cheapest index the planner finds. The stream is
+    // lazy and works on copies or snapshots, so it can be consumed after the lock is released and
+    // concurrent changes never break it.
+    public Stream<MessageData.messageData> query(MessageQuery query) {
+        long start = System.nanoTime();
+        Stream<MessageData.messageData> found = planner.execute(query);
+        metrics.recordLatency("query.plan", System.nanoTime() - start);
+        return found;
+    }
+
+    // How query(...) would run, e.g. "INDEX recipient '+27831234567' (~12 rows) -> FILTER ...".
+    public String explain(MessageQuery query) {
+        return planner.explain(query);
+    }
+
+    synchronized int countWithId(String id) {
+        return idIndex.count(id);
+    }
+
+    synchronized List<MessageData.messageData> indexedWithId(String id) {
+        return idIndex.find(id);
+    }
+
+    // The first message with the id in the named list ("sent", "stored" or "disregarded"), or null.
+    // Messages spilled from that list are looked for too, after the ones in memory, and found as
+    // copies that removeMessages and changeStatus accept (see enableColdTier).
+    synchronized MessageData.messageData findInList(String id, String list) {
+        for (MessageData.messageData msg : idIndex.find(id)) {
+            PersistentList<MessageData.messageData> holding = listHolding(msg);
+            if (holding != null && nameOf(holding).equals(list)) {
+                return msg;
+            }
+        }
+        List<MessageData.messageData> spilled = readColdWhere(tier -> tier.withId(id).and(tier.inList(list)),
+                msg -> id.equals(msg.getId()));
+        return spilled.isEmpty() ? null : spilled.get(0);
+    }
+
+    synchronized int countToRecipient(String recipient) {
+        return timeIndex.countToRecipient(recipient);
+    }
+
+    synchronized long estimateCreatedBetween(long from, long to) {
+        return timeIndex.estimateBetween(from, to);
+    }
+
+    // Like findMessagesByRecipient and findMessagesCreatedBetween, but only the messages in memory;
+    // the planner reads spilled ones itself.
+    synchronized List<MessageData.messageData> hotToRecipient(String recipient, long from, long to) {
+        return timeIndex.toRecipientBetween(recipient, from, to);
+    }
+
+    synchronized List<MessageData.messageData> hotCreatedBetween(long from, long to) {
+        return timeIndex.between(from, to, Integer.MAX_VALUE);
+    }
+
+    // The list for "SENT", "PENDING" or "DISREGARDED", or null for any other status.
+    synchronized PersistentList.Snapshot<MessageData.messageData> listForStatus(String status) {
+        return switch (status) {
+            case "SENT", "PENDING", "DISREGARDED" -> listFor(status).snapshot();
+            default -> null;
+        };
+    }
+
+    public void showMessagesByRecipient(String recipient, List<MessageData.messageData> found) {
+        if (found.isEmpty()) {
+            showInfoMessage("No messages found for recipient '" + recipient + "'.",
+                    "Messages by Recipient");
+            return;
+        }
+
+        StringBuilder sb = new StringBuilder("--- Messages to: " + recipient + " ---\n");
+        for (MessageData.messageData msg : found) {
+            sb.append("Sender: ").append(msg.getSender()).append("\n")
+                    .append("ID: ").append(msg.getId()).append("\n")
+                    .append("Message: '").append(msg.getMessageText()).append("'\n")
+                    .append("Status: ").append(msg.getStatus()).append("\n---\n");
+        }
+        showScrollableMessage(sb.toString(), "Messages by Recipient", 500, 400);
+    }
+
+    public boolean deleteMessageByHash(String messageHash) {
+        return showDeletionResult(removeMessageByHash(messageHash));
+    }
+
+    // Removes the first message with the given hash without showing anything, and returns the
+    // name of the list it was removed from ("sent", "disregarded" or "stored"), or null.
+    public synchronized String removeMessageByHash(String messageHash) {
+        long start = System.nanoTime();
+        MessageEvents.Delete event = new MessageEvents.Delete();
+        event.begin();
+        String list = removeByHash(messageHash, event);
+        event.end();
+        if (event.shouldCommit()) {
+            event.messageHash = messageHash;
+            event.list = list;
+            event.commit();
+        }
+        metrics.recordLatency("deleteMessageByHash", System.nanoTime() - start);
+        return list;
+    }
+
+    public boolean showDeletionResult(String list) {
+        if (list == null) {
+            showInfoMessage("Message not found.", "Deletion Failed");
+            return false;
+        }
+        showInfoMessage("Message deleted from " + list + " messages.", "Deletion Successful");
+        return true;
+    }
+
+    // Removes the first message whose hash matches and returns the name of the list it was in,
+    // or null when nothing matched.
+    private String removeByHash(String messageHash, MessageEvents.Delete event) {
+        for (MessageData.messageData msg : sentMessages.snapshot()) {
+            if (msg.getHash().equalsIgnoreCase(messageHash)) {
+                sentMessages.remove(msg);
+                indexedMessages.remove(msg);
+                unindex(msg);
+                event.messageId = msg.getId();
+                notifyRemoved(msg, "sent");
+                return "sent";
+            }
+        }
+
+        for (MessageData.messageData msg : disregardedMessages.snapshot()) {
+            if (msg.getHash().equalsIgnoreCase(messageHash)) {
+                disregardedMessages.remove(msg);
+                unindex(msg);
+                event.messageId = msg.getId();
+                notifyRemoved(msg, "disregarded");
+                return "disregarded";
+            }
+        }
+
+        for (MessageData.messageData msg : storedMessages.snapshot()) {
+            if (msg.getHash().equalsIgnoreCase(messageHash)) {
+                storedMessages.remove(msg);
+                indexedMessages.remove(msg);
+                unindex(msg);
+                rewriteStoredMessagesJson();
+                event.messageId = msg.getId();
+                notifyRemoved(msg, "stored");
+                return "stored";
+            }
+        }
+        return removeColdByHash(messageHash, event);
+    }
+
+    public void displaySentMessagesReport() {
+        List<MessageData.messageData> sentMessages = sentWithCold();
+        if (sentMessages.isEmpty()) {
+            showInfoMessage("No sent messages to report.", "Sent Messages Report");
+            return;
+        }
+
+        StringBuilder sb = new StringBuilder("--- Full Report: Sent Messages ---\n");
+        for (MessageData.messageData msg : sentMessages) {
+            sb.append("Sender: ").append(msg.getSender()).append("\n")
+                    .append("Recipient: ").append(msg.getRecipient()).append("\n")
+                    .append("ID: ").append(msg.getId()).append("\n")
+                    .append("Message: ").append(msg.getMessageText()).append("\n")
+                    .append("Hash: ").append(msg.getHash()).append("\n")
+                    .append("Status: ").append(msg.getStatus()).append("\n")
+                    .append("----------------------------------\n");
+        }
+
+        showScrollableMessage(sb.toString(), "Sent Messages Report", 500, 400);
+    }
+
+    // ---------- Cold tier ----------
+
+    // Moves the oldest disregarded messages (and, with spillSent, the oldest sent ones) out of memory
+    // into an append-only file (see ColdTier) whenever their list's estimated size (MessageSizes)
+    // passes hotBudgetBytes, down to three quarters of it. Spilled messages are still messages of
+    // the store: every lookup and query (by id, hash, recipient, time, conversation, query()) and the
+    // sent-message reports include them, as copies read from the file, and counting them as older
+    // than any message in memory. Removals and status changes reach them too, whether by predicate
+    // or given such a copy, which is matched to its record by content; a status change brings the
+    // message back into memory. Only the list snapshots (getSentMessages() and the like), the hash
+    // and id lists and the memory figures are about memory alone. Listeners are not told about
+    // spilling, since the messages still exist. The file is emptied here and is not kept across
+    // restarts.
+    public synchronized void enableColdTier(Path file, long hotBudgetBytes, boolean spillSent) throws IOException {
+        if (hotBudgetBytes < 0) {
+            throw new IllegalArgumentException("hotBudgetBytes must not be negative");
+        }
+        if (coldTier != null) {
+            disableColdTier();
+        }
+        coldTier = new ColdTier(file);
+        coldTierBudget = hotBudgetBytes;
+        coldTierSpillsSent = spillSent;
+        spillIfOverBudget();
+    }
+
+    // Brings every spilled message back into memory, at the end of its list, and closes the file.
+    public synchronized void disableColdTier() throws IOException {
+        ColdTier tier = coldTier;
+        if (tier == null) {
+            return;
+        }
+        List<MessageData.messageData> sent = new ArrayList<>();
+        List<MessageData.messageData> disregarded = new ArrayList<>();
+        tier.forEach((record, msg) -> ("sent".equals(tier.listOf(record)) ? sent : disregarded).add(msg));
+        coldTier = null;
+        tier.close();
+        sentMessages.addAll(sent);
+        indexedMessages.addAll(sent);
+        disregardedMessages.addAll(disregarded);
+        indexAll(sent);
+        indexAll(disregarded);
+    }
+
+    public int getColdMessageCount() {
+        ColdTier tier = coldTier;
+        return tier == null ? 0 : tier.size();
+    }
+
+    // Copies of the spilled messages from "sent" or "disregarded" (both when null), oldest first.
+    public synchronized List<MessageData.messageData> readColdMessages(String list) {
+        List<MessageData.messageData> found = new ArrayList<>();
+        if (coldTier == null) {
+            return found;
+        }
+        ColdTier tier = coldTier;
+        try {
+            tier.forEach((record, msg) -> {
+                if (list == null || list.equals(tier.listOf(record))) {
+                    found.add(msg);
+                }
+            });
+        } catch (IOException e) {
+            showErrorMessage("Error reading spilled messages: " + e.getMessage(), "File Error");
+        }
+        return found;
+    }
+
+    private void spillIfOverBudget() {
+        if (coldTier == null) {
+            return;
+        }
+        spill(disregardedMessages, "disregarded");
+        if (coldTierSpillsSent) {
+            spill(sentMessages, "sent");
+        }
+    }
+
+    private void spill(PersistentList<MessageData.messageData> list, String name) {
+        if (list.weight() <= coldTierBudget) {
+            return;
+        }
+        long target = coldTierBudget / 4 * 3;
+        long weight = list.weight();
+        List<MessageData.messageData> oldest = new ArrayList<>();
+        for (MessageData.messageData msg : list.snapshot()) {
+            if (weight <= target) {
+                break;
+            }
+            oldest.add(msg);
+            weight -= MessageSizes.estimate(msg);
+        }
+        spill(list, name, oldest);
+    }
+
+    // Moves these messages, the oldest of the list, to the cold tier. Returns false, leaving them in
+    // memory, when the file cannot be written.
+    private boolean spill(PersistentList<MessageData.messageData> list, String name,
+                          List<MessageData.messageData> oldest) {
+        long start = System.nanoTime();
+        try {
+            coldTier.append(oldest, name);
+        } catch (IOException e) {
+            showErrorMessage("Error spilling " + name + " messages: " + e.getMessage(), "File Error");
+            return false; // They stay in memory
+        }
+        for (MessageData.messageData msg : oldest) {
+            list.remove(msg);
+            if (list == sentMessages) {
+                indexedMessages.remove(msg);
+            }
+            unindex(msg);
+        }
+        metrics.add("coldTier.spilled", oldest.size());
+        metrics.recordLatency("coldTier.spill", System.nanoTime() - start);
+        return true;
+    }
+
+    // Removes the first spilled message with the hash; returns the list it was spilled from, or null.
+    private String removeColdByHash(String messageHash, MessageEvents.Delete event) {
+        if (coldTier == null) {
+            return null;
+        }
+        try {
+            int record = coldTier.firstWithHash(messageHash);
+            if (record < 0) {
+                return null;
+            }
+            MessageData.messageData msg = coldTier.read(record);
+            String list = coldTier.listOf(record);
+            coldTier.remove(record);
+            coldTier.compact();
+            event.messageId = msg.getId();
+            notifyRemoved(msg, list);
+            return list;
+        } catch (IOException e) {
+            showErrorMessage("Error deleting a spilled message: " + e.getMessage(), "File Error");
+            return null;
+        }
+    }
+
+    // Removes every spilled message the predicate matches, reading the whole file once.
+    private int removeColdWhere(Predicate<MessageData.messageData> predicate) {
+        if (coldTier == null) {
+            return 0;
+        }
+        ColdTier tier = coldTier;
+        List<Integer> records = new ArrayList<>();
+        List<MessageData.messageData> matches = new ArrayList<>();
+        try {
+            tier.forEach((record, msg) -> {
+                if (predicate.test(msg)) {
+                    records.add(record);
+                    matches.add(msg);
+                }
+            });
+            for (int i = 0; i < records.size(); i++) {
+                String list = tier.listOf(records.get(i));
+                tier.remove(records.get(i));
+                notifyRemoved(matches.get(i), list);
+            }
+            tier.compact();
+        } catch (IOException e) {
+            showErrorMessage("Error deleting spilled messages: " + e.getMessage(), "File Error");
+        }
+        metrics.add("store.removed", records.size());
+        return records.size();
+    }
+
+    private MessageData.messageData readCold(ColdLookup lookup) {
+        try {
+            int record = lookup.find(coldTier);
+            return record < 0 ? null : coldTier.read(record);
+        } catch (IOException e) {
+            showErrorMessage("Error reading spilled messages: " + e.getMessage(), "File Error");
+            return null;
+        }
+    }
+
+    private interface ColdLookup {
+        int find(ColdTier tier) throws IOException;
+    }
+
+    // Copies of the spilled messages that pass the test, in the order they were spilled. Only the
+    // records the candidates pick from the tier's index are read. Empty without a cold tier.
+    synchronized List<MessageData.messageData> readColdWhere(Function<ColdTier, IntPredicate> candidates,
+                                                            Predicate<? super MessageData.messageData> test) {
+        List<MessageData.messageData> found = new ArrayList<>();
+        ColdTier tier = coldTier;
+        if (tier == null || tier.size() == 0) {
+            return found;
+        }
+        try {
+            tier.forEach(candidates.apply(tier), (record, msg) -> {
+                if (test.test(msg)) {
+                    found.add(msg);
+                }
+            });
+        } catch (IOException e) {
+            showErrorMessage("Error reading spilled messages: " + e.getMessage(), "File Error");
+        }
+        return found;
+    }
+
+    // The in-memory matches (oldest first) and the spilled ones, merged by creation time.
+    private List<MessageData.messageData> withCold(List<MessageData.messageData> hot,
+                                                   Function<ColdTier, IntPredicate> candidates,
+                                                   Predicate<MessageData.messageData> test) {
+        List<MessageData.messageData> cold = readColdWhere(candidates, test);
+        if (cold.isEmpty()) {
+            return hot;
+        }
+        cold.addAll(hot);
+        cold.sort(Comparator.comparingLong(MessageData.messageData::getCreatedAt)); // Stable: spilled first on ties
+        return cold;
+    }
+
+    // For each copy, the live spilled record it was read from, or -1. Copies match records with the
+    // same id, hash, text, sender, recipient and creation time; two copies of one message match two
+    // records only if it was spilled twice over.
+    private int[] matchColdCopies(List<MessageData.messageData> copies) {
+        int[] records = new int[copies.size()];
+        Arrays.fill(records, -1);
+        Map<String, List<Integer>> waiting = new HashMap<>(); // Id -> copies not matched yet
+        for (int i = 0; i < copies.size(); i++) {
+            waiting.computeIfAbsent(copies.get(i).getId(), id -> new ArrayList<>()).add(i);
+        }
+        try {
+            coldTier.forEach(coldTier.withAnyId(waiting.keySet()), (record, msg) -> {
+                List<Integer> candidates = waiting.getOrDefault(msg.getId(), List.of());
+                for (Iterator<Integer> it = candidates.iterator(); it.hasNext(); ) {
+                    int i = it.next();
+                    if (sameMessage(copies.get(i), msg)) {
+                        records[i] = record;
+                        it.remove();
+                        return;
+                    }
+                }
+            });
+        } catch (IOException e) {
+            showErrorMessage("Error reading spilled messages: " + e.getMessage(), "File Error");
+        }
+        return records;
+    }
+
+    private static boolean sameMessage(MessageData.messageData a, MessageData.messageData b) {
+        return a.getCreatedAt() == b.getCreatedAt() && Objects.equals(a.getId(), b.getId())
+                && Objects.equals(a.getHash(), b.getHash()) && Objects.equals(a.getMessageText(), b.getMessageText())
+                && Objects.equals(a.getSender(), b.getSender()) && Objects.equals(a.getRecipient(), b.getRecipient());
+    }
+
+    // Removes the spilled messages these copies were read from, adding each copy to the list for the
+    // list it was spilled from.
+    private void removeColdCopies(List<MessageData.messageData> copies, List<MessageData.messageData> fromSent,
+                                  List<MessageData.messageData> fromDisregarded) {
+        if (copies.isEmpty()) {
+            return;
+        }
+        int[] records = matchColdCopies(copies);
+        for (int i = 0; i < copies.size(); i++) {
+            if (records[i] >= 0) {
+                ("sent".equals(coldTier.listOf(records[i])) ? fromSent : fromDisregarded).add(copies.get(i));
+                coldTier.remove(records[i]);
+            }
+        }
+        compactColdTier();
+    }
+
+    // Brings the spilled messages these copies were read from back into memory, at the end of their
+    // lists and as the copies, so a status change can move them. Ones the change would skip (already
+    // in the target list, or not in onlyFrom) stay spilled.
+    private void unspill(Collection<MessageData.messageData> messages, PersistentList<MessageData.messageData> onlyFrom,
+                         PersistentList<MessageData.messageData> target) {
+        List<MessageData.messageData> copies = new ArrayList<>();
+        for (MessageData.messageData msg : messages) {
+            if (listHolding(msg) == null) {
+                copies.add(msg);
+            }
+        }
+        if (copies.isEmpty()) {
+            return;
+        }
+        int[] records = matchColdCopies(copies);
+        for (int i = 0; i < copies.size(); i++) {
+            if (records[i] < 0) {
+                continue;
+            }
+            PersistentList<MessageData.messageData> list =
+                    "sent".equals(coldTier.listOf(records[i])) ? sentMessages : disregardedMessages;
+            if (list == target || (onlyFrom != null && list != onlyFrom)) {
+                continue;
+            }
+            MessageData.messageData msg = copies.get(i);
+            coldTier.remove(records[i]);
+            list.add(msg);
+            if (list == sentMessages) {
+                indexedMessages.add(msg);
+            }
+            index(msg);
+        }
+        compactColdTier();
+    }
+
+    private void compactColdTier() {
+        try {
+            coldTier.compact();
+        } catch (IOException e) {
+            showErrorMessage("Error compacting spilled messages: " + e.getMessage(), "File Error");
+        }
+    }
+
+    // Adds spilled messages to the counts of the listed conversations and, while there is room, lists
+    // the conversations that were spilled entirely. Spilled messages are counted by the fingerprints
+    // of their participants (see ColdTier), read back only for the conversations listed.
+    private void addColdConversations(List<Conversation> recent, int n) {
+        Map<Long, int[]> spilled = new HashMap<>(); // Participants key -> {messages, latest record}
+        for (int record = 0; record < coldTier.recordCount(); record++) {
+            if (coldTier.isLive(record)) {
+                int[] entry = spilled.computeIfAbsent(coldTier.participantsKey(record), key -> new int[2]);
+                entry[0]++;
+                entry[1] = record;
+            }
+        }
+        for (int i = 0; i < recent.size(); i++) {
+            Conversation c = recent.get(i);
+            int[] entry = spilled.remove(ColdTier.participantsKey(c.participantA, c.participantB));
+            if (entry != null) {
+                recent.set(i, new Conversation(c.participantA, c.participantB, c.messageCount + entry[0], c.lastMessage));
+            }
+        }
+        List<int[]> byLatest = new ArrayList<>(spilled.values());
+        byLatest.sort((x, y) -> Integer.compare(y[1], x[1]));
+        for (int[] entry : byLatest) {
+            if (recent.size() >= n) {
+                return;
+            }
+            MessageData.messageData latest = readCold(tier -> entry[1]);
+            if (latest == null) {
+                return;
+            }
+            ConversationIndex.Participants participants =
+                    new ConversationIndex.Participants(latest.getSender(), latest.getRecipient());
+            if (conversations.last(participants.first, participants.second, 1).isEmpty()) {
+                recent.add(new Conversation(participants.first, participants.second, entry[0], latest));
+            }
+        }
+    }
+
+    // The sent messages, spilled ones (the oldest) first.
+    private List<MessageData.messageData> sentWithCold() {
+        List<MessageData.messageData> sent = readColdMessages("sent");
+        sent.addAll(sentMessages.snapshot());
+        return sent;
+    }
+
+    // ---------- Memory ----------
+
+    // What adding a message does when it would take the estimated memory use past the budget.
+    public enum MemoryPolicy {
+        // Refuse the message (see the add methods).
+        REJECT,
+        // Move the oldest disregarded, then sent, messages to the cold tier first; needs
+        // enableColdTier, and rejects without it.
+        SPILL,
+        // Remove the oldest disregarded, then sent, messages first, telling listeners as
+        // removeMessages does.
+        EVICT
+    }
+
+    public static class MemoryBudgetExceededException extends IllegalStateException {
+        public MemoryBudgetExceededException(String message) {
+            super(message);
+        }
+    }
+
+    // Caps the estimated heap held by the lists and indexes (see getMemoryUsage). SPILL and EVICT
+    // make room an eighth of the budget beyond what the message needs, so they run once per many
+    // adds, and only ever take disregarded and sent messages: stored ones are pending sends, kept
+    // in the file, and are never dropped for memory. When that does not free enough, the message is
+    // rejected. Lowering the budget below current use reclaims right away under SPILL and EVICT.
+    // Loading the stored-messages file is not limited. Long.MAX_VALUE (the default) turns it off.
+    public synchronized void setMemoryBudget(long bytes, MemoryPolicy policy) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException("bytes must not be negative");
+        }
+        memoryBudget = bytes;
+        memoryPolicy = Objects.requireNonNull(policy, "policy");
+        long used = memoryUsed();
+        if (used > bytes && policy != MemoryPolicy.REJECT) {
+            reclaim(used - bytes + bytes / 8);
+        }
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    public MemoryPolicy getMemoryPolicy() {
+        return memoryPolicy;
+    }
+
+    // Estimated heap held by each list and index, in bytes, and their "total". The lists count their
+    // messages and entries; the indexes, and the cold tier's index, only their own structures. The
+    // same figures are the "memory.*" gauges of getMetrics().
+    public synchronized Map<String, Long> getMemoryUsage() {
+        Map<String, Long> usage = new LinkedHashMap<>();
+        memoryComponents().forEach((name, bytes) -> usage.put(name, bytes.getAsLong()));
+        usage.put("total", memoryUsed());
+        return usage;
+    }
+
+    private Map<String, LongSupplier> memoryComponents() {
+        Map<String, LongSupplier> components = new LinkedHashMap<>();
+        components.put("sentMessages", () -> listBytes(sentMessages));
+        components.put("disregardedMessages", () -> listBytes(disregardedMessages));
+        components.put("storedMessages", () -> listBytes(storedMessages));
+        components.put("indexedMessages", () -> indexedMessages.size() * MessageSizes.LIST_ENTRY_BYTES);
+        components.put("timeIndex", timeIndex::estimatedBytes);
+        components.put("idIndex", idIndex::estimatedBytes);
+        components.put("conversationIndex", conversations::estimatedBytes);
+        components.put("coldTier", () -> {
+            ColdTier tier = coldTier;
+            return tier == null ? 0 : tier.indexBytes();
+        });
+        return components;
+    }
+
+    // O(1): every part keeps its size as it changes.
+    private long memoryUsed() {
+        ColdTier tier = coldTier;
+        return listBytes(sentMessages) + listBytes(disregardedMessages) + listBytes(storedMessages)
+                + indexedMessages.size() * MessageSizes.LIST_ENTRY_BYTES + timeIndex.estimatedBytes()
+                + idIndex.estimatedBytes() + conversations.estimatedBytes() + (tier == null ? 0 : tier.indexBytes());
+    }
+
+    private static long listBytes(PersistentList<MessageData.messageData> list) {
+        return list.weight() + list.size() * MessageSizes.LIST_ENTRY_BYTES;
+    }
+
+    // What adding the message costs: itself, its list entry (two with the hash and id lists) and its
+    // index entries.
+    private static long cost(MessageData.messageData msg, boolean indexed) {
+        return MessageSizes.estimate(msg) + (indexed ? 2 : 1) * MessageSizes.LIST_ENTRY_BYTES
+                + MessageSizes.INDEX_ENTRY_BYTES;
+    }
+
+    // How many of the messages, from the first, fit in the budget, after reclaiming room for all of
+    // them under SPILL or EVICT. Counts the rest as rejected.
+    private int admit(List<MessageData.messageData> messages, boolean indexed) {
+        if (memoryBudget == Long.MAX_VALUE) {
+            return messages.size();
+        }
+        long needed = 0;
+        for (MessageData.messageData msg : messages) {
+            needed += cost(msg, indexed);
+        }
+        long used = memoryUsed();
+        // Spilling grows the cold tier's index, so one round may not free enough
+        while (used + needed > memoryBudget && memoryPolicy != MemoryPolicy.REJECT
+                && reclaim(used + needed - memoryBudget + memoryBudget / 8)) {
+            used = memoryUsed();
+        }
+        int fit = fitting(messages, indexed, memoryBudget - used);
+        if (fit < messages.size()) {
+            metrics.add("memory.rejected", messages.size() - fit);
+        }
+        return fit;
+    }
+
+    // How many of the messages, from the first, admit could take if SPILL or EVICT reclaimed every
+    // message they may. Changes nothing, so it can come before checks that must not be undone.
+    private int couldAdmit(List<MessageData.messageData> messages, boolean indexed) {
+        if (memoryBudget == Long.MAX_VALUE) {
+            return messages.size();
+        }
+        boolean reclaims = memoryPolicy == MemoryPolicy.EVICT || (memoryPolicy == MemoryPolicy.SPILL && coldTier != null);
+        long reclaimable = reclaims ? listBytes(disregardedMessages) + listBytes(sentMessages) : 0;
+        return fitting(messages, indexed, memoryBudget - memoryUsed() + reclaimable);
+    }
+
+    private static int fitting(List<MessageData.messageData> messages, boolean indexed, long room) {
+        int fit = 0;
+        for (MessageData.messageData msg : messages) {
+            long bytes = cost(msg, indexed);
+            if (bytes > room) {
+                break;
+            }
+            room -= bytes;
+            fit++;
+        }
+        return fit;
+    }
+
+    private void requireRoom(MessageData.messageData msg, boolean indexed) {
+        if (admit(List.of(msg), indexed) == 0) {
+            throw budgetExceeded(msg);
+        }
+    }
+
+    private MemoryBudgetExceededException budgetExceeded(MessageData.messageData msg) {
+        return new MemoryBudgetExceededException("Message " + msg.getId() + " does not fit in the memory budget of "
+                + memoryBudget + " bytes (" + memoryUsed() + " in use)");
+    }
+
+    // An add can take memory use a little past what admit counted, when a table it grows doubles; under
+    // SPILL and EVICT this brings it back under the budget.
+    private void enforceMemoryBudget() {
+        long used = memoryUsed();
+        if (used > memoryBudget && memoryPolicy != MemoryPolicy.REJECT) {
+            reclaim(used - memoryBudget + memoryBudget / 8);
+        }
+    }
+
+    // Frees about this many bytes under SPILL or EVICT, oldest disregarded messages first, then the
+    // oldest sent ones. Returns whether it freed anything.
+    private boolean reclaim(long bytes) {
+        if (memoryPolicy == MemoryPolicy.SPILL && coldTier == null) {
+            return false;
+        }
+        long start = System.nanoTime();
+        boolean freed = false;
+        for (PersistentList<MessageData.messageData> list : List.of(disregardedMessages, sentMessages)) {
+            List<MessageData.messageData> oldest = new ArrayList<>();
+            for (MessageData.messageData msg : list.snapshot()) {
+                if (bytes <= 0) {
+                    break;
+                }
+                oldest.add(msg);
+                bytes -= cost(msg, list == sentMessages);
+            }
+            if (oldest.isEmpty()) {
+                continue;
+            }
+            if (memoryPolicy == MemoryPolicy.SPILL) {
+                if (!spill(list, nameOf(list), oldest)) {
+                    break;
+                }
+                metrics.add("memory.spilled", oldest.size());
+            } else {
+                removeMessages(oldest);
+                metrics.add("memory.evicted", oldest.size());
+            }
+            freed = true;
+        }
+        metrics.recordLatency("memory.reclaim", System.nanoTime() - start);
+        return freed;
+    }
+
+    // ---------- Utilities ----------
+
+    public synchronized Optional<MessageData.messageData> findMessageByHash(String hash) {
+        long start = System.nanoTime();
+        Optional<MessageData.messageData> found = hotMessages().stream()
+                .filter(msg -> msg.getHash().equalsIgnoreCase(hash))
+                .findFirst();
+        if (found.isEmpty() && coldTier != null) {
+            found = Optional.ofNullable(readCold(tier -> tier.firstWithHash(hash)));
+        }
+        metrics.recordLatency("searchMessageByHash", System.nanoTime() - start);
+        return found;
+    }
+
+    public synchronized Optional<MessageData.messageData> findMessageById(String id) {
+        long start = System.nanoTime();
+        Optional<MessageData.messageData> found = Optional.ofNullable(idIndex.first(id));
+        if (found.isEmpty() && coldTier != null) {
+            found = Optional.ofNullable(readCold(tier -> tier.firstWithId(id)));
+        }
+        metrics.recordLatency("searchMessageById", System.nanoTime() - start);
+        return found;
+    }
+
+    private List<MessageData.messageData> hotMessages() {
+        List<MessageData.messageData> all = new ArrayList<>();
+        all.addAll(sentMessages.snapshot());
+        all.addAll(disregardedMessages.snapshot());
+        all.addAll(storedMessages.snapshot());
+        return all;
+    }
+
+    private void showInfoMessage(String message, String title) {
+        display.showInfo(message, title);
+    }
+
+    private void showErrorMessage(String message, String title) {
+        // Errors are counted per dialog title so they stay visible after the dialog is dismissed.
+        metrics.increment("errors.total");
+        metrics.increment("errors." + title.toLowerCase(Locale.ROOT).replace(' ', '_'));
+        display.showError(message, title);
+    }
+
+    private void showScrollableMessage(String content, String title, int width, int height) {
+        display.showScrollable(content, title, width, height);
+    }
+
+    // ---------- Settings ----------
+
+    public boolean isParallelLoading() {
+        return parallelLoading;
+    }
+
+    // When enabled, loadStoredMessagesFromJson parses the file on all cores (see ParallelMessageLoader).
+    public void setParallelLoading(boolean parallelLoading) {
+        this.parallelLoading = parallelLoading;
+    }
+
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    // Limits how fast each sender can send; null (the default) means unlimited.
+    public void setRateLimiter(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    // Thrown by addSentMessage for a sender over the rate limit; see MemoryBudgetExceededException
+    // for the other reason a send is refused.
+    public static class RateLimitedException extends IllegalStateException {
+        public RateLimitedException(String message) {
+            super(message);
+        }
+    }
+
+    public MessageDisplay getDisplay() {
+        return display;
+    }
+
+    // Where the show/display methods and error reports go; the console by default.
+    public void setDisplay(MessageDisplay display) {
+        this.display = display == null ? MessageDisplay.CONSOLE : display;
+    }
+
+    // Loading from the file replaces the stored list without notifying listeners.
+    public void addChangeListener(MessageChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeChangeListener(MessageChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    // ---------- Getters ----------
+
+    public String getStorageFile() {
+        return storageFile;
+    }
+
+    public MetricsRegistry getMetrics() {
+        return metrics;
+    }
+
+    // What the last load of the stored-messages file verified and repaired; null before the first load.
+    public StorageRecovery.Report getLastRecovery() {
+        return lastRecovery;
+    }
+
+    // The list getters take no lock and cost O(1): each returns an immutable snapshot in insertion
+    // order that later changes never show up in. Page through one with pageAfter, e.g.
+    //   PersistentList.Page<MessageData.messageData> page = getSentMessages().pageAfter(cursor, 50);
+    // and pass page.getNextCursor() next time; cursors stay valid across snapshots. Use snapshot()
+    // to see all three message lists at the same instant.
+    public PersistentList.Snapshot<MessageData.messageData> getSentMessages() {
+        return sentMessages.snapshot();
+    }
+
+    public PersistentList.Snapshot<MessageData.messageData> getDisregardedMessages() {
+        return disregardedMessages.snapshot();
+    }
+
+    public PersistentList.Snapshot<MessageData.messageData> getStoredMessages() {
+        return storedMessages.snapshot();
+    }
+
+    // Hashes and ids of the sent and stored messages.
+    public PersistentList.Snapshot<String> getMessageHashes() {
+        return indexedMessages.snapshot().map(MessageData.messageData::getHash);
+    }
+
+    public PersistentList.Snapshot<String> getMessageIDs() {
+        return indexedMessages.snapshot().map(MessageData.messageData::getId);
+    }
+
+    public synchronized Snapshot snapshot() {
+        return new Snapshot(sentMessages.snapshot(), storedMessages.snapshot(), disregardedMessages.snapshot());
+    }
+
+    // All three message lists as of one moment; a message is in exactly one of them.
+    public static final class Snapshot {
+        private final PersistentList.Snapshot<MessageData.messageData> sent;
+        private final PersistentList.Snapshot<MessageData.messageData> stored;
+        private final PersistentList.Snapshot<MessageData.messageData> disregarded;
+
+        private Snapshot(PersistentList.Snapshot<MessageData.messageData> sent,
+                         PersistentList.Snapshot<MessageData.messageData> stored,
+                         PersistentList.Snapshot<MessageData.messageData> disregarded) {
+            this.sent = sent;
+            this.stored = stored;
+            this.disregarded = disregarded;
+        }
+
+        public PersistentList.Snapshot<MessageData.messageData> getSentMessages() {
+            return sent;
+        }
+
+        public PersistentList.Snapshot<MessageData.messageData> getStoredMessages() {
+            return stored;
+        }
+
+        public PersistentList.Snapshot<MessageData.messageData> getDisregardedMessages() {
+            return disregarded;
+        }
+    }
+
+    // One conversation as of the call: its two participants (in no particular order), how many
+    // messages it has and the latest of them.
+    public static final class Conversation {
+        private final String participantA;
+        private final String participantB;
+        private final int messageCount;
+        private final MessageData.messageData lastMessage;
+
+        private Conversation(String participantA, String participantB, int messageCount,
+                             MessageData.messageData lastMessage) {
+            this.participantA = participantA;
+            this.participantB = participantB;
+            this.messageCount = messageCount;
+            this.lastMessage = lastMessage;
+        }
+
+        public String getParticipantA() {
+            return participantA;
+        }
+
+        public String getParticipantB() {
+            return participantB;
+        }
+
+        public int getMessageCount() {
+            return messageCount;
+        }
+
+        public MessageData.messageData getLastMessage() {
+            return lastMessage;
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Predicate;
+
+// A question about messages, answered by MessageProcessor.query as a lazy Stream.
+// Conditions test id, sender, recipient, status, text, text length and creation time and combine
+// with and/or; a query adds an order and a limit. Queries and conditions are immutable, so they can
+// be built once and reused, e.g.
+//   MessageQuery.where(MessageQuery.recipientIs("+27831234567"))
+//           .and(MessageQuery.statusIs("SENT").or(MessageQuery.statusIs("PENDING")))
+//           .orderBy(MessageQuery.Order.NEWEST_FIRST)
+//           .limit(20);
+// How a query is run (which index, or a scan) is up to the planner; see MessageProcessor.explain.
+public final class MessageQuery {
+
+    public enum Order {
+        ANY(null),                                     // Whatever order is cheapest
+        OLDEST_FIRST(Comparator.comparingLong(MessageData.messageData::getCreatedAt)),
+        NEWEST_FIRST(Comparator.comparingLong(MessageData.messageData::getCreatedAt).reversed()),
+        SHORTEST_FIRST(Comparator.comparingInt(MessageQuery::textLength)),
+        LONGEST_FIRST(Comparator.comparingInt(MessageQuery::textLength).reversed());
+
+        private final Comparator<MessageData.messageData> comparator;
+
+        Order(Comparator<MessageData.messageData> comparator) {
+            this.comparator = comparator;
+        }
+
+        Comparator<MessageData.messageData> comparator() {
+            return comparator;
+        }
+    }
+
+    private final Condition condition;
+    private final Order order;
+    private final long limit;
+
+    private MessageQuery(Condition condition, Order order, long limit) {
+        this.condition = condition;
+        this.order = order;
+        this.limit = limit;
+    }
+
+    public static MessageQuery all() {
+        return new MessageQuery(Everything.INSTANCE, Order.ANY, Long.MAX_VALUE);
+    }
+
+    public static MessageQuery where(Condition condition) {
+        return new MessageQuery(condition, Order.ANY, Long.MAX_VALUE);
+    }
+
+    public MessageQuery and(Condition other) {
+        return new MessageQuery(condition.and(other), order, limit);
+    }
+
+    public MessageQuery or(Condition other) {
+        return new MessageQuery(condition.or(other), order, limit);
+    }
+
+    public MessageQuery orderBy(Order order) {
+        return new MessageQuery(condition, order, limit);
+    }
+
+    public MessageQuery limit(long limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("limit must not be negative");
+        }
+        return new MessageQuery(condition, order, limit);
+    }
+
+    public Condition getCondition() {
+        return condition;
+    }
+
+    public Order getOrder() {
+        return order;
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+
+    @Override
+    public String toString() {
+        return "WHERE " + condition + (order == Order.ANY ? "" : " ORDER " + order)
+                + (limit == Long.MAX_VALUE ? "" : " LIMIT " + limit);
+    }
+
+    // ---------- Conditions ----------
+
+    public static Condition idIs(String id) {
+        return new FieldEquals(Field.ID, id);
+    }
+
+    public static Condition senderIs(String sender) {
+        return new FieldEquals(Field.SENDER, sender);
+    }
+
+    public static Condition recipientIs(String recipient) {
+        return new FieldEquals(Field.RECIPIENT, recipient);
+    }
+
+    // "SENT", "PENDING" (stored) or "DISREGARDED".
+    public static Condition statusIs(String status) {
+        return new FieldEquals(Field.STATUS, status);
+    }
+
+    // Case-insensitive substring match on the message text.
+    public static Condition textContains(String fragment) {
+        return new TextContains(fragment);
+    }
+
+    // Text length in [min, max] characters.
+    public static Condition lengthBetween(int min, int max) {
+        return new LengthBetween(min, max);
+    }
+
+    // Created in [from, to), epoch millis.
+    public static Condition createdBetween(long from, long to) {
+        return new CreatedBetween(from, to);
+    }
+
+    public static Condition allOf(Condition... conditions) {
+        return new AllOf(Arrays.asList(conditions));
+    }
+
+    public static Condition anyOf(Condition... conditions) {
+        return new AnyOf(Arrays.asList(conditions));
+    }
+
+    enum Field { ID, SENDER, RECIPIENT, STATUS }
+
+    public abstract static class Condition implements Predicate<MessageData.messageData> {
+
+        public Condition and(Condition other) {
+            return allOf(this, other);
+        }
+
+        public Condition or(Condition other) {
+            return anyOf(this, other);
+        }
+    }
+
+    static final class Everything extends Condition {
+        static final Everything INSTANCE = new Everything();
+
+        @Override
+        public boolean test(MessageData.messageData msg) {
+            return true;
+        }
+
+        @Override
+        public Condition and(Condition other) {
+            return other;
+        }
+
+        @Override
+        public String toString() {
+            return "TRUE";
+        }
+    }
+
+    static final class FieldEquals extends Condition {
+        final Field field;
+        final String value;
+
+        FieldEquals(Field field, String value) {
+            if (value == null) {
+                throw new IllegalArgumentException(field + " must not be null");
+            }
+            this.field = field;
+            this.value = value;
+        }
+
+        @Override
+        public boolean test(MessageData.messageData msg) {
+            return value.equals(switch (field) {
+                case ID -> msg.getId();
+                case SENDER -> msg.getSender();
+                case RECIPIENT -> msg.getRecipient();
+                case STATUS -> msg.getStatus();
+            });
+        }
+
+        @Override
+        public String toString() {
+            return field + " = '" + value + "'";
+        }
+    }
+
+    static final class TextContains extends Condition {
+        final String fragment;
+        private final String lowerFragment;
+
+        TextContains(String fragment) {
+            this.fragment = fragment;
+            this.lowerFragment = fragment.toLowerCase(Locale.ROOT);
+        }
+
+        @Override
+        public boolean test(MessageData.messageData msg) {
+            String text = msg.getMessageText();
+            return text != null && text.toLowerCase(Locale.ROOT).contains(lowerFragment);
+        }
+
+        @Override
+        public String toString() {
+            return "TEXT CONTAINS '" + fragment + "'";
+        }
+    }
+
+    static final class LengthBetween extends Condition {
+        final int min;
+        final int max;
+
+        LengthBetween(int min, int max) {
+            this.min = min;
+            this.max = max;
+        }
+
+        @Override
+        public boolean test(MessageData.messageData msg) {
+            int length = textLength(msg);
+            return length >= min && length <= max;
+        }
+
+        @Override
+        public String toString() {
+            return "LENGTH BETWEEN " + min + " AND " + max;
+        }
+    }
+
+    static final class CreatedBetween extends Condition {
+        final long from;
+        final long to;
+
+        CreatedBetween(long from, long to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public boolean test(MessageData.messageData msg) {
+            return msg.getCreatedAt() >= from && msg.getCreatedAt() < to;
+        }
+
+        @Override
+        public String toString() {
+            return "CREATED IN [" + from + ", " + to + ")";
+        }
+    }
+
+    static final class AllOf extends Condition {
+        final List<Condition> conditions;
+
+        AllOf(List<Condition> conditions) {
+            this.conditions = flatten(conditions, AllOf.class);
+        }
+
+        @Override
+        public boolean test(MessageData.messageData msg) {
+            for (Condition condition : conditions) {
+                if (!condition.test(msg)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return join(conditions, " AND ");
+        }
+    }
+
+    static final class AnyOf extends Condition {
+        final List<Condition> conditions;
+
+        AnyOf(List<Condition> conditions) {
+            this.conditions = flatten(conditions, AnyOf.class);
+        }
+
+        @Override
+        public boolean test(MessageData.messageData msg) {
+            for (Condition condition : conditions) {
+                if (condition.test(msg)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return join(conditions, " OR ");
+        }
+    }
+
+    // Nested ANDs (or ORs) become one flat list, so the planner sees every conjunct at once.
+    private static List<Condition> flatten(List<Condition> conditions, Class<? extends Condition> kind) {
+        List<Condition> flat = new ArrayList<>();
+        for (Condition condition : conditions) {
+            if (condition == null) {
+                throw new IllegalArgumentException("conditions must not be null");
+            }
+            if (kind == AllOf.class && condition instanceof AllOf all) {
+                flat.addAll(all.conditions);
+            } else if (kind == AnyOf.class && condition instanceof AnyOf any) {
+                flat.addAll(any.conditions);
+            } else if (!(kind == AllOf.class && condition == Everything.INSTANCE)) {
+                flat.add(condition);
+            }
+        }
+        return Collections.unmodifiableList(flat);
+    }
+
+    private static String join(List<Condition> conditions, String operator) {
+        StringBuilder sb = new StringBuilder("(");
+        for (int i = 0; i < conditions.size(); i++) {
+            sb.append(i == 0 ? "" : operator).append(conditions.get(i));
+        }
+        return sb.append(')').toString();
+    }
+
+    static int textLength(MessageData.messageData msg) {
+        return msg.getMessageText() == null ? 0 : msg.getMessageText().length();
+    }
+}
@@ -0,0 +1,330 @@
+package org.example;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// An immutable file of messages grouped into blocks that are Deflate-compressed independently, so
+// reading one message only inflates the block that holds it. An optional preset dictionary (see
+// trainDictionary) gives every block the field names and common texts up front, which is where
+// small blocks otherwise lose most of their compression.
+//
+// Layout (big-endian):
+//   "QCSEG001" | int dictionaryLength | dictionary | block... | index | long indexOffset
+//   block: the block's messages as UTF-8 JSON lines, deflated
+//   index: int blockCount, then per block
+//          long offset, int compressedLength, int rawLength, int records, long minCreatedAt, long maxCreatedAt
+public class MessageSegmentFile implements AutoCloseable {
+
+    static final int DEFAULT_BLOCK_RECORDS = 256;
+    static final int MAX_DICTIONARY_BYTES = 32 * 1024; // Deflate's window; anything earlier is never used
+    private static final byte[] MAGIC = "QCSEG001".getBytes(StandardCharsets.US_ASCII);
+    private static final int INDEX_ENTRY_BYTES = 8 + 4 + 4 + 4 + 8 + 8;
+
+    private final FileChannel channel;
+    private final byte[] dictionary;
+    private final long[] offsets;
+    private final int[] compressedLengths;
+    private final int[] rawLengths;
+    private final long[] firstRecord; // Number of the block's first record; one extra entry holds the total
+    private final long[] minCreatedAt;
+    private final long[] maxCreatedAt;
+    private int blocksInflated; // For tests: proves random reads touch one block
+
+    private MessageSegmentFile(FileChannel channel) throws IOException {
+        this.channel = channel;
+        long size = channel.size();
+        if (size < MAGIC.length + 4 + 4 + 8) {
+            throw new IOException("Not a message segment file (too short)");
+        }
+        byte[] magic = new byte[MAGIC.length];
+        readFully(ByteBuffer.wrap(magic), 0);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Not a message segment file (bad magic)");
+        }
+        ByteBuffer header = ByteBuffer.allocate(4);
+        readFully(header, MAGIC.length);
+        int dictionaryLength = header.flip().getInt();
+        if (dictionaryLength < 0 || dictionaryLength > MAX_DICTIONARY_BYTES) {
+            throw new IOException("Corrupt segment header");
+        }
+        this.dictionary = new byte[dictionaryLength];
+        readFully(ByteBuffer.wrap(dictionary), MAGIC.length + 4);
+
+        ByteBuffer footer = ByteBuffer.allocate(8);
+        readFully(footer, size - 8);
+        long indexOffset = footer.flip().getLong();
+        if (indexOffset < MAGIC.length + 4 + dictionaryLength || indexOffset > size - 12) {
+            throw new IOException("Corrupt segment footer");
+        }
+        ByteBuffer index = ByteBuffer.allocate((int) (size - 8 - indexOffset));
+        readFully(index, indexOffset);
+        index.flip();
+        int blocks = index.getInt();
+        if (blocks < 0 || index.remaining() != (long) blocks * INDEX_ENTRY_BYTES) {
+            throw new IOException("Corrupt segment index");
+        }
+        offsets = new long[blocks];
+        compressedLengths = new int[blocks];
+        rawLengths = new int[blocks];
+        firstRecord = new long[blocks + 1];
+        minCreatedAt = new long[blocks];
+        maxCreatedAt = new long[blocks];
+        for (int i = 0; i < blocks; i++) {
+            offsets[i] = index.getLong();
+            compressedLengths[i] = index.getInt();
+            rawLengths[i] = index.getInt();
+            firstRecord[i + 1] = firstRecord[i] + index.getInt();
+            minCreatedAt[i] = index.getLong();
+            maxCreatedAt[i] = index.getLong();
+        }
+    }
+
+    public static MessageSegmentFile open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return new MessageSegmentFile(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // ---------- Writing ----------
+
+    // Writes the messages in order, blockRecords per block. dictionary may be null. The file is
+    // written under a temporary name, fsynced and moved into place, and the move is made durable too,
+    // so readers never see half a segment and a segment that was written survives a crash.
+    public static void write(Path file, List<MessageData.messageData> messages, int blockRecords, byte[] dictionary)
+            throws IOException {
+        if (blockRecords < 1) {
+            throw new IllegalArgumentException("blockRecords must be at least 1");
+        }
+        byte[] dict = dictionary == null ? new byte[0] : dictionary;
+        if (dict.length > MAX_DICTIONARY_BYTES) {
+            dict = Arrays.copyOfRange(dict, dict.length - MAX_DICTIONARY_BYTES, dict.length);
+        }
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+        DataOutputStream index = new DataOutputStream(indexBytes);
+        int blocks = (messages.size() + blockRecords - 1) / blockRecords;
+        index.writeInt(blocks);
+
+        Deflater deflater = new Deflater();
+        try (FileOutputStream fileOut = new FileOutputStream(temp.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut))) {
+            out.write(MAGIC);
+            out.writeInt(dict.length);
+            out.write(dict);
+            long offset = MAGIC.length + 4 + dict.length;
+
+            for (int start = 0; start < messages.size(); start += blockRecords) {
+                List<MessageData.messageData> block = messages.subList(start, Math.min(start + blockRecords, messages.size()));
+                StringBuilder lines = new StringBuilder();
+                long min = Long.MAX_VALUE;
+                long max = Long.MIN_VALUE;
+                for (MessageData.messageData msg : block) {
+                    lines.append(MessageProcessor.toJson(msg)).append('\n');
+                    min = Math.min(min, msg.getCreatedAt());
+                    max = Math.max(max, msg.getCreatedAt());
+                }
+                byte[] raw = lines.toString().getBytes(StandardCharsets.UTF_8);
+                byte[] compressed = deflate(deflater, raw, dict);
+                out.write(compressed);
+
+                index.writeLong(offset);
+                index.writeInt(compressed.length);
+                index.writeInt(raw.length);
+                index.writeInt(block.size());
+                index.writeLong(min);
+                index.writeLong(max);
+                offset += compressed.length;
+            }
+            out.write(indexBytes.toByteArray());
+            out.writeLong(offset);
+            out.flush();
+            fileOut.getFD().sync();
+        } finally {
+            deflater.end();
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        MessageProcessor.syncDirectory(file);
+    }
+
+    private static byte[] deflate(Deflater deflater, byte[] raw, byte[] dictionary) {
+        deflater.reset();
+        if (dictionary.length > 0) {
+            deflater.setDictionary(dictionary);
+        }
+        deflater.setInput(raw);
+        deflater.finish();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length / 4 + 64);
+        byte[] buffer = new byte[8192];
+        while (!deflater.finished()) {
+            int n = deflater.deflate(buffer);
+            compressed.write(buffer, 0, n);
+        }
+        return compressed.toByteArray();
+    }
+
+    // Builds a preset dictionary from sample messages: the shape of a record (field names and
+    // typical values) plus the most repeated message texts. Deflate finds matches closer to the end
+    // of the dictionary more cheaply, so the most frequent texts go last.
+    public static byte[] trainDictionary(List<MessageData.messageData> sample, int maxBytes) {
+        int limit = Math.min(maxBytes, MAX_DICTIONARY_BYTES);
+        if (sample.isEmpty() || limit <= 0) {
+            return new byte[0];
+        }
+        Map<String, Integer> textCounts = new HashMap<>();
+        for (MessageData.messageData msg : sample) {
+            textCounts.merge(msg.getMessageText(), 1, Integer::sum);
+        }
+        List<Map.Entry<String, Integer>> repeated = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : textCounts.entrySet()) {
+            if (entry.getValue() > 1) {
+                repeated.add(entry);
+            }
+        }
+        repeated.sort(Map.Entry.comparingByValue()); // Least frequent first, most frequent last
+
+        StringBuilder dictionary = new StringBuilder();
+        dictionary.append(MessageProcessor.toJson(sample.get(0))).append('\n');
+        for (Map.Entry<String, Integer> entry : repeated) {
+            dictionary.append(JSONObject.quote(entry.getKey()));
+        }
+        byte[] bytes = dictionary.toString().getBytes(StandardCharsets.UTF_8);
+        return bytes.length <= limit ? bytes : Arrays.copyOfRange(bytes, bytes.length - limit, bytes.length);
+    }
+
+    // ---------- Reading ----------
+
+    public int blockCount() {
+        return offsets.length;
+    }
+
+    public long recordCount() {
+        return firstRecord[offsets.length];
+    }
+
+    // The record-th message of the file (0-based); only its block is read and inflated.
+    public MessageData.messageData get(long record) throws IOException {
+        if (record < 0 || record >= recordCount()) {
+            throw new IndexOutOfBoundsException("Record " + record + " of " + recordCount());
+        }
+        int block = Arrays.binarySearch(firstRecord, record);
+        if (block < 0) {
+            block = -block - 2; // The block that starts before the record
+        }
+        return readBlock(block).get((int) (record - firstRecord[block]));
+    }
+
+    public List<MessageData.messageData> readBlock(int block) throws IOException {
+        byte[] compressed = new byte[compressedLengths[block]];
+        readFully(ByteBuffer.wrap(compressed), offsets[block]);
+        byte[] raw = inflate(compressed, rawLengths[block]);
+        blocksInflated++;
+
+        List<MessageData.messageData> messages = new ArrayList<>();
+        String lines = new String(raw, StandardCharsets.UTF_8);
+        int lineStart = 0;
+        for (int i = 0; i < lines.length(); i++) {
+            if (lines.charAt(i) == '\n') {
+                try {
+                    messages.add(MessageProcessor.fromJson(new JSONObject(lines.substring(lineStart, i))));
+                } catch (JSONException e) {
+                    throw new IOException("Corrupt record in block " + block, e);
+                }
+                lineStart = i + 1;
+            }
+        }
+        return messages;
+    }
+
+    public List<MessageData.messageData> readAll() throws IOException {
+        List<MessageData.messageData> all = new ArrayList<>((int) recordCount());
+        for (int block = 0; block < offsets.length; block++) {
+            all.addAll(readBlock(block));
+        }
+        return all;
+    }
+
+    // Messages created in [from, to); blocks whose time range misses the window are not read.
+    public List<MessageData.messageData> readCreatedBetween(long from, long to) throws IOException {
+        List<MessageData.messageData> found = new ArrayList<>();
+        for (int block = 0; block < offsets.length; block++) {
+            if (maxCreatedAt[block] < from || minCreatedAt[block] >= to) {
+                continue;
+            }
+            for (MessageData.messageData msg : readBlock(block)) {
+                if (msg.getCreatedAt() >= from && msg.getCreatedAt() < to) {
+                    found.add(msg);
+                }
+            }
+        }
+        return found;
+    }
+
+    int getBlocksInflated() {
+        return blocksInflated;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private byte[] inflate(byte[] compressed, int rawLength) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            byte[] raw = new byte[rawLength];
+            int filled = 0;
+            while (filled < rawLength) {
+                int n = inflater.inflate(raw, filled, rawLength - filled);
+                if (n == 0) {
+                    if (inflater.needsDictionary()) {
+                        inflater.setDictionary(dictionary);
+                    } else if (inflater.finished() || inflater.needsInput()) {
+                        throw new IOException("Block is shorter than its index entry says");
+                    }
+                }
+                filled += n;
+            }
+            return raw;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt compressed block", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position + buffer.position());
+            if (n < 0) {
+                throw new IOException("Unexpected end of segment file");
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package org.example;
+
+// Rough retained heap of a message, for memory budgets rather than exact accounting. Assumes a
+// 64-bit JVM with compressed references and compact strings: a messageData is a 12-byte header,
+// six references and three longs (64 bytes once aligned), and each String a 24-byte object plus a
+// byte[] of a 16-byte header and one byte per Latin-1 character or two per other character, aligned
+// to 8. The status is one of a few shared constants and is not counted; strings shared between
+// messages (a sender's name, say) are counted for each of them.
+final class MessageSizes {
+
+    static final long MESSAGE_BYTES = 64;
+    // An entry of a PersistentList: a 40-byte treap node, a boxed sequence number and about two
+    // slots of the IdentityHashMap (kept between a third and two thirds full).
+    static final long LIST_ENTRY_BYTES = 40 + 16 + 16;
+    // A HashMap node and its share of the table.
+    static final long HASH_ENTRY_BYTES = 32 + 8;
+    // A TreeMap entry, its boxed key and a one-element ArrayList.
+    static final long TREE_ENTRY_BYTES = 40 + 16 + 24 + 24;
+    // What a message adds to the indexes: a tree entry in the time index and its recipient's, a slot
+    // in the id index and one in its conversation.
+    static final long INDEX_ENTRY_BYTES = 2 * TREE_ENTRY_BYTES + 12 + 8;
+
+    private MessageSizes() {
+    }
+
+    static long estimate(MessageData.messageData msg) {
+        return MESSAGE_BYTES + of(msg.getId()) + of(msg.getSender()) + of(msg.getRecipient())
+                + of(msg.getMessageText()) + of(msg.getHash());
+    }
+
+    static long of(String s) {
+        if (s == null) {
+            return 0;
+        }
+        int bytes = s.length();
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) > 0xFF) {
+                bytes = 2 * s.length();
+                break;
+            }
+        }
+        return 24 + align(16 + bytes);
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+}
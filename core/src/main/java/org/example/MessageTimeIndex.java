@@ -0,0 +1,178 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+// Messages ordered by creation time, overall and per recipient, for range scans such as
+// "messages to X in the last hour". Each scan walks only the entries inside the range.
+// Recipients in the "+" and 10 to 15 digits form are keyed by their long encoding (MessageKeys) in a
+// primitive map, so per-recipient lookups neither hash nor compare strings; others use a HashMap.
+// Not thread-safe; MessageProcessor only touches it while holding its own lock.
+class MessageTimeIndex {
+
+    private final NavigableMap<Long, List<MessageData.messageData>> all = new TreeMap<>();
+    private final LongObjectMap<Recipient> byRecipientKey = new LongObjectMap<>();
+    private final Map<String, Recipient> byOtherRecipient = new HashMap<>();
+    private int size;
+
+    // One recipient's messages by time, and how many there are.
+    private static final class Recipient {
+        final NavigableMap<Long, List<MessageData.messageData>> byTime = new TreeMap<>();
+        int count;
+    }
+
+    void add(MessageData.messageData msg) {
+        all.computeIfAbsent(msg.getCreatedAt(), time -> new ArrayList<>(1)).add(msg);
+        String recipient = msg.getRecipient();
+        long key = MessageKeys.recipientKey(recipient);
+        Recipient entry = key != MessageKeys.NONE
+                ? byRecipientKey.computeIfAbsent(key, k -> new Recipient())
+                : byOtherRecipient.computeIfAbsent(recipient, r -> new Recipient());
+        entry.byTime.computeIfAbsent(msg.getCreatedAt(), time -> new ArrayList<>(1)).add(msg);
+        entry.count++;
+        size++;
+    }
+
+    // Adds a batch. It is sorted by time once, and each map (the overall one and one per recipient)
+    // then takes its share in time order: see insertSorted. Messages with the same time stay in batch order.
+    void addAll(List<MessageData.messageData> batch) {
+        List<MessageData.messageData> sorted = new ArrayList<>(batch);
+        sorted.sort(Comparator.comparingLong(MessageData.messageData::getCreatedAt)); // Stable
+        insertSorted(all, sorted);
+
+        Map<Recipient, List<MessageData.messageData>> byRecipient = new IdentityHashMap<>();
+        for (MessageData.messageData msg : sorted) {
+            String recipient = msg.getRecipient();
+            long key = MessageKeys.recipientKey(recipient);
+            Recipient entry = key != MessageKeys.NONE
+                    ? byRecipientKey.computeIfAbsent(key, k -> new Recipient())
+                    : byOtherRecipient.computeIfAbsent(recipient, r -> new Recipient());
+            byRecipient.computeIfAbsent(entry, e -> new ArrayList<>()).add(msg);
+        }
+        byRecipient.forEach((entry, messages) -> {
+            insertSorted(entry.byTime, messages);
+            entry.count += messages.size();
+        });
+        size += batch.size();
+    }
+
+    // Removes this exact message object; other messages with the same time stay.
+    void remove(MessageData.messageData msg) {
+        if (removeFrom(all, msg)) {
+            size--;
+        }
+        String recipient = msg.getRecipient();
+        long key = MessageKeys.recipientKey(recipient);
+        Recipient entry = key != MessageKeys.NONE ? byRecipientKey.get(key) : byOtherRecipient.get(recipient);
+        if (entry != null && removeFrom(entry.byTime, msg) && --entry.count == 0) {
+            if (key != MessageKeys.NONE) {
+                byRecipientKey.remove(key);
+            } else {
+                byOtherRecipient.remove(recipient);
+            }
+        }
+    }
+
+    // Messages created in [from, to), oldest first, at most limit of them.
+    List<MessageData.messageData> between(long from, long to, int limit) {
+        return collect(all, from, to, limit);
+    }
+
+    List<MessageData.messageData> toRecipientBetween(String recipient, long from, long to) {
+        Recipient entry = recipient(recipient);
+        return entry == null ? new ArrayList<>() : collect(entry.byTime, from, to, Integer.MAX_VALUE);
+    }
+
+    int size() {
+        return size;
+    }
+
+    // Approximate heap held by the index, not counting the messages: a tree entry per distinct time
+    // overall and (at most) one per message in its recipient's map, plus the recipient entries.
+    long estimatedBytes() {
+        long recipients = byRecipientKey.size() + byOtherRecipient.size();
+        return (all.size() + (long) size) * MessageSizes.TREE_ENTRY_BYTES
+                + byRecipientKey.estimatedBytes() + recipients * (MessageSizes.HASH_ENTRY_BYTES + 48);
+    }
+
+    // Exact number of messages to the recipient, for the query planner.
+    int countToRecipient(String recipient) {
+        Recipient entry = recipient(recipient);
+        return entry == null ? 0 : entry.count;
+    }
+
+    private Recipient recipient(String recipient) {
+        long key = MessageKeys.recipientKey(recipient);
+        return key != MessageKeys.NONE ? byRecipientKey.get(key) : byOtherRecipient.get(recipient);
+    }
+
+    // Rough number of messages created in [from, to): the share of the indexed time span the range
+    // covers, assuming messages are spread evenly over it. Cheap enough for the query planner.
+    long estimateBetween(long from, long to) {
+        if (all.isEmpty() || from >= to) {
+            return 0;
+        }
+        long first = all.firstKey();
+        long last = all.lastKey();
+        long overlapFrom = Math.max(from, first);
+        long overlapTo = Math.min(to, last + 1);
+        if (overlapFrom >= overlapTo) {
+            return 0;
+        }
+        double share = (double) (overlapTo - overlapFrom) / (last + 1 - first);
+        return Math.max(1, Math.round(share * size));
+    }
+
+    private static List<MessageData.messageData> collect(NavigableMap<Long, List<MessageData.messageData>> index,
+                                                         long from, long to, int limit) {
+        List<MessageData.messageData> found = new ArrayList<>();
+        if (from >= to) {
+            return found;
+        }
+        for (List<MessageData.messageData> sameTime : index.subMap(from, true, to, false).values()) {
+            for (MessageData.messageData msg : sameTime) {
+                if (found.size() == limit) {
+                    return found;
+                }
+                found.add(msg);
+            }
+        }
+        return found;
+    }
+
+    // Adds messages sorted by time to the index, with one lookup per distinct time rather than per
+    // message. Messages go after any already there with the same time.
+    private static void insertSorted(NavigableMap<Long, List<MessageData.messageData>> index,
+                                     List<MessageData.messageData> sorted) {
+        for (int i = 0; i < sorted.size(); ) {
+            long time = sorted.get(i).getCreatedAt();
+            List<MessageData.messageData> sameTime = index.computeIfAbsent(time, t -> new ArrayList<>(1));
+            for (; i < sorted.size() && sorted.get(i).getCreatedAt() == time; i++) {
+                sameTime.add(sorted.get(i));
+            }
+        }
+    }
+
+    private static boolean removeFrom(NavigableMap<Long, List<MessageData.messageData>> index, MessageData.messageData msg) {
+        List<MessageData.messageData> sameTime = index.get(msg.getCreatedAt());
+        if (sameTime == null) {
+            return false;
+        }
+        for (int i = 0; i < sameTime.size(); i++) {
+            if (sameTime.get(i) == msg) {
+                sameTime.remove(i);
+                if (sameTime.isEmpty()) {
+                    index.remove(msg.getCreatedAt());
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,121 @@
+package org.example;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.ToLongFunction;
+
+// Counters, gauges and latency histograms for one MessageProcessor.
+// Counters are LongAdders (striped, no locks) and histograms record lock-free, so updating a metric
+// on the hot path never blocks. Dumps are produced on demand as plain text or JSON.
+public class MetricsRegistry {
+
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+
+    public void increment(String name) {
+        counter(name).increment();
+    }
+
+    public void add(String name, long delta) {
+        counter(name).add(delta);
+    }
+
+    public long getCount(String name) {
+        LongAdder counter = counters.get(name);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    public void registerGauge(String name, LongSupplier gauge) {
+        gauges.put(name, gauge);
+    }
+
+    public long getGauge(String name) {
+        LongSupplier gauge = gauges.get(name);
+        return gauge == null ? 0 : gauge.getAsLong();
+    }
+
+    public void recordLatency(String operation, long nanos) {
+        latency(operation).record(nanos);
+    }
+
+    public LatencyHistogram latency(String operation) {
+        return latencies.computeIfAbsent(operation, key -> new LatencyHistogram());
+    }
+
+    private LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, key -> new LongAdder());
+    }
+
+    // ---------- Dumps ----------
+
+    public String dumpText() {
+        StringBuilder sb = new StringBuilder("--- Counters ---\n");
+        new TreeMap<>(counters).forEach((name, value) ->
+                sb.append(name).append(" = ").append(value.sum()).append("\n"));
+
+        sb.append("--- Gauges ---\n");
+        new TreeMap<>(gauges).forEach((name, gauge) ->
+                sb.append(name).append(" = ").append(gauge.getAsLong()).append("\n"));
+
+        sb.append("--- Latencies (microseconds) ---\n");
+        new TreeMap<>(latencies).forEach((name, histogram) -> {
+            LatencyHistogram.Snapshot s = histogram.snapshot();
+            sb.append(name)
+                    .append(": count=").append(s.getCount())
+                    .append(" mean=").append(String.format("%.1f", s.getMean() / 1_000.0))
+                    .append(" p50=").append(micros(s.getValueAtPercentile(50)))
+                    .append(" p90=").append(micros(s.getValueAtPercentile(90)))
+                    .append(" p99=").append(micros(s.getValueAtPercentile(99)))
+                    .append(" p999=").append(micros(s.getValueAtPercentile(99.9)))
+                    .append(" max=").append(micros(s.getMax()))
+                    .append("\n");
+        });
+        return sb.toString();
+    }
+
+    public String dumpJson() {
+        StringBuilder sb = new StringBuilder("{\"counters\":{");
+        appendJsonValues(sb, new TreeMap<>(counters), LongAdder::sum);
+        sb.append("},\"gauges\":{");
+        appendJsonValues(sb, new TreeMap<>(gauges), LongSupplier::getAsLong);
+        sb.append("},\"latencies\":{");
+        boolean first = true;
+        for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(latencies).entrySet()) {
+            LatencyHistogram.Snapshot s = entry.getValue().snapshot();
+            if (!first) sb.append(',');
+            first = false;
+            sb.append(quote(entry.getKey())).append(":{")
+                    .append("\"count\":").append(s.getCount())
+                    .append(",\"meanNanos\":").append(Math.round(s.getMean()))
+                    .append(",\"p50Nanos\":").append(s.getValueAtPercentile(50))
+                    .append(",\"p90Nanos\":").append(s.getValueAtPercentile(90))
+                    .append(",\"p99Nanos\":").append(s.getValueAtPercentile(99))
+                    .append(",\"p999Nanos\":").append(s.getValueAtPercentile(99.9))
+                    .append(",\"maxNanos\":").append(s.getMax())
+                    .append('}');
+        }
+        return sb.append("}}").toString();
+    }
+
+    private static <T> void appendJsonValues(StringBuilder sb, Map<String, T> values,
+                                             ToLongFunction<T> reader) {
+        boolean first = true;
+        for (Map.Entry<String, T> entry : values.entrySet()) {
+            if (!first) sb.append(',');
+            first = false;
+            sb.append(quote(entry.getKey())).append(':').append(reader.applyAsLong(entry.getValue()));
+        }
+    }
+
+    private static String quote(String name) {
+        return "\"" + name.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    private static String micros(long nanos) {
+        return String.format("%.1f", nanos / 1_000.0);
+    }
+}
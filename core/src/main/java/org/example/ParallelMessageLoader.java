@@ -0,0 +1,183 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Parses a stored-messages file on a fork-join pool.
+// The file is cut into byte ranges that always end just after a newline, every range is parsed
+// straight from its bytes by its own task (with its own StoredLineParser) into a private list, and the lists are handed back in file order so the
+// result is identical to reading the file line by line.
+class ParallelMessageLoader {
+
+    static final long DEFAULT_RANGE_BYTES = 4L * 1024 * 1024;
+    private static final int SCAN_BUFFER_BYTES = 8 * 1024;
+
+    private final Path file;
+    private final long rangeBytes;
+    private final ForkJoinPool pool;
+    private final MetricsRegistry metrics;
+
+    ParallelMessageLoader(Path file, MetricsRegistry metrics) {
+        this(file, DEFAULT_RANGE_BYTES, ForkJoinPool.commonPool(), metrics);
+    }
+
+    ParallelMessageLoader(Path file, long rangeBytes, ForkJoinPool pool, MetricsRegistry metrics) {
+        if (rangeBytes <= 0) {
+            throw new IllegalArgumentException("rangeBytes must be positive");
+        }
+        this.file = file;
+        this.rangeBytes = rangeBytes;
+        this.pool = pool;
+        this.metrics = metrics;
+    }
+
+    List<List<MessageData.messageData>> load() throws IOException {
+        return load(new ConcurrentHashMap<>(), new StorageRecovery.Report(file.toString()));
+    }
+
+    // Returns one list per byte range, in file order. Callers merge them by simple concatenation.
+    // Ids listed by "sent"/"removed" records are counted in goneCounts (which must be thread-safe) rather than returned.
+    // Every range verifies its own lines' checksums, so verification runs in parallel too.
+    List<List<MessageData.messageData>> load(Map<String, Integer> goneCounts, StorageRecovery.Report report) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            List<long[]> ranges = splitRanges(channel, channel.size());
+            try {
+                return pool.invoke(new LoadTask(channel, ranges, goneCounts, report));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    // Splits [0, size) into ranges of roughly rangeBytes, moving each cut forward to the byte
+    // after the next '\n' so no line is shared between two ranges.
+    List<long[]> splitRanges(FileChannel channel, long size) throws IOException {
+        List<long[]> ranges = new ArrayList<>();
+        long start = 0;
+        while (start < size) {
+            long end = Math.min(start + rangeBytes, size);
+            if (end < size) {
+                end = nextLineStart(channel, end - 1, size);
+            }
+            ranges.add(new long[]{start, end});
+            start = end;
+        }
+        return ranges;
+    }
+
+    private long nextLineStart(FileChannel channel, long from, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_BYTES);
+        long position = from;
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    private class LoadTask extends RecursiveTask<List<List<MessageData.messageData>>> {
+        private final FileChannel channel;
+        private final List<long[]> ranges;
+        private final Map<String, Integer> goneCounts;
+        private final StorageRecovery.Report report;
+
+        LoadTask(FileChannel channel, List<long[]> ranges, Map<String, Integer> goneCounts,
+                 StorageRecovery.Report report) {
+            this.channel = channel;
+            this.ranges = ranges;
+            this.goneCounts = goneCounts;
+            this.report = report;
+        }
+
+        @Override
+        protected List<List<MessageData.messageData>> compute() {
+            List<RangeTask> tasks = new ArrayList<>(ranges.size());
+            for (long[] range : ranges) {
+                tasks.add(new RangeTask(channel, range[0], range[1], goneCounts, report));
+            }
+            invokeAll(tasks);
+
+            // Joining in submission order keeps the record order deterministic.
+            List<List<MessageData.messageData>> results = new ArrayList<>(tasks.size());
+            for (RangeTask task : tasks) {
+                results.add(task.join());
+            }
+            return results;
+        }
+    }
+
+    private class RangeTask extends RecursiveTask<List<MessageData.messageData>> {
+        private final FileChannel channel;
+        private final long start;
+        private final long end;
+        private final Map<String, Integer> goneCounts;
+        private final StorageRecovery.Report report;
+
+        RangeTask(FileChannel channel, long start, long end, Map<String, Integer> goneCounts,
+                  StorageRecovery.Report report) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+            this.goneCounts = goneCounts;
+            this.report = report;
+        }
+
+        @Override
+        protected List<MessageData.messageData> compute() {
+            byte[] bytes = new byte[(int) (end - start)];
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            try {
+                // Positional reads do not touch the channel's shared position, so tasks can read concurrently.
+                while (buffer.hasRemaining()) {
+                    int read = channel.read(buffer, start + buffer.position());
+                    if (read < 0) {
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            List<MessageData.messageData> messages = new ArrayList<>();
+            StoredLineParser parser = new StoredLineParser();
+            int lineStart = 0;
+            int length = buffer.position();
+            for (int i = 0; i <= length; i++) {
+                if (i == length || bytes[i] == '\n') {
+                    int lineEnd = i;
+                    if (lineEnd > lineStart && bytes[lineEnd - 1] == '\r') {
+                        lineEnd--;
+                    }
+                    if (lineEnd > lineStart) {
+                        MessageData.messageData msg = MessageProcessor.readStoredLine(
+                                bytes, lineStart, lineEnd, parser, goneCounts, report, metrics);
+                        if (msg != null) {
+                            messages.add(msg);
+                        }
+                    }
+                    lineStart = i + 1;
+                }
+            }
+            return messages;
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package org.example;
+
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+// An insertion-ordered list of distinct objects (compared by identity) that can hand out
+// point-in-time snapshots in O(1).
+// Entries live in an immutable treap keyed by a sequence number given out when the entry is added.
+// An update copies only the path from the root to the changed node (O(log n)) and then publishes
+// the new root, so a snapshot is just the root at that moment: it never changes afterwards and
+// readers of it need no lock. Sequence numbers are never reused, which makes them stable cursors
+// for paging: the page after a cursor starts at the first entry added later than it.
+// Membership is an identity map, so contains is O(1). Writers must be serialized by the owner
+// (MessageProcessor calls the mutators under its own lock); snapshots are safe from any thread.
+// An optional weigher keeps a running total over the entries, e.g. their estimated size in bytes;
+// it must give the same answer for an entry when it leaves as when it was added.
+public class PersistentList<E> {
+
+    // Cursor that starts a paged walk at the first entry.
+    public static final long START = 0;
+
+    private final Map<E, Long> positions = new IdentityHashMap<>();
+    private final ToLongFunction<? super E> weigher;
+    private volatile Node root;
+    private long nextSeq = START + 1;
+    private long weight;
+
+    public PersistentList() {
+        this(value -> 0);
+    }
+
+    public PersistentList(ToLongFunction<? super E> weigher) {
+        this.weigher = weigher;
+    }
+
+    // Appends the object unless it is already here; returns whether it was added.
+    boolean add(E value) {
+        if (positions.containsKey(value)) {
+            return false;
+        }
+        long seq = nextSeq++;
+        positions.put(value, seq);
+        weight += weigher.applyAsLong(value);
+        root = append(root, new Node(seq, value, null, null));
+        return true;
+    }
+
+    // Appends every object not already here with a single publish. The new entries are built into
+    // a treap of their own in one pass and joined on at the right, instead of one path copy each.
+    void addAll(List<E> values) {
+        List<Node> added = new ArrayList<>(values.size());
+        for (E value : values) {
+            if (!positions.containsKey(value)) {
+                long seq = nextSeq++;
+                positions.put(value, seq);
+                weight += weigher.applyAsLong(value);
+                added.add(new Node(seq, value, null, null));
+            }
+        }
+        root = join(root, build(added, 0, added.size()));
+    }
+
+    boolean remove(E value) {
+        Long seq = positions.remove(value);
+        if (seq == null) {
+            return false;
+        }
+        weight -= weigher.applyAsLong(value);
+        root = remove(root, seq);
+        return true;
+    }
+
+    boolean contains(E value) {
+        return positions.containsKey(value);
+    }
+
+    int size() {
+        return positions.size();
+    }
+
+    // The weigher's total over the current entries.
+    long weight() {
+        return weight;
+    }
+
+    void clear() {
+        positions.clear();
+        weight = 0;
+        root = null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public Snapshot<E> snapshot() {
+        return new Snapshot<>(root, value -> (E) value);
+    }
+
+    // ---------- Snapshots ----------
+
+    // An immutable view of the list as it was when taken. get(i) is O(log n); iterating and paging
+    // walk the tree in order without copying it.
+    public static final class Snapshot<T> extends AbstractList<T> {
+        private final Node root;
+        private final Function<Object, T> view;
+
+        @SuppressWarnings("unchecked")
+        private Snapshot(Node root, Function<? super Object, ? extends T> view) {
+            this.root = root;
+            this.view = (Function<Object, T>) view;
+        }
+
+        @Override
+        public T get(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size());
+            }
+            Node node = root;
+            while (true) {
+                int leftSize = sizeOf(node.left);
+                if (index < leftSize) {
+                    node = node.left;
+                } else if (index == leftSize) {
+                    return view.apply(node.value);
+                } else {
+                    index -= leftSize + 1;
+                    node = node.right;
+                }
+            }
+        }
+
+        @Override
+        public int size() {
+            return sizeOf(root);
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return new InOrder<>(root, START, view);
+        }
+
+        // The same snapshot seen through a function, e.g. messages as their ids. Pages keep the
+        // cursors of the underlying entries.
+        public <R> Snapshot<R> map(Function<? super T, ? extends R> mapper) {
+            return new Snapshot<>(root, value -> mapper.apply(view.apply(value)));
+        }
+
+        // Up to limit entries added after the cursor, in insertion order. Pass START for the first
+        // page and the previous page's next cursor after that. Costs O(log n + limit).
+        public Page<T> pageAfter(long cursor, int limit) {
+            if (limit < 1) {
+                throw new IllegalArgumentException("limit must be at least 1");
+            }
+            InOrder<T> walk = new InOrder<>(root, cursor, view);
+            List<T> items = new ArrayList<>(Math.min(limit, size()));
+            long last = cursor;
+            while (items.size() < limit && walk.hasNext()) {
+                last = walk.peekSeq();
+                items.add(walk.next());
+            }
+            return new Page<>(items, last, walk.hasNext());
+        }
+    }
+
+    public static final class Page<T> {
+        private final List<T> items;
+        private final long nextCursor;
+        private final boolean hasMore;
+
+        private Page(List<T> items, long nextCursor, boolean hasMore) {
+            this.items = items;
+            this.nextCursor = nextCursor;
+            this.hasMore = hasMore;
+        }
+
+        public List<T> getItems() {
+            return items;
+        }
+
+        // Pass to pageAfter for the following page; still valid against later snapshots.
+        public long getNextCursor() {
+            return nextCursor;
+        }
+
+        // Whether the snapshot this page came from had entries past it.
+        public boolean hasMore() {
+            return hasMore;
+        }
+    }
+
+    // In-order walk over the entries with a sequence number above 'after'.
+    private static final class InOrder<T> implements Iterator<T> {
+        private final Deque<Node> stack = new ArrayDeque<>();
+        private final Function<Object, T> view;
+
+        InOrder(Node root, long after, Function<Object, T> view) {
+            this.view = view;
+            Node node = root;
+            while (node != null) {
+                if (node.seq > after) {
+                    stack.push(node);
+                    node = node.left;
+                } else {
+                    node = node.right;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !stack.isEmpty();
+        }
+
+        long peekSeq() {
+            return stack.peek().seq;
+        }
+
+        @Override
+        public T next() {
+            if (stack.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            Node node = stack.pop();
+            for (Node next = node.right; next != null; next = next.left) {
+                stack.push(next);
+            }
+            return view.apply(node.value);
+        }
+    }
+
+    // ---------- Treap ----------
+
+    // Nodes are never modified once built. The heap priority is a hash of the sequence number, so
+    // the shape is random-looking (expected depth O(log n)) yet needs no random number generator.
+    private static final class Node {
+        final long seq;
+        final int priority;
+        final Object value;
+        final Node left;
+        final Node right;
+        final int size;
+
+        Node(long seq, Object value, Node left, Node right) {
+            this(seq, priorityOf(seq), value, left, right);
+        }
+
+        private Node(long seq, int priority, Object value, Node left, Node right) {
+            this.seq = seq;
+            this.priority = priority;
+            this.value = value;
+            this.left = left;
+            this.right = right;
+            this.size = 1 + sizeOf(left) + sizeOf(right);
+        }
+
+        Node with(Node left, Node right) {
+            return new Node(seq, priority, value, left, right);
+        }
+    }
+
+    private static int sizeOf(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static int priorityOf(long seq) {
+        long z = seq * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return (int) (z ^ (z >>> 31));
+    }
+
+    // The new node's sequence number is above every other, so it goes down the right spine.
+    private static Node append(Node root, Node node) {
+        if (root == null) {
+            return node;
+        }
+        if (node.priority > root.priority) {
+            return node.with(root, null);
+        }
+        return root.with(root.left, append(root.right, node));
+    }
+
+    private static Node remove(Node root, long seq) {
+        if (root == null) {
+            return null;
+        }
+        if (seq < root.seq) {
+            return root.with(remove(root.left, seq), root.right);
+        }
+        if (seq > root.seq) {
+            return root.with(root.left, remove(root.right, seq));
+        }
+        return join(root.left, root.right);
+    }
+
+    // Every sequence number in 'left' is below every one in 'right'.
+    private static Node join(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            return left.with(left.left, join(left.right, right));
+        }
+        return right.with(join(left, right.left), right.right);
+    }
+
+    // Treap over nodes[from, to), which are in sequence order and have no children yet.
+    private static Node build(List<Node> nodes, int from, int to) {
+        if (from >= to) {
+            return null;
+        }
+        int top = from;
+        for (int i = from + 1; i < to; i++) {
+            if (nodes.get(i).priority > nodes.get(top).priority) {
+                top = i;
+            }
+        }
+        return nodes.get(top).with(build(nodes, from, top), build(nodes, top + 1, to));
+    }
+}
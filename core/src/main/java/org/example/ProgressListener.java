@@ -0,0 +1,11 @@
+package org.example;
+
+// Receives progress of a long-running MessageProcessor operation, e.g. bytes of the file loaded so far.
+// Called on the thread doing the work; UI code must hand updates to the event dispatch thread itself.
+@FunctionalInterface
+public interface ProgressListener {
+
+    ProgressListener NONE = (done, total) -> { };
+
+    void onProgress(long done, long total);
+}
@@ -0,0 +1,226 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.function.IntPredicate;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+// Picks how MessageProcessor answers a MessageQuery.
+// For each AND-ed condition that an index can answer it estimates how many messages the index would
+// return, and reads from the cheapest one:
+//   ID = x             the id index (usually one message)
+//   RECIPIENT = x      the per-recipient time index, narrowed by a CREATED range when there is one
+//   CREATED IN [a, b)  the time index, estimated from the share of the time span it covers
+//   STATUS = x         that status's list
+//   a OR b OR ...      the union of each side's index, if every side has one
+// The whole condition is then applied as a filter to what the index returned, so the index only has
+// to return a superset. With no usable index it scans snapshots of all lists, in parallel once they
+// are large. Index reads copy just the matching entries under the processor's lock; list reads and
+// scans use O(1) snapshots. Either way the filtering, ordering and limit run lazily in the caller's
+// stream. Messages spilled to a cold tier are read alongside whatever plan is picked: the tier's own
+// index of ids, senders, recipients and creation times narrows which records are read back.
+class QueryPlanner {
+
+    static final int PARALLEL_SCAN_THRESHOLD = 20_000;
+
+    private final MessageProcessor processor;
+
+    QueryPlanner(MessageProcessor processor) {
+        this.processor = processor;
+    }
+
+    Stream<MessageData.messageData> execute(MessageQuery query) {
+        MessageQuery.Condition condition = query.getCondition();
+        Plan plan = plan(condition);
+        Stream<MessageData.messageData> rows = plan.rows.get();
+        if (!(condition instanceof MessageQuery.Everything)) {
+            rows = rows.filter(condition);
+        }
+        List<MessageData.messageData> cold = processor.readColdWhere(tier -> coldCandidates(tier, condition), condition);
+        if (!cold.isEmpty()) {
+            rows = Stream.concat(cold.stream(), rows);
+        }
+        if (query.getOrder() != MessageQuery.Order.ANY && (query.getOrder() != plan.order || !cold.isEmpty())) {
+            rows = rows.sorted(query.getOrder().comparator());
+        }
+        if (query.getLimit() != Long.MAX_VALUE) {
+            rows = rows.limit(query.getLimit());
+        }
+        return rows;
+    }
+
+    String explain(MessageQuery query) {
+        Plan plan = plan(query.getCondition());
+        StringBuilder sb = new StringBuilder(plan.description)
+                .append(" (~").append(plan.estimatedRows).append(" rows)");
+        if (!(query.getCondition() instanceof MessageQuery.Everything)) {
+            sb.append(" -> FILTER ").append(query.getCondition());
+        }
+        if (query.getOrder() != MessageQuery.Order.ANY) {
+            sb.append(query.getOrder() == plan.order ? " -> already " : " -> SORT ").append(query.getOrder());
+        }
+        if (query.getLimit() != Long.MAX_VALUE) {
+            sb.append(" -> LIMIT ").append(query.getLimit());
+        }
+        return sb.toString();
+    }
+
+    Plan plan(MessageQuery.Condition condition) {
+        if (condition instanceof MessageQuery.AnyOf any) {
+            Plan union = union(any.conditions);
+            return union != null ? union : scan();
+        }
+        List<MessageQuery.Condition> conjuncts = condition instanceof MessageQuery.AllOf all
+                ? all.conditions : List.of(condition);
+        Plan best = scan();
+        for (MessageQuery.Condition conjunct : conjuncts) {
+            Plan candidate = access(conjunct, conjuncts);
+            if (candidate != null && candidate.estimatedRows < best.estimatedRows) {
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    // An index read for one conjunct, or null when no index covers it.
+    private Plan access(MessageQuery.Condition conjunct, List<MessageQuery.Condition> conjuncts) {
+        if (conjunct instanceof MessageQuery.FieldEquals equals) {
+            String value = equals.value;
+            switch (equals.field) {
+                case ID -> {
+                    return new Plan("INDEX id '" + value + "'", processor.countWithId(value),
+                            () -> processor.indexedWithId(value).stream(), MessageQuery.Order.ANY);
+                }
+                case RECIPIENT -> {
+                    MessageQuery.CreatedBetween range = createdRange(conjuncts);
+                    long from = range == null ? Long.MIN_VALUE : range.from;
+                    long to = range == null ? Long.MAX_VALUE : range.to;
+                    long estimate = processor.countToRecipient(value);
+                    if (range != null) {
+                        estimate = Math.min(estimate, processor.estimateCreatedBetween(from, to));
+                    }
+                    return new Plan("INDEX recipient '" + value + "'" + (range == null ? "" : " " + range), estimate,
+                            () -> processor.hotToRecipient(value, from, to).stream(),
+                            MessageQuery.Order.OLDEST_FIRST);
+                }
+                case STATUS -> {
+                    PersistentList.Snapshot<MessageData.messageData> list = processor.listForStatus(value);
+                    if (list == null) {
+                        return null;
+                    }
+                    return new Plan("LIST " + value, list.size(), list::stream, MessageQuery.Order.ANY);
+                }
+                default -> {
+                    return null;
+                }
+            }
+        }
+        if (conjunct instanceof MessageQuery.CreatedBetween range) {
+            return new Plan("INDEX created " + range, processor.estimateCreatedBetween(range.from, range.to),
+                    () -> processor.hotCreatedBetween(range.from, range.to).stream(),
+                    MessageQuery.Order.OLDEST_FIRST);
+        }
+        if (conjunct instanceof MessageQuery.AnyOf any) {
+            return union(any.conditions);
+        }
+        return null;
+    }
+
+    // The cold records that may match: the condition with every field the tier indexes narrowed
+    // through that index, and everything else left to the filter.
+    private static IntPredicate coldCandidates(ColdTier tier, MessageQuery.Condition condition) {
+        if (condition instanceof MessageQuery.AnyOf any) {
+            IntPredicate candidates = record -> false;
+            for (MessageQuery.Condition alternative : any.conditions) {
+                candidates = candidates.or(coldCandidates(tier, alternative));
+            }
+            return candidates;
+        }
+        if (condition instanceof MessageQuery.AllOf all) {
+            IntPredicate candidates = record -> true;
+            for (MessageQuery.Condition conjunct : all.conditions) {
+                candidates = candidates.and(coldCandidates(tier, conjunct));
+            }
+            return candidates;
+        }
+        if (condition instanceof MessageQuery.FieldEquals equals) {
+            return switch (equals.field) {
+                case ID -> tier.withId(equals.value);
+                case SENDER -> tier.withSender(equals.value);
+                case RECIPIENT -> tier.withRecipient(equals.value);
+                default -> record -> true;
+            };
+        }
+        if (condition instanceof MessageQuery.CreatedBetween range) {
+            return tier.createdBetween(range.from, range.to);
+        }
+        return record -> true;
+    }
+
+    private static MessageQuery.CreatedBetween createdRange(List<MessageQuery.Condition> conjuncts) {
+        for (MessageQuery.Condition conjunct : conjuncts) {
+            if (conjunct instanceof MessageQuery.CreatedBetween range) {
+                return range;
+            }
+        }
+        return null;
+    }
+
+    // Each alternative read through its own index, skipping messages an earlier one already returned.
+    private Plan union(List<MessageQuery.Condition> alternatives) {
+        List<Plan> plans = new ArrayList<>();
+        long estimate = 0;
+        for (MessageQuery.Condition alternative : alternatives) {
+            Plan plan = plan(alternative);
+            if (plan.isScan()) {
+                return null;
+            }
+            plans.add(plan);
+            estimate += plan.estimatedRows;
+        }
+        StringBuilder description = new StringBuilder("UNION(");
+        for (int i = 0; i < plans.size(); i++) {
+            description.append(i == 0 ? "" : ", ").append(plans.get(i).description);
+        }
+        return new Plan(description.append(')').toString(), estimate, () -> {
+            Set<MessageData.messageData> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+            return plans.stream().flatMap(plan -> plan.rows.get()).filter(seen::add);
+        }, MessageQuery.Order.ANY);
+    }
+
+    private Plan scan() {
+        MessageProcessor.Snapshot snapshot = processor.snapshot();
+        long total = (long) snapshot.getSentMessages().size() + snapshot.getStoredMessages().size()
+                + snapshot.getDisregardedMessages().size();
+        boolean parallel = total >= PARALLEL_SCAN_THRESHOLD;
+        return new Plan(parallel ? "PARALLEL SCAN" : "SCAN", total, () -> {
+            // concat (unlike flatMap) keeps each list's spliterator, so a parallel scan splits inside the lists
+            Stream<MessageData.messageData> all = Stream.concat(Stream.concat(snapshot.getSentMessages().stream(),
+                    snapshot.getStoredMessages().stream()), snapshot.getDisregardedMessages().stream());
+            return parallel ? all.parallel() : all;
+        }, null);
+    }
+
+    static final class Plan {
+        final String description;
+        final long estimatedRows;
+        final Supplier<Stream<MessageData.messageData>> rows;
+        final MessageQuery.Order order; // Order the rows come out in; null for a scan
+
+        Plan(String description, long estimatedRows, Supplier<Stream<MessageData.messageData>> rows,
+             MessageQuery.Order order) {
+            this.description = description;
+            this.estimatedRows = estimatedRows;
+            this.rows = rows;
+            this.order = order;
+        }
+
+        boolean isScan() {
+            return order == null;
+        }
+    }
+}
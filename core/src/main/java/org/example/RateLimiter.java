@@ -0,0 +1,152 @@
+package org.example;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+// Per-sender token buckets.
+// Each bucket is a single AtomicLong holding its "theoretical arrival time" (the GCRA form of a
+// token bucket): taking a token moves that time forward by one refill interval, and refills happen
+// implicitly as the clock passes it. Acquiring is one CAS on the sender's own bucket, so senders
+// never contend with each other and no lock is taken.
+// Idle buckets are dropped by evictIdle, on a background thread once start is called, never on
+// the acquire path. A bucket is retired (by CAS) before it leaves the map, so an acquire that
+// raced with its eviction sees that and moves on to a new bucket rather than to a lost one.
+public class RateLimiter implements AutoCloseable {
+
+    // Arrival time of an evicted bucket: it takes no more tokens.
+    private static final long RETIRED = Long.MIN_VALUE;
+
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final long refillIntervalNanos;
+    private final long burstWindowNanos;
+    private final int burst;
+    private final LongSupplier clock;
+    private ScheduledExecutorService timer;
+
+    // burst: how many messages a sender may send back to back.
+    // messagesPerSecond: the sustained rate once the burst is used up.
+    public RateLimiter(int burst, double messagesPerSecond) {
+        this(burst, messagesPerSecond, System::nanoTime);
+    }
+
+    RateLimiter(int burst, double messagesPerSecond, LongSupplier clock) {
+        if (burst < 1) {
+            throw new IllegalArgumentException("burst must be at least 1");
+        }
+        if (!(messagesPerSecond > 0)) {
+            throw new IllegalArgumentException("messagesPerSecond must be positive");
+        }
+        this.burst = burst;
+        this.refillIntervalNanos = Math.max(1, Math.round(1_000_000_000L / messagesPerSecond));
+        this.burstWindowNanos = refillIntervalNanos * burst;
+        this.clock = clock;
+    }
+
+    // Evicts idle buckets every periodMillis on a background thread.
+    public synchronized void start(long periodMillis) {
+        if (timer != null) {
+            return;
+        }
+        timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rate-limiter-eviction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleWithFixedDelay(this::evictIdle, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public boolean tryAcquire(String sender) {
+        long now = clock.getAsLong();
+        while (true) {
+            Bucket bucket = buckets.computeIfAbsent(sender, key -> new Bucket(now));
+            if (bucket.tryAcquire(now)) {
+                return true;
+            }
+            if (!bucket.isRetired()) {
+                return false;
+            }
+            // Evicted under us, so it was full: take from a new one
+            buckets.remove(sender, bucket);
+        }
+    }
+
+    public int availableTokens(String sender) {
+        Bucket bucket = buckets.get(sender);
+        long arrival = bucket == null ? RETIRED : bucket.arrival.get();
+        if (arrival == RETIRED) {
+            return burst;
+        }
+        long now = clock.getAsLong();
+        long backlog = Math.max(0, arrival - now);
+        return (int) ((burstWindowNanos - backlog) / refillIntervalNanos);
+    }
+
+    // Drops buckets that have refilled completely. A full bucket behaves exactly like a new one,
+    // so evicting it changes nothing for the sender and keeps the map sized to active senders.
+    public int evictIdle() {
+        return evictIdle(clock.getAsLong());
+    }
+
+    private int evictIdle(long now) {
+        int evicted = 0;
+        for (Map.Entry<String, Bucket> entry : buckets.entrySet()) {
+            Bucket bucket = entry.getValue();
+            if (bucket.retireIfFull(now)) {
+                buckets.remove(entry.getKey(), bucket);
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    public int trackedSenders() {
+        return buckets.size();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (timer != null) {
+            timer.shutdownNow();
+        }
+    }
+
+    private class Bucket {
+        // Time at which the bucket will be full again; in the past means it already is.
+        private final AtomicLong arrival;
+
+        Bucket(long now) {
+            this.arrival = new AtomicLong(now);
+        }
+
+        boolean tryAcquire(long now) {
+            while (true) {
+                long current = arrival.get();
+                if (current == RETIRED) {
+                    return false;
+                }
+                long next = Math.max(current, now) + refillIntervalNanos;
+                if (next - now > burstWindowNanos) {
+                    return false;
+                }
+                if (arrival.compareAndSet(current, next)) {
+                    return true;
+                }
+            }
+        }
+
+        // Retires the bucket if it is full at now; an acquire that got in first keeps it.
+        boolean retireIfFull(long now) {
+            long current = arrival.get();
+            return current != RETIRED && current - now <= 0 && arrival.compareAndSet(current, RETIRED);
+        }
+
+        boolean isRetired() {
+            return arrival.get() == RETIRED;
+        }
+    }
+}
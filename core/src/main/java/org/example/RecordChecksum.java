@@ -0,0 +1,79 @@
+package org.example;
+
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32C;
+
+// Per-line checksums for the stored-messages file.
+// A sealed line is the record's JSON, a tab, and the CRC32C of the JSON's UTF-8 bytes as 8 lowercase
+// hex digits. The JSON writers escape tabs inside strings, so a raw tab can only be the separator.
+// Lines written before checksums existed have no seal and are still accepted as they are.
+final class RecordChecksum {
+
+    static final char SEPARATOR = '\t';
+    private static final int SEAL_LENGTH = 9; // Separator plus 8 hex digits
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private RecordChecksum() {
+    }
+
+    // Seals the record that starts at lineStart in out and ends the line.
+    static void seal(StringBuilder out, int lineStart) {
+        long crc = crc(out.substring(lineStart));
+        out.append(SEPARATOR);
+        for (int shift = 28; shift >= 0; shift -= 4) {
+            out.append(HEX[(int) (crc >>> shift) & 0xF]);
+        }
+        out.append(System.lineSeparator());
+    }
+
+    static boolean isSealed(String line) {
+        int at = line.length() - SEAL_LENGTH;
+        if (at < 0 || line.charAt(at) != SEPARATOR) {
+            return false;
+        }
+        for (int i = at + 1; i < line.length(); i++) {
+            if (Character.digit(line.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // The record's JSON: the line itself when it is unsealed, or null when the checksum does not match.
+    static String unseal(String line) {
+        if (!isSealed(line)) {
+            return line;
+        }
+        int at = line.length() - SEAL_LENGTH;
+        String json = line.substring(0, at);
+        long expected = Long.parseLong(line.substring(at + 1), 16);
+        return crc(json) == expected ? json : null;
+    }
+
+    // The same check on a line's UTF-8 bytes in [from, to), without decoding it: the end of the
+    // record's JSON (to for an unsealed line, the separator when the seal matches), or -1 when the
+    // checksum does not match.
+    static int jsonEnd(byte[] bytes, int from, int to) {
+        int at = to - SEAL_LENGTH;
+        if (at < from || bytes[at] != SEPARATOR) {
+            return to;
+        }
+        long expected = 0;
+        for (int i = at + 1; i < to; i++) {
+            int digit = Character.digit(bytes[i], 16);
+            if (digit < 0) {
+                return to;
+            }
+            expected = expected << 4 | digit;
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(bytes, from, at - from);
+        return crc.getValue() == expected ? at : -1;
+    }
+
+    private static long crc(String json) {
+        CRC32C crc = new CRC32C();
+        crc.update(json.getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,263 @@
+package org.example;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Keeps a local MessageProcessor in step with a ReplicationLeader.
+// A background thread connects to the leader, asks for every record from its applied offset on and
+// applies them to the replica (stored messages are also written to the replica's own file). If the
+// connection drops it reconnects and resumes from where it stopped. When the leader cannot resume it
+// (another epoch, or an offset no longer in its log) it sends a copy of everything instead, which
+// replaces the replica's contents once it has fully arrived. Records are applied without the
+// replica's rate limit, which the leader has already applied. A record that cannot be applied (e.g.
+// it does not fit in the replica's memory budget) is counted as "replication.applyErrors" and the
+// follower reconnects asking for a full copy, since the replica may now differ from the leader.
+// The replica is read-only for everyone else: only the search methods below are offered, and they never see a half-applied record.
+// The gap to the leader is published as the "replication.lag" gauge on the replica's metrics.
+public class ReplicationFollower implements AutoCloseable {
+
+    private static final long RECONNECT_MILLIS = 500;
+    private static final long RESYNC_EPOCH = -1; // No leader's epoch, so the leader sends a full copy
+
+    private final MessageProcessor replica;
+    private final String host;
+    private final int port;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Thread worker;
+    private volatile long appliedOffset;
+    private volatile long leaderEpoch; // 0 until the first record is applied
+    private volatile long leaderHead;
+    private List<JSONObject> snapshot; // Records of a resnapshot still arriving, else null
+    private long snapshotOffset;
+    private int snapshotCount;
+    private volatile boolean closed;
+    private volatile Socket socket;
+
+    // fromOffset: the first leader record this replica has not applied yet (0 for an empty replica).
+    public ReplicationFollower(MessageProcessor replica, String host, int port, long fromOffset) {
+        this(replica, host, port, fromOffset, 0);
+    }
+
+    // leaderEpoch: the getLeaderEpoch() persisted along with fromOffset. With 0 (unknown) the leader
+    // only resumes from offset 0 and otherwise sends a full copy.
+    public ReplicationFollower(MessageProcessor replica, String host, int port, long fromOffset, long leaderEpoch) {
+        this.replica = replica;
+        this.host = host;
+        this.port = port;
+        this.appliedOffset = fromOffset;
+        this.leaderEpoch = leaderEpoch;
+        this.leaderHead = fromOffset;
+        replica.getMetrics().registerGauge("replication.lag", this::getLag);
+        replica.getMetrics().registerGauge("replication.appliedOffset", this::getAppliedOffset);
+
+        this.worker = new Thread(this::run, "replication-follower");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    private void run() {
+        while (!closed) {
+            try (Socket connection = new Socket(host, port);
+                 BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+                 BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(connection.getOutputStream(), StandardCharsets.UTF_8))) {
+                socket = connection;
+                snapshot = null; // A copy cut short by the disconnect is sent again
+                writer.write("FROM " + appliedOffset + " " + leaderEpoch);
+                writer.newLine();
+                writer.flush();
+
+                String line;
+                while (!closed && (line = reader.readLine()) != null) {
+                    receive(new JSONObject(line));
+                }
+            } catch (IOException e) {
+                if (closed) {
+                    return;
+                }
+                replica.getMetrics().increment("replication.reconnects");
+            } catch (RuntimeException e) {
+                // A bad frame or a record the replica refused: start over from a full copy
+                leaderEpoch = RESYNC_EPOCH;
+                replica.getMetrics().increment("replication.applyErrors");
+                System.err.println("Replication record not applied, resyncing: " + e.getMessage());
+            }
+            try {
+                Thread.sleep(RECONNECT_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void receive(JSONObject frame) {
+        leaderHead = frame.getLong("head");
+        if (frame.has("resnapshot")) {
+            snapshot = new ArrayList<>();
+            snapshotOffset = frame.getLong("resnapshot");
+            snapshotCount = frame.getInt("count");
+        } else if (frame.has("snapshot")) {
+            if (snapshot == null) {
+                throw new JSONException("Snapshot frame without a resnapshot frame");
+            }
+            snapshot.add(frame.getJSONObject("snapshot"));
+        } else if (!frame.has("record")) {
+            return; // Heartbeat
+        }
+        if (snapshot != null) {
+            if (snapshot.size() == snapshotCount) {
+                replaceAll(snapshot, snapshotOffset, frame.getLong("epoch"));
+                snapshot = null;
+            }
+            return;
+        }
+        long offset = frame.getLong("offset");
+        if (offset != appliedOffset) {
+            return; // Already applied (e.g. resent after a reconnect)
+        }
+        lock.writeLock().lock();
+        try {
+            apply(frame.getJSONObject("record"));
+            appliedOffset = offset + 1;
+            leaderEpoch = frame.getLong("epoch");
+        } finally {
+            lock.writeLock().unlock();
+        }
+        replica.getMetrics().increment("replication.applied");
+    }
+
+    // Empties the replica and fills it with the leader's copy, current as of the offset.
+    private void replaceAll(List<JSONObject> records, long offset, long epoch) {
+        List<MessageData.messageData> sent = new ArrayList<>();
+        List<MessageData.messageData> stored = new ArrayList<>();
+        List<MessageData.messageData> disregarded = new ArrayList<>();
+        for (JSONObject record : records) {
+            MessageData.messageData msg = MessageProcessor.fromJson(record.getJSONObject("message"));
+            String list = record.getString("list");
+            switch (list) {
+                case "sent" -> sent.add(msg);
+                case "stored" -> stored.add(msg);
+                case "disregarded" -> disregarded.add(msg);
+                default -> throw new JSONException("Unknown list: " + list);
+            }
+        }
+        lock.writeLock().lock();
+        try {
+            replica.removeMessagesWhere(msg -> true);
+            replica.addReplicated(sent, "sent");
+            replica.addReplicated(stored, "stored");
+            replica.addReplicated(disregarded, "disregarded");
+            appliedOffset = offset;
+            leaderEpoch = epoch;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        replica.getMetrics().increment("replication.resnapshots");
+    }
+
+    // Removes and moves find the message by id within the list the leader named (hashes are not
+    // unique), and go through removeMessages/changeStatus, which append to the replica's file
+    // instead of rewriting it.
+    private void apply(JSONObject record) {
+        String list = record.getString("list");
+        String op = record.getString("op");
+        switch (op) {
+            case "add" -> replica.addReplicated(List.of(MessageProcessor.fromJson(record.getJSONObject("message"))), list);
+            case "remove" -> {
+                MessageData.messageData msg = replica.findInList(record.getString("id"), list);
+                if (msg != null) {
+                    replica.removeMessages(List.of(msg));
+                }
+            }
+            case "move" -> {
+                MessageData.messageData msg = replica.findInList(record.getString("id"), list);
+                if (msg != null) {
+                    replica.changeStatus(List.of(msg), record.getString("status"));
+                }
+            }
+            default -> throw new JSONException("Unknown op: " + op);
+        }
+    }
+
+
+    // ---------- Read-only searches ----------
+
+    public Optional<MessageData.messageData> findMessageById(String id) {
+        lock.readLock().lock();
+        try {
+            return replica.findMessageById(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Optional<MessageData.messageData> findMessageByHash(String hash) {
+        lock.readLock().lock();
+        try {
+            return replica.findMessageByHash(hash);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<MessageData.messageData> findMessagesByRecipient(String recipient) {
+        lock.readLock().lock();
+        try {
+            return replica.findMessagesByRecipient(recipient);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ---------- Getters ----------
+
+    // Offset of the next leader record to apply; persist it to resume a restarted replica.
+    public long getAppliedOffset() {
+        return appliedOffset;
+    }
+
+    // The leader epoch appliedOffset belongs to; persist it with the offset. -1 while the replica
+    // waits for a full copy after a record it could not apply.
+    public long getLeaderEpoch() {
+        return leaderEpoch;
+    }
+
+    // Records the leader has that this replica has not applied yet, as of the last frame received.
+    public long getLag() {
+        return Math.max(0, leaderHead - appliedOffset);
+    }
+
+    // Waits until at least 'offset' records are applied; returns false on timeout.
+    public boolean awaitOffset(long offset, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (appliedOffset < offset) {
+            if (System.currentTimeMillis() >= deadline) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        Socket current = socket;
+        if (current != null) {
+            current.close();
+        }
+        worker.interrupt();
+    }
+}
@@ -0,0 +1,316 @@
+package org.example;
+
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Ships every change made to a MessageProcessor to follower nodes over TCP.
+// Changes are kept in an ordered in-memory log (one record per added message, one per status move
+// and one tombstone per removed message, each naming the message by id and list); the log starts
+// with a copy of what the processor held when the leader was created. The log keeps only its last
+// logCapacity records. A follower connects, sends "FROM <offset> <epoch>" and receives every
+// record from that offset on, followed by new records as they happen. Offsets only mean something
+// within one leader's epoch, a random number picked when it starts. So a follower from another
+// epoch, or one whose offset has already left the log, is sent a fresh copy of everything the
+// processor holds instead: a "resnapshot" frame with the offset the copy is current to, then one
+// "snapshot" frame per message. Shipping is asynchronous: the processor only appends to the log,
+// and each follower has its own sender thread. A reload of the stored messages replaces the list
+// without reporting each change, so it starts a new epoch whose log begins with a fresh copy, and
+// every connected follower is sent a full copy.
+public class ReplicationLeader implements MessageChangeListener, AutoCloseable {
+
+    static final long HEARTBEAT_MILLIS = 200;
+    static final int DEFAULT_LOG_CAPACITY = 1 << 20;
+
+    private final MessageProcessor processor;
+    private final JSONObject[] log; // Ring: record n at n % length. Guarded by itself, as are epoch and head
+    private long epoch = newEpoch(); // Changed only under the processor's lock too
+    private long head; // Offset the next record will get
+    private final ServerSocket server;
+    private final Set<Socket> followers = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed;
+
+    // Port 0 picks a free port; see getPort().
+    public ReplicationLeader(MessageProcessor processor, int port) throws IOException {
+        this(processor, port, DEFAULT_LOG_CAPACITY);
+    }
+
+    public ReplicationLeader(MessageProcessor processor, int port, int logCapacity) throws IOException {
+        if (logCapacity < 1) {
+            throw new IllegalArgumentException("logCapacity must be at least 1");
+        }
+        this.processor = processor;
+        this.log = new JSONObject[logCapacity];
+        // The processor reports changes while holding its own lock, so holding it here means every
+        // change lands either in the copy or, after it, in the log.
+        synchronized (processor) {
+            for (JSONObject record : addRecords(processor)) {
+                append(record);
+            }
+            processor.addChangeListener(this);
+        }
+
+        this.server = new ServerSocket(port);
+        processor.getMetrics().registerGauge("replication.logOffset", this::getLogOffset);
+        processor.getMetrics().registerGauge("replication.followers", followers::size);
+
+        Thread acceptor = new Thread(this::acceptFollowers, "replication-leader-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    @Override
+    public void messageAdded(MessageData.messageData msg, String list) {
+        append(addRecord(msg, list));
+    }
+
+    @Override
+    public void messageRemoved(MessageData.messageData msg, String list) {
+        append(new JSONObject()
+                .put("op", "remove")
+                .put("list", list)
+                .put("id", msg.getId())
+                .put("hash", msg.getHash()));
+    }
+
+    // One record rather than the default remove-then-add, so the follower moves its own copy.
+    @Override
+    public void messageMoved(MessageData.messageData msg, String fromList, String toList) {
+        append(new JSONObject()
+                .put("op", "move")
+                .put("list", fromList)
+                .put("to", toList)
+                .put("id", msg.getId())
+                .put("status", msg.getStatus()));
+    }
+
+    // Starts a new epoch with a log holding a copy of the reloaded state. Listeners run under the
+    // processor's lock, so nothing changes while the copy is taken.
+    @Override
+    public void storedMessagesReplaced() {
+        List<JSONObject> records = addRecords(processor);
+        synchronized (log) {
+            epoch = newEpoch();
+            Arrays.fill(log, null);
+            head = 0;
+            for (JSONObject record : records) {
+                append(record);
+            }
+        }
+        processor.getMetrics().increment("replication.epochs");
+    }
+
+    private static long newEpoch() {
+        return ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+    }
+
+    // An "add" record for every message the processor holds, list by list, including the ones it
+    // has spilled to its cold tier (the oldest of their list, so first). Call it holding the
+    // processor's lock, so the records are the state of one moment.
+    private static List<JSONObject> addRecords(MessageProcessor processor) {
+        MessageProcessor.Snapshot snapshot = processor.snapshot();
+        List<JSONObject> records = new ArrayList<>();
+        for (MessageData.messageData msg : processor.readColdMessages("sent")) {
+            records.add(addRecord(msg, "sent"));
+        }
+        for (MessageData.messageData msg : snapshot.getSentMessages()) {
+            records.add(addRecord(msg, "sent"));
+        }
+        for (MessageData.messageData msg : snapshot.getStoredMessages()) {
+            records.add(addRecord(msg, "stored"));
+        }
+        for (MessageData.messageData msg : processor.readColdMessages("disregarded")) {
+            records.add(addRecord(msg, "disregarded"));
+        }
+        for (MessageData.messageData msg : snapshot.getDisregardedMessages()) {
+            records.add(addRecord(msg, "disregarded"));
+        }
+        return records;
+    }
+
+    private static JSONObject addRecord(MessageData.messageData msg, String list) {
+        return new JSONObject()
+                .put("op", "add")
+                .put("list", list)
+                .put("message", MessageProcessor.toJson(msg));
+    }
+
+    private void append(JSONObject record) {
+        synchronized (log) {
+            log[(int) (head % log.length)] = record;
+            head++;
+            log.notifyAll();
+        }
+    }
+
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    // Offset the next record will get, i.e. the number of records shipped so far.
+    public long getLogOffset() {
+        synchronized (log) {
+            return head;
+        }
+    }
+
+    // Followers persist it with their offset; see ReplicationFollower. Changes on a reload.
+    public long getEpoch() {
+        synchronized (log) {
+            return epoch;
+        }
+    }
+
+    private long firstLogOffset() {
+        return Math.max(0, head - log.length);
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        processor.removeChangeListener(this);
+        server.close();
+        for (Socket follower : followers) {
+            follower.close();
+        }
+        synchronized (log) {
+            log.notifyAll();
+        }
+    }
+
+    private void acceptFollowers() {
+        while (!closed) {
+            try {
+                Socket socket = server.accept();
+                followers.add(socket);
+                Thread sender = new Thread(() -> serve(socket), "replication-leader-send");
+                sender.setDaemon(true);
+                sender.start();
+            } catch (IOException e) {
+                if (!closed) {
+                    processor.getMetrics().increment("replication.acceptErrors");
+                }
+            }
+        }
+    }
+
+    // Streams records to one follower. When there is nothing new a heartbeat carrying the current
+    // head offset is sent instead, so the follower can report its lag even when idle. A follower
+    // that does not know the epoch may still start from offset 0 while the log holds it. When the
+    // epoch changes under a follower, it is sent a full copy in the new one.
+    private void serve(Socket socket) {
+        try (socket;
+             BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            String hello = reader.readLine();
+            if (hello == null || !hello.startsWith("FROM ")) {
+                return;
+            }
+            String[] words = hello.substring(5).trim().split(" ");
+            long next = Long.parseLong(words[0]);
+            long followerEpoch = words.length > 1 ? Long.parseLong(words[1]) : 0;
+
+            while (!closed) {
+                List<JSONObject> batch = new ArrayList<>();
+                long epoch;
+                long head;
+                boolean inLog;
+                synchronized (log) {
+                    if (inEpoch(followerEpoch, next) && next >= this.head) {
+                        log.wait(HEARTBEAT_MILLIS);
+                    }
+                    epoch = this.epoch;
+                    head = this.head;
+                    inLog = inEpoch(followerEpoch, next) && next >= firstLogOffset() && next <= head;
+                    for (long offset = next; inLog && offset < head; offset++) {
+                        batch.add(log[(int) (offset % log.length)]);
+                    }
+                }
+                if (!inLog) {
+                    Position copied = resnapshot(writer);
+                    followerEpoch = copied.epoch;
+                    next = copied.offset;
+                    continue;
+                }
+                followerEpoch = epoch;
+                if (batch.isEmpty()) {
+                    writer.write(new JSONObject().put("epoch", epoch).put("head", head).toString());
+                    writer.newLine();
+                }
+                for (JSONObject record : batch) {
+                    writer.write(new JSONObject()
+                            .put("epoch", epoch)
+                            .put("head", head)
+                            .put("offset", next++)
+                            .put("record", record)
+                            .toString());
+                    writer.newLine();
+                }
+                writer.flush();
+            }
+        } catch (IOException | NumberFormatException e) {
+            // Follower went away or sent garbage; it will reconnect and resume from its own offset.
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            followers.remove(socket);
+        }
+    }
+
+    // Whether a follower at this epoch and offset can be served from the log. Call holding log.
+    private boolean inEpoch(long followerEpoch, long next) {
+        return followerEpoch == epoch || (followerEpoch == 0 && next == 0);
+    }
+
+    // Sends a copy of everything the processor holds, taken under its lock so it is exactly the
+    // state after the records before the returned position.
+    private Position resnapshot(BufferedWriter writer) throws IOException {
+        List<JSONObject> records;
+        long epoch;
+        long at;
+        synchronized (processor) {
+            records = addRecords(processor);
+            synchronized (log) {
+                epoch = this.epoch;
+                at = head;
+            }
+        }
+        writer.write(new JSONObject()
+                .put("epoch", epoch)
+                .put("head", at)
+                .put("resnapshot", at)
+                .put("count", records.size())
+                .toString());
+        writer.newLine();
+        for (JSONObject record : records) {
+            writer.write(new JSONObject().put("epoch", epoch).put("head", at).put("snapshot", record).toString());
+            writer.newLine();
+        }
+        writer.flush();
+        processor.getMetrics().increment("replication.resnapshots");
+        return new Position(epoch, at);
+    }
+
+    private static final class Position {
+        final long epoch;
+        final long offset;
+
+        Position(long epoch, long offset) {
+            this.epoch = epoch;
+            this.offset = offset;
+        }
+    }
+}
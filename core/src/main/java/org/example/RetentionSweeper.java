@@ -0,0 +1,119 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+// Drops messages older than a retention period (by creation time) from every list of a
+// MessageProcessor, optionally archiving them first. PENDING messages are kept however old they
+// are, since they are still waiting to be sent.
+// Expired messages are found through the processor's time index and removed in chunks, each chunk
+// under the processor's lock only briefly, so sends and searches carry on during a large sweep.
+// Each sweep archives into one compressed MessageSegmentFile in the archive directory, before
+// removal and outside the lock; if that fails the messages stay. The stored-messages file is
+// compacted once at the end of a sweep, if it removed any stored messages.
+public class RetentionSweeper implements AutoCloseable {
+
+    static final int DEFAULT_CHUNK_SIZE = 500;
+    private static final int DICTIONARY_SAMPLE = 10_000;
+
+    private final MessageProcessor processor;
+    private final long retentionMillis;
+    private final Path archiveDirectory; // null = just drop
+    private final LongSupplier clock;
+    private final int chunkSize;
+    private ScheduledExecutorService timer;
+
+    public RetentionSweeper(MessageProcessor processor, Duration retention, Path archiveDirectory) {
+        this(processor, retention.toMillis(), archiveDirectory, System::currentTimeMillis, DEFAULT_CHUNK_SIZE);
+    }
+
+    RetentionSweeper(MessageProcessor processor, long retentionMillis, Path archiveDirectory, LongSupplier clock,
+                     int chunkSize) {
+        if (retentionMillis <= 0) {
+            throw new IllegalArgumentException("retention must be positive");
+        }
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be at least 1");
+        }
+        this.processor = processor;
+        this.retentionMillis = retentionMillis;
+        this.archiveDirectory = archiveDirectory;
+        this.clock = clock;
+        this.chunkSize = chunkSize;
+    }
+
+    // Sweeps every periodMillis on a background thread.
+    public synchronized void start(long periodMillis) {
+        if (timer != null) {
+            return;
+        }
+        timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "retention-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleWithFixedDelay(this::sweep, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // Removes every message created before now minus the retention period; returns how many went.
+    public int sweep() {
+        long start = System.nanoTime();
+        long cutoff = clock.getAsLong() - retentionMillis;
+        int removed = 0;
+        int removedStored = 0;
+        List<MessageData.messageData> expired = new ArrayList<>();
+        for (MessageData.messageData msg : processor.findMessagesCreatedBetween(Long.MIN_VALUE, cutoff)) {
+            if (!"PENDING".equals(msg.getStatus())) {
+                expired.add(msg);
+            }
+        }
+        try {
+            if (!expired.isEmpty() && archiveDirectory != null) {
+                archive(expired, cutoff);
+            }
+            for (int from = 0; from < expired.size(); from += chunkSize) {
+                MessageProcessor.Removal removal = processor.removeMessagesCounted(
+                        expired.subList(from, Math.min(from + chunkSize, expired.size())));
+                removed += removal.total();
+                removedStored += removal.stored;
+            }
+        } catch (IOException e) {
+            processor.getMetrics().increment("retention.archiveErrors");
+            System.err.println("Retention sweep skipped, could not archive: " + e.getMessage());
+        }
+        if (removedStored > 0) {
+            processor.compactStoredMessages();
+        }
+        processor.getMetrics().add("retention.expired", removed);
+        processor.getMetrics().recordLatency("retentionSweep", System.nanoTime() - start);
+        return removed;
+    }
+
+    // Writes messages-<cutoff>.seg, with a dictionary trained on the messages being archived.
+    private void archive(List<MessageData.messageData> expired, long cutoff) throws IOException {
+        Files.createDirectories(archiveDirectory);
+        Path segment = archiveDirectory.resolve("messages-" + cutoff + ".seg");
+        for (int n = 1; Files.exists(segment); n++) {
+            segment = archiveDirectory.resolve("messages-" + cutoff + "-" + n + ".seg");
+        }
+        List<MessageData.messageData> sample = expired.subList(0, Math.min(expired.size(), DICTIONARY_SAMPLE));
+        MessageSegmentFile.write(segment, expired, MessageSegmentFile.DEFAULT_BLOCK_RECORDS,
+                MessageSegmentFile.trainDictionary(sample, MessageSegmentFile.MAX_DICTIONARY_BYTES));
+        processor.getMetrics().add("retention.archived", expired.size());
+    }
+
+    @Override
+    public synchronized void close() {
+        if (timer != null) {
+            timer.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+// Splits messages across N MessageProcessors by a hash of the recipient.
+// Every shard has its own lists, its own storage file and one dedicated thread that performs all of
+// the shard's work, so a shard is never touched by two threads at once and shards never wait on
+// each other. Recipient queries go to a single shard; lookups by id or hash ask every shard in
+// parallel and take the first match in shard order.
+public class ShardedMessageProcessor implements AutoCloseable {
+
+    private final MessageProcessor[] shards;
+    private final ExecutorService[] writers;
+
+    // Shard i stores its messages in filePrefix + "-" + i + ".json".
+    public ShardedMessageProcessor(int shardCount, String filePrefix) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("shardCount must be at least 1");
+        }
+        this.shards = new MessageProcessor[shardCount];
+        this.writers = new ExecutorService[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            int shard = i;
+            shards[i] = new MessageProcessor(filePrefix + "-" + i + ".json");
+            writers[i] = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "message-shard-" + shard);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    public int shardFor(String recipient) {
+        int hash = recipient.hashCode();
+        hash ^= (hash >>> 16); // Spread the high bits, as HashMap does
+        return Math.floorMod(hash, shards.length);
+    }
+
+    // ---------- Writes ----------
+
+    // Completes exceptionally as MessageProcessor.addSentMessage throws.
+    public CompletableFuture<Void> addSentMessage(MessageData.messageData msg) {
+        return onShard(shardFor(msg.getRecipient()), shard -> {
+            shard.addSentMessage(msg);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> addStoredMessage(MessageData.messageData msg) {
+        return onShard(shardFor(msg.getRecipient()), shard -> {
+            shard.addStoredMessage(msg);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> addDisregardedMessage(MessageData.messageData msg) {
+        return onShard(shardFor(msg.getRecipient()), shard -> {
+            shard.addDisregardedMessage(msg);
+            return null;
+        });
+    }
+
+    // Completes with the name of the list the message was removed from, or empty if no shard had it.
+    public CompletableFuture<Optional<String>> removeMessageByHash(String hash) {
+        return firstShardWith(shard -> shard.findMessageByHash(hash))
+                .thenCompose(owner -> owner < 0
+                        ? CompletableFuture.completedFuture(Optional.<String>empty())
+                        : onShard(owner, shard -> Optional.ofNullable(shard.removeMessageByHash(hash))));
+    }
+
+    // Removes every match on all shards at once (see MessageProcessor.removeMessagesWhere); completes
+    // with the total removed.
+    public CompletableFuture<Integer> removeMessagesWhere(Predicate<MessageData.messageData> predicate) {
+        return onEveryShard(shard -> shard.removeMessagesWhere(predicate))
+                .thenApply(counts -> counts.stream().mapToInt(Integer::intValue).sum());
+    }
+
+    // Loads every shard's file in parallel; completes with true if any shard found messages.
+    public CompletableFuture<Boolean> loadStoredMessagesFromJson() {
+        return onEveryShard(MessageProcessor::loadStoredMessagesFromJson)
+                .thenApply(results -> results.contains(true));
+    }
+
+    // ---------- Reads ----------
+
+    public CompletableFuture<List<MessageData.messageData>> findMessagesByRecipient(String recipient) {
+        return onShard(shardFor(recipient), shard -> shard.findMessagesByRecipient(recipient));
+    }
+
+    public CompletableFuture<Optional<MessageData.messageData>> findMessageById(String id) {
+        return fanOut(shard -> shard.findMessageById(id));
+    }
+
+    public CompletableFuture<Optional<MessageData.messageData>> findMessageByHash(String hash) {
+        return fanOut(shard -> shard.findMessageByHash(hash));
+    }
+
+    // ---------- Settings ----------
+
+    // One limiter is shared by every shard, since a sender's messages go to many recipients.
+    public void setRateLimiter(RateLimiter rateLimiter) {
+        for (MessageProcessor shard : shards) {
+            shard.setRateLimiter(rateLimiter);
+        }
+    }
+
+    public void setParallelLoading(boolean parallelLoading) {
+        for (MessageProcessor shard : shards) {
+            shard.setParallelLoading(parallelLoading);
+        }
+    }
+
+    // ---------- Getters ----------
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    // The shard's processor, e.g. for its metrics. Only touch its lists from onShard work.
+    public MessageProcessor getShard(int index) {
+        return shards[index];
+    }
+
+    // Runs arbitrary work on the given shard's own thread.
+    public <T> CompletableFuture<T> onShard(int index, ShardWork<T> work) {
+        return CompletableFuture.supplyAsync(() -> work.apply(shards[index]), writers[index]);
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        for (ExecutorService writer : writers) {
+            writer.shutdown();
+        }
+        for (ExecutorService writer : writers) {
+            writer.awaitTermination(30, TimeUnit.SECONDS);
+        }
+    }
+
+    // ---------- Utilities ----------
+
+    // Runs the work on every shard at once and collects the results in shard order.
+    private <T> CompletableFuture<List<T>> onEveryShard(ShardWork<T> work) {
+        List<CompletableFuture<T>> results = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            results.add(onShard(i, work));
+        }
+        return CompletableFuture.allOf(results.toArray(CompletableFuture<?>[]::new))
+                .thenApply(done -> results.stream().map(CompletableFuture::join).toList());
+    }
+
+    private CompletableFuture<Optional<MessageData.messageData>> fanOut(
+            ShardWork<Optional<MessageData.messageData>> lookup) {
+        return onEveryShard(lookup)
+                .thenApply(results -> results.stream().flatMap(Optional::stream).findFirst());
+    }
+
+    // Index of the first shard (in shard order) whose lookup finds something, or -1.
+    private CompletableFuture<Integer> firstShardWith(ShardWork<Optional<MessageData.messageData>> lookup) {
+        return onEveryShard(lookup).thenApply(results -> {
+            for (int i = 0; i < results.size(); i++) {
+                if (results.get(i).isPresent()) {
+                    return i;
+                }
+            }
+            return -1;
+        });
+    }
+
+    @FunctionalInterface
+    public interface ShardWork<T> {
+        T apply(MessageProcessor shard);
+    }
+}
@@ -0,0 +1,215 @@
+package org.example;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Brings a stored-messages file back to a consistent state after a crash, before it is loaded.
+// Appends are single writes followed by an fsync, so a crash can only leave a torn last line (or a
+// few bytes of garbage) after the last committed record; rewrites go through a temporary file that is
+// renamed over the original, so a crash leaves either the old file plus a stale temporary file or the
+// new file. Recovery therefore deletes a stale temporary file and cuts the file back to the end of
+// its last intact line. That costs a read of the tail only. Every other line is verified against its
+// checksum while it is parsed (in parallel when parallel loading is on); a corrupt line in the middle
+// of the file is skipped and counted, never truncated, so the committed records after it survive.
+public class StorageRecovery {
+
+    private static final int SCAN_BUFFER_BYTES = 64 * 1024;
+
+    private StorageRecovery() {
+    }
+
+    static Path tempFileFor(Path file) {
+        return file.resolveSibling(file.getFileName() + ".tmp");
+    }
+
+    // Deletes a stale temporary file and truncates a torn tail, recording both in the report.
+    static void repair(Path file, Report report) throws IOException {
+        report.tempFileDiscarded = Files.deleteIfExists(tempFileFor(file));
+        if (!Files.exists(file)) {
+            return;
+        }
+        // RandomAccessFile rather than a channel, so an interrupted loader can still finish the repair.
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            long size = raf.length();
+            long end = size;
+            long lineStart;
+            while (end > 0 && !isIntact(readLine(raf, lineStart = lineStartBefore(raf, end), end))) {
+                end = lineStart;
+                report.truncatedLines++;
+            }
+            if (end < size) {
+                raf.setLength(end);
+                report.truncatedBytes = size - end;
+            }
+            if (end > 0 && readByte(raf, end - 1) != '\n') {
+                // An intact last record whose newline never made it; end the line so appends start afresh
+                raf.seek(end);
+                raf.write(System.lineSeparator().getBytes(StandardCharsets.UTF_8));
+            }
+            if (raf.length() != size) {
+                raf.getFD().sync();
+            }
+        }
+    }
+
+    // A last line is kept if its checksum matches or, for an unsealed line, if it is blank or parses
+    // as JSON; a torn line fails both.
+    private static boolean isIntact(String line) {
+        String json = RecordChecksum.unseal(line);
+        if (json == null) {
+            return false;
+        }
+        if (json.trim().isEmpty() || RecordChecksum.isSealed(line)) {
+            return true;
+        }
+        try {
+            new JSONObject(json);
+            return true;
+        } catch (JSONException e) {
+            return false;
+        }
+    }
+
+    // Position just after the last '\n' before the final byte of [0, end), or 0.
+    private static long lineStartBefore(RandomAccessFile raf, long end) throws IOException {
+        byte[] buffer = new byte[SCAN_BUFFER_BYTES];
+        long to = end - 1; // The final byte may be the line's own newline
+        while (to > 0) {
+            long from = Math.max(0, to - SCAN_BUFFER_BYTES);
+            int length = (int) (to - from);
+            raf.seek(from);
+            raf.readFully(buffer, 0, length);
+            for (int i = length - 1; i >= 0; i--) {
+                if (buffer[i] == '\n') {
+                    return from + i + 1;
+                }
+            }
+            to = from;
+        }
+        return 0;
+    }
+
+    private static int readByte(RandomAccessFile raf, long position) throws IOException {
+        raf.seek(position);
+        return raf.read();
+    }
+
+    private static String readLine(RandomAccessFile raf, long from, long to) throws IOException {
+        byte[] bytes = new byte[(int) (to - from)];
+        raf.seek(from);
+        raf.readFully(bytes);
+        int length = bytes.length;
+        while (length > 0 && (bytes[length - 1] == '\n' || bytes[length - 1] == '\r')) {
+            length--;
+        }
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    // What the last load found and fixed. The line counters are filled in while the file is parsed.
+    public static class Report {
+        private final String file;
+        private boolean tempFileDiscarded;
+        private long truncatedBytes;
+        private int truncatedLines;
+        private final AtomicLong sealedLines = new AtomicLong();
+        private final AtomicLong legacyLines = new AtomicLong();
+        private final AtomicLong corruptLines = new AtomicLong();
+        private final AtomicLong malformedLines = new AtomicLong();
+        private final AtomicLong untimedMessages = new AtomicLong();
+        private int messagesLoaded;
+        private long elapsedNanos;
+
+        Report(String file) {
+            this.file = file;
+        }
+
+        // Checks the seal of the line in bytes[from, to) and returns the end of its JSON, or -1 (after
+        // counting it) when it is corrupt.
+        int verify(byte[] bytes, int from, int to) {
+            int jsonEnd = RecordChecksum.jsonEnd(bytes, from, to);
+            if (jsonEnd < 0) {
+                corruptLines.incrementAndGet();
+            } else if (jsonEnd == to) {
+                legacyLines.incrementAndGet();
+            } else {
+                sealedLines.incrementAndGet();
+            }
+            return jsonEnd;
+        }
+
+        void malformedLine() {
+            malformedLines.incrementAndGet();
+        }
+
+        void untimedMessage() {
+            untimedMessages.incrementAndGet();
+        }
+
+        void finish(int messagesLoaded, long elapsedNanos) {
+            this.messagesLoaded = messagesLoaded;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        // True when anything was cut off or skipped.
+        public boolean hasRepairs() {
+            return tempFileDiscarded || truncatedBytes > 0 || corruptLines.get() > 0 || malformedLines.get() > 0;
+        }
+
+        public boolean isTempFileDiscarded() {
+            return tempFileDiscarded;
+        }
+
+        public long getTruncatedBytes() {
+            return truncatedBytes;
+        }
+
+        public int getTruncatedLines() {
+            return truncatedLines;
+        }
+
+        public long getSealedLines() {
+            return sealedLines.get();
+        }
+
+        public long getLegacyLines() {
+            return legacyLines.get();
+        }
+
+        public long getCorruptLines() {
+            return corruptLines.get();
+        }
+
+        public long getMalformedLines() {
+            return malformedLines.get();
+        }
+
+        // Messages without a creation time, which the load gave one and wrote back to the file.
+        public long getUntimedMessages() {
+            return untimedMessages.get();
+        }
+
+        public int getMessagesLoaded() {
+            return messagesLoaded;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Recovered %s in %.1f ms: %d messages loaded from %d verified and %d unchecked lines; "
+                            + "%d corrupt and %d malformed lines skipped; torn tail of %d bytes (%d lines) truncated%s",
+                    file, elapsedNanos / 1e6, messagesLoaded, sealedLines.get(), legacyLines.get(),
+                    corruptLines.get(), malformedLines.get(), truncatedBytes, truncatedLines,
+                    tempFileDiscarded ? "; stale temporary file from an interrupted rewrite deleted" : "");
+        }
+    }
+}
@@ -0,0 +1,454 @@
+package org.example;
+
+import org.json.JSONException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+// Parses one line of the stored-messages file straight from its UTF-8 bytes.
+// The schema is fixed (see MessageProcessor.appendJsonLine), so instead of building a JSONObject -
+// a HashMap, a String per key and value, boxed numbers - it matches the known keys against the raw
+// bytes and decodes each value directly into the message's fields. The only objects made are the
+// message and its strings: an escape-free value becomes a String in one copy, and values with
+// escapes are decoded through a char buffer the parser reuses. Keys it does not know are skipped,
+// so files from newer versions still load; everything else must be strict JSON, and a malformed
+// line fails with the offset of the first bad byte.
+// Accepts and rejects the same lines as MessageProcessor.parseStoredLine (org.json) for every line
+// this application writes. Not thread-safe: use one parser per thread.
+final class StoredLineParser {
+
+    // The line is not a record this parser accepts; offset is in bytes from the start of the line.
+    static class MalformedLineException extends JSONException {
+        private final int offset;
+
+        MalformedLineException(String problem, int offset) {
+            super(problem + " at offset " + offset);
+            this.offset = offset;
+        }
+
+        int getOffset() {
+            return offset;
+        }
+    }
+
+    private enum Key {
+        ID("id"), SENDER("sender"), RECIPIENT("recipient"), MESSAGE_TEXT("messageText"), HASH("hash"),
+        STATUS("status"), SEND_AT("sendAt"), CREATED_AT("createdAt"), STATUS_CHANGED_AT("statusChangedAt"),
+        OP("op"), IDS("ids");
+
+        final String name;
+        final byte[] bytes;
+
+        Key(String name) {
+            this.name = name;
+            this.bytes = name.getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    private static final Key[] KEYS = Key.values();
+    private static final int MAX_DEPTH = 64; // Nesting allowed inside skipped values
+
+    private byte[] bytes;
+    private int pos;
+    private int end;
+    private int lineStart;
+    private char[] chars = new char[256];
+    private boolean timed; // Whether the last message parsed had a "createdAt"
+
+    // Returns the message on the line, or null after counting a "sent"/"removed" record's ids in goneCounts.
+    MessageData.messageData parse(byte[] bytes, int from, int to, Map<String, Integer> goneCounts) {
+        this.bytes = bytes;
+        this.pos = from;
+        this.end = to;
+        this.lineStart = from;
+
+        String id = null, sender = null, recipient = null, messageText = null, hash = null, status = null, op = null;
+        long sendAt = 0, createdAt = 0, statusChangedAt = 0;
+        List<String> ids = null;
+        int seen = 0;
+
+        skipWhitespace();
+        expect('{');
+        skipWhitespace();
+        if (peek() == '}') {
+            pos++;
+        } else {
+            while (true) {
+                int keyAt = pos;
+                Key key = readKey();
+                if (key != null) {
+                    if ((seen & 1 << key.ordinal()) != 0) {
+                        throw fail("Duplicate key \"" + key.name + "\"", keyAt);
+                    }
+                    seen |= 1 << key.ordinal();
+                }
+                skipWhitespace();
+                expect(':');
+                skipWhitespace();
+                if (key == null) {
+                    skipValue(0);
+                } else {
+                    switch (key) {
+                        case ID -> id = readString(key);
+                        case SENDER -> sender = readString(key);
+                        case RECIPIENT -> recipient = readString(key);
+                        case MESSAGE_TEXT -> messageText = readString(key);
+                        case HASH -> hash = readString(key);
+                        case STATUS -> status = readString(key);
+                        case OP -> op = readString(key);
+                        case SEND_AT -> sendAt = readLong(key);
+                        case CREATED_AT -> createdAt = readLong(key);
+                        case STATUS_CHANGED_AT -> statusChangedAt = readLong(key);
+                        case IDS -> ids = readStringArray(key);
+                    }
+                }
+                skipWhitespace();
+                byte next = next();
+                if (next == '}') {
+                    break;
+                }
+                if (next != ',') {
+                    throw fail("Expected ',' or '}'", pos - 1);
+                }
+                skipWhitespace();
+            }
+        }
+        skipWhitespace();
+        if (pos != end) {
+            throw fail("Unexpected data after the record", pos);
+        }
+
+        if ((seen & 1 << Key.OP.ordinal()) != 0) {
+            if (!op.equals("sent") && !op.equals("removed")) {
+                throw fail("Unknown op: " + op, from);
+            }
+            if (ids == null) {
+                throw fail("Missing \"ids\"", end - 1);
+            }
+            for (String gone : ids) {
+                goneCounts.merge(gone, 1, Integer::sum);
+            }
+            return null;
+        }
+        for (Key required : new Key[]{Key.ID, Key.SENDER, Key.RECIPIENT, Key.MESSAGE_TEXT, Key.HASH, Key.STATUS}) {
+            if ((seen & 1 << required.ordinal()) == 0) {
+                throw fail("Missing \"" + required.name + "\"", end - 1);
+            }
+        }
+        MessageData.messageData msg = new MessageData.messageData(id, sender, recipient, messageText, hash, status);
+        msg.setSendAt(sendAt);
+        // Same defaults as MessageProcessor.fromJson for records written before timestamps existed
+        timed = (seen & 1 << Key.CREATED_AT.ordinal()) != 0;
+        if (timed) {
+            msg.setCreatedAt(createdAt);
+        }
+        msg.setStatusChangedAt((seen & 1 << Key.STATUS_CHANGED_AT.ordinal()) != 0 ? statusChangedAt : msg.getCreatedAt());
+        return msg;
+    }
+
+    // False when the last message parse returned was written before timestamps existed, and so was
+    // given the current time as its creation time.
+    boolean wasTimed() {
+        return timed;
+    }
+
+    // ---------- Tokens ----------
+
+    // The known key at pos (consuming it), or null for any other key.
+    private Key readKey() {
+        if (peek() != '"') {
+            throw fail("Expected a key", pos);
+        }
+        int start = pos + 1;
+        int close = start;
+        while (close < end && bytes[close] != '"' && bytes[close] != '\\') {
+            close++;
+        }
+        if (close < end && bytes[close] == '"') {
+            pos = close + 1;
+            int length = close - start;
+            for (Key key : KEYS) {
+                if (key.bytes.length == length && regionEquals(key.bytes, start)) {
+                    return key;
+                }
+            }
+            return null;
+        }
+        // A key with escapes: rare enough to decode and compare as a String
+        String name = readString(null);
+        for (Key key : KEYS) {
+            if (key.name.equals(name)) {
+                return key;
+            }
+        }
+        return null;
+    }
+
+    private boolean regionEquals(byte[] expected, int at) {
+        for (int i = 0; i < expected.length; i++) {
+            if (bytes[at + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String readString(Key key) {
+        int valueAt = pos;
+        if (peek() != '"') {
+            throw fail(key == null ? "Expected a string" : "\"" + key.name + "\" is not a string", valueAt);
+        }
+        int start = ++pos;
+        boolean ascii = true;
+        while (pos < end) {
+            byte b = bytes[pos];
+            if (b == '"') {
+                pos++;
+                // Both charsets take a plain copy for ASCII, but Latin-1 skips the decoder's checks
+                return new String(bytes, start, pos - 1 - start,
+                        ascii ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+            }
+            if (b == '\\') {
+                return readEscapedString(start);
+            }
+            ascii &= b >= 0;
+            pos++;
+        }
+        throw fail("Unterminated string", valueAt);
+    }
+
+    // Decodes a string from start (just after the opening quote) that contains escapes.
+    private String readEscapedString(int start) {
+        int length = 0;
+        pos = start;
+        while (true) {
+            if (pos >= end) {
+                throw fail("Unterminated string", start - 1);
+            }
+            if (length + 2 > chars.length) {
+                chars = Arrays.copyOf(chars, chars.length * 2);
+            }
+            int b = bytes[pos] & 0xFF;
+            if (b == '"') {
+                pos++;
+                return new String(chars, 0, length);
+            }
+            if (b == '\\') {
+                chars[length++] = readEscape();
+            } else if (b < 0x80) {
+                chars[length++] = (char) b;
+                pos++;
+            } else {
+                length = decodeUtf8(chars, length);
+            }
+        }
+    }
+
+    private char readEscape() {
+        int escapeAt = pos;
+        pos++; // The backslash
+        if (pos >= end) {
+            throw fail("Unterminated escape", escapeAt);
+        }
+        byte c = bytes[pos++];
+        return switch (c) {
+            case '"' -> '"';
+            case '\\' -> '\\';
+            case '/' -> '/';
+            case 'b' -> '\b';
+            case 'f' -> '\f';
+            case 'n' -> '\n';
+            case 'r' -> '\r';
+            case 't' -> '\t';
+            case 'u' -> {
+                if (pos + 4 > end) {
+                    throw fail("Truncated unicode escape", escapeAt);
+                }
+                int code = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(bytes[pos++], 16);
+                    if (digit < 0) {
+                        throw fail("Bad unicode escape", escapeAt);
+                    }
+                    code = code << 4 | digit;
+                }
+                yield (char) code;
+            }
+            default -> throw fail("Bad escape", escapeAt);
+        };
+    }
+
+    // Decodes the multi-byte UTF-8 sequence at pos into out. A malformed sequence becomes a
+    // replacement character, as it would in new String(bytes, UTF_8).
+    private int decodeUtf8(char[] out, int length) {
+        int b = bytes[pos] & 0xFF;
+        int extra = b >= 0xF0 && b <= 0xF4 ? 3 : b >= 0xE0 ? (b <= 0xEF ? 2 : -1) : b >= 0xC2 ? 1 : -1;
+        if (extra < 0 || pos + extra >= end) {
+            out[length++] = (char) 0xFFFD;
+            pos++;
+            return length;
+        }
+        int code = b & (0x3F >> extra);
+        for (int i = 1; i <= extra; i++) {
+            int continuation = bytes[pos + i] & 0xFF;
+            if ((continuation & 0xC0) != 0x80) {
+                out[length++] = (char) 0xFFFD;
+                pos++;
+                return length;
+            }
+            code = code << 6 | continuation & 0x3F;
+        }
+        int minimum = extra == 1 ? 0x80 : extra == 2 ? 0x800 : 0x10000;
+        if (code < minimum || code > 0x10FFFF || (code >= 0xD800 && code <= 0xDFFF)) {
+            out[length++] = (char) 0xFFFD;
+            pos++;
+            return length;
+        }
+        pos += extra + 1;
+        if (code >= 0x10000) {
+            out[length++] = Character.highSurrogate(code);
+            out[length++] = Character.lowSurrogate(code);
+        } else {
+            out[length++] = (char) code;
+        }
+        return length;
+    }
+
+    private long readLong(Key key) {
+        int valueAt = pos;
+        boolean negative = pos < end && bytes[pos] == '-';
+        if (negative) {
+            pos++;
+        }
+        int digitsAt = pos;
+        long value = 0;
+        while (pos < end && bytes[pos] >= '0' && bytes[pos] <= '9') {
+            if (value > (Long.MAX_VALUE - 9) / 10) {
+                throw fail("\"" + key.name + "\" is out of range", valueAt);
+            }
+            value = value * 10 + (bytes[pos++] - '0');
+        }
+        if (pos == digitsAt || (pos < end && (bytes[pos] == '.' || bytes[pos] == 'e' || bytes[pos] == 'E'))) {
+            throw fail("\"" + key.name + "\" is not an integer", valueAt);
+        }
+        return negative ? -value : value;
+    }
+
+    private List<String> readStringArray(Key key) {
+        if (peek() != '[') {
+            throw fail("\"" + key.name + "\" is not an array", pos);
+        }
+        pos++;
+        List<String> values = new ArrayList<>();
+        skipWhitespace();
+        if (peek() == ']') {
+            pos++;
+            return values;
+        }
+        while (true) {
+            skipWhitespace();
+            values.add(readString(key));
+            skipWhitespace();
+            byte next = next();
+            if (next == ']') {
+                return values;
+            }
+            if (next != ',') {
+                throw fail("Expected ',' or ']'", pos - 1);
+            }
+        }
+    }
+
+    // Skips any JSON value, for keys this version does not know.
+    private void skipValue(int depth) {
+        if (depth > MAX_DEPTH) {
+            throw fail("Nested too deeply", pos);
+        }
+        byte b = peek();
+        switch (b) {
+            case '"' -> readString(null);
+            case '{', '[' -> {
+                byte close = b == '{' ? (byte) '}' : (byte) ']';
+                pos++;
+                skipWhitespace();
+                if (peek() == close) {
+                    pos++;
+                    return;
+                }
+                while (true) {
+                    skipWhitespace();
+                    if (b == '{') {
+                        readString(null);
+                        skipWhitespace();
+                        expect(':');
+                        skipWhitespace();
+                    }
+                    skipValue(depth + 1);
+                    skipWhitespace();
+                    byte next = next();
+                    if (next == close) {
+                        return;
+                    }
+                    if (next != ',') {
+                        throw fail("Expected ',' or '" + (char) close + "'", pos - 1);
+                    }
+                }
+            }
+            case 't' -> literal("true");
+            case 'f' -> literal("false");
+            case 'n' -> literal("null");
+            default -> {
+                int start = pos;
+                while (pos < end && (bytes[pos] == '-' || bytes[pos] == '+' || bytes[pos] == '.'
+                        || bytes[pos] == 'e' || bytes[pos] == 'E' || (bytes[pos] >= '0' && bytes[pos] <= '9'))) {
+                    pos++;
+                }
+                if (pos == start) {
+                    throw fail("Expected a value", start);
+                }
+            }
+        }
+    }
+
+    private void literal(String word) {
+        for (int i = 0; i < word.length(); i++) {
+            if (pos + i >= end || bytes[pos + i] != word.charAt(i)) {
+                throw fail("Expected " + word, pos);
+            }
+        }
+        pos += word.length();
+    }
+
+    private void skipWhitespace() {
+        while (pos < end && (bytes[pos] == ' ' || bytes[pos] == '\t' || bytes[pos] == '\r' || bytes[pos] == '\n')) {
+            pos++;
+        }
+    }
+
+    private byte peek() {
+        if (pos >= end) {
+            throw fail("Unexpected end of line", pos);
+        }
+        return bytes[pos];
+    }
+
+    private byte next() {
+        byte b = peek();
+        pos++;
+        return b;
+    }
+
+    private void expect(char c) {
+        if (peek() != c) {
+            throw fail("Expected '" + c + "'", pos);
+        }
+        pos++;
+    }
+
+    private MalformedLineException fail(String problem, int at) {
+        return new MalformedLineException(problem, at - lineStart);
+    }
+}
@@ -0,0 +1,241 @@
+package org.example;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Registered users, looked up by username in a ConcurrentHashMap and persisted to an append-only
+// JSON-lines file (a later line for the same username replaces an earlier one).
+// Passwords are never stored: each user gets a random salt and a PBKDF2 hash. Hashing is
+// deliberately slow, so it runs on a small bounded pool; when that pool is saturated new requests
+// fail fast instead of piling up and taking CPU away from message processing.
+// Unknown usernames are hashed too, against a throwaway salt, so how long a login takes does not
+// tell whether the username exists.
+public class UserDirectory implements AutoCloseable {
+
+    static final int DEFAULT_ITERATIONS = 120_000;
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+
+    private final Map<String, UserRecord> users = new ConcurrentHashMap<>();
+    private final Path file;
+    private final int iterations;
+    private final ThreadPoolExecutor hashingPool;
+    private final SecureRandom random = new SecureRandom();
+    private final byte[] unknownUserSalt = new byte[SALT_BYTES];
+    private final Object appendLock = new Object();
+
+    public UserDirectory(String fileName) throws IOException {
+        this(Path.of(fileName), DEFAULT_ITERATIONS,
+                Math.max(1, Runtime.getRuntime().availableProcessors() / 2), 64);
+    }
+
+    UserDirectory(Path file, int iterations, int hashingThreads, int queueCapacity) throws IOException {
+        this.file = file;
+        this.iterations = iterations;
+        random.nextBytes(unknownUserSalt);
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.hashingPool = new ThreadPoolExecutor(hashingThreads, hashingThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "password-hashing-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        load();
+    }
+
+    private void load() throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) continue;
+                try {
+                    UserRecord record = UserRecord.fromJson(new JSONObject(line));
+                    users.put(record.getUsername(), record);
+                } catch (JSONException | IllegalArgumentException e) {
+                    System.err.println("Skipping malformed user record: " + line);
+                }
+            }
+        }
+    }
+
+    // Completes with false when the username is already taken.
+    public CompletableFuture<Boolean> register(Login user) {
+        String username = user.getUsername();
+        String password = user.getPassword();
+        if (users.containsKey(username)) {
+            return CompletableFuture.completedFuture(false);
+        }
+        return submit(() -> {
+            byte[] salt = new byte[SALT_BYTES];
+            random.nextBytes(salt);
+            UserRecord record = new UserRecord(username, user.getFirstName(), user.getLastName(),
+                    user.getCellNumber(), salt, hash(password, salt, iterations), iterations);
+            if (users.putIfAbsent(username, record) != null) {
+                return false;
+            }
+            try {
+                append(record);
+            } catch (IOException e) {
+                users.remove(username, record); // Not persisted, so not registered
+                throw e;
+            }
+            return true;
+        });
+    }
+
+    // Completes with false for an unknown username or a wrong password.
+    public CompletableFuture<Boolean> authenticate(String username, String password) {
+        UserRecord record = username == null ? null : users.get(username);
+        if (record == null || password == null) {
+            String attempt = password == null ? "" : password;
+            return submit(() -> {
+                hash(attempt, unknownUserSalt, iterations); // The same work as a wrong password
+                return false;
+            });
+        }
+        return submit(() -> MessageDigest.isEqual(
+                record.passwordHash, hash(password, record.salt, record.iterations)));
+    }
+
+    public Optional<UserRecord> find(String username) {
+        return Optional.ofNullable(users.get(username));
+    }
+
+    public int size() {
+        return users.size();
+    }
+
+    @Override
+    public void close() {
+        hashingPool.shutdown();
+    }
+
+    private CompletableFuture<Boolean> submit(HashingTask task) {
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        try {
+            hashingPool.execute(() -> {
+                try {
+                    result.complete(task.run());
+                } catch (Exception e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(new IllegalStateException("Too many logins in progress, please try again", e));
+        }
+        return result;
+    }
+
+    private void append(UserRecord record) throws IOException {
+        String line = record.toJson().toString() + System.lineSeparator();
+        synchronized (appendLock) {
+            try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                writer.write(line);
+            }
+        }
+    }
+
+    static byte[] hash(String password, byte[] salt, int iterations) throws GeneralSecurityException {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    private interface HashingTask {
+        boolean run() throws Exception;
+    }
+
+    public static class UserRecord {
+        private final String username;
+        private final String firstName;
+        private final String lastName;
+        private final String cellNumber;
+        private final byte[] salt;
+        private final byte[] passwordHash;
+        private final int iterations;
+
+        UserRecord(String username, String firstName, String lastName, String cellNumber,
+                   byte[] salt, byte[] passwordHash, int iterations) {
+            this.username = username;
+            this.firstName = firstName;
+            this.lastName = lastName;
+            this.cellNumber = cellNumber;
+            this.salt = salt;
+            this.passwordHash = passwordHash;
+            this.iterations = iterations;
+        }
+
+        // --- Getters ---
+        public String getUsername() {
+            return username;
+        }
+
+        public String getFirstName() {
+            return firstName;
+        }
+
+        public String getLastName() {
+            return lastName;
+        }
+
+        public String getCellNumber() {
+            return cellNumber;
+        }
+
+        JSONObject toJson() {
+            JSONObject json = new JSONObject();
+            json.put("username", username);
+            json.put("firstName", firstName);
+            json.put("lastName", lastName);
+            json.put("cellNumber", cellNumber);
+            json.put("salt", Base64.getEncoder().encodeToString(salt));
+            json.put("passwordHash", Base64.getEncoder().encodeToString(passwordHash));
+            json.put("iterations", iterations);
+            return json;
+        }
+
+        static UserRecord fromJson(JSONObject json) {
+            return new UserRecord(
+                    json.getString("username"),
+                    json.getString("firstName"),
+                    json.getString("lastName"),
+                    json.getString("cellNumber"),
+                    Base64.getDecoder().decode(json.getString("salt")),
+                    Base64.getDecoder().decode(json.getString("passwordHash")),
+                    json.getInt("iterations"));
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package org.example;
+
+import java.util.Arrays;
+import java.util.Random;
+
+// Synthetic QuickChat traffic for load tests.
+// A fixed population of senders (names) and recipients (+27 cell numbers that pass
+// MessageData.checkRecipientCell) is drawn once from a seed. Who sends and who receives follow a
+// Zipf distribution, so a few popular people account for most traffic, as they do in real chat.
+// Message texts are made of common words with a log-normal length around a configurable median,
+// capped at the app's 250 characters. Operations are drawn from a weighted mix.
+// The population is immutable, so one generator can be shared by all clients; every method takes
+// the caller's Random so each client gets its own reproducible stream.
+public class WorkloadGenerator {
+
+    public enum Operation { SEND, STORE, DISCARD, SEARCH, DELETE }
+
+    static final int MAX_TEXT_LENGTH = 250;
+
+    private static final String[] FIRST_NAMES = {
+            "Thabo", "Lerato", "Sipho", "Naledi", "Johan", "Anika", "Pieter", "Zanele", "Kagiso", "Ayesha",
+            "Bongani", "Mpho", "Riaan", "Palesa", "Themba", "Chantal", "Lwazi", "Refilwe", "Deon", "Nomsa"
+    };
+    private static final String[] WORDS = {
+            "hi", "hey", "are", "you", "coming", "to", "the", "meeting", "today", "tomorrow", "thanks", "see",
+            "soon", "call", "me", "back", "when", "get", "this", "please", "running", "late", "lunch", "at",
+            "home", "office", "ok", "sure", "good", "morning", "night", "love", "happy", "birthday", "where",
+            "what", "time", "is", "it", "we", "will", "be", "there", "in", "ten", "minutes", "traffic", "bad"
+    };
+
+    private final String[] senders;
+    private final String[] recipients;
+    private final double[] senderCdf;
+    private final double[] recipientCdf;
+    private final double medianTextLength;
+    private final double textLengthSigma;
+    private final Operation[] operations = Operation.values();
+    private final double[] operationCdf;
+
+    // weights: relative frequency of each Operation, in declaration order.
+    public WorkloadGenerator(long seed, int senderCount, int recipientCount, double zipfExponent,
+                             double medianTextLength, double textLengthSigma, double[] weights) {
+        if (senderCount < 1 || recipientCount < 1) {
+            throw new IllegalArgumentException("populations must not be empty");
+        }
+        if (medianTextLength < 1 || textLengthSigma < 0) {
+            throw new IllegalArgumentException("invalid text length distribution");
+        }
+        if (weights.length != operations.length) {
+            throw new IllegalArgumentException("need one weight per operation");
+        }
+        Random random = new Random(seed);
+        this.senders = new String[senderCount];
+        for (int i = 0; i < senderCount; i++) {
+            senders[i] = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + (i + 1);
+        }
+        this.recipients = new String[recipientCount];
+        for (int i = 0; i < recipientCount; i++) {
+            // +27, then a 9 digit number that starts like a South African mobile number (6x, 7x, 8x)
+            recipients[i] = "+27" + (6 + random.nextInt(3)) + String.format("%08d", random.nextInt(100_000_000));
+        }
+        this.senderCdf = zipfCdf(senderCount, zipfExponent);
+        this.recipientCdf = zipfCdf(recipientCount, zipfExponent);
+        this.medianTextLength = medianTextLength;
+        this.textLengthSigma = textLengthSigma;
+        this.operationCdf = cdf(weights);
+    }
+
+    // 2,000 senders and 10,000 recipients with Zipf exponent 1, texts around 40 characters, and a mix
+    // of 50% send, 10% store, 5% discard, 30% search and 5% delete.
+    public static WorkloadGenerator withDefaults(long seed) {
+        return new WorkloadGenerator(seed, 2_000, 10_000, 1.0, 40, 0.8, new double[]{50, 10, 5, 30, 5});
+    }
+
+    public Operation nextOperation(Random random) {
+        return operations[pick(operationCdf, random)];
+    }
+
+    public String nextSender(Random random) {
+        return senders[pick(senderCdf, random)];
+    }
+
+    public String nextRecipient(Random random) {
+        return recipients[pick(recipientCdf, random)];
+    }
+
+    public String nextText(Random random) {
+        double length = medianTextLength * Math.exp(textLengthSigma * random.nextGaussian());
+        int target = (int) Math.max(1, Math.min(MAX_TEXT_LENGTH, Math.round(length)));
+        StringBuilder text = new StringBuilder(target + 10);
+        while (text.length() < target) {
+            if (text.length() > 0) {
+                text.append(' ');
+            }
+            text.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        text.setLength(Math.min(text.length(), target));
+        String trimmed = text.toString().trim();
+        return trimmed.isEmpty() ? "ok" : trimmed;
+    }
+
+    // A message built the way the QuickChat dialog builds one: an id in its MSG format, a cell number
+    // recipient and the hash from MessageData.createMessageHash. The status is left empty.
+    public MessageData.messageData nextMessage(Random random, int messageNumber) {
+        String id = "MSG" + (1_000_000 + random.nextInt(9_000_000)) + String.format("%02d", messageNumber % 100);
+        String text = nextText(random);
+        String hash = new MessageData().createMessageHash(id, messageNumber, text);
+        return new MessageData.messageData(id, nextSender(random), nextRecipient(random), text, hash, "");
+    }
+
+    public int getSenderCount() {
+        return senders.length;
+    }
+
+    public int getRecipientCount() {
+        return recipients.length;
+    }
+
+    // ---------- Distributions ----------
+
+    // P(rank k) proportional to 1 / k^exponent; exponent 0 is uniform.
+    private static double[] zipfCdf(int n, double exponent) {
+        double[] weights = new double[n];
+        for (int k = 0; k < n; k++) {
+            weights[k] = 1.0 / Math.pow(k + 1, exponent);
+        }
+        return cdf(weights);
+    }
+
+    private static double[] cdf(double[] weights) {
+        double[] cdf = new double[weights.length];
+        double total = 0;
+        for (int i = 0; i < weights.length; i++) {
+            if (weights[i] < 0) {
+                throw new IllegalArgumentException("weights must not be negative");
+            }
+            total += weights[i];
+            cdf[i] = total;
+        }
+        if (total <= 0) {
+            throw new IllegalArgumentException("weights must not all be zero");
+        }
+        for (int i = 0; i < cdf.length; i++) {
+            cdf[i] /= total;
+        }
+        return cdf;
+    }
+
+    private static int pick(double[] cdf, Random random) {
+        int index = Arrays.binarySearch(cdf, random.nextDouble());
+        index = index >= 0 ? index + 1 : -index - 1;
+        return Math.min(index, cdf.length - 1);
+    }
+}
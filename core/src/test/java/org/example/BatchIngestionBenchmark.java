@@ -0,0 +1,59 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Compares importing messages with importMessages against adding them one call at a time
+// (addStoredMessage and addSentMessage). The one-at-a-time path fsyncs every stored message, so it
+// only runs on a sample and its rate is reported alongside.
+// Not a unit test: run it from the IDE or with
+//   mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.example.BatchIngestionBenchmark
+// Arguments: [messages] [one-at-a-time sample]
+public class BatchIngestionBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int sample = args.length > 1 ? Integer.parseInt(args[1]) : 2_000;
+
+        WorkloadGenerator workload = WorkloadGenerator.withDefaults(48);
+        Random random = new Random(48);
+        List<MessageData.messageData> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            MessageData.messageData msg = workload.nextMessage(random, i);
+            msg.setStatus(i % 2 == 0 ? "SENT" : "PENDING");
+            messages.add(msg);
+        }
+
+        Path dir = Files.createTempDirectory("batch-ingestion");
+        try {
+            MessageProcessor single = new MessageProcessor(dir.resolve("single.json").toString());
+            long start = System.nanoTime();
+            for (MessageData.messageData msg : messages.subList(0, Math.min(sample, count))) {
+                if ("SENT".equals(msg.getStatus())) {
+                    single.addSentMessage(msg);
+                } else {
+                    single.addStoredMessage(msg);
+                }
+            }
+            double singleRate = Math.min(sample, count) / ((System.nanoTime() - start) / 1e9);
+
+            MessageProcessor batch = new MessageProcessor(dir.resolve("batch.json").toString());
+            start = System.nanoTime();
+            long added = batch.importMessages(messages.stream());
+            double batchSeconds = (System.nanoTime() - start) / 1e9;
+
+            System.out.printf("one at a time: %,12.0f messages/s (%,d of them; %,.0f s for all %,d)%n",
+                    singleRate, Math.min(sample, count), count / singleRate, count);
+            System.out.printf("importMessages: %,11.0f messages/s (%,d in %.1f s, %.1f MB written)%n",
+                    added / batchSeconds, added, batchSeconds, Files.size(dir.resolve("batch.json")) / 1e6);
+        } finally {
+            Files.deleteIfExists(dir.resolve("single.json"));
+            Files.deleteIfExists(dir.resolve("batch.json"));
+            Files.delete(dir);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package org.example;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChangeFeedTest {
+
+    private Path directory;
+    private Path log;
+    private MessageProcessor processor;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        directory = Files.createTempDirectory("feed");
+        log = directory.resolve("changes.log");
+        processor = new MessageProcessor(directory.resolve("storedMessages.json").toString());
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path path : files.toList()) {
+                Files.delete(path);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    void testChangesArriveInOrderForEverySubscriber() throws Exception {
+        try (ChangeFeed feed = new ChangeFeed(processor)) {
+            ChangeFeed.Subscription fast = feed.subscribeFromNow();
+            MessageData.messageData msg = message(1, "PENDING");
+            processor.addStoredMessage(msg);
+            processor.addSentMessage(message(2, "SENT"));
+            processor.changeStatus(List.of(msg), "SENT");
+            processor.removeMessageByHash("hash2");
+            processor.loadStoredMessagesFromJson();
+
+            List<ChangeFeed.Change> changes = fast.poll(100);
+            assertEquals(List.of("#1 ADDED id1 stored", "#2 ADDED id2 sent", "#3 MOVED id1 stored -> sent",
+                    "#4 REMOVED id2 sent", "#5 RELOADED stored"), changes.stream().map(Object::toString).toList());
+            assertEquals("PENDING", changes.get(0).getStatus()); // As added, though the message has moved on
+            assertEquals("SENT", changes.get(2).getStatus());
+            assertTrue(fast.poll(100).isEmpty());
+            assertEquals(6, fast.getPosition());
+
+            // A second subscriber reads the same changes at its own pace
+            ChangeFeed.Subscription slow = feed.subscribe(1);
+            assertEquals(2, slow.poll(2).size());
+            assertEquals(3, slow.getLag());
+            assertEquals(3, slow.poll(100).get(0).getSequence());
+        }
+    }
+
+    @Test
+    void testLappedSubscriberResumesFromTheLog() throws Exception {
+        try (ChangeFeed feed = new ChangeFeed(processor, 8, log)) {
+            ChangeFeed.Subscription slow = feed.subscribe(1);
+            for (int i = 1; i <= 5000; i++) {
+                processor.addSentMessage(message(i, "SENT"));
+            }
+            awaitLogged(feed, 5000);
+
+            List<Long> sequences = new ArrayList<>();
+            List<ChangeFeed.Change> batch;
+            while (!(batch = slow.poll(700)).isEmpty()) {
+                batch.forEach(change -> sequences.add(change.getSequence()));
+            }
+            assertEquals(5000, sequences.size());
+            for (int i = 0; i < sequences.size(); i++) {
+                assertEquals(i + 1, sequences.get(i));
+            }
+            assertEquals("id4321", feed.subscribe(4321).poll(1).get(0).getMessage().getId());
+        }
+
+        try (ChangeFeed memoryOnly = new ChangeFeed(processor, 8, null)) {
+            ChangeFeed.Subscription slow = memoryOnly.subscribeFromNow();
+            for (int i = 1; i <= 20; i++) {
+                processor.addDisregardedMessage(message(10_000 + i, "DISREGARDED"));
+            }
+            assertThrows(IllegalStateException.class, () -> slow.poll(10));
+        }
+    }
+
+    @Test
+    void testPublishersDoNotWaitForTheLogWriter() throws Exception {
+        // A 2-slot ring and 16 changes of overflow: the writer cannot keep up, so publishers set
+        // changes aside and then drop them from the log rather than wait under the processor's lock
+        try (ChangeFeed feed = new ChangeFeed(processor, 2, log, 16)) {
+            for (int i = 1; i <= 5000; i++) {
+                processor.addSentMessage(message(i, "SENT"));
+            }
+            assertEquals(5000, feed.getLastSequence());
+        }
+        List<String> lines = Files.readAllLines(log);
+        long gaps = processor.getMetrics().getCount("feed.logGaps");
+        assertEquals(5000, lines.size() + gaps);
+        assertTrue(lines.get(lines.size() - 1).startsWith("{\"seq\":5000,"));
+    }
+
+    @Test
+    void testLappedSubscriberWaitsForAStalledLogWriter() throws Exception {
+        try (ChangeFeed feed = new ChangeFeed(processor, 8, log)) {
+            ChangeFeed.Subscription slow = feed.subscribe(1);
+            feed.holdAppends = true; // As during a slow fsync
+            processor.addSentMessage(message(1, "SENT"));
+            Thread.sleep(50); // The writer takes change 1 and stalls writing it
+            for (int i = 2; i <= 40; i++) {
+                processor.addSentMessage(message(i, "SENT"));
+            }
+
+            // Change 1 has left the ring and is not logged yet: nothing to read, but no failure
+            assertTrue(slow.poll(100).isEmpty());
+            assertEquals(1, slow.getPosition());
+
+            feed.holdAppends = false;
+            List<Long> sequences = new ArrayList<>();
+            while (sequences.size() < 40) {
+                List<ChangeFeed.Change> batch = slow.poll(100, 5, TimeUnit.SECONDS);
+                assertFalse(batch.isEmpty());
+                batch.forEach(change -> sequences.add(change.getSequence()));
+            }
+            for (int i = 0; i < 40; i++) {
+                assertEquals(i + 1, sequences.get(i));
+            }
+        }
+    }
+
+    @Test
+    void testSequencesContinueAcrossRestarts() throws Exception {
+        try (ChangeFeed feed = new ChangeFeed(processor, 64, log)) {
+            for (int i = 1; i <= 10; i++) {
+                processor.addSentMessage(message(i, "SENT"));
+            }
+        } // close() waits for the log
+        Files.writeString(log, "{\"seq\":11,\"type\":\"ADD", java.nio.file.StandardOpenOption.APPEND); // Torn by a crash
+
+        MessageProcessor restarted = new MessageProcessor(directory.resolve("storedMessages.json").toString());
+        try (ChangeFeed feed = new ChangeFeed(restarted, 64, log)) {
+            assertEquals(10, feed.getLastSequence());
+            restarted.addSentMessage(message(11, "SENT"));
+
+            // A consumer that had handled up to 7 before the restart carries on from 8
+            List<ChangeFeed.Change> changes = feed.subscribe(8).poll(100, 1, TimeUnit.SECONDS);
+            assertEquals(List.of(8L, 9L, 10L), changes.stream().map(ChangeFeed.Change::getSequence).toList());
+            assertEquals("id9", changes.get(1).getMessage().getId());
+            assertEquals(11, feed.subscribe(11).poll(100).get(0).getSequence());
+        }
+    }
+
+    @Test
+    void testConcurrentPublishersKeepTheSequenceGapless() throws Exception {
+        try (ChangeFeed feed = new ChangeFeed(processor, 1 << 16, null)) {
+            ChangeFeed.Subscription subscription = feed.subscribeFromNow();
+            // Changes come from many threads, as with background tasks
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int base = t * 10_000;
+                threads.add(new Thread(() -> {
+                    for (int i = 0; i < 5_000; i++) {
+                        processor.addDisregardedMessage(message(base + i, "DISREGARDED"));
+                    }
+                }));
+            }
+            threads.forEach(Thread::start);
+            long expected = 1;
+            while (expected <= 20_000) {
+                for (ChangeFeed.Change change : subscription.poll(1000, 1, TimeUnit.SECONDS)) {
+                    assertEquals(expected++, change.getSequence());
+                }
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        }
+    }
+
+    private static void awaitLogged(ChangeFeed feed, long sequence) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (feed.getLoggedThrough() < sequence && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(sequence, feed.getLoggedThrough());
+    }
+
+    private static MessageData.messageData message(int i, String status) {
+        return new MessageData.messageData("id" + i, "Alice", "+27831234567", "Message " + i, "hash" + i, status);
+    }
+}
@@ -0,0 +1,173 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ColdTierTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testLookupsRemovalAndCompaction() throws Exception {
+        List<MessageData.messageData> messages = new ArrayList<>();
+        for (int i = 0; i < 6000; i++) {
+            messages.add(message(i, "DISREGARDED"));
+        }
+        try (ColdTier tier = new ColdTier(dir.resolve("cold.jsonl"))) {
+            tier.append(messages.subList(0, 3000), "disregarded");
+            tier.append(messages.subList(3000, 6000), "sent");
+            assertEquals(6000, tier.size());
+
+            int record = tier.firstWithId("MSG000004321");
+            assertEquals("Message 4321 " + "x".repeat(200), tier.read(record).getMessageText());
+            assertEquals("sent", tier.listOf(record));
+            assertEquals(record, tier.firstWithHash("HASH-4321"));
+            assertEquals(-1, tier.firstWithId("MSG999999999"));
+
+            // Removing most of them lets the file be rewritten; lookups carry on
+            assertFalse(tier.compact());
+            for (int i = 0; i < 5000; i++) {
+                tier.remove(tier.firstWithId(messages.get(i).getId()));
+            }
+            long before = tier.fileBytes();
+            assertTrue(tier.compact());
+            assertTrue(tier.fileBytes() < before / 4);
+            assertEquals(tier.fileBytes(), Files.size(dir.resolve("cold.jsonl")));
+            assertEquals(-1, tier.firstWithHash("hash-10"));
+            assertEquals("MSG000005000", tier.read(tier.firstWithHash("hash-5000")).getId());
+
+            List<String> ids = new ArrayList<>();
+            tier.forEach((r, msg) -> ids.add(msg.getId()));
+            assertEquals(1000, ids.size());
+            assertEquals("MSG000005000", ids.get(0));
+        }
+    }
+
+    @Test
+    void testProcessorSpillsOverBudgetAndStillFindsThem() throws Exception {
+        MessageProcessor processor = new MessageProcessor(dir.resolve("stored.json").toString());
+        long perMessage = MessageSizes.estimate(message(0, "DISREGARDED"));
+        processor.enableColdTier(dir.resolve("cold.jsonl"), perMessage * 40, false);
+        List<MessageData.messageData> messages = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            messages.add(message(i, "DISREGARDED"));
+            processor.addDisregardedMessage(messages.get(i));
+        }
+        processor.addSentMessage(message(100, "SENT")); // Sent messages stay without spillSent
+
+        int hot = processor.getDisregardedMessages().size();
+        assertTrue(hot <= 40, "hot: " + hot);
+        assertEquals(100, hot + processor.getColdMessageCount());
+        assertEquals(processor.getDisregardedMessages().get(0), messages.get(100 - hot)); // Oldest went first
+        assertEquals(1, processor.getSentMessages().size());
+
+        assertEquals("Message 3 " + "x".repeat(200), processor.findMessageById("MSG000000003").orElseThrow().getMessageText());
+        assertEquals("MSG000000004", processor.findMessageByHash("HASH-4").orElseThrow().getId());
+        assertEquals(101, processor.findMessagesByRecipient("+27831234567").size());
+
+        assertEquals("disregarded", processor.removeMessageByHash("hash-5"));
+        assertTrue(processor.findMessageById("MSG000000005").isEmpty());
+        assertEquals(2, processor.removeMessagesByHash(List.of("hash-6", "hash-99")));
+        assertEquals(97, processor.getDisregardedMessages().size() + processor.getColdMessageCount());
+        assertEquals(processor.getColdMessageCount(), processor.readColdMessages("disregarded").size());
+
+        processor.disableColdTier();
+        assertEquals(0, processor.getColdMessageCount());
+        assertEquals(97, processor.getDisregardedMessages().size());
+        assertEquals("MSG000000003", processor.findMessageById("MSG000000003").orElseThrow().getId());
+    }
+
+    @Test
+    void testEveryLookupSeesSpilledMessages() throws Exception {
+        MessageProcessor processor = new MessageProcessor(dir.resolve("stored.json").toString());
+        long perMessage = MessageSizes.estimate(message(0, "SENT"));
+        processor.enableColdTier(dir.resolve("cold.jsonl"), perMessage * 20, true);
+        for (int i = 0; i < 100; i++) {
+            MessageData.messageData msg = message(i, "SENT");
+            msg.setRecipient("+2783000000" + (i % 2));
+            msg.setCreatedAt(1000L * i);
+            processor.addSentMessage(msg);
+        }
+        int cold = processor.getColdMessageCount();
+        assertTrue(cold >= 80, "cold: " + cold);
+
+        // Recipient and time lookups merge the spilled messages in, oldest first
+        List<MessageData.messageData> toOdd = processor.findMessagesByRecipient("+27830000001");
+        assertEquals(50, toOdd.size());
+        assertEquals("MSG000000001", toOdd.get(0).getId());
+        assertEquals("MSG000000099", toOdd.get(49).getId());
+        assertEquals(List.of("MSG000000003", "MSG000000005"), processor.findMessagesByRecipient("+27830000001", 2000, 6000)
+                .stream().map(MessageData.messageData::getId).toList());
+        assertEquals(10, processor.findMessagesCreatedBetween(45_000, 55_000).size());
+        assertEquals(3, processor.findMessagesCreatedBetween(0, Long.MAX_VALUE, 3).size());
+
+        // So do queries and conversations
+        assertEquals(List.of("MSG000000000", "MSG000000002"), processor.query(MessageQuery.where(MessageQuery.recipientIs("+27830000000"))
+                .orderBy(MessageQuery.Order.OLDEST_FIRST).limit(2)).map(MessageData.messageData::getId).toList());
+        assertEquals(1, processor.query(MessageQuery.where(MessageQuery.idIs("MSG000000007"))).count());
+        assertEquals(100, processor.query(MessageQuery.all()).count());
+        assertEquals(50, processor.getConversation("+27830000000", "Alice", 1000).size());
+        assertEquals("MSG000000090", processor.getConversation("Alice", "+27830000000", 5).get(0).getId());
+        List<MessageProcessor.Conversation> recent = processor.getRecentConversations(10);
+        assertEquals(2, recent.size());
+        assertEquals(List.of(50, 50), recent.stream().map(MessageProcessor.Conversation::getMessageCount).toList());
+
+        // A copy handed out can be removed or moved; a move brings it back into memory
+        MessageData.messageData copy = processor.findMessageById("MSG000000003").orElseThrow();
+        assertEquals(1, processor.removeMessages(List.of(copy)));
+        assertEquals(cold - 1, processor.getColdMessageCount());
+        assertEquals(49, processor.findMessagesByRecipient("+27830000001").size());
+        MessageData.messageData spilled = processor.findMessageById("MSG000000004").orElseThrow();
+        assertEquals(1, processor.changeStatus(List.of(spilled), "DISREGARDED"));
+        assertEquals(cold - 2, processor.getColdMessageCount());
+        assertSame(spilled, processor.getDisregardedMessages().get(0));
+        assertEquals(1, processor.changeStatusWhere("SENT", msg -> msg.getId().equals("MSG000000006"), "PENDING"));
+        assertEquals("PENDING", processor.findMessageById("MSG000000006").orElseThrow().getStatus());
+        assertEquals(10, processor.removeMessagesWhere(MessageQuery.createdBetween(10_000, 20_000)));
+        assertEquals(89, processor.query(MessageQuery.all()).count());
+    }
+
+    @Test
+    void testMemoryBudgetSpillsOldestToColdTier() throws Exception {
+        MessageProcessor processor = new MessageProcessor(dir.resolve("stored.json").toString());
+        long budget = processor.getMemoryUsage().get("total") + 400_000;
+        processor.setMemoryBudget(budget, MessageProcessor.MemoryPolicy.SPILL);
+        // Without a cold tier there is nowhere to spill to
+        int added = 0;
+        try {
+            while (true) {
+                processor.addSentMessage(message(added, "SENT"));
+                added++;
+            }
+        } catch (MessageProcessor.MemoryBudgetExceededException e) {
+            // Full
+        }
+        assertTrue(added > 0 && processor.getMemoryUsage().get("total") <= budget);
+
+        processor.enableColdTier(dir.resolve("cold.jsonl"), Long.MAX_VALUE, false);
+        for (int i = 1000; i < 2000; i++) {
+            processor.addDisregardedMessage(message(i, "DISREGARDED"));
+        }
+        assertTrue(processor.getMemoryUsage().get("total") <= budget);
+        assertTrue(processor.getMemoryUsage().get("coldTier") > 0);
+        assertEquals(1000 + added, processor.getSentMessages().size() + processor.getDisregardedMessages().size()
+                + processor.getColdMessageCount());
+        assertEquals(processor.getColdMessageCount(), processor.getMetrics().getCount("memory.spilled"));
+        assertEquals("MSG000000000", processor.readColdMessages("sent").get(0).getId()); // Sent went once disregarded ran out
+        assertEquals("MSG000001999", processor.findMessageById("MSG000001999").orElseThrow().getId());
+        assertEquals("MSG000001000", processor.findMessageById("MSG000001000").orElseThrow().getId());
+    }
+
+    private static MessageData.messageData message(int i, String status) {
+        return new MessageData.messageData(String.format("MSG%09d", i), "Alice", "+27831234567",
+                "Message " + i + " " + "x".repeat(200), "hash-" + i, status);
+    }
+}
@@ -0,0 +1,121 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConversationIndexTest {
+
+    @Test
+    void testBothDirectionsAreOneConversation() {
+        ConversationIndex index = new ConversationIndex();
+        List<MessageData.messageData> added = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            MessageData.messageData msg = i % 2 == 0 ? message("m" + i, "Alice", "Bob") : message("m" + i, "Bob", "Alice");
+            index.add(msg);
+            added.add(msg);
+        }
+        index.add(message("other", "Alice", "Carol"));
+
+        assertEquals(2, index.size());
+        assertEquals(added.subList(95, 100), index.last("Alice", "Bob", 5));
+        assertEquals(added.subList(95, 100), index.last("Bob", "Alice", 5));
+        assertEquals(added, index.last("Alice", "Bob", 1000));
+        assertTrue(index.last("Bob", "Carol", 5).isEmpty());
+    }
+
+    @Test
+    void testRemovalSkipsGapsAndCompacts() {
+        ConversationIndex index = new ConversationIndex();
+        List<MessageData.messageData> added = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            MessageData.messageData msg = message("m" + i, "Alice", "Bob");
+            index.add(msg);
+            added.add(msg);
+        }
+
+        // Every other message, then the oldest 90 of the rest; compaction runs along the way
+        List<MessageData.messageData> kept = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            if (i % 2 == 0) {
+                index.remove(added.get(i));
+            } else {
+                kept.add(added.get(i));
+            }
+        }
+        index.remove(added.get(0)); // Already gone
+        assertEquals(kept.subList(90, 100), index.last("Alice", "Bob", 10));
+        for (int i = 0; i < 90; i++) {
+            index.remove(kept.get(i));
+        }
+        assertEquals(kept.subList(90, 100), index.last("Alice", "Bob", 50));
+
+        for (MessageData.messageData msg : kept.subList(90, 100)) {
+            index.remove(msg);
+        }
+        assertEquals(0, index.size());
+        assertTrue(index.mostRecent(5).isEmpty());
+    }
+
+    @Test
+    void testMostRecentFollowsTheLatestMessage() {
+        ConversationIndex index = new ConversationIndex();
+        index.add(message("1", "Alice", "Bob"));
+        index.add(message("2", "Alice", "Carol"));
+        MessageData.messageData third = message("3", "Dave", "Alice");
+        index.add(third);
+        index.add(message("4", "Bob", "Alice"));
+
+        assertEquals(List.of("Alice|Bob", "Alice|Dave", "Alice|Carol"), names(index.mostRecent(10)));
+        assertEquals(List.of("Alice|Bob", "Alice|Dave"), names(index.mostRecent(2)));
+
+        // Emptied conversations drop out
+        index.remove(third);
+        assertEquals(List.of("Alice|Bob", "Alice|Carol"), names(index.mostRecent(10)));
+    }
+
+    @Test
+    void testProcessorKeepsConversationsAcrossLists() {
+        MessageProcessor processor = new MessageProcessor();
+        processor.addSentMessage(message("s1", "Alice", "+27831234567"));
+        processor.addDisregardedMessage(message("d1", "+27831234567", "Alice"));
+        processor.addSentMessage(message("s2", "Alice", "+27830000000"));
+
+        assertEquals(List.of("s1", "d1"), ids(processor.getConversation("+27831234567", "Alice", 10)));
+        assertEquals(List.of("d1"), ids(processor.getConversation("Alice", "+27831234567", 1)));
+        assertTrue(processor.getConversation("Alice", "+27831234567", 0).isEmpty());
+
+        List<MessageProcessor.Conversation> recent = processor.getRecentConversations(5);
+        assertEquals(2, recent.size());
+        assertEquals("s2", recent.get(0).getLastMessage().getId());
+        assertEquals(2, recent.get(1).getMessageCount());
+        assertEquals("d1", recent.get(1).getLastMessage().getId());
+
+        processor.removeMessageByHash("hash-d1");
+        assertEquals(List.of("s1"), ids(processor.getConversation("Alice", "+27831234567", 10)));
+        assertEquals("s1", processor.getRecentConversations(5).get(1).getLastMessage().getId());
+    }
+
+    private static List<String> names(List<ConversationIndex.Conversation> conversations) {
+        List<String> names = new ArrayList<>();
+        for (ConversationIndex.Conversation c : conversations) {
+            names.add(c.participants.first + "|" + c.participants.second);
+        }
+        return names;
+    }
+
+    private static List<String> ids(List<MessageData.messageData> messages) {
+        List<String> ids = new ArrayList<>();
+        for (MessageData.messageData msg : messages) {
+            ids.add(msg.getId());
+        }
+        return ids;
+    }
+
+    private static MessageData.messageData message(String id, String sender, String recipient) {
+        return new MessageData.messageData(id, sender, recipient, "Hi", "hash-" + id, "SENT");
+    }
+}
@@ -0,0 +1,32 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LoadTestTest {
+
+    @Test
+    void testRunMeasuresEveryOperation() throws Exception {
+        Path storage = Files.createTempFile("loadtest", ".json");
+        try {
+            MessageProcessor processor = new MessageProcessor(storage.toString());
+            LoadTest.Report report = new LoadTest(processor, WorkloadGenerator.withDefaults(5), 4, 500, 100, 5).run();
+
+            assertEquals(4 * 500, report.getOperationCount());
+            for (WorkloadGenerator.Operation operation : WorkloadGenerator.Operation.values()) {
+                LatencyHistogram.Snapshot latency = report.getLatency(operation);
+                assertTrue(latency.getCount() > 0, operation + " never ran");
+                assertTrue(latency.getValueAtPercentile(50) <= latency.getValueAtPercentile(99.9));
+            }
+            assertTrue(report.getThroughput() > 0);
+            assertTrue(report.toString().contains("p999 us"));
+            assertFalse(processor.getSentMessages().isEmpty());
+        } finally {
+            Files.deleteIfExists(storage);
+        }
+    }
+}
@@ -92,6 +92,18 @@ class LoginTest {
         assertFalse(success);
     }
 
+    @Test
+    void testRegisterUserWithEnteredDetails() {
+        assertEquals("Registration successful!", login.registerUser("Jane", "Smith", "+27831234567", "js_2", "Secr3t!xy"));
+        assertEquals("Jane", login.getFirstName());
+        assertTrue(login.loginUser("js_2", "Secr3t!xy"));
+        assertFalse(login.loginUser("js_2", "wrong"));
+
+        assertTrue(login.registerUser("Jane", "Smith", "+27831234567", "jane_smith", "Secr3t!xy").startsWith("Invalid username"));
+        assertTrue(login.registerUser("Jane", "Smith", "+27831234567", "js_2", "weak").startsWith("Weak password"));
+        assertTrue(login.registerUser("Jane", "Smith", "12345", "js_2", "Secr3t!xy").startsWith("Invalid South African"));
+    }
+
     @Test
     void testReturnLoginStatus_Success() {
         String status = login.returnLoginStatus(true);
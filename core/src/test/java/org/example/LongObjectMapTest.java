@@ -0,0 +1,54 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LongObjectMapTest {
+
+    @Test
+    void testBasicOperationsAndGrowth() {
+        LongObjectMap<String> map = new LongObjectMap<>();
+        for (long key = 0; key < 1000; key++) {
+            assertNull(map.put(key * 1_000_003L, "v" + key));
+        }
+        assertEquals(1000, map.size());
+        assertEquals("v500", map.get(500 * 1_000_003L));
+        assertEquals("v500", map.put(500 * 1_000_003L, "new"));
+        assertEquals("new", map.remove(500 * 1_000_003L));
+        assertNull(map.get(500 * 1_000_003L));
+        assertNull(map.remove(500 * 1_000_003L));
+        assertEquals(999, map.size());
+        assertEquals("x", map.computeIfAbsent(-7, key -> "x"));
+        assertEquals("x", map.computeIfAbsent(-7, key -> "y"));
+        assertThrows(IllegalArgumentException.class, () -> map.put(1, null));
+
+        long[] sum = {0};
+        map.forEach((key, value) -> sum[0] += key);
+        assertEquals(1_000_003L * (999 * 1000 / 2 - 500) - 7, sum[0]);
+    }
+
+    @Test
+    void testRandomChurnMatchesHashMap() {
+        // A small key range keeps the table crowded, so removals constantly shift probe runs back
+        Random random = new Random(43);
+        LongObjectMap<Long> map = new LongObjectMap<>();
+        Map<Long, Long> expected = new HashMap<>();
+        for (int i = 0; i < 200_000; i++) {
+            long key = random.nextInt(5_000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                assertEquals(expected.put(key, (long) i), map.put(key, (long) i));
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        for (long key = 0; key < 5_000; key++) {
+            assertEquals(expected.get(key), map.get(key));
+        }
+    }
+}
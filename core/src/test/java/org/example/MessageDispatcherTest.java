@@ -0,0 +1,131 @@
+package org.example;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MessageDispatcherTest {
+
+    private Path file;
+    private MessageProcessor processor;
+    private final AtomicLong now = new AtomicLong(1_000_000);
+
+    @BeforeEach
+    void setUp() throws Exception {
+        file = Files.createTempFile("dispatch", ".json");
+        Files.delete(file);
+        processor = new MessageProcessor(file.toString());
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        Files.deleteIfExists(file);
+    }
+
+    private static MessageData.messageData pending(int i, long sendAt) {
+        MessageData.messageData msg = new MessageData.messageData("MSG" + String.format("%07d", i), "Sender",
+                "+27830000001", "Message " + i, "MS:" + i + ":MESSAGE" + i, "PENDING");
+        msg.setSendAt(sendAt);
+        return msg;
+    }
+
+    @Test
+    void testOnlyDueMessagesAreSent() {
+        MessageDispatcher dispatcher = new MessageDispatcher(processor, now::get, 100);
+        processor.addStoredMessage(pending(1, 1_000_500));
+        processor.addStoredMessage(pending(2, 1_000_100));
+        processor.addStoredMessage(pending(3, 0)); // Not scheduled
+
+        assertEquals(0, dispatcher.dispatchDue());
+        assertEquals(2, dispatcher.scheduledCount());
+        assertEquals(1_000_100, dispatcher.nextSendAt().getAsLong());
+
+        now.set(1_000_100);
+        assertEquals(1, dispatcher.dispatchDue());
+        assertEquals("MSG0000002", processor.getSentMessages().get(0).getId());
+        assertEquals("SENT", processor.getSentMessages().get(0).getStatus());
+
+        now.set(2_000_000);
+        assertEquals(1, dispatcher.dispatchDue());
+        assertEquals(1, processor.getStoredMessages().size());
+        assertEquals("MSG0000003", processor.getStoredMessages().get(0).getId());
+        assertEquals(0, dispatcher.scheduledCount());
+    }
+
+    @Test
+    void testPromotionWritesOneRecordPerBatch() throws Exception {
+        MessageDispatcher dispatcher = new MessageDispatcher(processor, now::get, 1000);
+        for (int i = 0; i < 2500; i++) {
+            processor.addStoredMessage(pending(i, 1_000_000 - i));
+        }
+
+        assertEquals(2500, dispatcher.dispatchDue());
+        assertEquals(2500, processor.getSentMessages().size());
+        assertTrue(processor.getStoredMessages().isEmpty());
+        // Earliest send time goes first
+        assertEquals("MSG0002499", processor.getSentMessages().get(0).getId());
+
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(2500 + 3, lines.size());
+        assertEquals(3, lines.stream().filter(line -> line.contains("\"op\":\"sent\"")).count());
+        assertEquals(3, processor.getMetrics().latency("dispatchBatch").snapshot().getCount());
+    }
+
+    @Test
+    void testReloadSkipsSentMessagesAndReschedulesTheRest() {
+        MessageDispatcher dispatcher = new MessageDispatcher(processor, now::get, 100);
+        processor.addStoredMessage(pending(1, 1_000_000));
+        processor.addStoredMessage(pending(2, 5_000_000));
+        assertEquals(1, dispatcher.dispatchDue());
+
+        for (boolean parallel : new boolean[]{false, true}) {
+            MessageProcessor reloaded = new MessageProcessor(file.toString());
+            reloaded.setParallelLoading(parallel);
+            MessageDispatcher reloadedDispatcher = new MessageDispatcher(reloaded, now::get, 100);
+            assertTrue(reloaded.loadStoredMessagesFromJson());
+
+            assertEquals(1, reloaded.getStoredMessages().size());
+            assertEquals("MSG0000002", reloaded.getStoredMessages().get(0).getId());
+            assertEquals(5_000_000, reloadedDispatcher.nextSendAt().getAsLong());
+            reloadedDispatcher.close();
+        }
+    }
+
+    @Test
+    void testDeletedMessageIsNotSent() {
+        MessageDispatcher dispatcher = new MessageDispatcher(processor, now::get, 100);
+        processor.addStoredMessage(pending(1, 1_000_000));
+        assertEquals("stored", processor.removeMessageByHash("MS:1:MESSAGE1"));
+
+        assertEquals(0, dispatcher.scheduledCount());
+        assertEquals(0, dispatcher.dispatchDue());
+        assertTrue(processor.getSentMessages().isEmpty());
+    }
+
+    @Test
+    void testDeletedMessagesLeaveTheQueueBeforeTheyAreDue() {
+        MessageDispatcher dispatcher = new MessageDispatcher(processor, now::get, 100);
+        for (int i = 1; i <= 10; i++) {
+            processor.addStoredMessage(pending(i, 2_000_000 + i));
+        }
+        assertEquals(2_000_001, dispatcher.nextSendAt().getAsLong());
+
+        for (int i = 1; i <= 6; i++) {
+            processor.removeMessageByHash("MS:" + i + ":MESSAGE" + i);
+        }
+        assertEquals(4, dispatcher.scheduledCount());
+        assertEquals(2_000_007, dispatcher.nextSendAt().getAsLong()); // Not a deleted one's time
+
+        now.set(3_000_000);
+        assertEquals(4, dispatcher.dispatchDue());
+        assertEquals(0, dispatcher.scheduledCount());
+        assertFalse(dispatcher.nextSendAt().isPresent());
+    }
+}
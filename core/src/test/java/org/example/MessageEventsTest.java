@@ -0,0 +1,68 @@
+package org.example;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MessageEventsTest {
+
+    @AfterEach
+    void tearDown() {
+        File file = new File("storedMessages.json");
+        if (file.exists()) file.delete();
+    }
+
+    @Test
+    void testLifecycleEventsAreRecorded() throws Exception {
+        Path dump = Files.createTempFile("quickchat", ".jfr");
+        try (Recording recording = new Recording()) {
+            for (String name : new String[]{"org.example.MessageCreated", "org.example.MessageHashed",
+                    "org.example.PersistenceWrite", "org.example.MessageFileLoad",
+                    "org.example.MessageRewrite", "org.example.MessageDelete"}) {
+                recording.enable(name).withThreshold(Duration.ZERO);
+            }
+            recording.start();
+
+            MessageProcessor processor = new MessageProcessor();
+            String hash = new MessageData().createMessageHash("MSG123456701", 1, "Hi there");
+            processor.addStoredMessage(new MessageData.messageData(
+                    "MSG123456701", "Alice", "+27838884567", "Hi there", hash, "PENDING"));
+            processor.loadStoredMessagesFromJson();
+            processor.deleteMessageByHash(hash);
+
+            recording.stop();
+            recording.dump(dump);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+        Files.deleteIfExists(dump);
+
+        RecordedEvent write = single(events, "org.example.PersistenceWrite");
+        assertEquals("MSG123456701", write.getString("messageId"));
+        assertTrue(write.getLong("bytes") > 0);
+
+        assertEquals(1, single(events, "org.example.MessageFileLoad").getInt("records"));
+        assertEquals("stored", single(events, "org.example.MessageDelete").getString("list"));
+        assertEquals(0, single(events, "org.example.MessageRewrite").getInt("records"));
+        assertEquals("stored", single(events, "org.example.MessageCreated").getString("list"));
+        assertEquals(8, single(events, "org.example.MessageHashed").getInt("textLength"));
+    }
+
+    private static RecordedEvent single(List<RecordedEvent> events, String name) {
+        List<RecordedEvent> matching = events.stream()
+                .filter(e -> e.getEventType().getName().equals(name))
+                .toList();
+        assertEquals(1, matching.size(), name);
+        return matching.get(0);
+    }
+}
@@ -0,0 +1,60 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MessageKeysTest {
+
+    @Test
+    void testCanonicalFormsRoundTrip() {
+        assertEquals(123456701L, MessageKeys.idKey("MSG123456701"));
+        assertEquals("MSG000000042", MessageKeys.idFromKey(MessageKeys.idKey("MSG000000042")));
+        for (String recipient : new String[]{"+27831234567", "+0123456789", "+123456789012345"}) {
+            assertEquals(recipient, MessageKeys.recipientFromKey(MessageKeys.recipientKey(recipient)));
+        }
+        // Leading zeros make a different number
+        assertNotEquals(MessageKeys.recipientKey("+0123456789"), MessageKeys.recipientKey("+00123456789"));
+
+        for (String id : new String[]{"id1", "MSG12345678", "MSG1234567890", "msg123456701", "MSG12345670x", null}) {
+            assertEquals(MessageKeys.NONE, MessageKeys.idKey(id), id);
+        }
+        for (String recipient : new String[]{"Bob", "27831234567", "+123456789", "+1234567890123456", "+2783123456a"}) {
+            assertEquals(MessageKeys.NONE, MessageKeys.recipientKey(recipient), recipient);
+        }
+    }
+
+    @Test
+    void testIdIndexHandlesDuplicatesAndOtherIds() {
+        MessageIdIndex index = new MessageIdIndex();
+        MessageData.messageData first = message("MSG000000001");
+        MessageData.messageData again = message("MSG000000001");
+        MessageData.messageData third = message("MSG000000001");
+        MessageData.messageData other = message("legacy-1");
+        for (MessageData.messageData msg : List.of(first, again, third, other)) {
+            index.add(msg);
+        }
+
+        assertEquals(3, index.count("MSG000000001"));
+        assertSame(first, index.first("MSG000000001"));
+        assertSame(other, index.first("legacy-1"));
+        assertEquals(4, index.size());
+
+        index.remove(again);
+        index.remove(again); // Already gone
+        assertEquals(List.of(first, third), index.find("MSG000000001"));
+        index.remove(first);
+        assertSame(third, index.first("MSG000000001"));
+        index.remove(third);
+        index.remove(other);
+        assertEquals(0, index.count("MSG000000001"));
+        assertNull(index.first("legacy-1"));
+        assertEquals(0, index.size());
+    }
+
+    private static MessageData.messageData message(String id) {
+        return new MessageData.messageData(id, "Alice", "+27831234567", "Hi", "hash-" + id, "SENT");
+    }
+}
@@ -0,0 +1,400 @@
+package org.example;
+
+import org.junit.jupiter.api.*;
+import java.io.File;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MessageProcessorTest {
+
+    private MessageProcessor processor;
+    private MessageData.messageData sampleMessage;
+
+    @BeforeEach
+    void setUp() {
+        processor = new MessageProcessor();
+
+        sampleMessage = new MessageData.messageData(
+                "id001",
+                "Alice",
+                "Bob",
+                "Hello Bob!",
+                "hash001",
+                "SENT"
+        );
+    }
+
+    @AfterEach
+    void tearDown() {
+        File file = new File("storedMessages.json");
+        if (file.exists()) file.delete();
+    }
+
+    @Test
+    void testAddSentMessage() {
+        processor.addSentMessage(sampleMessage);
+
+        List<MessageData.messageData> sent = processor.getSentMessages();
+        assertEquals(1, sent.size());
+        assertEquals("Alice", sent.get(0).getSender());
+    }
+
+    @Test
+    void testAddStoredMessageAndFileWrite() {
+        processor.addStoredMessage(sampleMessage);
+
+        List<MessageData.messageData> stored = processor.getStoredMessages();
+        assertEquals(1, stored.size());
+        assertTrue(new File("storedMessages.json").exists());
+    }
+
+    @Test
+    void testLoadStoredMessagesFromJson() {
+        processor.addStoredMessage(sampleMessage);
+
+        MessageProcessor newProcessor = new MessageProcessor();
+        assertTrue(newProcessor.loadStoredMessagesFromJson());
+
+        List<MessageData.messageData> loaded = newProcessor.getStoredMessages();
+        assertEquals(1, loaded.size());
+        assertEquals("Bob", loaded.get(0).getRecipient());
+    }
+
+    @Test
+    void testDeleteMessageByHash() {
+        processor.addSentMessage(sampleMessage);
+        assertTrue(processor.deleteMessageByHash("hash001"));
+        assertTrue(processor.getSentMessages().isEmpty());
+    }
+
+    @Test
+    void testSearchMessageByIdFound() {
+        processor.addSentMessage(sampleMessage);
+        processor.searchMessageById("id001");
+        // We expect console output (or GUI if not headless), no assert needed here
+    }
+
+    @Test
+    void testSearchMessageByIdNotFound() {
+        processor.searchMessageById("nonexistent");
+        // Expect no crash, only output
+    }
+
+    @Test
+    void testSearchMessagesByRecipient() {
+        processor.addSentMessage(sampleMessage);
+        processor.searchMessagesByRecipient("Bob");
+        processor.searchMessagesByRecipient("Charlie"); // Not found
+    }
+
+    @Test
+    void testDisplaySentMessagesReport() {
+        processor.addSentMessage(sampleMessage);
+        processor.displaySentMessagesReport(); // Just verifying it doesn't crash
+    }
+
+    @Test
+    void testDisplayLongestSentMessage() {
+        processor.addSentMessage(sampleMessage);
+        processor.displayLongestSentMessage(); // Should show "Hello Bob!"
+    }
+
+    @Test
+    void testNoCrashOnEmptyJsonLoad() {
+        assertFalse(processor.loadStoredMessagesFromJson()); // no file yet
+    }
+
+    @Test
+    void testSnapshotsArePointInTime() {
+        for (int i = 0; i < 30; i++) {
+            processor.addSentMessage(message(i, "Alice", "Bob", "SENT"));
+        }
+        MessageProcessor.Snapshot before = processor.snapshot();
+        PersistentList.Page<MessageData.messageData> page = processor.getSentMessages().pageAfter(PersistentList.START, 20);
+
+        processor.disregardAllFrom("Alice");
+
+        assertEquals(30, before.getSentMessages().size());
+        assertTrue(before.getDisregardedMessages().isEmpty());
+        assertEquals("id19", page.getItems().get(19).getId());
+        assertTrue(processor.getSentMessages().pageAfter(page.getNextCursor(), 20).getItems().isEmpty());
+        assertEquals(30, processor.getDisregardedMessages().size());
+        assertTrue(processor.getMessageIDs().isEmpty());
+    }
+
+    private static MessageData.messageData message(int i, String sender, String recipient, String status) {
+        return new MessageData.messageData("id" + i, sender, recipient, "Message " + i, "hash" + i, status);
+    }
+
+    @Test
+    void testSendAllPendingToRecipient() throws Exception {
+        processor.addStoredMessage(message(1, "Alice", "Bob", "PENDING"));
+        processor.addStoredMessage(message(2, "Alice", "Carol", "PENDING"));
+        processor.addStoredMessage(message(3, "Dave", "Bob", "PENDING"));
+
+        assertEquals(2, processor.sendAllPendingTo("Bob"));
+        assertEquals(List.of("id1", "id3"), processor.getSentMessages().stream().map(MessageData.messageData::getId).toList());
+        assertEquals("SENT", processor.getSentMessages().get(0).getStatus());
+        assertEquals(1, processor.getStoredMessages().size());
+        assertEquals(3, processor.getMessageIDs().size()); // Still sent or stored
+        assertEquals(0, processor.sendAllPendingTo("Bob"));
+
+        List<String> lines = java.nio.file.Files.readAllLines(new File("storedMessages.json").toPath());
+        assertEquals(4, lines.size()); // Three messages plus one record for the whole batch
+        MessageProcessor reloaded = new MessageProcessor();
+        reloaded.loadStoredMessagesFromJson();
+        assertEquals(List.of("id2"), reloaded.getStoredMessages().stream().map(MessageData.messageData::getId).toList());
+    }
+
+    @Test
+    void testDisregardAllFromSender() {
+        processor.addSentMessage(message(1, "Alice", "Bob", "SENT"));
+        processor.addStoredMessage(message(2, "Alice", "Bob", "PENDING"));
+        processor.addSentMessage(message(3, "Dave", "Bob", "SENT"));
+
+        assertEquals(2, processor.disregardAllFrom("Alice"));
+        assertEquals(2, processor.getDisregardedMessages().size());
+        assertEquals("DISREGARDED", processor.getDisregardedMessages().get(1).getStatus());
+        assertEquals(List.of("id3"), processor.getMessageIDs());
+        assertEquals(List.of("hash3"), processor.getMessageHashes());
+        assertTrue(processor.getStoredMessages().isEmpty());
+    }
+
+    @Test
+    void testMessageMovedBackIntoStoredSurvivesReload() {
+        MessageData.messageData msg = message(1, "Alice", "Bob", "PENDING");
+        processor.addStoredMessage(msg);
+        assertEquals(1, processor.changeStatus(List.of(msg), "SENT"));
+        assertEquals(1, processor.changeStatus(List.of(msg), "PENDING"));
+        assertEquals(0, processor.changeStatus(List.of(msg), "PENDING"));
+
+        MessageProcessor reloaded = new MessageProcessor();
+        reloaded.loadStoredMessagesFromJson();
+        assertEquals(1, reloaded.getStoredMessages().size());
+        assertEquals("PENDING", reloaded.getStoredMessages().get(0).getStatus());
+        assertThrows(IllegalArgumentException.class, () -> processor.changeStatus(List.of(msg), "LOST"));
+    }
+
+    @Test
+    void testBulkStatusChangeIsFast() {
+        for (int i = 0; i < 100_000; i++) {
+            processor.addSentMessage(message(i, "Sender" + (i % 10), "Bob", "SENT"));
+        }
+        long start = System.nanoTime();
+        assertEquals(100_000, processor.changeStatusWhere("SENT", msg -> true, "PENDING"));
+        assertEquals(100_000, processor.sendAllPendingTo("Bob"));
+        assertEquals(10_000, processor.disregardAllFrom("Sender3"));
+        long millis = (System.nanoTime() - start) / 1_000_000;
+
+        assertEquals(90_000, processor.getSentMessages().size());
+        assertEquals(90_000, processor.getMessageIDs().size());
+        // A loose bound: it only catches a return to per-message list scans, which take minutes here.
+        assertTrue(millis < 5000, "bulk transitions took " + millis + " ms");
+    }
+
+    @Test
+    void testBulkDeleteByRecipientWritesOnce() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            processor.addStoredMessage(message(i, "Alice", i % 2 == 0 ? "Bob" : "Carol", "PENDING"));
+        }
+        processor.addSentMessage(message(10, "Alice", "Bob", "SENT"));
+        processor.addDisregardedMessage(message(11, "Alice", "Bob", "DISREGARDED"));
+
+        assertEquals(7, processor.removeMessagesWhere(MessageQuery.recipientIs("Bob")));
+        assertEquals(List.of("id1", "id3", "id5", "id7", "id9"),
+                processor.getStoredMessages().stream().map(MessageData.messageData::getId).toList());
+        assertTrue(processor.getSentMessages().isEmpty());
+        assertTrue(processor.getDisregardedMessages().isEmpty());
+        assertEquals(5, processor.getMessageHashes().size());
+        assertTrue(processor.findMessagesByRecipient("Bob", Long.MIN_VALUE, Long.MAX_VALUE).isEmpty());
+        assertEquals(0, processor.removeMessagesWhere(MessageQuery.recipientIs("Bob")));
+
+        List<String> lines = java.nio.file.Files.readAllLines(new File("storedMessages.json").toPath());
+        assertEquals(11, lines.size()); // Ten messages plus one record for the whole delete
+        MessageProcessor reloaded = new MessageProcessor();
+        reloaded.loadStoredMessagesFromJson();
+        assertEquals(5, reloaded.getStoredMessages().size());
+    }
+
+    @Test
+    void testBulkDeleteByHashesAndPredicate() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            processor.addStoredMessage(message(i, "Alice", "Bob", "PENDING"));
+        }
+
+        assertEquals(2, processor.removeMessagesByHash(List.of("HASH1", "hash2", "missing")));
+        // Removing more stored messages than are left rewrites the file rather than logging them
+        assertEquals(7, processor.removeMessagesWhere(msg -> !msg.getId().equals("id5")));
+        assertEquals(List.of("id5"), processor.getMessageIDs());
+        assertEquals(1, java.nio.file.Files.readAllLines(new File("storedMessages.json").toPath()).size());
+    }
+
+    @Test
+    void testBatchAddIndexesInBulkAndWritesOnce() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            MessageData.messageData msg = message(i, "Alice", "Bob", "PENDING");
+            msg.setCreatedAt(1000 + i * 1000);
+            processor.addStoredMessage(msg);
+        }
+        // Times interleave with the ones already indexed, so the index is rebuilt by a merge
+        java.util.List<MessageData.messageData> batch = new java.util.ArrayList<>();
+        for (int i = 5; i < 3005; i++) {
+            MessageData.messageData msg = message(i, i % 2 == 0 ? "Alice" : "Carol", "Bob", "PENDING");
+            msg.setCreatedAt(3005 - i);
+            batch.add(msg);
+        }
+        assertEquals(3000, processor.addStoredMessages(batch));
+        assertEquals(0, processor.addStoredMessages(batch)); // Already there
+        // Two more, few enough to go into the larger index one by one
+        MessageData.messageData late = message(3005, "Bob", "Alice", "PENDING");
+        late.setCreatedAt(1000);
+        assertEquals(1, processor.addStoredMessages(List.of(late, late)));
+
+        assertEquals(3006, processor.getStoredMessages().size());
+        assertEquals(3006, processor.getMessageIDs().size());
+        // Same millisecond: the one added individually, then the batch, then the late one
+        assertEquals(List.of("id0", "id2005", "id3005"), processor.findMessagesCreatedBetween(1000, 1001)
+                .stream().map(MessageData.messageData::getId).toList());
+        assertEquals(3006, processor.findMessagesByRecipient("Bob", Long.MIN_VALUE, Long.MAX_VALUE).size()
+                + processor.findMessagesByRecipient("Alice", Long.MIN_VALUE, Long.MAX_VALUE).size());
+        assertEquals("id1234", processor.findMessageById("id1234").orElseThrow().getId());
+        assertEquals(List.of("id3005"), processor.getConversation("Alice", "Bob", 1).stream()
+                .map(MessageData.messageData::getId).toList());
+
+        assertEquals(3006, java.nio.file.Files.readAllLines(new File("storedMessages.json").toPath()).size());
+        MessageProcessor reloaded = new MessageProcessor();
+        reloaded.loadStoredMessagesFromJson();
+        assertEquals(3006, reloaded.getStoredMessages().size());
+    }
+
+    @Test
+    void testImportRoutesMessagesByStatus() {
+        java.util.List<MessageData.messageData> messages = new java.util.ArrayList<>();
+        String[] statuses = {"SENT", "DISREGARDED", "PENDING"};
+        for (int i = 0; i < 30; i++) {
+            messages.add(message(i, "Alice", "Bob", statuses[i % 3]));
+        }
+        processor.setRateLimiter(new RateLimiter(1, 0.001)); // Imports are not rate limited
+
+        assertEquals(30, processor.importMessages(messages.stream()));
+        assertEquals(10, processor.getSentMessages().size());
+        assertEquals(10, processor.getDisregardedMessages().size());
+        assertEquals(10, processor.getStoredMessages().size());
+        assertEquals(20, processor.getMessageHashes().size());
+        assertEquals(30, processor.findMessagesCreatedBetween(Long.MIN_VALUE, Long.MAX_VALUE).size());
+
+        // Sending in a batch still is
+        assertEquals(1, processor.addSentMessages(List.of(message(30, "Dave", "Bob", "SENT"),
+                message(31, "Dave", "Bob", "SENT"))));
+    }
+
+    @Test
+    void testMemoryUsageAndRejectingOverBudget() {
+        for (int i = 0; i < 100; i++) {
+            processor.addSentMessage(message(i, "Alice", "Bob", "SENT"));
+        }
+        java.util.Map<String, Long> usage = processor.getMemoryUsage();
+        assertTrue(usage.get("sentMessages") > 100 * MessageSizes.estimate(message(0, "Alice", "Bob", "SENT")));
+        assertTrue(usage.get("timeIndex") > 0 && usage.get("conversationIndex") > 0);
+        assertEquals(usage.get("total"), processor.getMetrics().getGauge("memory.total"));
+        assertEquals(usage.get("idIndex"), processor.getMetrics().getGauge("memory.idIndex"));
+        processor.removeMessagesWhere(msg -> true);
+        assertEquals(0, processor.getMemoryUsage().get("sentMessages"));
+
+        long budget = processor.getMemoryUsage().get("total") + 10_000;
+        processor.setMemoryBudget(budget, MessageProcessor.MemoryPolicy.REJECT);
+        processor.setRateLimiter(new RateLimiter(1000, 0.001));
+        int sent = 0;
+        try {
+            while (true) {
+                processor.addSentMessage(message(sent, "Alice", "Bob", "SENT"));
+                sent++;
+            }
+        } catch (MessageProcessor.MemoryBudgetExceededException e) {
+            // Full
+        }
+        assertTrue(sent > 0 && sent < 100, "sent: " + sent);
+        assertEquals(1000 - sent, processor.getRateLimiter().availableTokens("Alice")); // The rejected one took none
+        assertTrue(processor.getMemoryUsage().get("total") <= budget);
+        assertThrows(MessageProcessor.MemoryBudgetExceededException.class,
+                () -> processor.addStoredMessage(message(1000, "Alice", "Bob", "PENDING")));
+        assertEquals(0, processor.addDisregardedMessages(List.of(message(1001, "Alice", "Bob", "DISREGARDED"))));
+        assertEquals(3, processor.getMetrics().getCount("memory.rejected"));
+
+        // Removing makes room again; a batch takes what fits
+        processor.removeMessagesWhere(msg -> true);
+        java.util.List<MessageData.messageData> batch = new java.util.ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            batch.add(message(2000 + i, "Alice", "Bob", "DISREGARDED"));
+        }
+        int added = processor.addDisregardedMessages(batch);
+        assertTrue(added > sent && added < 100, "added: " + added);
+        assertEquals(batch.get(added - 1), processor.getDisregardedMessages().get(added - 1));
+    }
+
+    @Test
+    void testRateLimitedSendDoesNotEvict() {
+        processor.setRateLimiter(new RateLimiter(1, 0.001));
+        processor.addSentMessage(message(0, "Alice", "Bob", "SENT")); // Alice's only token
+        long budget = processor.getMemoryUsage().get("total") + 10_000;
+        processor.setMemoryBudget(budget, MessageProcessor.MemoryPolicy.REJECT);
+        int full = 1;
+        try {
+            while (true) {
+                processor.addDisregardedMessage(message(full, "Carol", "Bob", "DISREGARDED"));
+                full++;
+            }
+        } catch (MessageProcessor.MemoryBudgetExceededException e) {
+            // Full
+        }
+        processor.setMemoryBudget(budget, MessageProcessor.MemoryPolicy.EVICT);
+
+        assertThrows(MessageProcessor.RateLimitedException.class,
+                () -> processor.addSentMessage(message(1000, "Alice", "Bob", "SENT")));
+        assertEquals(full - 1, processor.getDisregardedMessages().size());
+        assertEquals(1, processor.getSentMessages().size());
+        assertEquals(0, processor.getMetrics().getCount("memory.evicted"));
+
+        // A sender with a token gets room made for it
+        processor.addSentMessage(message(1001, "Dave", "Bob", "SENT"));
+        assertTrue(processor.getMetrics().getCount("memory.evicted") > 0);
+    }
+
+    @Test
+    void testEvictingOldestToStayWithinBudget() {
+        java.util.List<String> removed = new java.util.ArrayList<>();
+        processor.addChangeListener(new MessageChangeListener() {
+            @Override
+            public void messageAdded(MessageData.messageData msg, String list) {
+            }
+
+            @Override
+            public void messageRemoved(MessageData.messageData msg, String list) {
+                removed.add(msg.getId());
+            }
+        });
+        for (int i = 0; i < 20; i++) {
+            processor.addStoredMessage(message(i, "Alice", "Bob", "PENDING"));
+        }
+        long budget = processor.getMemoryUsage().get("total") + 20_000;
+        processor.setMemoryBudget(budget, MessageProcessor.MemoryPolicy.EVICT);
+        for (int i = 100; i < 400; i++) {
+            processor.addDisregardedMessage(message(i, "Alice", "Bob", "DISREGARDED"));
+            assertTrue(processor.getMemoryUsage().get("total") <= budget);
+        }
+        int kept = processor.getDisregardedMessages().size();
+        assertTrue(kept > 0 && kept < 300, "kept: " + kept);
+        assertEquals("id399", processor.getDisregardedMessages().get(kept - 1).getId());
+        assertEquals(300 - kept, removed.size());
+        assertEquals("id100", removed.get(0)); // Oldest first
+        assertEquals(20, processor.getStoredMessages().size()); // Never evicted
+
+        // Stored messages cannot make room, so once only they are left they are rejected
+        processor.setMemoryBudget(0, MessageProcessor.MemoryPolicy.EVICT);
+        assertTrue(processor.getDisregardedMessages().isEmpty());
+        assertThrows(MessageProcessor.MemoryBudgetExceededException.class,
+                () -> processor.addStoredMessage(message(1000, "Alice", "Bob", "PENDING")));
+        assertEquals(20, processor.getStoredMessages().size());
+    }
+}
@@ -0,0 +1,115 @@
+package org.example;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.example.MessageQuery.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MessageQueryTest {
+
+    private MessageProcessor processor;
+
+    @BeforeEach
+    void setUp() {
+        processor = new MessageProcessor();
+        // 200 sent messages to 20 recipients, one minute apart, plus 20 disregarded ones
+        for (int i = 0; i < 200; i++) {
+            processor.addSentMessage(message("s" + i, "+2783000" + String.format("%04d", i % 20),
+                    "Sent text " + "x".repeat(i % 50), "SENT", i));
+        }
+        for (int i = 0; i < 20; i++) {
+            processor.addDisregardedMessage(message("d" + i, "+27830000000", "Disregarded " + i, "DISREGARDED", 200 + i));
+        }
+    }
+
+    @Test
+    void testIdUsesTheIdIndex() {
+        MessageQuery query = where(idIs("s42"));
+
+        assertTrue(processor.explain(query).startsWith("INDEX id 's42' (~1 rows)"));
+        assertEquals(List.of("s42"), ids(query));
+        assertEquals("s42", processor.findMessageById("s42").orElseThrow().getId());
+        assertTrue(processor.findMessageById("missing").isEmpty());
+    }
+
+    @Test
+    void testPlannerPicksTheMostSelectiveIndex() {
+        // 10 messages to the recipient beat 200 sent ones
+        MessageQuery byRecipient = where(statusIs("SENT")).and(recipientIs("+27830000003"));
+        assertTrue(processor.explain(byRecipient).startsWith("INDEX recipient"));
+        assertEquals(10, processor.query(byRecipient).count());
+
+        // 20 disregarded messages beat the 30 to this recipient
+        MessageQuery byStatus = where(recipientIs("+27830000000")).and(statusIs("DISREGARDED"));
+        assertTrue(processor.explain(byStatus).startsWith("LIST DISREGARDED"));
+        assertEquals(20, processor.query(byStatus).count());
+
+        MessageQuery byTime = where(createdBetween(minute(10), minute(15))).and(textContains("SENT TEXT"));
+        assertTrue(processor.explain(byTime).startsWith("INDEX created"));
+        assertEquals(List.of("s10", "s11", "s12", "s13", "s14"), ids(byTime));
+    }
+
+    @Test
+    void testOrOfIndexedConditionsIsAUnionAndOthersScan() {
+        MessageQuery union = where(idIs("s1").or(idIs("s2")).or(statusIs("DISREGARDED")));
+        assertTrue(processor.explain(union).startsWith("UNION("));
+        assertEquals(22, processor.query(union).count());
+
+        // s1 is also one of the 10 messages to +27830000001, and comes out once
+        assertEquals(10, processor.query(where(idIs("s1").or(recipientIs("+27830000001")))).count());
+
+        MessageQuery scan = where(idIs("s1").or(textContains("disregarded 1")));
+        assertTrue(processor.explain(scan).startsWith("SCAN (~220 rows)"));
+        // "Disregarded 1" and "Disregarded 10" to "Disregarded 19", plus s1
+        assertEquals(12, processor.query(scan).count());
+    }
+
+    @Test
+    void testOrderLimitAndLaziness() {
+        MessageQuery newest = where(recipientIs("+27830000005")).orderBy(Order.NEWEST_FIRST).limit(3);
+        assertEquals(List.of("s185", "s165", "s145"), ids(newest));
+
+        // The recipient index already returns oldest first, so no sort is needed
+        MessageQuery oldest = where(recipientIs("+27830000005")).orderBy(Order.OLDEST_FIRST);
+        assertTrue(processor.explain(oldest).contains("-> already OLDEST_FIRST"));
+
+        List<Integer> lengths = processor.query(where(lengthBetween(58, 59)).orderBy(Order.LONGEST_FIRST))
+                .map(MessageQuery::textLength).toList();
+        assertEquals(List.of(59, 59, 59, 59, 58, 58, 58, 58), lengths);
+
+        AtomicInteger examined = new AtomicInteger();
+        assertEquals(2, processor.query(where(statusIs("SENT")).limit(2)).peek(msg -> examined.incrementAndGet())
+                .count());
+        assertEquals(2, examined.get());
+    }
+
+    @Test
+    void testQueriesSeeTheStateWhenTheyRan() {
+        MessageQuery disregarded = where(statusIs("DISREGARDED"));
+        long before = processor.query(disregarded).count();
+
+        processor.addDisregardedMessage(message("d-new", "+27830000000", "Late", "DISREGARDED", 300));
+
+        assertEquals(before + 1, processor.query(disregarded).count());
+        assertEquals(List.of("d-new"), ids(where(idIs("d-new"))));
+        assertEquals(0, processor.query(where(statusIs("UNKNOWN"))).count());
+    }
+
+    private List<String> ids(MessageQuery query) {
+        return processor.query(query).map(MessageData.messageData::getId).toList();
+    }
+
+    private static long minute(int i) {
+        return 1_700_000_000_000L + i * 60_000L;
+    }
+
+    private static MessageData.messageData message(String id, String recipient, String text, String status, int minute) {
+        MessageData.messageData msg = new MessageData.messageData(id, "Alice", recipient, text, "hash-" + id, status);
+        msg.setCreatedAt(minute(minute));
+        return msg;
+    }
+}
@@ -0,0 +1,121 @@
+package org.example;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MessageSegmentFileTest {
+
+    private static final String[] TEMPLATES = {
+            "Hi, are you coming to the meeting today?",
+            "Thanks, see you soon!",
+            "Happy birthday! Hope you have a great day.",
+            "Please call me back when you get this message."
+    };
+
+    private Path directory;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        directory = Files.createTempDirectory("segments");
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    private static List<MessageData.messageData> messages(int count) {
+        List<MessageData.messageData> messages = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            MessageData.messageData msg = new MessageData.messageData(String.format("%010d", i), "Sender" + (i % 5),
+                    "+2783" + String.format("%07d", i % 50), TEMPLATES[i % TEMPLATES.length], "00:" + i + ":HITODAY", "SENT");
+            msg.setCreatedAt(1_000L * i);
+            messages.add(msg);
+        }
+        return messages;
+    }
+
+    @Test
+    void testRoundTripWithAndWithoutDictionary() throws Exception {
+        List<MessageData.messageData> original = messages(1000);
+        for (byte[] dictionary : new byte[][]{null, MessageSegmentFile.trainDictionary(original, 4096)}) {
+            Path file = directory.resolve("segment.seg");
+            MessageSegmentFile.write(file, original, 100, dictionary);
+            try (MessageSegmentFile segment = MessageSegmentFile.open(file)) {
+                assertEquals(10, segment.blockCount());
+                assertEquals(1000, segment.recordCount());
+                List<MessageData.messageData> read = segment.readAll();
+                assertEquals(1000, read.size());
+                for (int i = 0; i < read.size(); i++) {
+                    assertEquals(original.get(i).getId(), read.get(i).getId());
+                    assertEquals(original.get(i).getMessageText(), read.get(i).getMessageText());
+                    assertEquals(original.get(i).getCreatedAt(), read.get(i).getCreatedAt());
+                }
+            }
+        }
+    }
+
+    @Test
+    void testRandomReadInflatesOneBlock() throws Exception {
+        Path file = directory.resolve("segment.seg");
+        MessageSegmentFile.write(file, messages(1000), 64, null);
+        try (MessageSegmentFile segment = MessageSegmentFile.open(file)) {
+            assertEquals("0000000777", segment.get(777).getId());
+            assertEquals("0000000000", segment.get(0).getId());
+            assertEquals("0000000999", segment.get(999).getId());
+            assertEquals(3, segment.getBlocksInflated());
+            assertThrows(IndexOutOfBoundsException.class, () -> segment.get(1000));
+        }
+    }
+
+    @Test
+    void testTimeRangeReadSkipsBlocks() throws Exception {
+        Path file = directory.resolve("segment.seg");
+        MessageSegmentFile.write(file, messages(1000), 100, null);
+        try (MessageSegmentFile segment = MessageSegmentFile.open(file)) {
+            List<MessageData.messageData> found = segment.readCreatedBetween(250_000, 260_000);
+            assertEquals(10, found.size());
+            assertEquals("0000000250", found.get(0).getId());
+            assertEquals(1, segment.getBlocksInflated());
+        }
+    }
+
+    @Test
+    void testCompressionBeatsRawJsonAndDictionaryHelpsSmallBlocks() throws Exception {
+        List<MessageData.messageData> original = messages(2000);
+        long rawBytes = 0;
+        for (MessageData.messageData msg : original) {
+            rawBytes += MessageProcessor.toJson(msg).toString().length() + 1;
+        }
+        Path plain = directory.resolve("plain.seg");
+        Path withDictionary = directory.resolve("dict.seg");
+        MessageSegmentFile.write(plain, original, 8, null);
+        MessageSegmentFile.write(withDictionary, original, 8, MessageSegmentFile.trainDictionary(original, 8192));
+
+        assertTrue(Files.size(plain) < rawBytes / 2, "compressed " + Files.size(plain) + " of " + rawBytes);
+        assertTrue(Files.size(withDictionary) < Files.size(plain),
+                "dictionary " + Files.size(withDictionary) + " vs plain " + Files.size(plain));
+    }
+
+    @Test
+    void testRejectsOtherFiles() throws Exception {
+        Path file = directory.resolve("notes.seg");
+        Files.writeString(file, "{\"id\":\"not a segment\"}\n");
+        assertThrows(IOException.class, () -> MessageSegmentFile.open(file));
+    }
+}
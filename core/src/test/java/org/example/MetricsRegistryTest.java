@@ -0,0 +1,86 @@
+package org.example;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MetricsRegistryTest {
+
+    @AfterEach
+    void tearDown() {
+        File file = new File("storedMessages.json");
+        if (file.exists()) file.delete();
+    }
+
+    @Test
+    void testHistogramPercentilesWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 10_000; i++) {
+            histogram.record(i * 1_000); // 1us .. 10ms
+        }
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(10_000, snapshot.getCount());
+        assertEquals(10_000_000, snapshot.getMax());
+        assertEquals(5_000_000, snapshot.getValueAtPercentile(50), 5_000_000 * 0.04);
+        assertEquals(9_900_000, snapshot.getValueAtPercentile(99), 9_900_000 * 0.04);
+        assertEquals(10_000_000, snapshot.getValueAtPercentile(100));
+    }
+
+    @Test
+    void testStripesAreAllocatedOnFirstRecord() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.allocatedStripes());
+        assertEquals(0, histogram.snapshot().getCount());
+
+        histogram.record(1_000);
+        histogram.record(2_000);
+        assertEquals(1, histogram.allocatedStripes()); // One thread, one stripe
+        Thread other = new Thread(() -> histogram.record(3_000));
+        other.start();
+        other.join();
+        assertTrue(histogram.allocatedStripes() <= 2);
+        assertEquals(3, histogram.snapshot().getCount());
+    }
+
+    @Test
+    void testBucketBoundsCoverEveryValue() {
+        for (long value : new long[]{0, 1, 31, 32, 33, 63, 64, 1_000, 123_456_789, Long.MAX_VALUE}) {
+            int index = LatencyHistogram.bucketIndex(value);
+            assertTrue(LatencyHistogram.bucketUpperBound(index) >= value);
+            if (index > 0) {
+                assertTrue(LatencyHistogram.bucketUpperBound(index - 1) < value);
+            }
+        }
+    }
+
+    @Test
+    void testProcessorRecordsOperationsAndGauges() {
+        MessageProcessor processor = new MessageProcessor();
+        MessageData.messageData msg = new MessageData.messageData(
+                "id001", "Alice", "Bob", "Hello Bob!", "hash001", "SENT");
+
+        processor.addSentMessage(msg);
+        processor.addStoredMessage(new MessageData.messageData(
+                "id002", "Alice", "Bob", "Later Bob!", "hash002", "PENDING"));
+        processor.searchMessageById("id001");
+        processor.deleteMessageByHash("hash001");
+
+        MetricsRegistry metrics = processor.getMetrics();
+        assertEquals(1, metrics.latency("addSentMessage").snapshot().getCount());
+        assertEquals(1, metrics.latency("addStoredMessage").snapshot().getCount());
+        assertEquals(1, metrics.latency("searchMessageById").snapshot().getCount());
+        assertEquals(1, metrics.latency("deleteMessageByHash").snapshot().getCount());
+        assertEquals(0, metrics.getGauge("store.sentMessages"));
+        assertEquals(1, metrics.getGauge("store.storedMessages"));
+
+        JSONObject json = new JSONObject(metrics.dumpJson());
+        assertEquals(1, json.getJSONObject("gauges").getInt("store.storedMessages"));
+        assertEquals(1, json.getJSONObject("latencies").getJSONObject("addSentMessage").getInt("count"));
+        assertTrue(metrics.dumpText().contains("addStoredMessage: count=1"));
+    }
+}
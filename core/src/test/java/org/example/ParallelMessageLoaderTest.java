@@ -0,0 +1,90 @@
+package org.example;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParallelMessageLoaderTest {
+
+    @AfterEach
+    void tearDown() {
+        File file = new File("storedMessages.json");
+        if (file.exists()) file.delete();
+    }
+
+    private void storeMessages(MessageProcessor processor, int count) {
+        for (int i = 0; i < count; i++) {
+            processor.addStoredMessage(new MessageData.messageData(
+                    "MSG" + String.format("%09d", i),
+                    "Sender" + i,
+                    "+2783888" + String.format("%04d", i),
+                    "Message number " + i + " with \"quotes\"",
+                    "MS:" + i + ":MESSAGEQUOTES",
+                    "PENDING"));
+        }
+    }
+
+    @Test
+    void testRangesEndOnLineBoundaries() throws Exception {
+        storeMessages(new MessageProcessor(), 50);
+        Path path = Path.of("storedMessages.json");
+        byte[] bytes = Files.readAllBytes(path);
+
+        ParallelMessageLoader loader = new ParallelMessageLoader(path, 300, ForkJoinPool.commonPool(), new MetricsRegistry());
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            List<long[]> ranges = loader.splitRanges(channel, channel.size());
+            assertTrue(ranges.size() > 1);
+            long expectedStart = 0;
+            for (long[] range : ranges) {
+                assertEquals(expectedStart, range[0]);
+                assertEquals('\n', bytes[(int) range[1] - 1]);
+                expectedStart = range[1];
+            }
+            assertEquals(bytes.length, expectedStart);
+        }
+    }
+
+    @Test
+    void testParallelLoadKeepsFileOrder() throws Exception {
+        storeMessages(new MessageProcessor(), 200);
+
+        ParallelMessageLoader loader = new ParallelMessageLoader(
+                Path.of("storedMessages.json"), 512, new ForkJoinPool(4), new MetricsRegistry());
+        List<MessageData.messageData> loaded = new ArrayList<>();
+        for (List<MessageData.messageData> range : loader.load()) {
+            loaded.addAll(range);
+        }
+
+        assertEquals(200, loaded.size());
+        for (int i = 0; i < loaded.size(); i++) {
+            assertEquals("Sender" + i, loaded.get(i).getSender());
+        }
+    }
+
+    @Test
+    void testParallelModeMatchesSequentialLoad() {
+        storeMessages(new MessageProcessor(), 100);
+
+        MessageProcessor sequential = new MessageProcessor();
+        assertTrue(sequential.loadStoredMessagesFromJson());
+
+        MessageProcessor parallel = new MessageProcessor();
+        parallel.setParallelLoading(true);
+        assertTrue(parallel.loadStoredMessagesFromJson());
+
+        assertEquals(sequential.getMessageIDs(), parallel.getMessageIDs());
+        assertEquals(sequential.getMessageHashes(), parallel.getMessageHashes());
+        assertEquals("Message number 42 with \"quotes\"",
+                parallel.getStoredMessages().get(42).getMessageText());
+    }
+}
@@ -0,0 +1,95 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PersistentListTest {
+
+    @Test
+    void testSnapshotDoesNotSeeLaterChanges() {
+        PersistentList<String> list = new PersistentList<>();
+        String a = "a", b = "b", c = "c";
+        list.add(a);
+        list.add(b);
+        PersistentList.Snapshot<String> before = list.snapshot();
+
+        list.remove(a);
+        list.add(c);
+
+        assertEquals(List.of("a", "b"), before);
+        assertEquals(List.of("b", "c"), list.snapshot());
+        assertFalse(list.add(b));
+        assertThrows(UnsupportedOperationException.class, () -> before.add("d"));
+    }
+
+    @Test
+    void testMatchesArrayListUnderRandomUpdates() {
+        PersistentList<Integer> list = new PersistentList<>();
+        List<Integer> expected = new ArrayList<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 20_000; i++) {
+            if (expected.isEmpty() || random.nextInt(3) > 0) {
+                Integer value = i; // Boxed outside the cache, so each one is a distinct object
+                list.add(value);
+                expected.add(value);
+            } else {
+                Integer value = expected.remove(random.nextInt(expected.size()));
+                assertTrue(list.remove(value));
+            }
+        }
+        List<Integer> batch = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++) {
+            batch.add(100_000 + i);
+        }
+        list.addAll(batch);
+        expected.addAll(batch);
+
+        PersistentList.Snapshot<Integer> snapshot = list.snapshot();
+        assertEquals(expected, snapshot);
+        assertEquals(expected.get(1234), snapshot.get(1234));
+        assertEquals(expected.size(), list.size());
+    }
+
+    @Test
+    void testPagingWithCursors() {
+        PersistentList<String> list = new PersistentList<>();
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            values.add("m" + i);
+            list.add(values.get(i));
+        }
+
+        PersistentList.Page<String> first = list.snapshot().pageAfter(PersistentList.START, 10);
+        assertEquals(values.subList(0, 10), first.getItems());
+        assertTrue(first.hasMore());
+
+        // The next page is taken from a newer snapshot: removals before the cursor do not shift it,
+        // and entries added meanwhile show up at the end.
+        list.remove(values.get(0));
+        list.remove(values.get(10));
+        list.add("late");
+        PersistentList.Page<String> second = list.snapshot().pageAfter(first.getNextCursor(), 10);
+        assertEquals(values.subList(11, 21), second.getItems());
+
+        PersistentList.Page<String> last = list.snapshot().pageAfter(second.getNextCursor(), 10);
+        assertEquals(List.of("m21", "m22", "m23", "m24", "late"), last.getItems());
+        assertFalse(last.hasMore());
+        assertTrue(list.snapshot().pageAfter(last.getNextCursor(), 10).getItems().isEmpty());
+    }
+
+    @Test
+    void testMappedSnapshot() {
+        PersistentList<MessageData.messageData> list = new PersistentList<>();
+        list.add(new MessageData.messageData("id1", "Alice", "Bob", "Hi", "hash1", "SENT"));
+        list.add(new MessageData.messageData("id2", "Alice", "Bob", "Bye", "hash2", "SENT"));
+
+        PersistentList.Snapshot<String> ids = list.snapshot().map(MessageData.messageData::getId);
+        assertEquals(List.of("id1", "id2"), ids);
+        assertEquals(List.of("id2"), ids.pageAfter(ids.pageAfter(PersistentList.START, 1).getNextCursor(), 5).getItems());
+    }
+}
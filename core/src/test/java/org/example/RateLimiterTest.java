@@ -0,0 +1,121 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RateLimiterTest {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    void testBurstThenSustainedRate() {
+        RateLimiter limiter = new RateLimiter(3, 2.0, clock::get); // 3 at once, then one per 500ms
+
+        assertTrue(limiter.tryAcquire("Alice"));
+        assertTrue(limiter.tryAcquire("Alice"));
+        assertTrue(limiter.tryAcquire("Alice"));
+        assertFalse(limiter.tryAcquire("Alice"));
+
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(499));
+        assertFalse(limiter.tryAcquire("Alice"));
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+        assertTrue(limiter.tryAcquire("Alice"));
+        assertFalse(limiter.tryAcquire("Alice"));
+    }
+
+    @Test
+    void testSendersHaveSeparateBuckets() {
+        RateLimiter limiter = new RateLimiter(1, 1.0, clock::get);
+
+        assertTrue(limiter.tryAcquire("Alice"));
+        assertFalse(limiter.tryAcquire("Alice"));
+        assertTrue(limiter.tryAcquire("Bob"));
+        assertEquals(0, limiter.availableTokens("Alice"));
+        assertEquals(1, limiter.availableTokens("Carol"));
+    }
+
+    @Test
+    void testRefilledBucketsAreEvicted() {
+        RateLimiter limiter = new RateLimiter(2, 1.0, clock::get);
+        limiter.tryAcquire("Alice");
+        limiter.tryAcquire("Bob");
+        limiter.tryAcquire("Bob");
+        assertEquals(2, limiter.trackedSenders());
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertEquals(1, limiter.evictIdle()); // Alice is full again, Bob still owes a token
+        assertEquals(1, limiter.trackedSenders());
+        assertEquals(1, limiter.availableTokens("Bob"));
+    }
+
+    @Test
+    void testIdleBucketsAreEvictedInTheBackground() throws Exception {
+        try (RateLimiter limiter = new RateLimiter(1, 1.0, clock::get)) {
+            limiter.tryAcquire("Alice");
+            assertFalse(limiter.tryAcquire("Alice"));
+            limiter.start(10);
+
+            clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (limiter.trackedSenders() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(0, limiter.trackedSenders());
+            assertTrue(limiter.tryAcquire("Alice")); // A new, full bucket
+            assertFalse(limiter.tryAcquire("Alice"));
+        }
+    }
+
+    @Test
+    void testEvictionRacingWithAcquiresNeverExceedsBurst() throws Exception {
+        RateLimiter limiter = new RateLimiter(100, 1.0, clock::get);
+        AtomicInteger granted = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 1_000; i++) {
+            pool.execute(() -> {
+                limiter.evictIdle();
+                if (limiter.tryAcquire("Alice")) granted.incrementAndGet();
+            });
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(100, granted.get()); // A bucket that has given tokens is never full, so never evicted
+    }
+
+    @Test
+    void testConcurrentAcquiresNeverExceedBurst() throws Exception {
+        RateLimiter limiter = new RateLimiter(100, 1.0, clock::get);
+        AtomicInteger granted = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 1_000; i++) {
+            pool.execute(() -> {
+                if (limiter.tryAcquire("Alice")) granted.incrementAndGet();
+            });
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(100, granted.get());
+    }
+
+    @Test
+    void testProcessorRejectsSendsOverTheLimit() {
+        MessageProcessor processor = new MessageProcessor();
+        processor.setRateLimiter(new RateLimiter(1, 1.0, clock::get));
+        MessageData.messageData first = new MessageData.messageData(
+                "id001", "Alice", "+27838884567", "Hello", "hash001", "SENT");
+        MessageData.messageData second = new MessageData.messageData(
+                "id002", "Alice", "+27838884567", "Again", "hash002", "SENT");
+
+        processor.addSentMessage(first);
+        assertThrows(MessageProcessor.RateLimitedException.class, () -> processor.addSentMessage(second));
+        assertEquals(1, processor.getSentMessages().size());
+        assertEquals(1, processor.getMetrics().getCount("rateLimit.rejected"));
+    }
+}
@@ -0,0 +1,259 @@
+package org.example;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReplicationTest {
+
+    private Path leaderFile;
+    private Path replicaFile;
+    private MessageProcessor leaderProcessor;
+    private MessageProcessor replicaProcessor;
+    private ReplicationLeader leader;
+    private ReplicationFollower follower;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        leaderFile = Files.createTempFile("leader", ".json");
+        replicaFile = Files.createTempFile("replica", ".json");
+        Files.delete(leaderFile);
+        Files.delete(replicaFile);
+        leaderProcessor = new MessageProcessor(leaderFile.toString());
+        replicaProcessor = new MessageProcessor(replicaFile.toString());
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (follower != null) {
+            follower.close();
+        }
+        if (leader != null) {
+            leader.close();
+        }
+        Files.deleteIfExists(leaderFile);
+        Files.deleteIfExists(replicaFile);
+        Files.deleteIfExists(Path.of(leaderFile + ".cold"));
+        Files.deleteIfExists(Path.of(replicaFile + ".cold"));
+    }
+
+    private static MessageData.messageData message(int i, String status) {
+        return new MessageData.messageData("MSG" + String.format("%07d", i), "Sender" + (i % 3),
+                "+2783000" + String.format("%04d", i % 5), "Message " + i, "MS:" + i + ":MESSAGE" + i, status);
+    }
+
+    @Test
+    void testFollowerCatchesUpWithExistingAndNewMessages() throws Exception {
+        leaderProcessor.addSentMessage(message(1, "SENT"));
+        leaderProcessor.addStoredMessage(message(2, "PENDING"));
+        leader = new ReplicationLeader(leaderProcessor, 0);
+        follower = new ReplicationFollower(replicaProcessor, "localhost", leader.getPort(), 0);
+
+        leaderProcessor.addDisregardedMessage(message(3, "DISREGARDED"));
+        leaderProcessor.addStoredMessage(message(4, "PENDING"));
+
+        assertTrue(follower.awaitOffset(4, 5000));
+        assertEquals(1, replicaProcessor.getSentMessages().size());
+        assertEquals(2, replicaProcessor.getStoredMessages().size());
+        assertEquals(1, replicaProcessor.getDisregardedMessages().size());
+        assertEquals("Message 4", follower.findMessageById("MSG0000004").orElseThrow().getMessageText());
+        assertEquals(2, Files.readAllLines(replicaFile).size()); // Stored messages reach the replica's own file
+    }
+
+    @Test
+    void testRemovalsAreReplicated() throws Exception {
+        leader = new ReplicationLeader(leaderProcessor, 0);
+        follower = new ReplicationFollower(replicaProcessor, "localhost", leader.getPort(), 0);
+
+        leaderProcessor.addSentMessage(message(1, "SENT"));
+        leaderProcessor.addSentMessage(message(2, "SENT"));
+        assertEquals("sent", leaderProcessor.removeMessageByHash("MS:1:MESSAGE1"));
+
+        assertTrue(follower.awaitOffset(3, 5000));
+        assertTrue(follower.findMessageByHash("MS:1:MESSAGE1").isEmpty());
+        assertTrue(follower.findMessageByHash("MS:2:MESSAGE2").isPresent());
+        assertEquals(3, replicaProcessor.getMetrics().getCount("replication.applied"));
+    }
+
+    @Test
+    void testRemovalsAndMovesFollowIdAndList() throws Exception {
+        leader = new ReplicationLeader(leaderProcessor, 0);
+        follower = new ReplicationFollower(replicaProcessor, "localhost", leader.getPort(), 0);
+
+        // Same hash, different messages: the leader removes the second
+        MessageData.messageData first = new MessageData.messageData("MSG0000001", "Sender", "+27830000001",
+                "Same text", "MS:1:SAMETEXT", "SENT");
+        MessageData.messageData second = new MessageData.messageData("MSG0000002", "Sender", "+27830000001",
+                "Same text", "MS:1:SAMETEXT", "SENT");
+        MessageData.messageData pending = message(3, "PENDING");
+        leaderProcessor.addSentMessage(first);
+        leaderProcessor.addSentMessage(second);
+        leaderProcessor.addStoredMessage(pending);
+        leaderProcessor.removeMessages(java.util.List.of(second));
+        leaderProcessor.changeStatus(java.util.List.of(pending), "SENT");
+
+        assertEquals(5, leader.getLogOffset()); // The move is a single record
+        assertTrue(follower.awaitOffset(5, 5000));
+        assertEquals(java.util.List.of("MSG0000001", "MSG0000003"), replicaProcessor.getSentMessages().stream()
+                .map(MessageData.messageData::getId).toList());
+        assertEquals("SENT", follower.findMessageById("MSG0000003").orElseThrow().getStatus());
+        assertTrue(replicaProcessor.getStoredMessages().isEmpty());
+    }
+
+    @Test
+    void testFollowerResumesFromOffset() throws Exception {
+        leaderProcessor.addSentMessage(message(1, "SENT"));
+        leaderProcessor.addSentMessage(message(2, "SENT"));
+        leaderProcessor.addSentMessage(message(3, "SENT"));
+        leader = new ReplicationLeader(leaderProcessor, 0);
+
+        // The replica already holds the first two records from an earlier session
+        replicaProcessor.addSentMessage(message(1, "SENT"));
+        replicaProcessor.addSentMessage(message(2, "SENT"));
+        follower = new ReplicationFollower(replicaProcessor, "localhost", leader.getPort(), 2, leader.getEpoch());
+
+        assertTrue(follower.awaitOffset(3, 5000));
+        assertEquals(3, replicaProcessor.getSentMessages().size());
+        assertEquals(1, follower.findMessagesByRecipient("+27830000003").size());
+        assertEquals(0, replicaProcessor.getMetrics().getCount("replication.resnapshots"));
+    }
+
+    @Test
+    void testOffsetFromAnotherEpochGetsAFullCopy() throws Exception {
+        leaderProcessor.addSentMessage(message(1, "SENT"));
+        leaderProcessor.addStoredMessage(message(2, "PENDING"));
+        leader = new ReplicationLeader(leaderProcessor, 0);
+
+        // Offset 1 of some earlier leader: not the same records at all
+        replicaProcessor.addSentMessage(message(9, "SENT"));
+        follower = new ReplicationFollower(replicaProcessor, "localhost", leader.getPort(), 1, 12345);
+
+        assertTrue(follower.awaitOffset(2, 5000));
+        assertEquals(leader.getEpoch(), follower.getLeaderEpoch());
+        assertEquals(java.util.List.of("MSG0000001"), replicaProcessor.getSentMessages().stream()
+                .map(MessageData.messageData::getId).toList());
+        assertEquals(1, replicaProcessor.getStoredMessages().size());
+        assertEquals(1, leaderProcessor.getMetrics().getCount("replication.resnapshots"));
+
+        leaderProcessor.addDisregardedMessage(message(3, "DISREGARDED"));
+        assertTrue(follower.awaitOffset(3, 5000));
+        assertEquals(1, replicaProcessor.getDisregardedMessages().size());
+    }
+
+    @Test
+    void testOffsetTrimmedFromTheLogGetsAFullCopy() throws Exception {
+        leader = new ReplicationLeader(leaderProcessor, 0, 4);
+        for (int i = 0; i < 10; i++) {
+            leaderProcessor.addSentMessage(message(i, "SENT"));
+        }
+        leaderProcessor.removeMessages(java.util.List.of(leaderProcessor.getSentMessages().get(0)));
+        follower = new ReplicationFollower(replicaProcessor, "localhost", leader.getPort(), 0);
+
+        assertTrue(follower.awaitOffset(11, 5000));
+        assertEquals(9, replicaProcessor.getSentMessages().size());
+        assertTrue(follower.findMessageById("MSG0000000").isEmpty());
+
+        leaderProcessor.addSentMessage(message(10, "SENT"));
+        assertTrue(follower.awaitOffset(12, 5000));
+        assertEquals(10, replicaProcessor.getSentMessages().size());
+    }
+
+    @Test
+    void testSpilledMessagesAreReplicated() throws Exception {
+        long perMessage = MessageSizes.estimate(message(0, "SENT"));
+        leaderProcessor.enableColdTier(Path.of(leaderFile + ".cold"), perMessage * 5, true);
+        replicaProcessor.enableColdTier(Path.of(replicaFile + ".cold"), perMessage * 5, true);
+        for (int i = 0; i < 20; i++) {
+            leaderProcessor.addSentMessage(message(i, "SENT"));
+        }
+        assertTrue(leaderProcessor.getColdMessageCount() > 0);
+        leader = new ReplicationLeader(leaderProcessor, 0);
+        follower = new ReplicationFollower(replicaProcessor, "localhost", leader.getPort(), 0);
+
+        assertTrue(follower.awaitOffset(20, 5000));
+        assertEquals(4, follower.findMessagesByRecipient("+27830000001").size());
+        assertTrue(replicaProcessor.getColdMessageCount() > 0);
+
+        // MSG0000000 is spilled on both sides; removing and moving it still reaches the replica
+        leaderProcessor.removeMessages(java.util.List.of(leaderProcessor.findMessageById("MSG0000000").orElseThrow()));
+        leaderProcessor.changeStatus(java.util.List.of(leaderProcessor.findMessageById("MSG0000001").orElseThrow()),
+                "DISREGARDED");
+        assertTrue(follower.awaitOffset(22, 5000));
+        assertTrue(follower.findMessageById("MSG0000000").isEmpty());
+        assertEquals("DISREGARDED", follower.findMessageById("MSG0000001").orElseThrow().getStatus());
+        assertEquals(19, leaderProcessor.query(MessageQuery.all()).count());
+        assertEquals(19, replicaProcessor.query(MessageQuery.all()).count());
+    }
+
+    @Test
+    void testReplicaLimitsDoNotStopReplication() throws Exception {
+        replicaProcessor.setRateLimiter(new RateLimiter(1, 0.001)); // The leader's senders are not limited again
+        long budget = replicaProcessor.getMemoryUsage().get("total") + 1_000;
+        replicaProcessor.setMemoryBudget(budget, MessageProcessor.MemoryPolicy.REJECT);
+        leader = new ReplicationLeader(leaderProcessor, 0);
+        follower = new ReplicationFollower(replicaProcessor, "localhost", leader.getPort(), 0);
+        for (int i = 0; i < 20; i++) {
+            leaderProcessor.addSentMessage(message(i, "SENT"));
+        }
+
+        // Not everything fits: the follower counts the failure and keeps retrying with full copies
+        long deadline = System.currentTimeMillis() + 5000;
+        while (replicaProcessor.getMetrics().getCount("replication.applyErrors") == 0
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(replicaProcessor.getMetrics().getCount("replication.applyErrors") > 0);
+
+        replicaProcessor.setMemoryBudget(Long.MAX_VALUE, MessageProcessor.MemoryPolicy.REJECT);
+        assertTrue(follower.awaitOffset(20, 5000));
+        assertEquals(20, replicaProcessor.getSentMessages().size());
+        assertEquals(leader.getEpoch(), follower.getLeaderEpoch());
+    }
+
+    @Test
+    void testReloadStartsANewEpoch() throws Exception {
+        leaderProcessor.addStoredMessage(message(1, "PENDING"));
+        leader = new ReplicationLeader(leaderProcessor, 0);
+        follower = new ReplicationFollower(replicaProcessor, "localhost", leader.getPort(), 0);
+        assertTrue(follower.awaitOffset(1, 5000));
+        long firstEpoch = leader.getEpoch();
+
+        // Another writer appends to the leader's file; reloading picks it up without reporting adds
+        new MessageProcessor(leaderFile.toString()).addStoredMessage(message(2, "PENDING"));
+        leaderProcessor.loadStoredMessagesFromJson();
+        assertNotEquals(firstEpoch, leader.getEpoch());
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (follower.getLeaderEpoch() != leader.getEpoch() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(leader.getEpoch(), follower.getLeaderEpoch());
+        assertTrue(follower.findMessageById("MSG0000002").isPresent());
+        assertEquals(2, replicaProcessor.getStoredMessages().size());
+    }
+
+    @Test
+    void testLagIsPublishedAsGauge() throws Exception {
+        leader = new ReplicationLeader(leaderProcessor, 0);
+        follower = new ReplicationFollower(replicaProcessor, "localhost", leader.getPort(), 0);
+        for (int i = 0; i < 20; i++) {
+            leaderProcessor.addSentMessage(message(i, "SENT"));
+        }
+
+        assertTrue(follower.awaitOffset(20, 5000));
+        assertEquals(20, leader.getLogOffset());
+        assertEquals(20, leaderProcessor.getMetrics().getGauge("replication.logOffset"));
+        assertEquals(20, replicaProcessor.getMetrics().getGauge("replication.appliedOffset"));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (follower.getLag() != 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, replicaProcessor.getMetrics().getGauge("replication.lag"));
+    }
+}
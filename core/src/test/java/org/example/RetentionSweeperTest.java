@@ -0,0 +1,152 @@
+package org.example;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RetentionSweeperTest {
+
+    private static final long HOUR = 3_600_000;
+
+    private Path file;
+    private Path archive;
+    private MessageProcessor processor;
+    private final AtomicLong now = new AtomicLong(100 * HOUR);
+
+    @BeforeEach
+    void setUp() throws Exception {
+        file = Files.createTempFile("retention", ".json");
+        archive = Files.createTempDirectory("archive");
+        Files.delete(file);
+        processor = new MessageProcessor(file.toString());
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        Files.deleteIfExists(file);
+        try (Stream<Path> segments = Files.list(archive)) {
+            for (Path segment : segments.toList()) {
+                Files.delete(segment);
+            }
+        }
+        Files.delete(archive);
+    }
+
+    private static MessageData.messageData message(int i, String status, long createdAt) {
+        MessageData.messageData msg = new MessageData.messageData("MSG" + String.format("%07d", i), "Sender",
+                "+2783000000" + (i % 2), "Message " + i, "MS:" + i + ":MESSAGE" + i, status);
+        msg.setCreatedAt(createdAt);
+        return msg;
+    }
+
+    @Test
+    void testTimeRangeQueries() {
+        for (int i = 0; i < 10; i++) {
+            processor.addSentMessage(message(i, "SENT", i * HOUR));
+        }
+
+        List<MessageData.messageData> lastHours = processor.findMessagesCreatedBetween(7 * HOUR, 10 * HOUR);
+        assertEquals(List.of("MSG0000007", "MSG0000008", "MSG0000009"),
+                lastHours.stream().map(MessageData.messageData::getId).toList());
+
+        List<MessageData.messageData> toRecipient = processor.findMessagesByRecipient("+27830000001", 2 * HOUR, 6 * HOUR);
+        assertEquals(List.of("MSG0000003", "MSG0000005"),
+                toRecipient.stream().map(MessageData.messageData::getId).toList());
+        assertTrue(processor.findMessagesByRecipient("+27839999999", 0, 10 * HOUR).isEmpty());
+    }
+
+    @Test
+    void testExpiredMessagesAreArchivedAndRemovedFromEveryList() throws Exception {
+        for (int i = 0; i < 30; i++) {
+            long createdAt = (i < 20 ? 10 : 99) * HOUR;
+            switch (i % 3) {
+                case 0 -> processor.addSentMessage(message(i, "SENT", createdAt));
+                case 1 -> processor.addStoredMessage(message(i, "PENDING", createdAt));
+                default -> processor.addDisregardedMessage(message(i, "DISREGARDED", createdAt));
+            }
+        }
+        RetentionSweeper sweeper = new RetentionSweeper(processor, 24 * HOUR, archive, now::get, 7);
+
+        assertEquals(13, sweeper.sweep()); // The 7 old PENDING messages are still to be sent
+        assertEquals(17, processor.findMessagesCreatedBetween(0, Long.MAX_VALUE).size());
+        try (Stream<Path> segments = Files.list(archive)) {
+            List<Path> written = segments.toList();
+            assertEquals(1, written.size());
+            try (MessageSegmentFile segment = MessageSegmentFile.open(written.get(0))) {
+                assertEquals(13, segment.recordCount());
+                assertEquals("MSG0000000", segment.get(0).getId());
+            }
+        }
+        assertTrue(processor.findMessageById("MSG0000002").isEmpty());
+        assertTrue(processor.findMessageById("MSG0000003").isEmpty());
+        assertFalse(processor.getMessageIDs().contains("MSG0000003"));
+        assertEquals("PENDING", processor.findMessageById("MSG0000001").orElseThrow().getStatus());
+        assertTrue(processor.findMessageById("MSG0000021").isPresent());
+        assertEquals(0, sweeper.sweep());
+
+        // Every stored message is still in the file
+        MessageProcessor reloaded = new MessageProcessor(file.toString());
+        reloaded.loadStoredMessagesFromJson();
+        assertEquals(10, reloaded.getStoredMessages().size());
+        assertEquals(10 * HOUR, reloaded.getStoredMessages().get(0).getCreatedAt());
+    }
+
+    @Test
+    void testLegacyRecordsKeepTheTimeOfTheirFirstLoad() throws Exception {
+        Files.writeString(file, "{\"id\":\"MSG0000001\",\"sender\":\"Sender\",\"recipient\":\"+27830000001\","
+                + "\"messageText\":\"Old\",\"hash\":\"MS:1:OLD\",\"status\":\"PENDING\"}\n");
+        processor.loadStoredMessagesFromJson();
+        assertEquals(1, processor.getLastRecovery().getUntimedMessages());
+        long assigned = processor.getStoredMessages().get(0).getCreatedAt();
+        Thread.sleep(5);
+
+        MessageProcessor reloaded = new MessageProcessor(file.toString());
+        reloaded.loadStoredMessagesFromJson();
+        assertEquals(0, reloaded.getLastRecovery().getUntimedMessages());
+        assertEquals(assigned, reloaded.getStoredMessages().get(0).getCreatedAt());
+    }
+
+    @Test
+    void testSweepWithoutStoredMessagesLeavesTheFileAlone() throws Exception {
+        processor.addSentMessage(message(0, "SENT", 10 * HOUR));
+        processor.addStoredMessage(message(1, "PENDING", 99 * HOUR));
+        processor.addStoredMessage(message(2, "PENDING", 99 * HOUR));
+        processor.removeMessages(List.of(processor.getStoredMessages().get(0))); // Appends a "removed" record
+        List<String> before = Files.readAllLines(file);
+
+        assertEquals(1, new RetentionSweeper(processor, 24 * HOUR, null, now::get, 7).sweep());
+        assertEquals(before, Files.readAllLines(file)); // Not compacted
+    }
+
+    @Test
+    void testRemovedRecordsAreHonouredBeforeCompaction() {
+        processor.addStoredMessage(message(1, "PENDING", HOUR));
+        processor.addStoredMessage(message(2, "PENDING", 2 * HOUR));
+        assertEquals(1, processor.removeMessages(processor.findMessagesCreatedBetween(0, 2 * HOUR)));
+
+        for (boolean parallel : new boolean[]{false, true}) {
+            MessageProcessor reloaded = new MessageProcessor(file.toString());
+            reloaded.setParallelLoading(parallel);
+            reloaded.loadStoredMessagesFromJson();
+            assertEquals(List.of("MSG0000002"),
+                    reloaded.getStoredMessages().stream().map(MessageData.messageData::getId).toList());
+        }
+    }
+
+    @Test
+    void testStatusChangeIsTimestamped() {
+        MessageData.messageData msg = message(1, "PENDING", HOUR);
+        msg.setStatusChangedAt(HOUR);
+        msg.setStatus("SENT");
+        assertTrue(msg.getStatusChangedAt() > HOUR);
+        assertEquals(HOUR, msg.getCreatedAt());
+    }
+}
@@ -0,0 +1,104 @@
+package org.example;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ShardedMessageProcessorTest {
+
+    private Path directory;
+    private String prefix;
+    private ShardedMessageProcessor sharded;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        directory = Files.createTempDirectory("shards");
+        prefix = directory.resolve("messages").toString();
+        sharded = new ShardedMessageProcessor(4, prefix);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        sharded.close();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    private static MessageData.messageData message(int i, String status) {
+        return new MessageData.messageData("MSG" + String.format("%09d", i), "Sender" + (i % 7),
+                "+2783000" + String.format("%04d", i % 40), "Message " + i, "MS:" + i + ":MESSAGE" + i, status);
+    }
+
+    @Test
+    void testMessagesAreRoutedByRecipient() {
+        List<CompletableFuture<?>> writes = new ArrayList<>();
+        for (int i = 0; i < 400; i++) {
+            writes.add(i % 2 == 0 ? sharded.addSentMessage(message(i, "SENT"))
+                    : sharded.addStoredMessage(message(i, "PENDING")));
+        }
+        writes.forEach(CompletableFuture::join);
+
+        String recipient = "+27830000005";
+        List<MessageData.messageData> found = sharded.findMessagesByRecipient(recipient).join();
+        assertEquals(10, found.size());
+
+        int owner = sharded.shardFor(recipient);
+        int total = 0;
+        for (int i = 0; i < sharded.getShardCount(); i++) {
+            MessageProcessor shard = sharded.getShard(i);
+            int size = sharded.onShard(i, s -> s.getSentMessages().size() + s.getStoredMessages().size()).join();
+            total += size;
+            boolean hasRecipient = sharded.onShard(i, s -> !s.findMessagesByRecipient(recipient).isEmpty()).join();
+            assertEquals(i == owner, hasRecipient, "shard " + i + " of " + shard.getStorageFile());
+        }
+        assertEquals(400, total);
+    }
+
+    @Test
+    void testLookupsFanOutAcrossShards() {
+        for (int i = 0; i < 100; i++) {
+            sharded.addSentMessage(message(i, "SENT")).join();
+        }
+
+        assertEquals("Message 42", sharded.findMessageById("MSG000000042").join().orElseThrow().getMessageText());
+        assertTrue(sharded.findMessageById("MSG999999999").join().isEmpty());
+        assertEquals("MSG000000007", sharded.findMessageByHash("ms:7:message7").join().orElseThrow().getId());
+
+        assertEquals("sent", sharded.removeMessageByHash("MS:7:MESSAGE7").join().orElseThrow());
+        assertTrue(sharded.findMessageByHash("MS:7:MESSAGE7").join().isEmpty());
+        assertTrue(sharded.removeMessageByHash("MS:7:MESSAGE7").join().isEmpty());
+
+        assertEquals(10, sharded.removeMessagesWhere(msg -> msg.getMessageText().endsWith("0")).join());
+        assertTrue(sharded.findMessageById("MSG000000020").join().isEmpty());
+    }
+
+    @Test
+    void testEachShardPersistsToItsOwnFile() throws Exception {
+        for (int i = 0; i < 200; i++) {
+            sharded.addStoredMessage(message(i, "PENDING")).join();
+        }
+
+        try (ShardedMessageProcessor reopened = new ShardedMessageProcessor(4, prefix)) {
+            assertTrue(reopened.loadStoredMessagesFromJson().join());
+            for (int i = 0; i < 4; i++) {
+                assertTrue(Files.exists(Path.of(prefix + "-" + i + ".json")));
+                int expected = sharded.onShard(i, s -> s.getStoredMessages().size()).join();
+                assertEquals(expected, (int) reopened.onShard(i, s -> s.getStoredMessages().size()).join());
+            }
+            assertEquals(5, reopened.findMessagesByRecipient("+27830000003").join().size());
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package org.example;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StorageRecoveryTest {
+
+    private Path directory;
+    private Path file;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        directory = Files.createTempDirectory("recovery");
+        file = directory.resolve("storedMessages.json");
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path path : files.toList()) {
+                Files.delete(path);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    void testSealedLinesRoundTripAndDetectDamage() {
+        StringBuilder out = new StringBuilder();
+        MessageProcessor.appendJsonLine(out, message(1));
+        String line = out.toString().strip();
+
+        assertTrue(RecordChecksum.isSealed(line));
+        assertEquals(MessageProcessor.toJson(message(1)).getString("id"),
+                new org.json.JSONObject(RecordChecksum.unseal(line)).getString("id"));
+        assertNull(RecordChecksum.unseal(line.replace("Message 1", "Message 7")));
+        assertEquals("{\"id\":\"old\"}", RecordChecksum.unseal("{\"id\":\"old\"}"));
+    }
+
+    @Test
+    void testTornTailIsTruncatedAndAppendsContinue() throws Exception {
+        MessageProcessor processor = new MessageProcessor(file.toString());
+        for (int i = 1; i <= 3; i++) {
+            processor.addStoredMessage(message(i));
+        }
+        String torn = "{\"id\":\"id4\",\"sender\":\"Ali";
+        Files.writeString(file, torn, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        MessageProcessor restarted = new MessageProcessor(file.toString());
+        restarted.loadStoredMessagesFromJson();
+        StorageRecovery.Report report = restarted.getLastRecovery();
+
+        assertEquals(3, restarted.getStoredMessages().size());
+        assertEquals(torn.length(), report.getTruncatedBytes());
+        assertEquals(1, report.getTruncatedLines());
+        assertEquals(3, report.getSealedLines());
+        assertTrue(report.hasRepairs());
+
+        restarted.addStoredMessage(message(5));
+        MessageProcessor again = new MessageProcessor(file.toString());
+        again.loadStoredMessagesFromJson();
+        assertEquals(List.of("id1", "id2", "id3", "id5"),
+                again.getStoredMessages().stream().map(MessageData.messageData::getId).toList());
+        assertFalse(again.getLastRecovery().hasRepairs());
+    }
+
+    @Test
+    void testCorruptLineInTheMiddleIsSkippedInParallelToo() throws Exception {
+        MessageProcessor processor = new MessageProcessor(file.toString());
+        for (int i = 1; i <= 5; i++) {
+            processor.addStoredMessage(message(i));
+        }
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        lines.set(2, lines.get(2).replace("Message 3", "Massage 3"));
+        Files.write(file, lines, StandardCharsets.UTF_8);
+
+        for (boolean parallel : new boolean[]{false, true}) {
+            MessageProcessor restarted = new MessageProcessor(file.toString());
+            restarted.setParallelLoading(parallel);
+            restarted.loadStoredMessagesFromJson();
+
+            assertEquals(List.of("id1", "id2", "id4", "id5"),
+                    restarted.getStoredMessages().stream().map(MessageData.messageData::getId).toList());
+            assertEquals(1, restarted.getLastRecovery().getCorruptLines());
+            assertEquals(0, restarted.getLastRecovery().getTruncatedBytes());
+            assertEquals(1, restarted.getMetrics().getCount("load.checksumFailures"));
+        }
+    }
+
+    @Test
+    void testInterruptedRewriteLeavesOldFile() throws Exception {
+        MessageProcessor processor = new MessageProcessor(file.toString());
+        processor.addStoredMessage(message(1));
+        processor.addStoredMessage(message(2));
+        processor.compactStoredMessages();
+        // A crash mid-rewrite leaves the complete old file and part of the new one beside it
+        Files.writeString(StorageRecovery.tempFileFor(file), "{\"id\":\"id1\"", StandardCharsets.UTF_8);
+
+        MessageProcessor restarted = new MessageProcessor(file.toString());
+        restarted.loadStoredMessagesFromJson();
+
+        assertEquals(2, restarted.getStoredMessages().size());
+        assertTrue(restarted.getLastRecovery().isTempFileDiscarded());
+        assertFalse(Files.exists(StorageRecovery.tempFileFor(file)));
+    }
+
+    @Test
+    void testUnsealedLinesFromOlderVersionsStillLoad() throws Exception {
+        Files.write(file, List.of(
+                MessageProcessor.toJson(message(1)).toString(),
+                MessageProcessor.toJson(message(2)).toString()), StandardCharsets.UTF_8);
+        // An old file whose last line lost only its newline is intact and kept
+        Files.writeString(file, MessageProcessor.toJson(message(3)).toString(), StandardCharsets.UTF_8,
+                StandardOpenOption.APPEND);
+
+        MessageProcessor processor = new MessageProcessor(file.toString());
+        processor.loadStoredMessagesFromJson();
+
+        assertEquals(3, processor.getStoredMessages().size());
+        assertEquals(3, processor.getLastRecovery().getLegacyLines());
+        assertEquals(0, processor.getLastRecovery().getTruncatedBytes());
+        processor.addStoredMessage(message(4));
+        assertEquals(4, Files.readAllLines(file, StandardCharsets.UTF_8).size());
+    }
+
+    private static MessageData.messageData message(int i) {
+        return new MessageData.messageData("id" + i, "Alice", "+27831234567", "Message " + i, "hash" + i, "PENDING");
+    }
+}
@@ -0,0 +1,66 @@
+package org.example;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+// Compares parsing stored-message lines with StoredLineParser against the org.json path it replaced
+// (decode the line to a String, check its seal, build a JSONObject, copy out the fields).
+// Not a unit test: run it from the IDE or with
+//   mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.example.StoredLineParserBenchmark
+// Arguments: [lines] [rounds]
+public class StoredLineParserBenchmark {
+
+    public static void main(String[] args) {
+        int lineCount = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        // One buffer of sealed lines, like a stored-messages file in memory
+        WorkloadGenerator workload = WorkloadGenerator.withDefaults(44);
+        Random random = new Random(44);
+        StringBuilder file = new StringBuilder();
+        for (int i = 0; i < lineCount; i++) {
+            MessageProcessor.appendJsonLine(file, workload.nextMessage(random, i));
+        }
+        byte[] bytes = file.toString().getBytes(StandardCharsets.UTF_8);
+        int[] lineEnds = new int[lineCount];
+        for (int i = 0, line = 0; i < bytes.length; i++) {
+            if (bytes[i] == '\n') {
+                lineEnds[line++] = bytes[i - 1] == '\r' ? i - 1 : i;
+            }
+        }
+        System.out.printf("%d lines, %.1f MB%n", lineCount, bytes.length / 1e6);
+
+        StoredLineParser parser = new StoredLineParser();
+        Map<String, Integer> goneCounts = new HashMap<>();
+        long checksum = 0;
+        for (int round = 1; round <= rounds; round++) {
+            long start = System.nanoTime();
+            int lineStart = 0;
+            for (int i = 0; i < lineCount; i++) {
+                String line = new String(bytes, lineStart, lineEnds[i] - lineStart, StandardCharsets.UTF_8);
+                checksum += MessageProcessor.parseStoredLine(RecordChecksum.unseal(line), goneCounts).getCreatedAt();
+                lineStart = skipNewline(bytes, lineEnds[i]);
+            }
+            long orgJson = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            lineStart = 0;
+            for (int i = 0; i < lineCount; i++) {
+                int jsonEnd = RecordChecksum.jsonEnd(bytes, lineStart, lineEnds[i]);
+                checksum += parser.parse(bytes, lineStart, jsonEnd, goneCounts).getCreatedAt();
+                lineStart = skipNewline(bytes, lineEnds[i]);
+            }
+            long streaming = System.nanoTime() - start;
+
+            System.out.printf("round %2d: org.json %,10.0f lines/s   StoredLineParser %,10.0f lines/s   %.1fx%n",
+                    round, lineCount / (orgJson / 1e9), lineCount / (streaming / 1e9), (double) orgJson / streaming);
+        }
+        System.out.println("(checksum " + checksum + ")"); // Keeps the JIT from dropping the work
+    }
+
+    private static int skipNewline(byte[] bytes, int lineEnd) {
+        return bytes[lineEnd] == '\r' ? lineEnd + 2 : lineEnd + 1;
+    }
+}
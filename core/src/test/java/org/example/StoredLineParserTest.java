@@ -0,0 +1,106 @@
+package org.example;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StoredLineParserTest {
+
+    private final StoredLineParser parser = new StoredLineParser();
+
+    @Test
+    void testWrittenLinesParseLikeOrgJson() {
+        String[] texts = {
+                "Plain text",
+                "Quotes \" and \\ backslashes, tab\t, newline\n, return\r and bell \u0007",
+                "Caf\u00e9, \u20ac5, \u4f60\u597d and \ud83d\ude00",
+                "",
+        };
+        for (String text : texts) {
+            MessageData.messageData msg = new MessageData.messageData("MSG123456701", "Alice", "+27831234567",
+                    text, "MS:1:HASH", "PENDING");
+            msg.setSendAt(1_700_000_123_000L);
+            StringBuilder line = new StringBuilder();
+            MessageProcessor.appendJsonLine(line, msg);
+            String json = RecordChecksum.unseal(line.toString().strip());
+
+            assertSameMessage(MessageProcessor.parseStoredLine(json, new HashMap<>()), parse(json, new HashMap<>()));
+            assertEquals(text, parse(json, new HashMap<>()).getMessageText());
+        }
+    }
+
+    @Test
+    void testOlderAndForeignLayoutsParseLikeOrgJson() {
+        JSONObject legacy = new JSONObject()
+                .put("id", "id7").put("sender", "Bob").put("recipient", "+27831234567")
+                .put("messageText", "See </b> and   here").put("hash", "h").put("status", "SENT")
+                .put("addedLater", new JSONObject().put("nested", new int[]{1, 2}).put("flag", true))
+                .put("ratio", -1.5e3);
+        String spaced = " { \"id\" : \"x\" , \"sender\":\"s\",\"recipient\":\"r\",\"messageText\":\"t\","
+                + "\"hash\":\"h\",\"status\":\"PENDING\",\"createdAt\":5 , \"note\":null } ";
+        for (String json : new String[]{legacy.toString(), spaced}) {
+            assertSameMessage(MessageProcessor.parseStoredLine(json, new HashMap<>()), parse(json, new HashMap<>()));
+        }
+        MessageData.messageData withoutTimestamps = parse(legacy.toString(), new HashMap<>());
+        assertEquals(withoutTimestamps.getCreatedAt(), withoutTimestamps.getStatusChangedAt());
+    }
+
+    @Test
+    void testOpRecordsCountTheirIds() {
+        Map<String, Integer> gone = new HashMap<>();
+        assertNull(parse("{\"op\":\"sent\",\"ids\":[\"a\",\"b\"]}", gone));
+        assertNull(parse("{\"op\":\"removed\",\"ids\":[\"a\"]}", gone));
+        assertNull(parse("{\"op\":\"removed\",\"ids\":[]}", gone));
+        assertEquals(Map.of("a", 2, "b", 1), gone);
+    }
+
+    @Test
+    void testMalformedLinesReportWhere() {
+        String fields = "\"sender\":\"s\",\"recipient\":\"r\",\"messageText\":\"t\",\"hash\":\"h\",\"status\":\"S\"";
+        assertOffset(6, "{\"id\":\"MSG1234");                         // Torn mid-string
+        assertOffset(6, "{\"id\":12," + fields + "}");                // Not a string
+        assertOffset(6, "{\"id\":null," + fields + "}");              // Null, which fromJson rejects too
+        assertOffset(8, "{\"id\":\"a\\q\"," + fields + "}");          // Bad escape
+        assertOffset(11, "{\"id\":\"a\"} {}");                        // Trailing data
+        assertOffset(10, "{\"id\":\"a\",\"id\":\"b\"," + fields + "}"); // Duplicate key
+        assertOffset(9, "{\"id\":\"a\"}");                            // Missing fields: points at the end
+        assertOffset(0, "{\"op\":\"moved\",\"ids\":[\"a\"]}");
+        assertOffset(0, "");
+        Map<String, Integer> gone = new HashMap<>();
+        assertThrows(StoredLineParser.MalformedLineException.class, () -> parse("{\"op\":\"sent\",\"ids\":[\"a\",]}", gone));
+        assertTrue(gone.isEmpty()); // Nothing is counted from a record that fails half way
+    }
+
+    private void assertOffset(int expected, String line) {
+        StoredLineParser.MalformedLineException e = assertThrows(StoredLineParser.MalformedLineException.class,
+                () -> parse(line, new HashMap<>()), line);
+        assertEquals(expected, e.getOffset(), e.getMessage());
+    }
+
+    private MessageData.messageData parse(String json, Map<String, Integer> goneCounts) {
+        // Parse from the middle of a larger buffer, as the loaders do
+        byte[] line = json.getBytes(StandardCharsets.UTF_8);
+        byte[] bytes = new byte[line.length + 10];
+        System.arraycopy(line, 0, bytes, 5, line.length);
+        return parser.parse(bytes, 5, 5 + line.length, goneCounts);
+    }
+
+    private static void assertSameMessage(MessageData.messageData expected, MessageData.messageData actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getSender(), actual.getSender());
+        assertEquals(expected.getRecipient(), actual.getRecipient());
+        assertEquals(expected.getMessageText(), actual.getMessageText());
+        assertEquals(expected.getHash(), actual.getHash());
+        assertEquals(expected.getStatus(), actual.getStatus());
+        assertEquals(expected.getSendAt(), actual.getSendAt());
+        if (expected.getCreatedAt() != expected.getStatusChangedAt()) {
+            assertEquals(expected.getCreatedAt(), actual.getCreatedAt());
+            assertEquals(expected.getStatusChangedAt(), actual.getStatusChangedAt());
+        }
+    }
+}
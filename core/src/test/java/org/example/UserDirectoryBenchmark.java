@@ -0,0 +1,72 @@
+package org.example;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Measures logins per second against a UserDirectory with the production hash cost.
+// Not a unit test: run it from the IDE or with
+//   mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.example.UserDirectoryBenchmark
+// Arguments: [users] [client threads] [logins per client]
+public class UserDirectoryBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int users = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int loginsPerClient = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+        int hashingThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+        Path file = Files.createTempFile("users-bench", ".json");
+        try (UserDirectory directory = new UserDirectory(file, UserDirectory.DEFAULT_ITERATIONS,
+                hashingThreads, clients * 2)) {
+            List<CompletableFuture<Boolean>> registrations = new ArrayList<>();
+            for (int i = 0; i < users; i++) {
+                registrations.add(directory.register(
+                        new Login("User", "" + i, "u_" + i, "Passw0rd!" + i, "0821234567")));
+                if (registrations.size() == clients) {
+                    registrations.forEach(CompletableFuture::join);
+                    registrations.clear();
+                }
+            }
+            registrations.forEach(CompletableFuture::join);
+
+            AtomicLong succeeded = new AtomicLong();
+            AtomicLong rejected = new AtomicLong();
+            ExecutorService pool = Executors.newFixedThreadPool(clients);
+            List<Future<?>> runs = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int c = 0; c < clients; c++) {
+                int client = c;
+                runs.add(pool.submit(() -> {
+                    for (int i = 0; i < loginsPerClient; i++) {
+                        int user = (client * loginsPerClient + i) % users;
+                        try {
+                            if (directory.authenticate("u_" + user, "Passw0rd!" + user).join()) {
+                                succeeded.incrementAndGet();
+                            }
+                        } catch (CompletionException e) {
+                            rejected.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> run : runs) {
+                run.get();
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            pool.shutdown();
+
+            System.out.printf("%d clients, %d hashing threads: %d logins in %.2f s = %.1f logins/s (%d rejected as busy)%n",
+                    clients, hashingThreads, succeeded.get(), seconds, succeeded.get() / seconds, rejected.get());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package org.example;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UserDirectoryTest {
+
+    private Path file;
+    private UserDirectory directory;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        file = Files.createTempFile("users", ".json");
+        directory = new UserDirectory(file, 1_000, 2, 16);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        directory.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    void testRegisterAndAuthenticate() {
+        Login login = new Login("John", "Doe", "jd_1", "Passw0rd!", "0821234567");
+
+        assertTrue(directory.register(login).join());
+        assertTrue(directory.authenticate("jd_1", "Passw0rd!").join());
+        assertFalse(directory.authenticate("jd_1", "wrongpass").join());
+        assertFalse(directory.authenticate("nobody", "Passw0rd!").join());
+        assertEquals("John", directory.find("jd_1").orElseThrow().getFirstName());
+    }
+
+    @Test
+    void testUnknownUsersAreHashedLikeKnownOnes() {
+        assertFalse(directory.authenticate("nobody", "Passw0rd!").join());
+        assertFalse(directory.authenticate("nobody", null).join());
+
+        // Both go through the hashing pool, so both fail the same way once it is shut down
+        directory.close();
+        assertThrows(Exception.class, () -> directory.authenticate("nobody", "Passw0rd!").join());
+        assertThrows(Exception.class, () -> directory.register(
+                new Login("John", "Doe", "jd_1", "Passw0rd!", "0821234567")).join());
+    }
+
+    @Test
+    void testDuplicateUsernameIsRejected() {
+        assertTrue(directory.register(new Login("John", "Doe", "jd_1", "Passw0rd!", "0821234567")).join());
+        assertFalse(directory.register(new Login("Jane", "Doe", "jd_1", "Other123!", "0821234568")).join());
+        assertTrue(directory.authenticate("jd_1", "Passw0rd!").join());
+    }
+
+    @Test
+    void testFileHoldsOnlySaltedHashes() throws Exception {
+        directory.register(new Login("John", "Doe", "jd_1", "Passw0rd!", "0821234567")).join();
+        directory.register(new Login("Jane", "Roe", "jr_2", "Passw0rd!", "0821234568")).join();
+
+        String content = Files.readString(file);
+        assertFalse(content.contains("Passw0rd!"));
+
+        try (UserDirectory reloaded = new UserDirectory(file, 1_000, 1, 4)) {
+            assertEquals(2, reloaded.size());
+            assertTrue(reloaded.authenticate("jr_2", "Passw0rd!").join());
+            // Same password, different salt, so the stored hashes differ.
+            assertNotEquals(reloaded.find("jd_1").orElseThrow().toJson().getString("passwordHash"),
+                    reloaded.find("jr_2").orElseThrow().toJson().getString("passwordHash"));
+        }
+    }
+}
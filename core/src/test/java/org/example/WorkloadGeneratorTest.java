@@ -0,0 +1,59 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WorkloadGeneratorTest {
+
+    @Test
+    void testMessagesPassTheAppsChecks() {
+        WorkloadGenerator workload = WorkloadGenerator.withDefaults(1);
+        MessageData checks = new MessageData();
+        Random random = new Random(2);
+        for (int i = 1; i <= 2_000; i++) {
+            MessageData.messageData msg = workload.nextMessage(random, i);
+            assertTrue(checks.checkRecipientCell(msg.getRecipient()), msg.getRecipient());
+            assertTrue(msg.getRecipient().startsWith("+27"));
+            assertFalse(msg.getMessageText().isBlank());
+            assertTrue(msg.getMessageText().length() <= WorkloadGenerator.MAX_TEXT_LENGTH);
+            assertNotEquals("INVALID_HASH", msg.getHash());
+        }
+    }
+
+    @Test
+    void testSameSeedGivesSameStream() {
+        WorkloadGenerator first = WorkloadGenerator.withDefaults(7);
+        WorkloadGenerator second = WorkloadGenerator.withDefaults(7);
+        Random a = new Random(3);
+        Random b = new Random(3);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(first.nextMessage(a, i).toString(), second.nextMessage(b, i).toString());
+            assertEquals(first.nextOperation(a), second.nextOperation(b));
+        }
+    }
+
+    @Test
+    void testOperationMixAndSkew() {
+        WorkloadGenerator workload = new WorkloadGenerator(1, 100, 1_000, 1.0, 40, 0.5, new double[]{6, 0, 1, 3, 0});
+        Random random = new Random(4);
+        Map<WorkloadGenerator.Operation, Integer> counts = new EnumMap<>(WorkloadGenerator.Operation.class);
+        Map<String, Integer> recipients = new HashMap<>();
+        int n = 100_000;
+        for (int i = 0; i < n; i++) {
+            counts.merge(workload.nextOperation(random), 1, Integer::sum);
+            recipients.merge(workload.nextRecipient(random), 1, Integer::sum);
+        }
+        assertEquals(0.6, counts.get(WorkloadGenerator.Operation.SEND) / (double) n, 0.01);
+        assertEquals(0.3, counts.get(WorkloadGenerator.Operation.SEARCH) / (double) n, 0.01);
+        assertNull(counts.get(WorkloadGenerator.Operation.STORE));
+        // With Zipf exponent 1 over 1,000 people the most popular recipient gets about 13% of traffic
+        int top = recipients.values().stream().max(Integer::compare).orElseThrow();
+        assertTrue(top > n / 10, "top recipient got " + top);
+    }
+}
@@ -0,0 +1,132 @@
+package org.example;
+
+import javax.swing.SwingUtilities;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+// Runs slow MessageProcessor work (loads, searches, deletes) off the event dispatch thread.
+// Progress and results are handed to a "UI executor" (the EDT by default), progress updates are
+// collapsed so a fast worker cannot flood the EDT, and submitting a task with the same key as
+// one still running returns the running task instead of starting the work again.
+public class BackgroundTaskRunner {
+
+    // The work itself; receives a listener for progress reports and may be interrupted on cancel.
+    @FunctionalInterface
+    public interface Work<T> {
+        T run(ProgressListener progress) throws Exception;
+    }
+
+    private final ExecutorService workers;
+    private final Executor uiExecutor;
+    private final Map<String, Task<?>> inFlight = new ConcurrentHashMap<>();
+
+    public BackgroundTaskRunner() {
+        this(Executors.newSingleThreadExecutor(daemonThreads()), SwingUtilities::invokeLater);
+    }
+
+    BackgroundTaskRunner(ExecutorService workers, Executor uiExecutor) {
+        this.workers = workers;
+        this.uiExecutor = uiExecutor;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> Task<T> submit(String key, Work<T> work) {
+        while (true) {
+            Task<?> running = inFlight.get(key);
+            if (running != null) {
+                return (Task<T>) running; // Same query still in progress: share its result.
+            }
+            Task<T> task = new Task<>();
+            if (inFlight.putIfAbsent(key, task) != null) {
+                continue;
+            }
+            task.result.whenComplete((value, error) -> inFlight.remove(key, task));
+            task.execution = workers.submit(() -> {
+                try {
+                    task.result.complete(work.run(task::reportProgress));
+                } catch (Throwable e) {
+                    task.result.completeExceptionally(e);
+                }
+            });
+            return task;
+        }
+    }
+
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    private static ThreadFactory daemonThreads() {
+        AtomicInteger number = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "quickchat-background-" + number.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    public class Task<T> {
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private final AtomicBoolean progressPosted = new AtomicBoolean();
+        private volatile Future<?> execution;
+        private volatile long done;
+        private volatile long total;
+        private volatile ProgressListener uiProgress = ProgressListener.NONE;
+
+        // Progress is delivered on the UI executor, at most one pending update at a time.
+        public void onProgress(ProgressListener listener) {
+            this.uiProgress = listener;
+        }
+
+        // The callback runs on the UI executor with either the result or the failure
+        // (a CancellationException when the task was cancelled).
+        public void whenDone(BiConsumer<T, Throwable> callback) {
+            result.whenComplete((value, error) -> uiExecutor.execute(() -> callback.accept(value, unwrap(error))));
+        }
+
+        public void cancel() {
+            result.completeExceptionally(new CancellationException("Cancelled by user"));
+            Future<?> running = execution;
+            if (running != null) {
+                running.cancel(true); // Interrupts the worker; long operations check for it
+            }
+        }
+
+        public boolean isDone() {
+            return result.isDone();
+        }
+
+        public CompletableFuture<T> getResult() {
+            return result;
+        }
+
+        private void reportProgress(long done, long total) {
+            this.done = done;
+            this.total = total;
+            if (progressPosted.compareAndSet(false, true)) {
+                uiExecutor.execute(() -> {
+                    progressPosted.set(false);
+                    uiProgress.onProgress(this.done, this.total);
+                });
+            }
+        }
+
+        private Throwable unwrap(Throwable error) {
+            if (error instanceof CompletionException && error.getCause() != null) {
+                return error.getCause();
+            }
+            return error;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package org.example;
+
+import javax.swing.JOptionPane; // Required for displaying dialog boxes to the user
+import java.util.concurrent.CompletionException;
+
+// The registration and login prompts; the checks themselves are in Login.
+public class LoginDialogs {
+
+    public static String registerUser(Login user) {
+        // Prompt for each detail, with the rules the username, cell number and password must follow
+        String firstName = JOptionPane.showInputDialog("Enter first name:");
+        String lastName = JOptionPane.showInputDialog("Enter last name:");
+        String cellNumber = JOptionPane.showInputDialog("Enter cell number (e.g., +27XXXXXXXXX or 0XXXXXXXXX):");
+        String username = JOptionPane.showInputDialog("Enter username (must contain '_' and be <= 5 characters):");
+        String password = JOptionPane.showInputDialog("Enter password (must be >= 8 chars, include uppercase, lowercase, number, special character):");
+        return user.registerUser(firstName, lastName, cellNumber, username, password);
+    }
+
+    public static boolean loginUser(Login user, UserDirectory directory) {
+
+        JOptionPane.showMessageDialog(null,"===Login===");
+        // Get username input from the user
+        String inputUsername = JOptionPane.showInputDialog("Enter username:");
+        // Get password input from the user
+        String inputPassword = JOptionPane.showInputDialog("Enter password:");
+
+        // A busy directory pool counts as a failed attempt.
+        try {
+            return user.loginUser(directory, inputUsername, inputPassword);
+        } catch (CompletionException e) {
+            JOptionPane.showMessageDialog(null, e.getCause().getMessage(), "Login Error", JOptionPane.ERROR_MESSAGE);
+            return false;
+        }
+    }
+}
@@ -1,10 +1,22 @@
 package org.example;
 
 import javax.swing.*; // Required for JOptionPane to display dialogs
+import java.io.IOException;
+import java.util.concurrent.CompletionException;
 
 public class Main {
 
     public static void main(String[] args) {
+        // Open the directory of registered users. Users are kept in 'users.json' with
+        // salted password hashes, so people who registered before can simply log in again.
+        UserDirectory directory;
+        try {
+            directory = new UserDirectory("users.json");
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(null, "Could not read registered users: " + e.getMessage(), "File Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
         // Create an instance of the Login class.
         // Initial values for username, password, etc., are empty strings
         // as they will be populated by user input during the registration process.
@@ -15,22 +27,36 @@ public class Main {
         JOptionPane.showMessageDialog(null, "=== Registration ===");
 
         // Attempt to register a new user.
-        // The registerUser() method handles input prompts and validation.
-        String registrationMessage = user.registerUser();
-
-        // Display the outcome of the registration attempt to the user.
-        JOptionPane.showMessageDialog(null, registrationMessage);
+        // LoginDialogs prompts for the details and Login validates them.
+        String registrationMessage = LoginDialogs.registerUser(user);
+        boolean canLogin = false;
 
         // --- Conditional Logic: Proceed based on Registration Success ---
-        // Check if registration was successful. The message "Regist
-        // ration successful!"
+        // Check if registration was successful. The message "Registration successful!"
         // is used as a flag from the Login class's registerUser method.
         if (registrationMessage.contains("Registration successful!")) {
+            // Add the validated user to the directory. Only the salted hash of the
+            // password is stored, and the plaintext is cleared straight afterwards.
+            try {
+                if (!directory.register(user).join()) {
+                    registrationMessage = "Username '" + user.getUsername() + "' is already registered. Please log in.";
+                }
+                canLogin = true;
+            } catch (CompletionException e) {
+                registrationMessage = "Registration failed: " + e.getCause().getMessage();
+            }
+            user.setPassword("");
+        }
+
+        // Display the outcome of the registration attempt to the user.
+        JOptionPane.showMessageDialog(null, registrationMessage);
+
+        if (canLogin) {
 
             // --- User Login Section (only if registration was successful) ---
             // Attempt to log in the user.
-            // The loginUser() method handles input prompts and credential verification.
-            boolean isSuccess = user.loginUser();
+            // LoginDialogs prompts for the credentials and checks them against the directory.
+            boolean isSuccess = LoginDialogs.loginUser(user, directory);
 
 
             // Display the login status (success or failure) to the user.
@@ -49,5 +75,6 @@ public class Main {
             // Inform the user that login cannot be attempted because registration failed.
             JOptionPane.showMessageDialog(null, "Cannot proceed to login due to registration failure.");
         }
+        directory.close();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,228 @@
+// MainMenu.java
+package org.example;
+import javax.swing.*; // Required for JOptionPane to display dialogs
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+public class MainMenu {
+
+    // An instance of MessageProcessor to handle all message-related operations.
+    private static MessageProcessor messageProcessor = new MessageProcessor();
+
+    // Runs loads, searches and deletes in the background so the dialogs stay responsive
+    // however large the message store is.
+    private static final BackgroundTaskRunner backgroundTasks = new BackgroundTaskRunner();
+
+    // Sends stored messages that were given a send time once that time comes.
+    private static final MessageDispatcher dispatcher = new MessageDispatcher(messageProcessor);
+
+    // Only with -Dquickchat.retentionDays=N: moves messages older than N days (apart from pending
+    // ones) out of memory and into compressed segment files in the "archive" directory.
+    private static final Long retentionDays = Long.getLong("quickchat.retentionDays");
+    private static final RetentionSweeper retentionSweeper = retentionDays == null ? null
+            : new RetentionSweeper(messageProcessor, Duration.ofDays(retentionDays), Path.of("archive"));
+
+    static {
+        // Results, reports and file errors appear as dialogs.
+        messageProcessor.setDisplay(new SwingMessageDisplay());
+        // Each sender may send 10 messages back to back, then one message every 2 seconds.
+        RateLimiter rateLimiter = new RateLimiter(10, 0.5);
+        rateLimiter.start(TimeUnit.MINUTES.toMillis(1));
+        messageProcessor.setRateLimiter(rateLimiter);
+        dispatcher.start(1000);
+        if (retentionSweeper != null) {
+            retentionSweeper.start(TimeUnit.HOURS.toMillis(1));
+        }
+    }
+
+    public static void startApplication() {
+        // Greet the user upon entering the QuickChat application.
+        JOptionPane.showMessageDialog(null, "Welcome to the QuickChat Application!");
+
+        // Loop indefinitely to keep the main menu running until explicitly exited.
+        while (true) {
+            // Display the main menu options to the user and get their choice.
+            String choiceStr = JOptionPane.showInputDialog(null,
+                    """
+                    --- Main Menu ---
+                    1. QuickChat Messaging
+                    2. Display Senders and Recipients
+                    3. Display Longest Message
+                    4. Search Message by ID
+                    5. Search Messages by Recipient
+                    6. Delete Message by Hash
+                    7. Display Full Message Report
+                    8. Load Messages from JSON File
+                    9. Logout/Exit
+                    Choose an option:""",
+                    "Main Menu", // Dialog title
+                    JOptionPane.PLAIN_MESSAGE); // Message type
+
+            // Handle cases where the user clicks 'Cancel' or closes the dialog.
+            if (choiceStr == null) {
+                JOptionPane.showMessageDialog(null, "Exiting application. Goodbye!");
+                System.exit(0); // Terminate the application gracefully.
+            }
+
+            try {
+                // Attempt to parse the user's input string into an integer.
+                int choice = Integer.parseInt(choiceStr);
+
+                // Use a switch statement to perform actions based on the user's choice.
+                switch (choice) {
+                    case 1 -> { // Option 1: QuickChat Messaging
+                        // Start the QuickChat messaging interface, passing the messageProcessor.
+                        Message.startQuickChat(messageProcessor);
+                    }
+                    case 2 -> { // Option 2: Display Senders and Recipients (formerly case 3)
+                        // Display a report of all message senders and recipients.
+                        messageProcessor.displaySentMessageSendersAndRecipients();
+                    }
+                    case 3 -> { // Option 3: Display Longest Message (formerly case 4)
+                        // Find and display the longest message sent.
+                        messageProcessor.displayLongestSentMessage();
+                    }
+                    case 4 -> { // Option 4: Search Message by ID (formerly case 5)
+                        // Prompt for a Message ID and search for it.
+                        String searchId = JOptionPane.showInputDialog("Enter Message ID to search:");
+                        if (searchId != null && !searchId.trim().isEmpty()) {
+                            String id = searchId.trim();
+                            runWithProgress("Searching messages", "searchById:" + id, true,
+                                    progress -> messageProcessor.findMessageById(id))
+                                    .ifPresent(found -> messageProcessor.showMessageDetails(id, found));
+                        } else {
+                            JOptionPane.showMessageDialog(null, "No Message ID entered.", "Search Cancelled", JOptionPane.INFORMATION_MESSAGE);
+                        }
+                    }
+                    case 5 -> { // Option 5: Search Messages by Recipient (formerly case 6)
+                        // Prompt for a recipient number and search for messages sent to them.
+                        String searchRecipient = JOptionPane.showInputDialog("Enter Recipient number to search:");
+                        if (searchRecipient != null && !searchRecipient.trim().isEmpty()) {
+                            String recipient = searchRecipient.trim();
+                            Optional<List<MessageData.messageData>> found = runWithProgress("Searching messages",
+                                    "searchByRecipient:" + recipient, true,
+                                    progress -> messageProcessor.findMessagesByRecipient(recipient));
+                            found.ifPresent(messages -> messageProcessor.showMessagesByRecipient(recipient, messages));
+                        } else {
+                            JOptionPane.showMessageDialog(null, "No Recipient entered.", "Search Cancelled", JOptionPane.INFORMATION_MESSAGE);
+                        }
+                    }
+                    case 6 -> { // Option 6: Delete Message by Hash (formerly case 7)
+                        // Prompt for a message hash and attempt to delete the corresponding message.
+                        String deleteHash = JOptionPane.showInputDialog("Enter Message Hash to delete:");
+                        if (deleteHash != null && !deleteHash.trim().isEmpty()) {
+                            String hash = deleteHash.trim();
+                            // A delete cannot be undone halfway, so it is not offered a Cancel button.
+                            runWithProgress("Deleting message", "delete:" + hash, false,
+                                    progress -> Optional.ofNullable(messageProcessor.removeMessageByHash(hash)))
+                                    .ifPresent(list -> messageProcessor.showDeletionResult(list.orElse(null)));
+                        } else {
+                            JOptionPane.showMessageDialog(null, "No Message Hash entered.", "Delete Cancelled", JOptionPane.INFORMATION_MESSAGE);
+                        }
+                    }
+                    case 7 -> { // Option 7: Display Full Message Report (formerly case 8)
+                        // Display a comprehensive report of all sent messages.
+                        messageProcessor.displaySentMessagesReport();
+                    }
+                    case 8 -> { // Option 8: Load Messages from JSON File (formerly case 9)
+                        // Load messages from a JSON file into the message processor.
+                        Optional<Boolean> loaded = runWithProgress("Loading messages", "load", true,
+                                messageProcessor::loadStoredMessagesFromJson);
+                        if (loaded.isEmpty()) {
+                            continue; // Cancelled or failed; the user has already been told.
+                        }
+                        if (loaded.get()) {
+                            JOptionPane.showMessageDialog(null, "Messages loaded from JSON file.");
+                        } else {
+                            JOptionPane.showMessageDialog(null, "No messages to load.", "Info", JOptionPane.INFORMATION_MESSAGE);
+                        }
+                    }
+                    case 9 -> { // Option 9: Logout (formerly case 10)
+                        // Log out the user and exit the application.
+                        JOptionPane.showMessageDialog(null, "Logging out. Goodbye!");
+                        System.exit(0); // Terminate application process.
+                    }
+                    default -> { // Handle invalid numerical input
+                        JOptionPane.showMessageDialog(null, "Invalid option. Please choose a number between 1 and 9.");
+                    }
+                }
+            } catch (NumberFormatException e) {
+                // Catch and handle cases where the user input is not a valid number.
+                JOptionPane.showMessageDialog(null, "Invalid input. Please enter a number.", "Input Error", JOptionPane.ERROR_MESSAGE);
+            }
+        }
+    }
+
+    // Runs the work on the background thread while a progress dialog is shown.
+    // Returns the result, or an empty Optional if the user cancelled or the work failed
+    // (in which case a dialog has already explained what happened).
+    static <T> Optional<T> runWithProgress(String title, String key, boolean cancellable,
+                                           BackgroundTaskRunner.Work<T> work) {
+        BackgroundTaskRunner.Task<T> task = backgroundTasks.submit(key, work);
+
+        JProgressBar progressBar = new JProgressBar(0, 1000);
+        progressBar.setIndeterminate(true); // Until the work reports how far along it is.
+        Object[] options = cancellable ? new Object[]{"Cancel"} : new Object[]{};
+        JOptionPane pane = new JOptionPane(new Object[]{title + "...", progressBar},
+                JOptionPane.INFORMATION_MESSAGE, JOptionPane.DEFAULT_OPTION, null, options);
+        JDialog dialog = pane.createDialog(null, title);
+        dialog.setDefaultCloseOperation(WindowConstants.DO_NOTHING_ON_CLOSE);
+        if (cancellable) {
+            // Pressing Cancel (or closing the window) cancels the task; finishing closes the dialog.
+            pane.addPropertyChangeListener(JOptionPane.VALUE_PROPERTY, event -> {
+                if ("Cancel".equals(event.getNewValue())) task.cancel();
+            });
+            dialog.addWindowListener(new WindowAdapter() {
+                @Override
+                public void windowClosing(WindowEvent e) {
+                    task.cancel();
+                }
+            });
+        }
+
+        // Progress and completion both arrive on the event dispatch thread, as does showing the
+        // dialog below, so the dialog can never be opened after the task has already finished.
+        boolean[] finished = {false};
+        task.onProgress((done, total) -> {
+            if (total > 0) {
+                progressBar.setIndeterminate(false);
+                progressBar.setValue((int) (done * 1000 / total));
+            }
+        });
+        task.whenDone((value, error) -> {
+            finished[0] = true;
+            dialog.dispose();
+        });
+        try {
+            SwingUtilities.invokeAndWait(() -> {
+                if (!finished[0]) {
+                    dialog.setVisible(true); // Modal: returns once whenDone disposes it
+                }
+            });
+        } catch (InterruptedException | InvocationTargetException e) {
+            task.cancel();
+        }
+
+        try {
+            return Optional.of(task.getResult().join());
+        } catch (CancellationException e) {
+            JOptionPane.showMessageDialog(null, title + " was cancelled.", title, JOptionPane.INFORMATION_MESSAGE);
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() instanceof CancellationException ? null : e.getCause();
+            if (cause == null) {
+                JOptionPane.showMessageDialog(null, title + " was cancelled.", title, JOptionPane.INFORMATION_MESSAGE);
+            } else {
+                JOptionPane.showMessageDialog(null, title + " failed: " + cause.getMessage(), title, JOptionPane.ERROR_MESSAGE);
+            }
+        }
+        return Optional.empty();
+    }
+}
\ No newline at end of file
@@ -8,25 +8,25 @@ public class Message {
 
     // A static reference to the MessageProcessor to manage all message data.
     private static MessageProcessor messageProcessor;
-    // Tracks the maximum number of messages the user intends to send/store in the current session.
-    private static int allowedMessagesInSession = 0;
-    // Counts how many messages have been processed (sent or stored) in the current session.
-    private static int messagesSentInSession = 0;
 
     public static void startQuickChat(MessageProcessor processor) {
         // Assign the passed MessageProcessor instance to the static variable.
         messageProcessor = processor;
         JOptionPane.showMessageDialog(null, "Welcome to QuickChat Messaging!");
 
-        // Reset session-specific counters each time the user enters QuickChat messaging
-        // from the MainMenu to ensure a fresh session.
-        allowedMessagesInSession = 0;
-        messagesSentInSession = 0;
+        // Session-specific counters live only for this QuickChat session, so every entry from the
+        // MainMenu starts fresh. Sending throughput itself is limited per sender by the
+        // MessageProcessor's RateLimiter, not by these counters.
+        // Tracks the maximum number of messages the user intends to send/store in the current session.
+        int allowedMessagesInSession = 0;
+        // Counts how many messages have been processed (sent or stored) in the current session.
+        int messagesSentInSession = 0;
 
         // Load any previously stored messages from the JSON file.
         // This ensures that 'storedMessages' list in MessageProcessor is populated
-        // with existing data when QuickChat starts.
-        messageProcessor.loadStoredMessagesFromJson();
+        // with existing data when QuickChat starts. The load runs in the background behind a
+        // progress dialog, so a large file does not freeze the screen.
+        MainMenu.runWithProgress("Loading messages", "load", true, messageProcessor::loadStoredMessagesFromJson);
 
         // Main loop for the QuickChat menu.
         while (true) {
@@ -58,9 +58,7 @@ public class Message {
                         // This check prevents sending more messages if the quota for the current session is met.
                         if (allowedMessagesInSession > 0 && messagesSentInSession == allowedMessagesInSession) {
                             JOptionPane.showMessageDialog(null, "Reached the limit of " + allowedMessagesInSession + " message(s). You cannot send more messages in this QuickChat session.", "Limit Reached", JOptionPane.WARNING_MESSAGE);
-                            // Reset session variables and return to Main Menu after warning the user.
-                            allowedMessagesInSession = 0; // Reset for next QuickChat entry
-                            messagesSentInSession = 0;    // Reset
+                            // Return to Main Menu after warning the user; the next entry starts a fresh session.
                             return; // Exit startQuickChat, go back to MainMenu.
                         }
                         // --- Scenario 2: User is starting a new message sending sequence ---
@@ -90,7 +88,7 @@ public class Message {
                         // Loop to allow the user to send/store messages up to the 'allowedMessagesInSession' limit.
                         while (messagesSentInSession < allowedMessagesInSession) {
                             // Call the helper method to handle a single message's input and processing.
-                            boolean cancelled = sendMessageProcedure(messagesSentInSession + 1);
+                            boolean cancelled = sendMessageProcedure(messagesSentInSession + 1, allowedMessagesInSession);
                             if (!cancelled) { // If the message was successfully created (not cancelled by user).
                                 messagesSentInSession++; // Increment the counter for processed messages.
                             } else {
@@ -133,7 +131,7 @@ public class Message {
         }
     }
 
-    private static boolean sendMessageProcedure(int messageNumber) {
+    private static boolean sendMessageProcedure(int messageNumber, int allowedMessagesInSession) {
         // Create a MessageData utility instance for validation and hash generation.
         MessageData messageDataUtil = new MessageData();
 
@@ -221,8 +219,16 @@ public class Message {
             switch (action) {
                 case 1 -> { // Option 1: Send Message Now
                     newMessage.setStatus("SENT"); // Set status to SENT.
-                    messageProcessor.addSentMessage(newMessage); // Add to sent messages.
-                    JOptionPane.showMessageDialog(null, "Message #" + messageNumber + " sent successfully.");
+                    try {
+                        messageProcessor.addSentMessage(newMessage); // Add to sent messages.
+                        JOptionPane.showMessageDialog(null, "Message #" + messageNumber + " sent successfully.");
+                    } catch (MessageProcessor.RateLimitedException e) {
+                        // The sender is over the rate limit, so keep the message for later instead of losing it.
+                        // Storing can still fail for memory, which the catch below reports.
+                        newMessage.setStatus("PENDING");
+                        messageProcessor.addStoredMessage(newMessage);
+                        JOptionPane.showMessageDialog(null, "You are sending messages too quickly. Message #" + messageNumber + " was stored for later instead.", "Rate Limited", JOptionPane.WARNING_MESSAGE);
+                    }
                 }
                 case 2 -> { // Option 2: Discard Message
                     newMessage.setStatus("DISREGARDED"); // Set status to DISREGARDED.
@@ -231,8 +237,18 @@ public class Message {
                 }
                 case 3 -> { // Option 3: Store Message for Later
                     newMessage.setStatus("PENDING"); // Set status to PENDING.
+                    // Optionally schedule it; the MessageDispatcher sends it automatically when the time comes.
+                    String delayStr = JOptionPane.showInputDialog(null,
+                            "Send automatically in how many minutes?\n(Leave blank to keep it stored until you send it.)",
+                            "Schedule Message", JOptionPane.PLAIN_MESSAGE);
+                    long delayMinutes = parseDelayMinutes(delayStr);
+                    if (delayMinutes > 0) {
+                        newMessage.setSendAt(System.currentTimeMillis() + delayMinutes * 60_000L);
+                    }
                     messageProcessor.addStoredMessage(newMessage); // Add to stored messages (also saves to JSON).
-                    JOptionPane.showMessageDialog(null, "Message #" + messageNumber + " stored for later.");
+                    JOptionPane.showMessageDialog(null, delayMinutes > 0
+                            ? "Message #" + messageNumber + " will be sent in " + delayMinutes + " minute(s)."
+                            : "Message #" + messageNumber + " stored for later.");
                 }
                 default -> { // Handle invalid numerical input for action.
                     JOptionPane.showMessageDialog(null, "Invalid choice. Message #" + messageNumber + " not saved.");
@@ -243,20 +259,40 @@ public class Message {
             // Catch and handle cases where action input is not a valid number.
             JOptionPane.showMessageDialog(null, "Invalid input for action. Message #" + messageNumber + " not saved.", "Input Error", JOptionPane.ERROR_MESSAGE);
             return true; // Treat as cancellation if invalid input.
+        } catch (MessageProcessor.MemoryBudgetExceededException e) {
+            // Sending, discarding and storing all refuse a message that does not fit in the memory budget.
+            JOptionPane.showMessageDialog(null, "There is no room for more messages right now. Message #" + messageNumber + " was not saved.", "Memory Full", JOptionPane.ERROR_MESSAGE);
+            return true; // Treat as cancellation, as nothing was saved.
         }
         return false; // Message was successfully processed (not cancelled by the user).
     }
 
+    // Minutes entered in the schedule dialog; blank, invalid or negative input means "not scheduled".
+    private static long parseDelayMinutes(String delayStr) {
+        if (delayStr == null || delayStr.isBlank()) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Long.parseLong(delayStr.trim()));
+        } catch (NumberFormatException e) {
+            JOptionPane.showMessageDialog(null, "Invalid number of minutes. The message will be stored without a send time.", "Input Error", JOptionPane.ERROR_MESSAGE);
+            return 0;
+        }
+    }
+
     private static void showAllMessages() {
         // Use StringBuilder for efficient string concatenation.
         StringBuilder sb = new StringBuilder("--- All Messages ---\n\n");
 
+        // One snapshot of all three lists, so a message the dispatcher moves meanwhile is not shown twice.
+        MessageProcessor.Snapshot snapshot = messageProcessor.snapshot();
+
         // --- Display Sent Messages ---
         sb.append("==== Sent Messages ====\n");
-        if (messageProcessor.getSentMessages().isEmpty()) {
+        if (snapshot.getSentMessages().isEmpty()) {
             sb.append("No sent messages.\n");
         } else {
-            for (MessageData.messageData msg : messageProcessor.getSentMessages()) {
+            for (MessageData.messageData msg : snapshot.getSentMessages()) {
                 sb.append(msg.toString()).append("\n"); // Append each sent message's details.
             }
         }
@@ -264,10 +300,10 @@ public class Message {
 
         // --- Display Stored Messages ---
         sb.append("==== Stored Messages ====\n");
-        if (messageProcessor.getStoredMessages().isEmpty()) {
+        if (snapshot.getStoredMessages().isEmpty()) {
             sb.append("No stored messages.\n");
         } else {
-            for (MessageData.messageData msg : messageProcessor.getStoredMessages()) {
+            for (MessageData.messageData msg : snapshot.getStoredMessages()) {
                 sb.append(msg.toString()).append("\n"); // Append each stored message's details.
             }
         }
@@ -275,10 +311,10 @@ public class Message {
 
         // --- Display Disregarded Messages ---
         sb.append("==== Disregarded Messages ====\n");
-        if (messageProcessor.getDisregardedMessages().isEmpty()) {
+        if (snapshot.getDisregardedMessages().isEmpty()) {
             sb.append("No disregarded messages.\n");
         } else {
-            for (MessageData.messageData msg : messageProcessor.getDisregardedMessages()) {
+            for (MessageData.messageData msg : snapshot.getDisregardedMessages()) {
                 sb.append(msg.toString()).append("\n"); // Append each disregarded message's details.
             }
         }
@@ -0,0 +1,39 @@
+package org.example;
+
+import javax.swing.*;
+import java.awt.*;
+
+// Shows MessageProcessor output in dialogs, or on the console when there is no display.
+public class SwingMessageDisplay implements MessageDisplay {
+
+    @Override
+    public void showInfo(String message, String title) {
+        if (!GraphicsEnvironment.isHeadless()) {
+            JOptionPane.showMessageDialog(null, message, title, JOptionPane.INFORMATION_MESSAGE);
+        } else {
+            CONSOLE.showInfo(message, title);
+        }
+    }
+
+    @Override
+    public void showError(String message, String title) {
+        if (!GraphicsEnvironment.isHeadless()) {
+            JOptionPane.showMessageDialog(null, message, title, JOptionPane.ERROR_MESSAGE);
+        } else {
+            CONSOLE.showError(message, title);
+        }
+    }
+
+    @Override
+    public void showScrollable(String content, String title, int width, int height) {
+        if (!GraphicsEnvironment.isHeadless()) {
+            JTextArea textArea = new JTextArea(content);
+            textArea.setEditable(false);
+            JScrollPane scrollPane = new JScrollPane(textArea);
+            scrollPane.setPreferredSize(new Dimension(width, height));
+            JOptionPane.showMessageDialog(null, scrollPane, title, JOptionPane.INFORMATION_MESSAGE);
+        } else {
+            CONSOLE.showScrollable(content, title, width, height);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package org.example;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BackgroundTaskRunnerTest {
+
+    // Results are delivered on the calling thread here instead of the EDT.
+    private final BackgroundTaskRunner runner =
+            new BackgroundTaskRunner(Executors.newFixedThreadPool(2), Runnable::run);
+
+    @AfterEach
+    void tearDown() {
+        runner.shutdown();
+        File file = new File("storedMessages.json");
+        if (file.exists()) file.delete();
+    }
+
+    @Test
+    void testIdenticalQueriesCoalesce() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger runs = new AtomicInteger();
+        BackgroundTaskRunner.Work<String> work = progress -> {
+            runs.incrementAndGet();
+            release.await();
+            return "result";
+        };
+
+        BackgroundTaskRunner.Task<String> first = runner.submit("search:Bob", work);
+        BackgroundTaskRunner.Task<String> second = runner.submit("search:Bob", work);
+        assertSame(first, second);
+
+        release.countDown();
+        assertEquals("result", first.getResult().get(5, TimeUnit.SECONDS));
+        assertEquals(1, runs.get());
+
+        // Once finished, the same key starts fresh work.
+        assertEquals("result", runner.submit("search:Bob", work).getResult().get(5, TimeUnit.SECONDS));
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    void testCancelInterruptsWorkAndReportsCancellation() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        BackgroundTaskRunner.Task<String> task = runner.submit("load", progress -> {
+            started.countDown();
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw e;
+            }
+            return "too late";
+        });
+        List<Throwable> errors = new ArrayList<>();
+        task.whenDone((value, error) -> errors.add(error));
+
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        task.cancel();
+
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        assertTrue(task.isDone());
+        assertInstanceOf(CancellationException.class, errors.get(0));
+    }
+
+    @Test
+    void testProgressAndFailureAreDelivered() throws Exception {
+        List<Long> progress = new ArrayList<>();
+        CountDownLatch listening = new CountDownLatch(1);
+        BackgroundTaskRunner.Task<String> task = runner.submit("failing", reporter -> {
+            listening.await();
+            reporter.onProgress(50, 100);
+            throw new IllegalStateException("disk gone");
+        });
+        task.onProgress((done, total) -> progress.add(done));
+        List<Throwable> errors = new ArrayList<>();
+        task.whenDone((value, error) -> errors.add(error));
+        listening.countDown();
+
+        ExecutionException failure = assertThrows(ExecutionException.class,
+                () -> task.getResult().get(5, TimeUnit.SECONDS));
+        assertEquals("disk gone", failure.getCause().getMessage());
+        assertEquals(List.of(50L), progress);
+        assertEquals("disk gone", errors.get(0).getMessage());
+    }
+
+    @Test
+    void testInterruptedLoadLeavesStoredMessagesUntouched() {
+        MessageProcessor processor = new MessageProcessor();
+        for (int i = 1; i <= 3_000; i++) {
+            processor.addStoredMessage(new MessageData.messageData(
+                    "id" + i, "Alice", "Bob", "Hello " + i, "hash" + i, "PENDING"));
+        }
+        MessageProcessor reader = new MessageProcessor();
+        Thread.currentThread().interrupt();
+        try {
+            assertThrows(CancellationException.class, reader::loadStoredMessagesFromJson);
+        } finally {
+            Thread.interrupted(); // Clear the flag so it does not leak into other tests
+        }
+        assertTrue(reader.getStoredMessages().isEmpty());
+    }
+}